@@ -0,0 +1,16 @@
+package com.flagright.Repository;
+
+import com.flagright.model.entity.DetectionJob;
+import org.springframework.data.neo4j.repository.Neo4jRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DetectionJobRepository extends Neo4jRepository<DetectionJob, Long> {
+
+    List<DetectionJob> findByStatus(DetectionJob.Status status);
+
+    Optional<DetectionJob> findFirstByOrderByStartedAtDesc();
+}
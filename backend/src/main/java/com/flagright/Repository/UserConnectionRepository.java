@@ -2,6 +2,8 @@ package com.flagright.Repository;
 
 import com.flagright.model.entity.UserConnection;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -17,4 +19,10 @@ public interface UserConnectionRepository extends Neo4jRepository<UserConnection
     
 
     boolean existsByUserId1AndUserId2AndRelationshipType(Long userId1, Long userId2, String relationshipType);
+
+    @Query("MATCH (c:UserConnection) WHERE (c.userId1 = $userId OR c.userId2 = $userId) " +
+           "AND c.relationshipType = $relationshipType " +
+           "WITH c, CASE WHEN c.userId1 = $userId THEN c.userId2 ELSE c.userId1 END AS other " +
+           "DELETE c RETURN other")
+    List<Long> deleteByUserIdAndRelationshipType(@Param("userId") Long userId, @Param("relationshipType") String relationshipType);
 } 
\ No newline at end of file
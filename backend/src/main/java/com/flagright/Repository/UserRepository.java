@@ -3,6 +3,7 @@ package com.flagright.Repository;
 import com.flagright.model.entity.User;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -13,26 +14,24 @@ public interface UserRepository extends Neo4jRepository<User, Long> {
 
     Optional<User> findByEmail(String email);
     
-    List<User> findByFirstNameContainingIgnoreCase(String firstName);
+    @Query("MATCH (u:User) WHERE toLower(u.firstName) CONTAINS toLower($firstName) " +
+           "RETURN u ORDER BY u.uid SKIP $skip LIMIT $limit")
+    List<User> findPageByFirstNameContaining(@Param("firstName") String firstName, @Param("skip") long skip,
+                                             @Param("limit") long limit);
 
-    @Query("MATCH ()-[r:SHARES_EMAIL|SHARES_PHONE|SHARES_ADDRESS]-() RETURN count(r)")
-    Long countUserRelationships();
+    @Query("MATCH (u:User) RETURN u ORDER BY u.uid SKIP $skip LIMIT $limit")
+    List<User> findPage(@Param("skip") long skip, @Param("limit") long limit);
+
+    @Query("CALL db.index.fulltext.queryNodes('user_search', $query) YIELD node, score " +
+           "RETURN node ORDER BY score DESC SKIP $skip LIMIT $limit")
+    List<User> searchFullText(@Param("query") String query, @Param("skip") long skip, @Param("limit") long limit);
+
+    boolean existsByIngestionKey(String ingestionKey);
+
+    @Query("MATCH (u:User) WHERE id(u) > $afterId RETURN u ORDER BY id(u) LIMIT $limit")
+    List<User> findChunkAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    @Query("MATCH (u:User) WHERE u.uid > $afterUid RETURN u ORDER BY u.uid LIMIT $limit")
+    List<User> findPageAfterUid(@Param("afterUid") long afterUid, @Param("limit") int limit);
 
-    @Query("MATCH (u1:User), (u2:User) " +
-           "WHERE u1.email IS NOT NULL AND u2.email IS NOT NULL " +
-           "AND u1.email = u2.email AND u1.id <> u2.id " +
-           "MERGE (u1)-[:SHARES_EMAIL]-(u2)")
-    void createEmailConnections();
-    
-    @Query("MATCH (u1:User), (u2:User) " +
-           "WHERE u1.phone IS NOT NULL AND u2.phone IS NOT NULL " +
-           "AND u1.phone = u2.phone AND u1.id <> u2.id " +
-           "MERGE (u1)-[:SHARES_PHONE]-(u2)")
-    void createPhoneConnections();
-    
-    @Query("MATCH (u1:User), (u2:User) " +
-           "WHERE u1.address IS NOT NULL AND u2.address IS NOT NULL " +
-           "AND u1.address = u2.address AND u1.id <> u2.id " +
-           "MERGE (u1)-[:SHARES_ADDRESS]-(u2)")
-    void createAddressConnections();
 }
@@ -0,0 +1,23 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/** Tunables for the server-sent change feed, bound from {@code flagright.changes.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.changes")
+public class ChangeFeedProperties {
+
+    /** Recent events kept so reconnecting clients can resume from their last event id */
+    private int replayBuffer = 10000;
+
+    /** Events buffered per subscriber before it is told to resync instead */
+    private int subscriberBuffer = 1000;
+
+    /** How long a stream stays open before the client has to reconnect */
+    private Duration streamTimeout = Duration.ofMinutes(30);
+}
@@ -0,0 +1,29 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/** Tunables for concurrent writers, bound from {@code flagright.concurrency.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.concurrency")
+public class ConcurrencyProperties {
+
+    /** Locks that attribute values hash onto; more stripes mean fewer unrelated writers wait on each other */
+    private int lockStripes = 4096;
+
+    /** Longest a writer waits for its value locks before its transaction is failed and retried */
+    private Duration lockTimeout = Duration.ofSeconds(5);
+
+    /** Attempts at a transaction that fails with a deadlock or other transient error */
+    private int maxAttempts = 5;
+
+    /** Backoff before the first retry; doubles per attempt, with jitter */
+    private Duration initialBackoff = Duration.ofMillis(20);
+
+    /** Longest backoff between retries */
+    private Duration maxBackoff = Duration.ofSeconds(1);
+}
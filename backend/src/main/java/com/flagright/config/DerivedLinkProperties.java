@@ -0,0 +1,36 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tunables for deriving user links from shared transaction attributes, bound from {@code flagright.derivation.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.derivation")
+public class DerivedLinkProperties {
+
+    /** Whether the derivation runs on its schedule; it can always be run on demand */
+    private boolean enabled = true;
+
+    /** Link types to derive: SHARES_DEVICE, SHARES_IP, SHARES_PAYMENT_METHOD */
+    private List<String> types = new ArrayList<>(List.of("SHARES_DEVICE", "SHARES_IP"));
+
+    /** Fewest distinct values two users must share to be linked */
+    private int minShared = 1;
+
+    /** Lowest Jaccard similarity of two users' value sets for them to be linked */
+    private double minJaccard = 0.1;
+
+    /** Most links kept per user, strongest first */
+    private int topK = 50;
+
+    /** Values used by more users than this (carrier IPs, shared terminals) are ignored */
+    private int maxValueDegree = 1000;
+
+    /** Links written per database round trip */
+    private int batchSize = 5000;
+}
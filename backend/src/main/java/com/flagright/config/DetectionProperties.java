@@ -0,0 +1,52 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Tunables for relationship detection, bound from {@code flagright.detection.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.detection")
+public class DetectionProperties {
+
+    /** Maximum time between two linked transactions per relationship type; types without an entry are unbounded */
+    private Map<String, Duration> windows = new HashMap<>();
+
+    /** Users or transactions processed per committed chunk by the background detection job */
+    private int jobChunkSize = 500;
+
+    /** A running job whose owner has not renewed its claim for this long is adopted by another instance */
+    private Duration jobClaimTimeout = Duration.ofSeconds(60);
+
+    /** Engine forced per relationship type ({@code cypher}, {@code java} or {@code batched}); other types are chosen from statistics */
+    private Map<String, String> engines = new HashMap<>();
+
+    /** Largest attribute population the in-memory engine will load for a full pass */
+    private long javaMaxEntities = 200_000;
+
+    /** Estimated pair comparisons above which a full pass is split into batched transactions */
+    private long batchedMinPairWork = 5_000_000;
+
+    /** Ratio of the largest group to the mean group size above which a distribution counts as skewed */
+    private double skewFactor = 50;
+
+    /** Pairs per write by the in-memory engine, and anchors per inner transaction by the batched engine */
+    private int batchSize = 1000;
+
+    /** Returns the linking window for a relationship type, or null when it is unbounded */
+    public Duration windowFor(String relationshipType) {
+        Duration window = windows.get(relationshipType);
+        return window == null || window.isZero() || window.isNegative() ? null : window;
+    }
+
+    /** Returns the linking window in seconds, or -1 when it is unbounded */
+    public long windowSecondsFor(String relationshipType) {
+        Duration window = windowFor(relationshipType);
+        return window == null ? -1 : window.getSeconds();
+    }
+}
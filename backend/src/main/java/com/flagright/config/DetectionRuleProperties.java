@@ -0,0 +1,27 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/** Where declarative detection rules are loaded from, bound from {@code flagright.rules.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.rules")
+public class DetectionRuleProperties {
+
+    /** YAML or JSON rules file, as a Spring resource location */
+    private String location = "classpath:detection-rules.yml";
+
+    /** Whether the rules file is re-read on a schedule so edits apply without a restart */
+    private boolean hotReload = true;
+
+    /** Group cap for rules that do not set one */
+    private int defaultCap = 1000;
+
+    /** Whether a new or changed rule is run over existing entities in the background once loaded */
+    private boolean backfillOnChange = true;
+
+    /** Entities read per round trip by a full pass */
+    private int scanChunkSize = 10_000;
+}
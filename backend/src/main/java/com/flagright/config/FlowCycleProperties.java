@@ -0,0 +1,50 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/** Tunables for money-flow cycle detection, bound from {@code flagright.cycles.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.cycles")
+public class FlowCycleProperties {
+
+    /** Longest time from a cycle's first transfer to the transfer that closes it */
+    private Duration window = Duration.ofHours(72);
+
+    /** Fewest transfers in a reported cycle; 2 includes direct round trips A to B to A */
+    private int minLength = 2;
+
+    /** Most transfers in a reported cycle; bounds the search depth */
+    private int maxLength = 6;
+
+    /** Largest relative change in amount from one hop to the next; negative disables the check */
+    private double amountTolerance = 0.5;
+
+    /** Whether every hop of a cycle must be in the currency of its first hop */
+    private boolean sameCurrency = true;
+
+    /** Most cycles reported per starting user, so one hub cannot flood a scan */
+    private int maxCyclesPerStart = 100;
+
+    /** Most cycles a full scan returns */
+    private int maxResults = 1000;
+
+    /** Whether each new transaction is checked for closing a cycle */
+    private boolean incremental = true;
+
+    /** Most users whose transfers an incremental check loads before giving up on deeper hops */
+    private int incrementalMaxUsers = 10_000;
+
+    /**
+     * Most recipients with an incremental check waiting; a new transaction to
+     * a waiting recipient joins its check, and beyond this new checks are dropped
+     */
+    private int incrementalQueueCapacity = 10_000;
+
+    /** How many incrementally detected cycles to keep for the query endpoint */
+    private int history = 1000;
+}
@@ -0,0 +1,23 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/** Tunables for client-generated entity ids, bound from {@code flagright.ids.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.ids")
+public class IdProperties {
+
+    /** Worker number embedded in generated ids, 0-1023 and distinct per instance; -1 leases a free one from Neo4j */
+    private int workerId = -1;
+
+    /** How long a leased worker number stays reserved without renewal */
+    private Duration leaseDuration = Duration.ofMinutes(2);
+
+    /** Nodes given an id per transaction when migrating data stored before ids were introduced */
+    private int migrationChunkSize = 10000;
+}
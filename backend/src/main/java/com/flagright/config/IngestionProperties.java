@@ -0,0 +1,53 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/** Tunables for transaction ingestion, bound from {@code flagright.ingestion.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.ingestion")
+public class IngestionProperties {
+
+    private GroupCommit groupCommit = new GroupCommit();
+
+    private Journal journal = new Journal();
+
+    @Data
+    public static class GroupCommit {
+        /** Queue concurrent creates and commit them together instead of one Neo4j transaction each */
+        private boolean enabled = false;
+
+        /** Most creates committed in one Neo4j transaction */
+        private int maxBatchSize = 200;
+
+        /** Longest the oldest queued create waits for others to join its batch */
+        private Duration maxWait = Duration.ofMillis(5);
+
+        /** Creates that may wait for a batch before new ones are rejected */
+        private int queueCapacity = 10_000;
+    }
+
+    @Data
+    public static class Journal {
+        /** Accept creates into a local journal and apply them to Neo4j in the background */
+        private boolean enabled = false;
+
+        /** Directory holding the journal segments and replay checkpoint */
+        private String directory = "data/journal";
+
+        /** Size of each memory-mapped segment file */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /** Most journal entries applied between checkpoints */
+        private int replayBatchSize = 100;
+
+        /** Longest pause between attempts while Neo4j keeps failing */
+        private Duration maxRetryBackoff = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,27 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/** Tunables for server-side graph layout, bound from {@code flagright.layout.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.layout")
+public class LayoutProperties {
+
+    /** Iterations for a layout computed from scratch */
+    private int iterations = 300;
+
+    /** Iterations when warm-starting from a previous layout */
+    private int warmIterations = 60;
+
+    /** Preferred distance between connected nodes */
+    private double idealEdgeLength = 100;
+
+    /** Barnes-Hut opening angle */
+    private double theta = 0.9;
+
+    /** Pull toward the centre that keeps disconnected components close */
+    private double gravity = 0.01;
+}
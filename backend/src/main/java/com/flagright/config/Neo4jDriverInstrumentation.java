@@ -0,0 +1,46 @@
+package com.flagright.config;
+
+import com.flagright.service.QueryAccounting;
+import com.flagright.util.InstrumentedDriver;
+
+import org.neo4j.driver.Driver;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Wraps the Neo4j driver bean so SDN repositories, the Neo4jClient and the
+ * transaction manager all run their queries through {@link InstrumentedDriver}.
+ * The accounting bean is looked up on first use, since post-processors are
+ * created before ordinary beans.
+ */
+@Component
+public class Neo4jDriverInstrumentation implements BeanPostProcessor {
+
+    private final ObjectProvider<QueryAccounting> queryAccounting;
+
+    public Neo4jDriverInstrumentation(ObjectProvider<QueryAccounting> queryAccounting) {
+        this.queryAccounting = queryAccounting;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof Driver driver)) {
+            return bean;
+        }
+        return InstrumentedDriver.wrap(driver, new InstrumentedDriver.QueryListener() {
+            @Override
+            public Object begin() {
+                return queryAccounting.getObject().begin();
+            }
+
+            @Override
+            public void completed(Object context, String cypher, Map<String, Object> parameters,
+                                  long rows, long nanos) {
+                queryAccounting.getObject().completed(context, cypher, parameters, rows, nanos);
+            }
+        });
+    }
+}
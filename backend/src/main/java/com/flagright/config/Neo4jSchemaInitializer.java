@@ -0,0 +1,122 @@
+package com.flagright.config;
+
+import com.flagright.service.EntityIds;
+import com.flagright.service.TransactionService;
+import com.flagright.service.UserService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/** Creates the detection, search and summary indexes and uniqueness constraints, and backfills fingerprints and uids on existing data */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class Neo4jSchemaInitializer implements ApplicationRunner {
+
+    private static final List<String> INDEXES = List.of(
+        "CREATE INDEX user_email_fp IF NOT EXISTS FOR (u:User) ON (u.emailFingerprint)",
+        "CREATE INDEX user_phone_fp IF NOT EXISTS FOR (u:User) ON (u.phoneFingerprint)",
+        "CREATE INDEX user_address_fp IF NOT EXISTS FOR (u:User) ON (u.addressFingerprint)",
+        "CREATE INDEX tx_ip_fp IF NOT EXISTS FOR (t:Transaction) ON (t.ipFingerprint)",
+        "CREATE INDEX tx_device_fp IF NOT EXISTS FOR (t:Transaction) ON (t.deviceFingerprint)",
+        "CREATE INDEX tx_payment_fp IF NOT EXISTS FOR (t:Transaction) ON (t.paymentMethodFingerprint)",
+        "CREATE INDEX tx_ip_bucket IF NOT EXISTS FOR (t:Transaction) ON (t.ipFingerprint, t.createdAtBucket)",
+        "CREATE INDEX tx_device_bucket IF NOT EXISTS FOR (t:Transaction) ON (t.deviceFingerprint, t.createdAtBucket)",
+        "CREATE INDEX tx_payment_bucket IF NOT EXISTS FOR (t:Transaction) ON (t.paymentMethodFingerprint, t.createdAtBucket)",
+        "CREATE INDEX user_conn_pair IF NOT EXISTS FOR (c:UserConnection) ON (c.userId1, c.userId2)",
+        "CREATE INDEX tx_conn_pair IF NOT EXISTS FOR (c:TransactionConnection) ON (c.transactionId1, c.transactionId2)",
+        "CREATE INDEX tx_created_at IF NOT EXISTS FOR (t:Transaction) ON (t.createdAt)",
+        "CREATE INDEX user_conn_user2 IF NOT EXISTS FOR (c:UserConnection) ON (c.userId2)",
+        "CREATE CONSTRAINT user_summary_user IF NOT EXISTS FOR (s:UserSummary) REQUIRE s.userId IS UNIQUE",
+        "CREATE CONSTRAINT user_currency_total IF NOT EXISTS FOR (c:UserCurrencyTotal) REQUIRE (c.userId, c.currency) IS UNIQUE",
+        "CREATE FULLTEXT INDEX user_search IF NOT EXISTS FOR (u:User) " +
+            "ON EACH [u.firstName, u.lastName, u.email, u.phone, u.address]"
+    );
+
+    /**
+     * Uniqueness constraints that back idempotent writes across instances.
+     * Existing duplicates make a constraint fail to create; the write then
+     * stays guarded only by this instance's locks, and an index is created
+     * in its place so lookups stay fast.
+     */
+    private static final List<Uniqueness> UNIQUENESS = List.of(
+        new Uniqueness("user_email_unique", "(u:User) REQUIRE u.email IS UNIQUE", null, null),
+        new Uniqueness("user_ingestion_key_unique", "(u:User) REQUIRE u.ingestionKey IS UNIQUE",
+            "user_ingestion_key", "CREATE INDEX user_ingestion_key IF NOT EXISTS FOR (u:User) ON (u.ingestionKey)"),
+        new Uniqueness("tx_ingestion_key_unique", "(t:Transaction) REQUIRE t.ingestionKey IS UNIQUE",
+            "tx_ingestion_key", "CREATE INDEX tx_ingestion_key IF NOT EXISTS FOR (t:Transaction) ON (t.ingestionKey)"),
+        new Uniqueness("user_conn_unique",
+            "(c:UserConnection) REQUIRE (c.userId1, c.userId2, c.relationshipType) IS UNIQUE", null, null),
+        new Uniqueness("tx_conn_unique",
+            "(c:TransactionConnection) REQUIRE (c.transactionId1, c.transactionId2, c.relationshipType) IS UNIQUE",
+            null, null),
+        new Uniqueness("user_uid_unique", "(u:User) REQUIRE u.uid IS UNIQUE", null,
+            "CREATE INDEX user_uid IF NOT EXISTS FOR (u:User) ON (u.uid)"),
+        new Uniqueness("tx_uid_unique", "(t:Transaction) REQUIRE t.uid IS UNIQUE", null,
+            "CREATE INDEX tx_uid IF NOT EXISTS FOR (t:Transaction) ON (t.uid)"),
+        new Uniqueness("user_conn_uid_unique", "(c:UserConnection) REQUIRE c.uid IS UNIQUE", null, null),
+        new Uniqueness("tx_conn_uid_unique", "(c:TransactionConnection) REQUIRE c.uid IS UNIQUE", null, null),
+        new Uniqueness("ingestion_rejection_key_unique",
+            "(r:IngestionRejection) REQUIRE r.ingestionKey IS UNIQUE", null, null),
+        new Uniqueness("id_worker_lease_unique", "(w:IdWorkerLease) REQUIRE w.worker IS UNIQUE", null, null),
+        new Uniqueness("id_worker_lock_unique", "(l:IdWorkerLock) REQUIRE l.name IS UNIQUE", null, null),
+        new Uniqueness("detection_job_lock_unique", "(l:DetectionJobLock) REQUIRE l.name IS UNIQUE", null, null),
+        new Uniqueness("change_version_key_unique", "(v:ChangeVersion) REQUIRE v.key IS UNIQUE", null,
+            "CREATE INDEX change_version_key IF NOT EXISTS FOR (v:ChangeVersion) ON (v.key)")
+    );
+
+    /** A constraint, the plain index it replaces if any, and the index to fall back to if it cannot be created */
+    private record Uniqueness(String name, String schema, String replacedIndex, String fallbackIndex) {
+    }
+
+    private final Neo4jClient neo4jClient;
+    private final UserService userService;
+    private final TransactionService transactionService;
+    private final EntityIds entityIds;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            for (String index : INDEXES) {
+                neo4jClient.query(index).run();
+            }
+            log.info("Ensured {} Neo4j indexes", INDEXES.size());
+            ensureUniqueness();
+
+            int users = userService.backfillFingerprints();
+            int transactions = transactionService.backfillFingerprints();
+            if (users > 0 || transactions > 0) {
+                log.info("Backfilled fingerprints for {} users and {} transactions", users, transactions);
+            }
+            for (String label : EntityIds.LABELS) {
+                entityIds.backfill(label);
+            }
+        } catch (Exception e) {
+            log.warn("Neo4j schema initialization failed, detection will fall back to label scans", e);
+        }
+    }
+
+    private void ensureUniqueness() {
+        for (Uniqueness uniqueness : UNIQUENESS) {
+            try {
+                // A constraint cannot be created over a plain index on the same properties.
+                if (uniqueness.replacedIndex() != null) {
+                    neo4jClient.query("DROP INDEX " + uniqueness.replacedIndex() + " IF EXISTS").run();
+                }
+                neo4jClient.query("CREATE CONSTRAINT " + uniqueness.name() + " IF NOT EXISTS FOR " +
+                    uniqueness.schema()).run();
+            } catch (Exception e) {
+                log.warn("Could not create constraint {}, existing duplicates must be removed before it can be; " +
+                    "concurrent instances may write duplicates until then", uniqueness.name(), e);
+                if (uniqueness.fallbackIndex() != null) {
+                    neo4jClient.query(uniqueness.fallbackIndex()).run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.flagright.config;
+
+import com.flagright.service.QueryAccounting;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Opens a query ledger for each API request and closes it when the request
+ * ends. With response headers enabled, the summary is added just before the
+ * body starts, when every query the controller ran has been counted.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class QueryAccountingFilter extends OncePerRequestFilter {
+
+    private final QueryAccounting queryAccounting;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !queryAccounting.isEnabled() || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        QueryAccounting.Ledger ledger = queryAccounting.open(request.getMethod() + " " + request.getRequestURI());
+        SummaryHeaders summaryResponse = queryAccounting.isResponseHeaders() ? new SummaryHeaders(response, ledger) : null;
+        try {
+            chain.doFilter(request, summaryResponse != null ? summaryResponse : response);
+        } finally {
+            if (summaryResponse != null) {
+                summaryResponse.addSummary();
+            }
+            Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            queryAccounting.close(ledger, request.getMethod(), route == null ? "unmatched" : route.toString());
+        }
+    }
+
+    /** Adds the summary headers once, before the response is committed */
+    private final class SummaryHeaders extends HttpServletResponseWrapper {
+        private final QueryAccounting.Ledger ledger;
+        private boolean added;
+
+        private SummaryHeaders(HttpServletResponse response, QueryAccounting.Ledger ledger) {
+            super(response);
+            this.ledger = ledger;
+        }
+
+        private void addSummary() {
+            if (!added && !isCommitted()) {
+                added = true;
+                queryAccounting.headers(ledger).forEach(this::setHeader);
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addSummary();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addSummary();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addSummary();
+            super.flushBuffer();
+        }
+    }
+}
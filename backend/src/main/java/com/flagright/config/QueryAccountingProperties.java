@@ -0,0 +1,29 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/** Tunables for per-request Neo4j query accounting, bound from {@code flagright.query-accounting.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.query-accounting")
+public class QueryAccountingProperties {
+
+    /** Count queries, rows and database time per request and log slow queries */
+    private boolean enabled = true;
+
+    /** Queries taking at least this long are logged with their sanitised Cypher and parameters */
+    private Duration slowQueryThreshold = Duration.ofMillis(200);
+
+    /** Runs of one query shape within a request from which it is reported as a probable N+1 */
+    private int repeatThreshold = 10;
+
+    /** Add the request's query summary to response headers; meant for development, it exposes query counts */
+    private boolean responseHeaders = false;
+
+    /** Longest Cypher text written to the log */
+    private int maxLoggedQueryLength = 500;
+}
@@ -0,0 +1,24 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/** Tunables for hub and risk rankings, bound from {@code flagright.rankings.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.rankings")
+public class RankingProperties {
+
+    /** Largest number of entries one ranking request may ask for */
+    private int maxLimit = 1000;
+
+    /** Weight of log(1 + degree) in the risk score */
+    private double degreeWeight = 1.0;
+
+    /** Weight of log(1 + cluster size) in the risk score */
+    private double clusterWeight = 0.5;
+
+    /** Weight of log(1 + transactions in the velocity window) in the risk score */
+    private double velocityWeight = 1.0;
+}
@@ -0,0 +1,39 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Tunables for expensive read endpoints, bound from {@code flagright.reads.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.reads")
+public class ReadProperties {
+
+    /** Share one computation between identical requests that arrive while it is running */
+    private boolean coalesce = true;
+
+    /** Bulkhead for endpoints not listed under {@code endpoints} */
+    private Bulkhead defaults = new Bulkhead();
+
+    /** Bulkheads by endpoint name, e.g. user-connections */
+    private Map<String, Bulkhead> endpoints = new HashMap<>();
+
+    @Data
+    public static class Bulkhead {
+        /** Computations of the endpoint that may run at once */
+        private int maxConcurrent = 16;
+
+        /** Longest a request waits for a free slot before it is rejected with 503 */
+        private Duration maxWait = Duration.ofSeconds(1);
+    }
+
+    /** The bulkhead for an endpoint */
+    public Bulkhead bulkheadFor(String endpoint) {
+        return endpoints.getOrDefault(endpoint, defaults);
+    }
+}
@@ -0,0 +1,27 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/** Tunables for level-of-detail graph summaries, bound from {@code flagright.summary.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.summary")
+public class SummaryProperties {
+
+    /** Most super-nodes returned at any level */
+    private int maxSuperNodes = 150;
+
+    /** Most super-edges returned at any level, heaviest first */
+    private int maxSuperEdges = 600;
+
+    /** Largest scope that is expanded into individual nodes */
+    private int maxLeafNodes = 300;
+
+    /** Upper bound on label propagation passes when clustering */
+    private int propagationIterations = 20;
+
+    /** Fraction of nodes changed incrementally after which the graph is reclustered */
+    private double rebuildFraction = 0.2;
+}
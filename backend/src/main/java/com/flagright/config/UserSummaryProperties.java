@@ -0,0 +1,18 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/** Tunables for per-user summary counters, bound from {@code flagright.user-summary.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.user-summary")
+public class UserSummaryProperties {
+
+    /** Whether the scheduled reconciliation runs; the manual endpoint works either way */
+    private boolean reconcileEnabled = true;
+
+    /** Users recomputed and compared per reconciliation transaction */
+    private int reconcileChunkSize = 500;
+}
@@ -0,0 +1,50 @@
+package com.flagright.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Tunables for real-time velocity checks, bound from {@code flagright.velocity.*} */
+@Data
+@Component
+@ConfigurationProperties(prefix = "flagright.velocity")
+public class VelocityProperties {
+
+    /** Length of the sliding window counters cover */
+    private Duration window = Duration.ofMinutes(5);
+
+    /** Number of ring-buffer slots per counter; more slots give a smoother window */
+    private int slots = 30;
+
+    /** How many recent breaches to keep for the query endpoint */
+    private int breachHistory = 1000;
+
+    /** Limits per dimension (DEVICE, IP, PAYMENT_METHOD, SENDER, RECIPIENT) */
+    private Map<String, Threshold> thresholds = new HashMap<>();
+
+    @Data
+    public static class Threshold {
+        /** Maximum transactions within the window; null disables the count check */
+        private Long maxCount;
+
+        /**
+         * Maximum summed amount within the window, in major units of each
+         * currency, checked per currency; null disables the amount check
+         */
+        private BigDecimal maxAmount;
+
+        /** Per-currency limits by currency code, overriding maxAmount for the currencies listed */
+        private Map<String, BigDecimal> maxAmountByCurrency = new HashMap<>();
+
+        /** Returns the amount limit for a currency, or null when amounts are not checked */
+        public BigDecimal maxAmountFor(String currency) {
+            BigDecimal limit = currency == null ? null : maxAmountByCurrency.get(currency);
+            return limit != null ? limit : maxAmount;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.flagright.controller;
+
+import com.flagright.model.dto.DerivedLink;
+import com.flagright.model.dto.DerivedLinkRun;
+import com.flagright.service.DerivedLinkService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/derived-links")
+@RequiredArgsConstructor
+@Slf4j
+public class DerivedLinkController {
+
+    private final DerivedLinkService derivedLinkService;
+
+    /** Derives SHARES_DEVICE/SHARES_IP user links now and reports what each pass wrote */
+    @PostMapping("/run")
+    public ResponseEntity<List<DerivedLinkRun>> run() {
+        log.info("Manually triggering user link derivation");
+        return ResponseEntity.ok(derivedLinkService.run());
+    }
+
+    /** Gets a user's derived links, strongest first */
+    @GetMapping("/users/{id}")
+    public ResponseEntity<List<DerivedLink>> getUserLinks(@PathVariable Long id) {
+        log.info("Fetching derived links for user ID: {}", id);
+        return ResponseEntity.ok(derivedLinkService.getLinks(id));
+    }
+}
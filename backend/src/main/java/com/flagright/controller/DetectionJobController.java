@@ -0,0 +1,51 @@
+package com.flagright.controller;
+
+import com.flagright.model.dto.DetectionJobProgress;
+import com.flagright.service.DetectionJobService;
+import com.flagright.service.ReadConcurrency;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+
+@RestController
+@RequestMapping("/api/detection/jobs")
+@RequiredArgsConstructor
+@Slf4j
+public class DetectionJobController {
+
+    private final DetectionJobService detectionJobService;
+    private final ReadConcurrency readConcurrency;
+
+    /** Starts a background relationship detection run, resuming an interrupted or failed one unless resume=false */
+    @PostMapping
+    public ResponseEntity<DetectionJobProgress> startJob(@RequestParam(defaultValue = "true") boolean resume) {
+        log.info("Starting relationship detection job (resume={})", resume);
+        DetectionJobProgress progress = readConcurrency.limited("detection", () -> detectionJobService.start(resume));
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+            .location(URI.create("/api/detection/jobs/" + progress.getId()))
+            .body(progress);
+    }
+
+    /** Gets progress of the most recent run */
+    @GetMapping("/latest")
+    public ResponseEntity<DetectionJobProgress> getLatestJob() {
+        return ResponseEntity.ok(detectionJobService.getLatestProgress());
+    }
+
+    /** Gets progress and ETA of a run */
+    @GetMapping("/{id}")
+    public ResponseEntity<DetectionJobProgress> getJob(@PathVariable Long id) {
+        return ResponseEntity.ok(detectionJobService.getProgress(id));
+    }
+
+    /** Cancels a run after its current chunk */
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<DetectionJobProgress> cancelJob(@PathVariable Long id) {
+        log.info("Cancelling relationship detection job {}", id);
+        return ResponseEntity.ok(detectionJobService.cancel(id));
+    }
+}
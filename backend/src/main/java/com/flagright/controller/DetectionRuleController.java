@@ -0,0 +1,41 @@
+package com.flagright.controller;
+
+import com.flagright.model.dto.DetectionRuleDefinition;
+import com.flagright.service.DetectionRuleService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/rules")
+@RequiredArgsConstructor
+@Slf4j
+public class DetectionRuleController {
+
+    private final DetectionRuleService detectionRuleService;
+
+    /** Gets the declarative detection rules in force */
+    @GetMapping
+    public ResponseEntity<List<DetectionRuleDefinition>> getRules() {
+        log.info("Fetching detection rules");
+        return ResponseEntity.ok(detectionRuleService.getRules());
+    }
+
+    /** Re-reads the rules file now; an invalid file is rejected and the previous rules stay in force */
+    @PostMapping("/reload")
+    public ResponseEntity<List<DetectionRuleDefinition>> reloadRules() {
+        log.info("Manually reloading detection rules");
+        return ResponseEntity.ok(detectionRuleService.reload());
+    }
+
+    /** Runs every rule over all existing users and transactions and returns the pairs linked per rule */
+    @PostMapping("/run")
+    public ResponseEntity<Map<String, Long>> runRules() {
+        log.info("Manually running detection rules over all entities");
+        return ResponseEntity.ok(detectionRuleService.linkAll());
+    }
+}
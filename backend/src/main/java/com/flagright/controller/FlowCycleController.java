@@ -0,0 +1,38 @@
+package com.flagright.controller;
+
+import com.flagright.model.dto.FlowCycle;
+import com.flagright.service.FlowCycleService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/cycles")
+@RequiredArgsConstructor
+@Slf4j
+public class FlowCycleController {
+
+    private final FlowCycleService flowCycleService;
+
+    /** Scans transfers created in the range, or all transfers, for money-flow cycles, most recently closed first */
+    @GetMapping
+    public ResponseEntity<List<FlowCycle>> scan(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "100") int limit) {
+        log.info("Scanning for flow cycles between {} and {}", from, to);
+        return ResponseEntity.ok(flowCycleService.scan(from, to, limit));
+    }
+
+    /** Gets cycles recently closed by new transactions, newest first */
+    @GetMapping("/recent")
+    public ResponseEntity<List<FlowCycle>> getRecentCycles(@RequestParam(defaultValue = "100") int limit) {
+        log.info("Fetching recently detected flow cycles");
+        return ResponseEntity.ok(flowCycleService.getRecentCycles(Math.max(1, limit)));
+    }
+}
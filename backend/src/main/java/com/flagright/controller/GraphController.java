@@ -0,0 +1,73 @@
+package com.flagright.controller;
+
+import com.flagright.model.dto.GraphLayout;
+import com.flagright.model.dto.GraphSummary;
+import com.flagright.service.GraphExportService;
+import com.flagright.service.GraphLayoutService;
+import com.flagright.service.GraphSummaryService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+
+@RestController
+@RequestMapping("/api/graph")
+@RequiredArgsConstructor
+@Slf4j
+public class GraphController {
+
+    private final GraphExportService graphExportService;
+    private final GraphLayoutService graphLayoutService;
+    private final GraphSummaryService graphSummaryService;
+
+    /** Gets the graph view with precomputed node positions attached */
+    @GetMapping("/layout")
+    public ResponseEntity<GraphLayout> getLayout(@RequestParam(defaultValue = "all") String view) {
+        log.info("Fetching graph layout for view: {}", view);
+        GraphLayout layout = graphLayoutService.getLayout(view);
+        return ResponseEntity.ok(layout);
+    }
+
+    /** Gets the top-level summary of the graph as clusters and size buckets */
+    @GetMapping("/summary")
+    public ResponseEntity<GraphSummary> getSummary() {
+        log.info("Fetching top-level graph summary");
+        return ResponseEntity.ok(graphSummaryService.getSummary(GraphSummaryService.ROOT));
+    }
+
+    /** Drills into one super-node of a summary, such as cluster:12 or sizes:3 */
+    @GetMapping("/summary/{superNodeId}")
+    public ResponseEntity<GraphSummary> getSummary(@PathVariable String superNodeId) {
+        log.info("Fetching graph summary for super-node: {}", superNodeId);
+        return ResponseEntity.ok(graphSummaryService.getSummary(superNodeId));
+    }
+
+    /** Streams the whole graph, or changes since a timestamp, as NDJSON or a binary edge list */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportGraph(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since) {
+        log.info("Exporting graph as {} (gzip={}, since={})", format, gzip, since);
+        GraphExportService.Format exportFormat = GraphExportService.parseFormat(format);
+
+        String extension = exportFormat == GraphExportService.Format.NDJSON ? "ndjson" : "bin";
+        MediaType mediaType = exportFormat == GraphExportService.Format.NDJSON
+            ? MediaType.parseMediaType("application/x-ndjson")
+            : MediaType.APPLICATION_OCTET_STREAM;
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(mediaType)
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=graph." + extension);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(out -> graphExportService.export(exportFormat, gzip, since, out));
+    }
+}
@@ -0,0 +1,24 @@
+package com.flagright.controller;
+
+import com.flagright.model.dto.IngestionStatus;
+import com.flagright.service.IngestionJournalService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/ingestion")
+@RequiredArgsConstructor
+@Slf4j
+public class IngestionController {
+
+    private final IngestionJournalService ingestionJournalService;
+
+    /** Gets whether a journaled create has been applied, is still pending, or was rejected and why */
+    @GetMapping("/{ingestionKey}")
+    public ResponseEntity<IngestionStatus> getStatus(@PathVariable String ingestionKey) {
+        log.info("Fetching ingestion status for {}", ingestionKey);
+        return ResponseEntity.ok(ingestionJournalService.getStatus(ingestionKey));
+    }
+}
@@ -0,0 +1,35 @@
+package com.flagright.controller;
+
+import com.flagright.model.dto.RankingEntry;
+import com.flagright.service.RankingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/rankings")
+@RequiredArgsConstructor
+@Slf4j
+public class RankingController {
+
+    private final RankingService rankingService;
+
+    /**
+     * Gets the top users, devices, IPs or payment methods by connection count
+     * (by=degree), by connections gained today (by=jump) or by risk score
+     * (by=risk). For users, type restricts the count to one SHARES_* type.
+     */
+    @GetMapping
+    public ResponseEntity<List<RankingEntry>> getRanking(
+            @RequestParam(defaultValue = "user") String entity,
+            @RequestParam(defaultValue = "degree") String by,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "100") int limit) {
+        log.debug("Ranking {} by {}", entity, by);
+        return ResponseEntity.ok(rankingService.rank(RankingService.parseEntity(entity),
+            RankingService.parseMetric(by), type, limit));
+    }
+}
@@ -4,16 +4,31 @@ package com.flagright.controller;
 import com.flagright.model.entity.Transaction;
 import com.flagright.model.dto.CreateTransactionRequest;
 import com.flagright.model.dto.TransactionConnectionDto;
+import com.flagright.model.dto.TransactionStats;
+import com.flagright.service.IngestionJournalService;
+import com.flagright.service.NormalizedResponseWriter;
+import com.flagright.service.ReadConcurrency;
+import com.flagright.service.TransactionGroupCommitter;
 import com.flagright.service.TransactionService;
+import com.flagright.service.TransactionStatsService;
+import com.flagright.service.VersionTracker;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/transactions")
@@ -22,11 +37,24 @@ import java.util.List;
 public class TransactionController {
 
     private final TransactionService transactionService;
+    private final TransactionGroupCommitter transactionGroupCommitter;
+    private final IngestionJournalService ingestionJournalService;
+    private final TransactionStatsService transactionStatsService;
+    private final VersionTracker versionTracker;
+    private final NormalizedResponseWriter normalizedResponseWriter;
+    private final ReadConcurrency readConcurrency;
 
-    /** Creates a new transaction */
+    /**
+     * Creates a new transaction, answering once it has committed, or accepts
+     * it into the ingestion journal with 202 when journaling is enabled
+     */
     @PostMapping
-    public ResponseEntity<Transaction> createTransaction(@Valid @RequestBody CreateTransactionRequest request) {
+    public CompletableFuture<ResponseEntity<?>> createTransaction(@Valid @RequestBody CreateTransactionRequest request) {
         log.info("Creating transaction from user {} to user {}", request.getSenderId(), request.getRecipientId());
+        if (ingestionJournalService.isEnabled()) {
+            return CompletableFuture.completedFuture(
+                ResponseEntity.status(HttpStatus.ACCEPTED).body(ingestionJournalService.submitTransaction(request)));
+        }
         
         Transaction transaction = new Transaction();
         transaction.setAmount(request.getAmount());
@@ -36,18 +64,65 @@ public class TransactionController {
         transaction.setDeviceId(request.getDeviceId());
         transaction.setPaymentMethod(request.getPaymentMethod());
         
-        Transaction createdTransaction = transactionService.createTransaction(
-            transaction, request.getSenderId(), request.getRecipientId()
-        );
-        return ResponseEntity.status(HttpStatus.CREATED).body(createdTransaction);
+        return transactionGroupCommitter.create(transaction, request.getSenderId(), request.getRecipientId())
+            .<ResponseEntity<?>>thenApply(createdTransaction -> ResponseEntity.status(HttpStatus.CREATED).body(createdTransaction));
     }
 
-    /** Gets all transactions */
+    /** Gets all transactions, or 304 when the caller's copy is current */
     @GetMapping
-    public ResponseEntity<List<Transaction>> getAllTransactions() {
+    public ResponseEntity<List<Transaction>> getAllTransactions(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = versionTracker.transactionsTag();
+        if (VersionTracker.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
         log.info("Fetching all transactions");
-        List<Transaction> transactions = transactionService.getAllTransactions();
-        return ResponseEntity.ok(transactions);
+        List<Transaction> transactions =
+            readConcurrency.coalesced("transactions", etag, transactionService::getAllTransactions);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(transactions);
+    }
+
+    /** Gets all transactions with users in a shared table referenced by id, optionally limited to selected fields */
+    @GetMapping(params = "view=normalized")
+    public ResponseEntity<StreamingResponseBody> getAllTransactionsNormalized(
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String userFields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = versionTracker.transactionsTag();
+        if (VersionTracker.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
+        log.info("Fetching all transactions (normalized)");
+        NormalizedResponseWriter.Payload payload =
+            normalizedResponseWriter.transactions(
+                readConcurrency.coalesced("transactions", etag, transactionService::getAllTransactions), fields, userFields);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(payload::writeTo);
+    }
+
+    /** Gets a page of transactions in creation order, after the uid of the last one of the previous page (0 for the first) */
+    @GetMapping(params = "after")
+    public ResponseEntity<List<Transaction>> getTransactionsAfter(
+            @RequestParam long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        log.info("Fetching transactions after uid {}", after);
+        return ResponseEntity.ok(transactionService.getTransactionsAfter(after, limit));
+    }
+
+    /** Gets aggregate transaction statistics, optionally grouped by hour, day, currency, status or paymentMethod */
+    @GetMapping("/stats")
+    public ResponseEntity<TransactionStats> getTransactionStats(
+            @RequestParam(required = false) String groupBy,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) String status) {
+        log.info("Fetching transaction stats grouped by {}", groupBy);
+        TransactionStats stats = readConcurrency.coalesced("stats",
+            Arrays.asList(groupBy, from, to, currency, status, versionTracker.transactionsTag()),
+            () -> transactionStatsService.getStats(groupBy, from, to, currency, status));
+        return ResponseEntity.ok(stats);
     }
 
     /** Gets transaction by ID */
@@ -70,10 +145,22 @@ public class TransactionController {
     @GetMapping("/{id}/connections")
     public ResponseEntity<List<TransactionConnectionDto>> getTransactionConnections(@PathVariable Long id) {
         log.info("Fetching connections for transaction ID: {}", id);
-        List<TransactionConnectionDto> connections = transactionService.getTransactionConnectionsGrouped(id);
+        List<TransactionConnectionDto> connections = groupedConnections(id);
         return ResponseEntity.ok(connections);
     }
 
+    /** Gets transaction connections with transactions and users in shared tables referenced by id */
+    @GetMapping(value = "/{id}/connections", params = "view=normalized")
+    public ResponseEntity<StreamingResponseBody> getTransactionConnectionsNormalized(
+            @PathVariable Long id,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String userFields) {
+        log.info("Fetching connections for transaction ID: {} (normalized)", id);
+        NormalizedResponseWriter.Payload payload =
+            normalizedResponseWriter.transactionConnections(groupedConnections(id), fields, userFields);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(payload::writeTo);
+    }
+
     /** Gets user transactions by type */
     @GetMapping("/user/{userId}")
     public ResponseEntity<List<Transaction>> getTransactionsByUser(@PathVariable Long userId, @RequestParam String type) {
@@ -97,4 +184,10 @@ public class TransactionController {
         List<Transaction> transactions = transactionService.getHighValueTransactions(threshold);
         return ResponseEntity.ok(transactions);
     }
-} 
\ No newline at end of file
+
+    /** Keyed on the transaction list's version, which moves whenever a new transaction can bring new connections */
+    private List<TransactionConnectionDto> groupedConnections(Long id) {
+        return readConcurrency.coalesced("transaction-connections", List.of(id, versionTracker.transactionsTag()),
+            () -> transactionService.getTransactionConnectionsGrouped(id));
+    }
+}
@@ -3,18 +3,32 @@ package com.flagright.controller;
 
 import com.flagright.model.entity.User;
 import com.flagright.model.dto.CreateUserRequest;
+import com.flagright.model.dto.DetectionJobProgress;
+import com.flagright.model.dto.UserActivitySummary;
 import com.flagright.model.dto.UserConnectionDto;
+import com.flagright.service.NormalizedResponseWriter;
+import com.flagright.service.ReadConcurrency;
 import com.flagright.service.UserService;
-import com.flagright.service.RelationshipDetectionService;
+import com.flagright.service.DetectionJobService;
+import com.flagright.service.IngestionJournalService;
+import com.flagright.service.UserSummaryService;
+import com.flagright.service.VersionTracker;
+import com.flagright.service.WriteConcurrency;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
+import java.net.URI;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/users")
@@ -23,12 +37,21 @@ import java.util.List;
 public class UserController {
 
     private final UserService userService;
-    private final RelationshipDetectionService relationshipDetectionService;
+    private final DetectionJobService detectionJobService;
+    private final IngestionJournalService ingestionJournalService;
+    private final VersionTracker versionTracker;
+    private final NormalizedResponseWriter normalizedResponseWriter;
+    private final UserSummaryService userSummaryService;
+    private final WriteConcurrency writeConcurrency;
+    private final ReadConcurrency readConcurrency;
 
-    /** Creates a new user */
+    /** Creates a new user, or accepts it into the ingestion journal with 202 when journaling is enabled */
     @PostMapping
-    public ResponseEntity<User> createUser(@Valid @RequestBody CreateUserRequest request) {
+    public ResponseEntity<?> createUser(@Valid @RequestBody CreateUserRequest request) {
         log.info("Creating user with email: {}", request.getEmail());
+        if (ingestionJournalService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(ingestionJournalService.submitUser(request));
+        }
         
         User user = new User();
         user.setEmail(request.getEmail());
@@ -38,16 +61,34 @@ public class UserController {
         user.setAddress(request.getAddress());
         user.setDateOfBirth(request.getDateOfBirth());
         
-        User createdUser = userService.createUser(user);
+        User createdUser = writeConcurrency.retrying("Create user", () -> {
+            // A rolled-back attempt may have assigned an id that no longer exists.
+            user.setId(null);
+            return userService.createUser(user);
+        });
         return ResponseEntity.status(HttpStatus.CREATED).body(createdUser);
     }
 
-    /** Gets all users */
+    /** Gets all users, or 304 when the caller's copy is current */
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
+    public ResponseEntity<List<User>> getAllUsers(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = versionTracker.usersTag();
+        if (VersionTracker.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
         log.info("Fetching all users");
-        List<User> users = userService.getAllUsers();
-        return ResponseEntity.ok(users);
+        List<User> users = readConcurrency.coalesced("users", etag, userService::getAllUsers);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(users);
+    }
+
+    /** Gets a page of users in creation order, after the uid of the last user of the previous page (0 for the first) */
+    @GetMapping(params = "after")
+    public ResponseEntity<List<User>> getUsersAfter(
+            @RequestParam long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        log.info("Fetching users after uid {}", after);
+        return ResponseEntity.ok(userService.getUsersAfter(after, limit));
     }
 
     /** Gets user by ID */
@@ -58,6 +99,27 @@ public class UserController {
         return ResponseEntity.ok(user);
     }
 
+    /** Gets a user's pre-aggregated connection counts, transaction counts and totals per currency */
+    @GetMapping("/{id}/summary")
+    public ResponseEntity<UserActivitySummary> getUserSummary(@PathVariable Long id) {
+        log.info("Fetching summary for user ID: {}", id);
+        return ResponseEntity.ok(userSummaryService.getSummary(id));
+    }
+
+    /** Gets summaries for a page of users, e.g. ?ids=1,2,3; unknown ids are left out */
+    @GetMapping("/summaries")
+    public ResponseEntity<List<UserActivitySummary>> getUserSummaries(@RequestParam List<Long> ids) {
+        log.info("Fetching summaries for {} users", ids.size());
+        return ResponseEntity.ok(userSummaryService.getSummaries(ids));
+    }
+
+    /** Recomputes every user's summary from the graph and returns how many had drifted */
+    @PostMapping("/summaries/reconcile")
+    public ResponseEntity<Map<String, Integer>> reconcileUserSummaries() {
+        log.info("Manually triggering user summary reconciliation");
+        return ResponseEntity.ok(Map.of("repaired", userSummaryService.reconcile()));
+    }
+
     /** Updates user information */
     @PutMapping("/{id}")
     public ResponseEntity<User> updateUser(@PathVariable Long id, @RequestBody User userUpdates) {
@@ -68,27 +130,60 @@ public class UserController {
 
 
 
-    /** Gets user connections */
+    /** Gets user connections, or 304 when the caller's copy is current */
     @GetMapping("/{id}/connections")
-    public ResponseEntity<List<UserConnectionDto>> getUserConnections(@PathVariable Long id) {
+    public ResponseEntity<List<UserConnectionDto>> getUserConnections(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = versionTracker.userConnectionsTag(id);
+        if (VersionTracker.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
         log.info("Fetching connections for user ID: {}", id);
-        List<UserConnectionDto> connections = userService.getUserConnections(id);
-        return ResponseEntity.ok(connections);
+        List<UserConnectionDto> connections =
+            readConcurrency.coalesced("user-connections", List.of(id, etag), () -> userService.getUserConnections(id));
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(connections);
+    }
+
+    /** Gets user connections with connected users in a shared table referenced by id */
+    @GetMapping(value = "/{id}/connections", params = "view=normalized")
+    public ResponseEntity<StreamingResponseBody> getUserConnectionsNormalized(
+            @PathVariable Long id,
+            @RequestParam(required = false) String userFields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = versionTracker.userConnectionsTag(id);
+        if (VersionTracker.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
+        log.info("Fetching connections for user ID: {} (normalized)", id);
+        NormalizedResponseWriter.Payload payload =
+            normalizedResponseWriter.userConnections(readConcurrency.coalesced("user-connections", List.of(id, etag),
+                () -> userService.getUserConnections(id)), userFields);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(payload::writeTo);
     }
 
-    /** Searches users by name */
+    /** Searches users by name, email, phone or address */
     @GetMapping("/search")
-    public ResponseEntity<List<User>> searchUsers(@RequestParam String term) {
-        log.info("Searching users with term: {}", term);
-        List<User> users = userService.searchUsers(term);
+    public ResponseEntity<List<User>> searchUsers(
+            @RequestParam(required = false) String term,
+            @RequestParam(required = false) String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        String searchTerm = term != null ? term : q;
+        log.info("Searching users with term: {}", searchTerm);
+        List<User> users = readConcurrency.limited("search", () -> userService.searchUsers(searchTerm, page, size));
         return ResponseEntity.ok(users);
     }
 
-    /** Manually triggers relationship detection */
+    /** Manually triggers relationship detection as a background job; poll /api/detection/jobs/{id} for progress */
     @PostMapping("/detect-relationships")
-    public ResponseEntity<String> detectAllRelationships() {
+    public ResponseEntity<DetectionJobProgress> detectAllRelationships() {
         log.info("Manually triggering relationship detection");
-        relationshipDetectionService.detectAllRelationships();
-        return ResponseEntity.ok("Relationship detection completed successfully");
+        DetectionJobProgress progress = readConcurrency.limited("detection", () -> detectionJobService.start(true));
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+            .location(URI.create("/api/detection/jobs/" + progress.getId()))
+            .body(progress);
     }
 } 
\ No newline at end of file
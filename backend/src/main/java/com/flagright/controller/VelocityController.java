@@ -0,0 +1,39 @@
+package com.flagright.controller;
+
+import com.flagright.model.dto.VelocityBreach;
+import com.flagright.model.dto.VelocitySnapshot;
+import com.flagright.service.VelocityService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/velocity")
+@RequiredArgsConstructor
+@Slf4j
+public class VelocityController {
+
+    private final VelocityService velocityService;
+
+    /** Gets recent velocity breaches, newest first */
+    @GetMapping("/breaches")
+    public ResponseEntity<List<VelocityBreach>> getRecentBreaches(
+            @RequestParam(required = false) String dimension,
+            @RequestParam(defaultValue = "100") int limit) {
+        log.info("Fetching recent velocity breaches for dimension: {}", dimension);
+        VelocityService.Dimension parsed = dimension == null ? null : VelocityService.parseDimension(dimension);
+        return ResponseEntity.ok(velocityService.getRecentBreaches(parsed, Math.max(1, limit)));
+    }
+
+    /** Gets current window totals for a device, IP, payment method, sender or recipient, with the spend in one currency */
+    @GetMapping("/{dimension}")
+    public ResponseEntity<VelocitySnapshot> getSnapshot(@PathVariable String dimension, @RequestParam String value,
+                                                        @RequestParam(required = false) String currency) {
+        log.info("Fetching velocity for {} {}", dimension, value);
+        return ResponseEntity.ok(velocityService.getSnapshot(VelocityService.parseDimension(dimension), value,
+            currency));
+    }
+}
@@ -0,0 +1,16 @@
+package com.flagright.exception;
+
+/** Thrown when a detection run is requested while another one is still in progress */
+public class DetectionJobConflictException extends RuntimeException {
+
+    private final Long runningJobId;
+
+    public DetectionJobConflictException(Long runningJobId) {
+        super("Relationship detection job " + runningJobId + " is already running");
+        this.runningJobId = runningJobId;
+    }
+
+    public Long getRunningJobId() {
+        return runningJobId;
+    }
+}
@@ -0,0 +1,8 @@
+package com.flagright.exception;
+
+public class DetectionJobNotFoundException extends RuntimeException {
+
+    public DetectionJobNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package com.flagright.exception;
+
+/** Thrown when an endpoint's bulkhead stays full past its wait limit and a request cannot be accepted */
+public class EndpointSaturatedException extends RuntimeException {
+
+    public EndpointSaturatedException(String endpoint, int maxConcurrent) {
+        super("Too many concurrent " + endpoint + " requests (" + maxConcurrent + " running), retry shortly");
+    }
+}
@@ -1,6 +1,7 @@
 package com.flagright.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -26,6 +27,30 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
 
+    @ExceptionHandler(DetectionJobNotFoundException.class)
+    public ResponseEntity<String> handleDetectionJobNotFound(DetectionJobNotFoundException ex) {
+        log.error("Detection job not found: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(DetectionJobConflictException.class)
+    public ResponseEntity<String> handleDetectionJobConflict(DetectionJobConflictException ex) {
+        log.warn("Rejected detection run: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(IngestionOverloadedException.class)
+    public ResponseEntity<String> handleIngestionOverloaded(IngestionOverloadedException ex) {
+        log.warn("Rejected transaction create: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(ex.getMessage());
+    }
+
+    @ExceptionHandler(EndpointSaturatedException.class)
+    public ResponseEntity<String> handleEndpointSaturated(EndpointSaturatedException ex) {
+        log.warn("Rejected request: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(ex.getMessage());
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException ex) {
         log.error("Invalid argument: {}", ex.getMessage());
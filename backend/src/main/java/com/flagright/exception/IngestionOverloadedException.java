@@ -0,0 +1,9 @@
+package com.flagright.exception;
+
+/** Thrown when the group-commit queue is full and a create cannot be accepted */
+public class IngestionOverloadedException extends RuntimeException {
+
+    public IngestionOverloadedException(int queueCapacity) {
+        super("Transaction ingestion queue is full (" + queueCapacity + " pending), retry shortly");
+    }
+}
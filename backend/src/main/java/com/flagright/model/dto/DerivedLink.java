@@ -0,0 +1,17 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/** A derived link from one user to another and how strongly they share values */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DerivedLink {
+    private Long userId;
+    private Long otherUserId;
+    private String relationshipType;
+    private long shared;
+    private double jaccard;
+}
@@ -0,0 +1,18 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/** What one derivation pass found and wrote for one link type */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DerivedLinkRun {
+    private String relationshipType;
+    private int users;
+    private int values;
+    private long links;
+    private long removed;
+    private long durationMs;
+}
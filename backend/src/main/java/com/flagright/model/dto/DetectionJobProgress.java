@@ -0,0 +1,29 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetectionJobProgress {
+    private Long id;
+    private String status;
+    private String phase;
+    private long usersProcessed;
+    private long usersTotal;
+    private long transactionsProcessed;
+    private long transactionsTotal;
+    private double percentComplete;
+    /** Entities processed per second since this process picked the job up */
+    private double ratePerSecond;
+    /** Estimated seconds remaining, or null until a rate is known */
+    private Long etaSeconds;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
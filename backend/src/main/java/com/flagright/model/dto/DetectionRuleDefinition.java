@@ -0,0 +1,32 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A declarative detection rule as written in the rules file: entities of one
+ * kind whose normalised attributes are all equal are linked by a
+ * relationship named after the rule.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetectionRuleDefinition {
+    /** Relationship type the rule creates, e.g. SHARES_DOB_LAST_NAME */
+    private String name;
+    /** "user" or "transaction" */
+    private String entity;
+    /** Properties that must all match, e.g. [dateOfBirth, lastName] */
+    private List<String> attributes = new ArrayList<>();
+    /** Normaliser applied to each attribute before comparing */
+    private String normalizer = "lowercase";
+    /** Maximum time between linked entities' creation, e.g. 24h; unbounded when absent */
+    private String window;
+    /** Largest group of entities sharing a value that is still linked; larger groups are skipped as hubs */
+    private Integer cap;
+    private boolean enabled = true;
+}
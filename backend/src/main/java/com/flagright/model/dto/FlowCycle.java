@@ -0,0 +1,37 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/** Money that left a user and came back through other users, one hop per transaction */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlowCycle {
+    private List<Long> userIds;
+    private List<Hop> hops;
+    private int length;
+    private LocalDateTime startedAt;
+    private LocalDateTime closedAt;
+    private long durationSeconds;
+    private BigDecimal amountOut;
+    private BigDecimal amountBack;
+    private LocalDateTime detectedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Hop {
+        private Long transactionId;
+        private Long senderId;
+        private Long recipientId;
+        private BigDecimal amount;
+        private String currency;
+        private LocalDateTime createdAt;
+    }
+}
@@ -0,0 +1,44 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/** The graph of one view with every node positioned, ready to render */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GraphLayout {
+    private String view;
+    private int nodeCount;
+    private int edgeCount;
+    private boolean warmStarted;
+    private LocalDateTime computedAt;
+    /** True when the graph has changed since this layout and a new one is being computed */
+    private boolean stale;
+    private List<Node> nodes;
+    private List<Edge> edges;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Node {
+        private String id;
+        private String type;
+        private String label;
+        private double x;
+        private double y;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Edge {
+        private String source;
+        private String target;
+        private String type;
+    }
+}
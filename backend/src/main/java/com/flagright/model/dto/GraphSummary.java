@@ -0,0 +1,46 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GraphSummary {
+    private String id;
+    private String level;
+    private long generation;
+    private long totalNodes;
+    private long totalEdges;
+    private boolean truncated;
+    private LocalDateTime computedAt;
+    private List<SuperNode> nodes;
+    private List<SuperEdge> edges;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SuperNode {
+        private String id;
+        private String kind;
+        private String label;
+        private int users;
+        private int transactions;
+        private long internalEdges;
+        private boolean drillable;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SuperEdge {
+        private String source;
+        private String target;
+        private String type;
+        private long weight;
+    }
+}
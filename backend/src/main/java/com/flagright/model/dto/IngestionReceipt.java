@@ -0,0 +1,17 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/** Acknowledges a create that is durable in the ingestion journal and will be applied to the graph */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionReceipt {
+    private String ingestionKey;
+    private long sequence;
+    private LocalDateTime acceptedAt;
+}
@@ -0,0 +1,19 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/** Where a journaled create stands: still pending, applied to the graph, or rejected with the reason */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionStatus {
+    private String ingestionKey;
+    private String status;
+    private String kind;
+    private String reason;
+    private LocalDateTime rejectedAt;
+}
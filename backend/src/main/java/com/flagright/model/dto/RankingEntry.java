@@ -0,0 +1,22 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/** One ranked user, device, IP or payment method */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RankingEntry {
+    private int rank;
+    private String entity;
+    private Long id;
+    private String value;
+    private String relationshipType;
+    private long degree;
+    private long gainedToday;
+    private int clusterSize;
+    private long velocityCount;
+    private double riskScore;
+}
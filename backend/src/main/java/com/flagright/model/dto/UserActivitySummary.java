@@ -0,0 +1,35 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/** Pre-aggregated per-user counters for list and dashboard views */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserActivitySummary {
+    private Long userId;
+    private Map<String, Long> connectionCounts;
+    private long totalConnections;
+    private long sentCount;
+    private long receivedCount;
+    private long completedSentCount;
+    private long completedReceivedCount;
+    private List<CurrencyTotal> totals;
+    private LocalDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CurrencyTotal {
+        private String currency;
+        private BigDecimal sent;
+        private BigDecimal received;
+    }
+}
@@ -0,0 +1,24 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VelocityBreach {
+    private Long transactionId;
+    private String dimension;
+    private String value;
+    private String limit;
+    private long count;
+    private BigDecimal amount;
+    private String currency;
+    private BigDecimal threshold;
+    private long windowSeconds;
+    private LocalDateTime detectedAt;
+}
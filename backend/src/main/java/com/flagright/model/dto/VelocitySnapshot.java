@@ -0,0 +1,19 @@
+package com.flagright.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VelocitySnapshot {
+    private String dimension;
+    private String value;
+    private long count;
+    private BigDecimal amount;
+    private String currency;
+    private long windowSeconds;
+}
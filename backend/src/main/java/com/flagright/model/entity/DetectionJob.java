@@ -0,0 +1,91 @@
+package com.flagright.model.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.springframework.data.neo4j.core.schema.Id;
+import org.springframework.data.neo4j.core.schema.Node;
+import org.springframework.data.neo4j.core.schema.Property;
+import org.springframework.data.neo4j.core.schema.GeneratedValue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A full relationship detection run. The checkpoint (phase and cursor) is
+ * saved in the same transaction as each chunk of work, so a run interrupted
+ * by a crash or restart resumes exactly after the last committed chunk.
+ * A running job is claimed by one instance at a time through its owner and
+ * heartbeat.
+ */
+@Node("DetectionJob")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetectionJob {
+
+    public enum Status { RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    public enum Phase { USERS, TRANSACTIONS, DONE }
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Property("status")
+    private Status status;
+
+    @Property("phase")
+    private Phase phase;
+
+    /** Internal id of the last entity processed in the current phase */
+    @Property("cursor")
+    private Long cursor;
+
+    /** Relationship types this run linked in a full pass, which its chunks skip */
+    @Property("fullPassRelationships")
+    private List<String> fullPassRelationships = new ArrayList<>();
+
+    @Property("usersTotal")
+    private long usersTotal;
+
+    @Property("usersProcessed")
+    private long usersProcessed;
+
+    @Property("transactionsTotal")
+    private long transactionsTotal;
+
+    @Property("transactionsProcessed")
+    private long transactionsProcessed;
+
+    @Property("startedAt")
+    private LocalDateTime startedAt;
+
+    @Property("updatedAt")
+    private LocalDateTime updatedAt;
+
+    @Property("finishedAt")
+    private LocalDateTime finishedAt;
+
+    @Property("error")
+    private String error;
+
+    /** Instance executing the run; only it may write the checkpoint */
+    @Property("owner")
+    private String owner;
+
+    /** Last time the owner renewed its claim; a run not renewed within the claim timeout may be adopted */
+    @Property("heartbeatAt")
+    private LocalDateTime heartbeatAt;
+
+    public DetectionJob(long usersTotal, long transactionsTotal) {
+        this.status = Status.RUNNING;
+        this.phase = Phase.USERS;
+        this.cursor = -1L;
+        this.usersTotal = usersTotal;
+        this.transactionsTotal = transactionsTotal;
+        this.startedAt = LocalDateTime.now();
+        this.updatedAt = this.startedAt;
+    }
+}
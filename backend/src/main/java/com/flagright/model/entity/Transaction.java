@@ -9,11 +9,15 @@ import org.springframework.data.neo4j.core.schema.Node;
 import org.springframework.data.neo4j.core.schema.Property;
 import org.springframework.data.neo4j.core.schema.Relationship;
 import org.springframework.data.neo4j.core.schema.GeneratedValue;
+import org.springframework.data.annotation.Transient;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.flagright.model.dto.VelocityBreach;
 
 import java.time.LocalDateTime;
 import java.math.BigDecimal;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 @Node("Transaction")
@@ -27,6 +31,9 @@ public class Transaction {
     @EqualsAndHashCode.Include
     private Long id;
 
+    @Property("uid")
+    private Long uid;
+
     @Property("amount")
     private BigDecimal amount;
 
@@ -54,6 +61,34 @@ public class Transaction {
     @Property("completedAt")
     private LocalDateTime completedAt;
 
+    /** Last change to the transaction, including status changes; the incremental graph export filters on it */
+    @Property("updatedAt")
+    private LocalDateTime updatedAt;
+
+    @JsonIgnore
+    @Property("ingestionKey")
+    private String ingestionKey;
+
+    @JsonIgnore
+    @Property("createdAtBucket")
+    private Long createdAtBucket;
+
+    @JsonIgnore
+    @Property("ipFingerprint")
+    private Long ipFingerprint;
+
+    @JsonIgnore
+    @Property("deviceFingerprint")
+    private Long deviceFingerprint;
+
+    @JsonIgnore
+    @Property("paymentMethodFingerprint")
+    private Long paymentMethodFingerprint;
+
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<VelocityBreach> velocityBreaches;
+
     @Relationship(type = "SENT", direction = Relationship.Direction.INCOMING)
     private User sender;
     
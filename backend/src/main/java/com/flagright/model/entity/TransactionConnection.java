@@ -19,6 +19,9 @@ public class TransactionConnection {
     @Id
     @GeneratedValue
     private Long id;
+
+    @Property("uid")
+    private Long uid;
     
     @Property("transactionId1")
     private Long transactionId1;
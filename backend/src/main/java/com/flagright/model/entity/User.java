@@ -28,6 +28,9 @@ public class User {
     @EqualsAndHashCode.Include
     private Long id;
 
+    @Property("uid")
+    private Long uid;
+
     @Property("email")
     private String email;
 
@@ -52,6 +55,22 @@ public class User {
     @Property("updatedAt")
     private LocalDateTime updatedAt;
 
+    @JsonIgnore
+    @Property("ingestionKey")
+    private String ingestionKey;
+
+    @JsonIgnore
+    @Property("emailFingerprint")
+    private Long emailFingerprint;
+
+    @JsonIgnore
+    @Property("phoneFingerprint")
+    private Long phoneFingerprint;
+
+    @JsonIgnore
+    @Property("addressFingerprint")
+    private Long addressFingerprint;
+
     @JsonIgnore
     @Relationship(type = "SENT", direction = Relationship.Direction.OUTGOING)
     private Set<Transaction> sentTransactions = new HashSet<>();
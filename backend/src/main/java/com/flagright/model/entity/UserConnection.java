@@ -19,6 +19,9 @@ public class UserConnection {
     @Id
     @GeneratedValue
     private Long id;
+
+    @Property("uid")
+    private Long uid;
     
     @Property("userId1")
     private Long userId1;
@@ -0,0 +1,94 @@
+package com.flagright.service;
+
+import com.flagright.config.DetectionProperties;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Joins in the database with {@code apoc.periodic.iterate}: entities
+ * carrying the attribute are streamed server-side and their pairs merged in
+ * inner transactions of {@code flagright.detection.batch-size} anchors, so
+ * a large or skewed attribute never builds one huge transaction. Batches
+ * run serially because parallel merges on shared hubs deadlock. Anchored
+ * calls gain nothing from batching and use the plain Cypher engine.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BatchedCypherDetectionEngine implements DetectionEngine {
+
+    public static final String NAME = "batched";
+
+    private static final String AVAILABILITY_QUERY =
+        "SHOW PROCEDURES YIELD name WHERE name = 'apoc.periodic.iterate' RETURN count(*) > 0 AS available";
+
+    private static final String ITERATE_QUERY =
+        "CALL apoc.periodic.iterate($outer, $inner, " +
+        "{batchSize: $batchSize, parallel: false, params: $params}) " +
+        "YIELD batches, total, failedBatches, errorMessages " +
+        "RETURN batches, total, failedBatches, errorMessages";
+
+    private final Neo4jClient neo4jClient;
+    private final CypherDetectionEngine cypherDetectionEngine;
+    private final DetectionProperties detectionProperties;
+
+    private volatile Boolean available;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        Boolean known = available;
+        if (known == null) {
+            try {
+                known = neo4jClient.query(AVAILABILITY_QUERY).fetchAs(Boolean.class)
+                    .mappedBy((typeSystem, record) -> record.get("available").asBoolean())
+                    .one()
+                    .orElse(false);
+            } catch (Exception e) {
+                log.warn("Could not check for APOC, batched relationship detection is disabled", e);
+                known = false;
+            }
+            available = known;
+        }
+        return known;
+    }
+
+    @Override
+    public List<Long> linkFrom(DetectedRelationship relationship, Long anchorId, Duration window) {
+        return cypherDetectionEngine.linkFrom(relationship, anchorId, window);
+    }
+
+    @Override
+    public void linkAll(DetectedRelationship relationship, Duration window) {
+        String outer = "MATCH (a:" + relationship.label() + ") WHERE a." + relationship.fingerprintProperty() +
+            " IS NOT NULL RETURN a";
+        String inner = CypherDetectionEngine.pairClause(relationship, window);
+
+        Map<String, Object> result = neo4jClient.query(ITERATE_QUERY)
+            .bind(outer).to("outer")
+            .bind(inner).to("inner")
+            .bind(Math.max(1, detectionProperties.getBatchSize())).to("batchSize")
+            .bind(CypherDetectionEngine.linkParameters(window)).to("params")
+            .fetch().one()
+            .orElseThrow(() -> new IllegalStateException("apoc.periodic.iterate returned no summary"));
+
+        long failedBatches = ((Number) result.get("failedBatches")).longValue();
+        if (failedBatches > 0) {
+            throw new IllegalStateException("Batched " + relationship + " detection failed in " + failedBatches +
+                " batches: " + result.get("errorMessages"));
+        }
+        log.debug("Batched {} detection processed {} anchors in {} batches",
+            relationship, result.get("total"), result.get("batches"));
+    }
+}
@@ -0,0 +1,231 @@
+package com.flagright.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flagright.config.ChangeFeedProperties;
+import com.flagright.util.AfterCommit;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes entity and connection changes to server-sent event subscribers.
+ * Each event is serialised once when its transaction commits and appended to
+ * a bounded replay buffer; every subscriber has its own bounded queue drained
+ * on a sender thread, so a slow client never blocks writers or other clients.
+ * A subscriber whose queue overflows, or who resumes from an event id that is
+ * no longer buffered, gets a RESYNC event telling it to refetch.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChangeFeedService {
+
+    public enum ChangeType { USER_CREATED, USER_UPDATED, TRANSACTION_CREATED, TRANSACTION_UPDATED, CONNECTION_CREATED,
+        CONNECTION_REMOVED, CYCLE_DETECTED }
+
+    /** Event name telling a client its view is incomplete and it should refetch */
+    public static final String RESYNC = "RESYNC";
+
+    private static final String HEARTBEAT = "HEARTBEAT";
+
+    private final ObjectMapper objectMapper;
+    private final ChangeFeedProperties changeFeedProperties;
+
+    /** Distinguishes event ids issued before a restart, when the sequence starts over */
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Object lock = new Object();
+    private final ArrayDeque<ChangeEvent> history = new ArrayDeque<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long sequence;
+
+    private record ChangeEvent(long sequence, String name, String data) {
+    }
+
+    /** Publishes a created or updated entity once the surrounding transaction commits */
+    public void publish(ChangeType type, Object payload) {
+        String data;
+        try {
+            data = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialise {} change event, subscribers will miss it", type, e);
+            return;
+        }
+        AfterCommit.run(() -> append(type.name(), data));
+    }
+
+    /** Publishes a detected link between two graph nodes, identified as in the graph view (user-1, transaction-2) */
+    public void publishConnection(String source, String target, String relationshipType) {
+        publish(ChangeType.CONNECTION_CREATED, Map.of("source", source, "target", target, "type", relationshipType));
+    }
+
+    /** Publishes a link between two graph nodes that no longer holds */
+    public void publishConnectionRemoved(String source, String target, String relationshipType) {
+        publish(ChangeType.CONNECTION_REMOVED, Map.of("source", source, "target", target, "type", relationshipType));
+    }
+
+    /**
+     * Opens a stream for a new subscriber. Events after {@code lastEventId} are
+     * replayed first when they are still buffered; otherwise the stream starts
+     * with a RESYNC event.
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(changeFeedProperties.getStreamTimeout().toMillis());
+        Subscriber subscriber = new Subscriber(emitter, changeFeedProperties.getSubscriberBuffer());
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+
+        synchronized (lock) {
+            Long resumeFrom = parseEventId(lastEventId);
+            List<ChangeEvent> replay = resumeFrom == null ? List.of() : eventsAfter(resumeFrom);
+            if (replay == null || replay.size() > changeFeedProperties.getSubscriberBuffer()) {
+                subscriber.offer(new ChangeEvent(sequence, RESYNC, "{}"));
+            } else {
+                replay.forEach(subscriber::offer);
+            }
+            subscribers.add(subscriber);
+        }
+        log.info("Change feed subscriber connected (resuming from {}), {} active", lastEventId, subscribers.size());
+        return emitter;
+    }
+
+    /** Keeps idle streams alive through proxies and detects disconnected clients */
+    @Scheduled(fixedDelayString = "${flagright.changes.heartbeat-interval:15000}")
+    public void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(new ChangeEvent(-1, HEARTBEAT, ""));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        senders.shutdownNow();
+    }
+
+    private void append(String name, String data) {
+        synchronized (lock) {
+            ChangeEvent event = new ChangeEvent(++sequence, name, data);
+            history.addLast(event);
+            if (history.size() > changeFeedProperties.getReplayBuffer()) {
+                history.removeFirst();
+            }
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    /** Buffered events after the given sequence, or null when some of them have been dropped */
+    private List<ChangeEvent> eventsAfter(long resumeFrom) {
+        if (resumeFrom > sequence) {
+            return null;
+        }
+        long oldest = history.isEmpty() ? sequence + 1 : history.peekFirst().sequence();
+        if (resumeFrom < oldest - 1) {
+            return null;
+        }
+        List<ChangeEvent> events = new ArrayList<>();
+        for (ChangeEvent event : history) {
+            if (event.sequence() > resumeFrom) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    /** Parses an id of the form epoch-sequence; ids from an earlier run resume from before the first event */
+    private Long parseEventId(String eventId) {
+        if (eventId == null || eventId.isBlank()) {
+            return null;
+        }
+        int separator = eventId.indexOf('-');
+        if (separator < 0 || !epoch.equals(eventId.substring(0, separator))) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /** One connected client: a bounded queue drained to its emitter by at most one sender at a time */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<ChangeEvent> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, int capacity) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void offer(ChangeEvent event) {
+            if (!queue.offer(event)) {
+                // Too far behind: drop what is queued and let the client refetch.
+                queue.clear();
+                queue.offer(new ChangeEvent(sequence, RESYNC, "{}"));
+                log.warn("Change feed subscriber fell more than {} events behind, sending resync",
+                    changeFeedProperties.getSubscriberBuffer());
+            }
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                ChangeEvent event;
+                while ((event = queue.poll()) != null) {
+                    send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Change feed subscriber disconnected: {}", e.getMessage());
+                subscribers.remove(this);
+                queue.clear();
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void send(ChangeEvent event) throws IOException {
+            if (HEARTBEAT.equals(event.name())) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+                return;
+            }
+            emitter.send(SseEmitter.event()
+                .id(epoch + "-" + event.sequence())
+                .name(event.name())
+                .data(event.data(), MediaType.APPLICATION_JSON));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.flagright.service;
+
+import com.flagright.model.dto.DetectionRuleDefinition;
+import com.flagright.model.entity.Transaction;
+import com.flagright.model.entity.User;
+import com.flagright.util.AttributeNormalizer;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.data.neo4j.core.schema.Property;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * A detection rule checked and turned into what detection runs: the getters
+ * that read its attributes, the normaliser, and the Cypher statements for
+ * its relationship type and key property. A rule's key is the fingerprint of
+ * its normalised attributes joined together; it is stored on each entity
+ * under {@link #keyProperty()} and indexed, so anchored detection is one
+ * index seek however many attributes the rule combines.
+ */
+public final class CompiledDetectionRule {
+
+    private static final Pattern RELATIONSHIP_NAME = Pattern.compile("[A-Z][A-Z0-9_]{0,63}");
+    private static final Set<String> RESERVED_NAMES = Set.of("SENT", "RECEIVED", "SHARES_DEVICE", "SHARES_IP",
+        "SHARES_PAYMENT_METHOD");
+    private static final String KEY_SEPARATOR = "\u001f";
+
+    private static final Map<String, UnaryOperator<String>> NORMALIZERS = Map.of(
+        "none", String::trim,
+        "lowercase", value -> value.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " "),
+        "digits", value -> value.replaceAll("[^0-9]", ""),
+        "email", AttributeNormalizer::normalizeEmail,
+        "phone", AttributeNormalizer::normalizePhone,
+        "address", AttributeNormalizer::normalizeAddress,
+        "ip", AttributeNormalizer::normalizeIp,
+        "device", AttributeNormalizer::normalizeDeviceId,
+        "payment-method", AttributeNormalizer::normalizePaymentMethod);
+
+    /** The entities a rule can link */
+    public enum Entity {
+        USER("User", User.class),
+        TRANSACTION("Transaction", Transaction.class);
+
+        private final String label;
+        private final Class<?> type;
+
+        Entity(String label, Class<?> type) {
+            this.label = label;
+            this.type = type;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private final DetectionRuleDefinition definition;
+    private final Entity entity;
+    private final List<String> attributes;
+    private final Method[] getters;
+    private final UnaryOperator<String> normalizer;
+    private final Duration window;
+    private final int cap;
+
+    private CompiledDetectionRule(DetectionRuleDefinition definition, Entity entity, List<String> attributes,
+                                  Method[] getters, UnaryOperator<String> normalizer, Duration window, int cap) {
+        this.definition = definition;
+        this.entity = entity;
+        this.attributes = attributes;
+        this.getters = getters;
+        this.normalizer = normalizer;
+        this.window = window;
+        this.cap = cap;
+    }
+
+    /**
+     * Checks a definition and compiles it. Names and attributes end up in
+     * Cypher, so both are checked against the entity model rather than
+     * escaped.
+     */
+    public static CompiledDetectionRule compile(DetectionRuleDefinition definition, int defaultCap) {
+        String name = definition.getName() == null ? "" : definition.getName().trim();
+        if (!RELATIONSHIP_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid rule name '" + name + "'. Use upper case letters, digits " +
+                "and underscores, starting with a letter");
+        }
+        if (RESERVED_NAMES.contains(name) || isBuiltIn(name)) {
+            throw new IllegalArgumentException("Rule " + name + " clashes with a built-in relationship type");
+        }
+
+        Entity entity;
+        try {
+            entity = Entity.valueOf(String.valueOf(definition.getEntity()).trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid entity for rule " + name + ". Use one of user, transaction");
+        }
+
+        List<String> attributes = definition.getAttributes() == null ? List.of()
+            : definition.getAttributes().stream().map(String::trim).distinct().toList();
+        if (attributes.isEmpty()) {
+            throw new IllegalArgumentException("Rule " + name + " needs at least one attribute");
+        }
+        Method[] getters = new Method[attributes.size()];
+        for (int i = 0; i < attributes.size(); i++) {
+            getters[i] = getter(entity, attributes.get(i), name);
+        }
+
+        String normalizerName = definition.getNormalizer() == null ? "lowercase"
+            : definition.getNormalizer().trim().toLowerCase(Locale.ROOT);
+        UnaryOperator<String> normalizer = NORMALIZERS.get(normalizerName);
+        if (normalizer == null) {
+            throw new IllegalArgumentException("Invalid normalizer for rule " + name + ". Use one of " +
+                "none, lowercase, digits, email, phone, address, ip, device, payment-method");
+        }
+
+        Duration window = null;
+        if (definition.getWindow() != null && !definition.getWindow().isBlank()) {
+            try {
+                window = DurationStyle.detectAndParse(definition.getWindow().trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid window for rule " + name + ": " + definition.getWindow());
+            }
+            // The database compares whole seconds, so the window is truncated the same way here.
+            window = window.isZero() || window.isNegative() ? null : Duration.ofSeconds(window.getSeconds());
+        }
+
+        int cap = definition.getCap() == null ? defaultCap : definition.getCap();
+        if (cap < 2) {
+            throw new IllegalArgumentException("Cap for rule " + name + " must be at least 2");
+        }
+        return new CompiledDetectionRule(definition, entity, attributes, getters, normalizer, window, cap);
+    }
+
+    /** Only properties stored on the node can be matched on */
+    private static Method getter(Entity entity, String attribute, String rule) {
+        Field field;
+        try {
+            field = entity.type.getDeclaredField(attribute);
+        } catch (NoSuchFieldException e) {
+            field = null;
+        }
+        Property property = field == null ? null : field.getAnnotation(Property.class);
+        PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(entity.type, attribute);
+        if (property == null || !attribute.equals(property.value()) || descriptor == null
+                || descriptor.getReadMethod() == null) {
+            throw new IllegalArgumentException("Rule " + rule + " uses unknown " + entity.name().toLowerCase(Locale.ROOT) +
+                " attribute '" + attribute + "'");
+        }
+        return descriptor.getReadMethod();
+    }
+
+    private static boolean isBuiltIn(String name) {
+        for (DetectedRelationship relationship : DetectedRelationship.values()) {
+            if (relationship.name().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public DetectionRuleDefinition definition() {
+        return definition;
+    }
+
+    public String name() {
+        return definition.getName().trim();
+    }
+
+    public Entity entity() {
+        return entity;
+    }
+
+    public List<String> attributes() {
+        return attributes;
+    }
+
+    /** Maximum time between linked entities, or null when unbounded */
+    public Duration window() {
+        return window;
+    }
+
+    public int cap() {
+        return cap;
+    }
+
+    /** Node property holding the rule's key */
+    public String keyProperty() {
+        return "ruleKey_" + name();
+    }
+
+    /** Computes the key from raw attribute values in {@link #attributes()} order; null when any is missing */
+    public Long keyOf(List<?> values) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            String normalized = value == null ? null : normalizer.apply(String.valueOf(value));
+            if (normalized == null || normalized.isEmpty()) {
+                return null;
+            }
+            if (i > 0) {
+                key.append(KEY_SEPARATOR);
+            }
+            key.append(normalized);
+        }
+        return AttributeNormalizer.fingerprint(key.toString());
+    }
+
+    /** Computes the key of a loaded entity */
+    public Long keyOf(Object entityObject) {
+        Object[] values = new Object[getters.length];
+        try {
+            for (int i = 0; i < getters.length; i++) {
+                values[i] = getters[i].invoke(entityObject);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not read attributes for rule " + name(), e);
+        }
+        return keyOf(Arrays.asList(values));
+    }
+
+    /** Index backing the key seek */
+    String indexStatement() {
+        return "CREATE INDEX rule_key_" + name().toLowerCase(Locale.ROOT) + " IF NOT EXISTS FOR (n:" +
+            entity.label + ") ON (n." + keyProperty() + ")";
+    }
+
+    /** Finds up to $limit other entities with key $key, with their creation times */
+    String candidateQuery() {
+        return "MATCH (b:" + entity.label + ") WHERE b." + keyProperty() + " = $key AND id(b) <> $id " +
+            "RETURN id(b) AS id, b.createdAt AS createdAt LIMIT $limit";
+    }
+
+    /**
+     * Merges the edge between each pair in $pairs, stamping new edges with
+     * $now, and returns the second id of each pair with whether its edge was
+     * created rather than found
+     */
+    String mergeQuery() {
+        return "UNWIND $pairs AS pair " +
+            "MATCH (a:" + entity.label + ") WHERE id(a) = pair[0] " +
+            "MATCH (b:" + entity.label + ") WHERE id(b) = pair[1] " +
+            "MERGE (a)-[r:" + name() + "]-(b) ON CREATE SET r.createdAt = $now, r.merging = true " +
+            "WITH b, r, r.merging IS NOT NULL AS created REMOVE r.merging " +
+            "RETURN id(b) AS otherId, created";
+    }
+
+    /** Sets the key of each entity in $rows, removing it where the key is null */
+    String setKeysQuery() {
+        return "UNWIND $rows AS row MATCH (n:" + entity.label + ") WHERE id(n) = row.id " +
+            "SET n." + keyProperty() + " = row.key";
+    }
+
+    /** Removes the rule's edges of each entity in $ids and returns the other ends */
+    String unlinkQuery() {
+        return "UNWIND $ids AS nodeId MATCH (a:" + entity.label + ")-[r:" + name() + "]-(b) WHERE id(a) = nodeId " +
+            "DELETE r RETURN id(a) AS id, id(b) AS otherId";
+    }
+}
@@ -0,0 +1,98 @@
+package com.flagright.service;
+
+import com.flagright.util.TimeBuckets;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Joins in the database with one Cypher statement per call. Anchored calls
+ * seek the fingerprint index (and the time-bucket index for windowed
+ * types) from a single entity; a full pass runs as one statement in one
+ * transaction, which suits moderate, evenly spread data.
+ */
+@Component
+@RequiredArgsConstructor
+public class CypherDetectionEngine implements DetectionEngine {
+
+    public static final String NAME = "cypher";
+
+    private final Neo4jClient neo4jClient;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<Long> linkFrom(DetectedRelationship relationship, Long anchorId, Duration window) {
+        String query = "MATCH (a:" + relationship.label() + ") WHERE id(a) = $anchorId " +
+            "MATCH (b:" + relationship.label() + ") WHERE b." + relationship.fingerprintProperty() +
+            " = a." + relationship.fingerprintProperty() + " AND id(b) <> id(a)" +
+            bucketPredicate(window) + windowPredicate(window) +
+            " MERGE (a)-[r:" + relationship.name() + "]-(b) ON CREATE SET r.createdAt = $now RETURN id(b) AS id";
+
+        Map<String, Object> parameters = linkParameters(window);
+        parameters.put("anchorId", anchorId);
+        return new ArrayList<>(neo4jClient.query(query)
+            .bindAll(parameters)
+            .fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("id").asLong())
+            .all());
+    }
+
+    @Override
+    public void linkAll(DetectedRelationship relationship, Duration window) {
+        String query = "MATCH (a:" + relationship.label() + ") WHERE a." + relationship.fingerprintProperty() +
+            " IS NOT NULL " + pairClause(relationship, window);
+        neo4jClient.query(query).bindAll(linkParameters(window)).run();
+    }
+
+    /**
+     * The match-and-merge clause shared by full passes: given a bound
+     * {@code a}, merges the edge to every later {@code b} sharing its
+     * fingerprint within the window.
+     */
+    static String pairClause(DetectedRelationship relationship, Duration window) {
+        return "MATCH (b:" + relationship.label() + ") WHERE b." + relationship.fingerprintProperty() +
+            " = a." + relationship.fingerprintProperty() + " AND id(a) < id(b)" + windowPredicate(window) +
+            " MERGE (a)-[r:" + relationship.name() + "]-(b) ON CREATE SET r.createdAt = $now";
+    }
+
+    /** Restricts {@code b} to the window around {@code a}; null timestamps never match */
+    static String windowPredicate(Duration window) {
+        if (window == null) {
+            return "";
+        }
+        return " AND b.createdAt >= a.createdAt - duration({seconds: $windowSeconds})" +
+            " AND b.createdAt <= a.createdAt + duration({seconds: $windowSeconds})";
+    }
+
+    /** Narrows {@code b} to the buckets the window can reach so the composite index bounds the seek */
+    static String bucketPredicate(Duration window) {
+        if (window == null) {
+            return "";
+        }
+        return " AND b.createdAtBucket >= a.createdAtBucket - $bucketSpan" +
+            " AND b.createdAtBucket <= a.createdAtBucket + $bucketSpan";
+    }
+
+    /** The window bounds and the creation time stamped on new edges, as the link queries take them */
+    static Map<String, Object> linkParameters(Duration window) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("now", LocalDateTime.now());
+        if (window != null) {
+            parameters.put("windowSeconds", window.getSeconds());
+            parameters.put("bucketSpan", TimeBuckets.bucketsSpanned(window));
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,196 @@
+package com.flagright.service;
+
+import com.flagright.config.DerivedLinkProperties;
+import com.flagright.exception.UserNotFoundException;
+import com.flagright.model.dto.DerivedLink;
+import com.flagright.model.dto.DerivedLinkRun;
+import com.flagright.Repository.UserRepository;
+import com.flagright.util.SparseCooccurrence;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Lifts transaction attributes to the users who send them: two users who
+ * sent from the same devices or IPs are linked with SHARES_DEVICE or
+ * SHARES_IP, weighted by how many distinct values they share and by the
+ * Jaccard similarity of their value sets.
+ *
+ * <p>Each pass loads the distinct (sender, value) pairs into a sparse
+ * user-by-value matrix and computes its co-occurrences with
+ * {@link SparseCooccurrence}, in parallel across users, ignoring values
+ * used by too many users and keeping each user's strongest links. Links are
+ * merged in batches and tagged with the pass that wrote them; links a pass
+ * did not write are then removed, so the derived edges always reflect the
+ * latest pass.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DerivedLinkService {
+
+    private static final int DELETE_BATCH = 10_000;
+
+    public enum LinkType {
+        SHARES_DEVICE("deviceFingerprint"),
+        SHARES_IP("ipFingerprint"),
+        SHARES_PAYMENT_METHOD("paymentMethodFingerprint");
+
+        private final String fingerprintProperty;
+
+        LinkType(String fingerprintProperty) {
+            this.fingerprintProperty = fingerprintProperty;
+        }
+    }
+
+    private final Neo4jClient neo4jClient;
+    private final UserRepository userRepository;
+    private final GraphSummaryService graphSummaryService;
+    private final DerivedLinkProperties derivedLinkProperties;
+
+    /** Periodically derives the configured link types */
+    @Scheduled(fixedDelayString = "${flagright.derivation.interval:3600000}",
+        initialDelayString = "${flagright.derivation.initial-delay:120000}")
+    public void scheduledRun() {
+        if (derivedLinkProperties.isEnabled()) {
+            run();
+        }
+    }
+
+    /** Derives every configured link type and reports what each pass wrote */
+    public synchronized List<DerivedLinkRun> run() {
+        List<DerivedLinkRun> runs = new ArrayList<>();
+        for (String type : derivedLinkProperties.getTypes()) {
+            runs.add(derive(parseLinkType(type)));
+        }
+        graphSummaryService.invalidateAll();
+        return runs;
+    }
+
+    private DerivedLinkRun derive(LinkType type) {
+        long started = System.currentTimeMillis();
+        long run = started;
+
+        // One row per sender with the distinct values it used.
+        Collection<Map<String, Object>> rows = neo4jClient.query(
+                "MATCH (u:User)-[:SENT]->(t:Transaction) WHERE t." + type.fingerprintProperty + " IS NOT NULL " +
+                "RETURN id(u) AS userId, collect(DISTINCT t." + type.fingerprintProperty + ") AS fingerprints")
+            .fetch().all();
+
+        long[] userIds = new long[rows.size()];
+        int entries = 0;
+        int user = 0;
+        for (Map<String, Object> row : rows) {
+            userIds[user++] = ((Number) row.get("userId")).longValue();
+            entries += ((Collection<?>) row.get("fingerprints")).size();
+        }
+
+        // Values become dense column indexes through a sorted array of distinct fingerprints.
+        int[] rowIndexes = new int[entries];
+        long[] fingerprints = new long[entries];
+        int entry = 0;
+        user = 0;
+        for (Map<String, Object> row : rows) {
+            for (Object fingerprint : (Collection<?>) row.get("fingerprints")) {
+                rowIndexes[entry] = user;
+                fingerprints[entry++] = ((Number) fingerprint).longValue();
+            }
+            user++;
+        }
+        long[] values = Arrays.stream(fingerprints).sorted().distinct().toArray();
+        int[] columnIndexes = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            columnIndexes[i] = Arrays.binarySearch(values, fingerprints[i]);
+        }
+
+        SparseCooccurrence.Csr matrix = SparseCooccurrence.Csr.of(userIds.length, values.length, rowIndexes,
+            columnIndexes);
+        SparseCooccurrence.Limits limits = new SparseCooccurrence.Limits(
+            Math.max(1, derivedLinkProperties.getMinShared()), derivedLinkProperties.getMinJaccard(),
+            Math.max(1, derivedLinkProperties.getTopK()), Math.max(2, derivedLinkProperties.getMaxValueDegree()));
+
+        int batchSize = Math.max(1, derivedLinkProperties.getBatchSize());
+        List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+        long links = SparseCooccurrence.similarRows(matrix, limits, (a, b, shared, jaccard) -> {
+            batch.add(Map.of("a", userIds[a], "b", userIds[b], "shared", shared, "jaccard", jaccard));
+            if (batch.size() >= batchSize) {
+                mergeLinks(type, run, batch);
+                batch.clear();
+            }
+        });
+        mergeLinks(type, run, batch);
+        long removed = removeStaleLinks(type, run);
+
+        long duration = System.currentTimeMillis() - started;
+        log.info("Derived {} {} links from {} users and {} values in {} ms, removed {} stale links", links,
+            type, userIds.length, values.length, duration, removed);
+        return new DerivedLinkRun(type.name(), userIds.length, values.length, links, removed, duration);
+    }
+
+    private void mergeLinks(LinkType type, long run, List<Map<String, Object>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        String query = "UNWIND $rows AS row " +
+            "MATCH (a:User) WHERE id(a) = row.a " +
+            "MATCH (b:User) WHERE id(b) = row.b " +
+            "MERGE (a)-[r:" + type.name() + "]-(b) ON CREATE SET r.createdAt = localdatetime() " +
+            "SET r.shared = row.shared, r.jaccard = row.jaccard, r.derivationRun = $run, " +
+            "r.derivedAt = localdatetime()";
+        neo4jClient.query(query).bind(new ArrayList<>(batch)).to("rows").bind(run).to("run").run();
+    }
+
+    /** Deletes links of the type not written by this pass, in bounded batches */
+    private long removeStaleLinks(LinkType type, long run) {
+        String query = "MATCH (:User)-[r:" + type.name() + "]->(:User) " +
+            "WHERE r.derivationRun IS NULL OR r.derivationRun <> $run " +
+            "WITH r LIMIT " + DELETE_BATCH + " DELETE r RETURN count(*) AS removed";
+        long total = 0;
+        long removed;
+        do {
+            removed = neo4jClient.query(query).bind(run).to("run")
+                .fetchAs(Long.class).mappedBy((typeSystem, record) -> record.get("removed").asLong())
+                .one().orElse(0L);
+            total += removed;
+        } while (removed == DELETE_BATCH);
+        return total;
+    }
+
+    /** Gets a user's derived links, strongest first */
+    public List<DerivedLink> getLinks(Long userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new UserNotFoundException("User not found with ID: " + userId);
+        }
+
+        List<DerivedLink> links = new ArrayList<>();
+        for (Map<String, Object> row : neo4jClient.query(
+                "MATCH (u:User)-[r:SHARES_DEVICE|SHARES_IP|SHARES_PAYMENT_METHOD]-(o:User) WHERE id(u) = $userId " +
+                "RETURN id(o) AS otherUserId, type(r) AS type, r.shared AS shared, r.jaccard AS jaccard " +
+                "ORDER BY r.jaccard DESC, r.shared DESC")
+                .bind(userId).to("userId").fetch().all()) {
+            links.add(new DerivedLink(userId, ((Number) row.get("otherUserId")).longValue(), (String) row.get("type"),
+                ((Number) row.get("shared")).longValue(), ((Number) row.get("jaccard")).doubleValue()));
+        }
+        return links;
+    }
+
+    /** Parses a derived link type such as "shares_device" */
+    public static LinkType parseLinkType(String type) {
+        try {
+            return LinkType.valueOf(type.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid derived link type. Use one of SHARES_DEVICE, SHARES_IP, " +
+                "SHARES_PAYMENT_METHOD");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.flagright.service;
+
+import com.flagright.model.entity.Transaction;
+import com.flagright.model.entity.User;
+import com.flagright.util.AttributeNormalizer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * The relationship types found by detection, with the graph properties each
+ * one joins on. Labels and property names are fixed here so that detection
+ * engines can build their Cypher from them safely.
+ */
+public enum DetectedRelationship {
+
+    SHARES_EMAIL("User", "emailFingerprint", "email", AttributeNormalizer::normalizeEmail),
+    SHARES_PHONE("User", "phoneFingerprint", "phone", AttributeNormalizer::normalizePhone),
+    SHARES_ADDRESS("User", "addressFingerprint", "address", AttributeNormalizer::normalizeAddress),
+    SAME_DEVICE("Transaction", "deviceFingerprint", "deviceId", AttributeNormalizer::normalizeDeviceId),
+    SAME_IP("Transaction", "ipFingerprint", "ipAddress", AttributeNormalizer::normalizeIp),
+    SAME_PAYMENT_METHOD("Transaction", "paymentMethodFingerprint", "paymentMethod",
+        AttributeNormalizer::normalizePaymentMethod);
+
+    private final String label;
+    private final String fingerprintProperty;
+    private final String valueProperty;
+    private final UnaryOperator<String> normalizer;
+
+    DetectedRelationship(String label, String fingerprintProperty, String valueProperty,
+                         UnaryOperator<String> normalizer) {
+        this.label = label;
+        this.fingerprintProperty = fingerprintProperty;
+        this.valueProperty = valueProperty;
+        this.normalizer = normalizer;
+    }
+
+    /** Node label of the entities this relationship links */
+    public String label() {
+        return label;
+    }
+
+    /** Property holding the fingerprint both ends must share */
+    public String fingerprintProperty() {
+        return fingerprintProperty;
+    }
+
+    /** Property holding the raw attribute the fingerprint was derived from */
+    public String valueProperty() {
+        return valueProperty;
+    }
+
+    /** Canonicalises a raw attribute value into the shared value recorded on connections */
+    public String sharedValue(String rawValue) {
+        return normalizer.apply(rawValue);
+    }
+
+    /** Returns true for relationships between users, false for those between transactions */
+    public boolean linksUsers() {
+        return "User".equals(label);
+    }
+
+    /** Returns a user's fingerprint for each user relationship, null where the attribute is absent */
+    public static Map<DetectedRelationship, Long> fingerprintsOf(User user) {
+        Map<DetectedRelationship, Long> fingerprints = new EnumMap<>(DetectedRelationship.class);
+        fingerprints.put(SHARES_EMAIL, user.getEmailFingerprint());
+        fingerprints.put(SHARES_PHONE, user.getPhoneFingerprint());
+        fingerprints.put(SHARES_ADDRESS, user.getAddressFingerprint());
+        return fingerprints;
+    }
+
+    /** Returns a transaction's fingerprint for a transaction relationship, null where the attribute is absent */
+    public Long fingerprintOf(Transaction transaction) {
+        return switch (this) {
+            case SAME_DEVICE -> transaction.getDeviceFingerprint();
+            case SAME_IP -> transaction.getIpFingerprint();
+            case SAME_PAYMENT_METHOD -> transaction.getPaymentMethodFingerprint();
+            default -> throw new IllegalStateException(this + " does not link transactions");
+        };
+    }
+
+    /** Returns a user's raw value for a user relationship */
+    public String rawValueOf(User user) {
+        return switch (this) {
+            case SHARES_EMAIL -> user.getEmail();
+            case SHARES_PHONE -> user.getPhone();
+            case SHARES_ADDRESS -> user.getAddress();
+            default -> throw new IllegalStateException(this + " does not link users");
+        };
+    }
+
+    /** Returns a transaction's raw value for a transaction relationship */
+    public String rawValueOf(Transaction transaction) {
+        return switch (this) {
+            case SAME_DEVICE -> transaction.getDeviceId();
+            case SAME_IP -> transaction.getIpAddress();
+            case SAME_PAYMENT_METHOD -> transaction.getPaymentMethod();
+            default -> throw new IllegalStateException(this + " does not link transactions");
+        };
+    }
+}
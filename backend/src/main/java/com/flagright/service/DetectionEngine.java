@@ -0,0 +1,40 @@
+package com.flagright.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A strategy for merging the edges between entities that share a
+ * fingerprinted attribute. Engines differ only in where and how the join
+ * runs; for the same data every engine must merge exactly the same set of
+ * pairs, so one can be swapped for another per relationship type.
+ *
+ * <p>With a window, two entities are linked only when both creation
+ * timestamps are known and at most the window apart.
+ */
+public interface DetectionEngine {
+
+    /** Name used to select the engine in {@code flagright.detection.engines} and in logs */
+    String name();
+
+    /** Returns true when the engine can run against the connected database */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Links one entity to every other entity sharing its attribute, in the
+     * caller's transaction.
+     *
+     * @param window maximum time between linked entities, or null when unbounded
+     * @return ids of the entities the anchor is linked to
+     */
+    List<Long> linkFrom(DetectedRelationship relationship, Long anchorId, Duration window);
+
+    /**
+     * Links every pair of entities sharing the attribute.
+     *
+     * @param window maximum time between linked entities, or null when unbounded
+     */
+    void linkAll(DetectedRelationship relationship, Duration window);
+}
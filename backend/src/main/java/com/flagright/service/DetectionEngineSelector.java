@@ -0,0 +1,125 @@
+package com.flagright.service;
+
+import com.flagright.config.DetectionProperties;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Chooses one detection engine per relationship type. An engine named in
+ * {@code flagright.detection.engines} always wins when it is available.
+ * Otherwise anchored detection uses the Cypher engine, and a full pass is
+ * chosen from the attribute's group statistics:
+ * <ul>
+ *   <li>light, evenly spread data runs as a single Cypher statement;</li>
+ *   <li>heavy or skewed data that fits in memory is swept in Java when a
+ *       window lets the time-ordered sweep skip most pairs, or when APOC is
+ *       missing;</li>
+ *   <li>anything else heavy is batched server-side through APOC.</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class DetectionEngineSelector {
+
+    private final Map<String, DetectionEngine> engines;
+    private final Neo4jClient neo4jClient;
+    private final DetectionProperties detectionProperties;
+
+    /** Group statistics of one attribute; pair work is the number of comparisons a naive join makes */
+    public record GroupStats(long groups, long entities, long largestGroup, long pairWork) {
+
+        /** Largest group over the mean group size */
+        public double skew() {
+            return groups == 0 || entities == 0 ? 0.0 : largestGroup / ((double) entities / groups);
+        }
+    }
+
+    public DetectionEngineSelector(List<DetectionEngine> engines, Neo4jClient neo4jClient,
+                                   DetectionProperties detectionProperties) {
+        this.engines = engines.stream().collect(Collectors.toMap(DetectionEngine::name, Function.identity()));
+        this.neo4jClient = neo4jClient;
+        this.detectionProperties = detectionProperties;
+    }
+
+    /** Chooses the engine that links single entities as they are written */
+    public DetectionEngine forAnchor(DetectedRelationship relationship) {
+        DetectionEngine configured = configured(relationship);
+        return configured != null ? configured : engines.get(CypherDetectionEngine.NAME);
+    }
+
+    /** Chooses the engine for a full pass over one relationship type */
+    public DetectionEngine forFullPass(DetectedRelationship relationship, Duration window) {
+        DetectionEngine configured = configured(relationship);
+        if (configured != null) {
+            return configured;
+        }
+
+        GroupStats stats = stats(relationship);
+        DetectionEngine chosen = choose(stats, window);
+        log.info("Detecting {} with the {} engine: {} entities in {} groups, largest {}, skew {}, pair work {}",
+            relationship, chosen.name(), stats.entities(), stats.groups(), stats.largestGroup(),
+            String.format("%.1f", stats.skew()), stats.pairWork());
+        return chosen;
+    }
+
+    private DetectionEngine choose(GroupStats stats, Duration window) {
+        DetectionEngine cypher = engines.get(CypherDetectionEngine.NAME);
+        DetectionEngine java = engines.get(JavaDetectionEngine.NAME);
+        DetectionEngine batched = engines.get(BatchedCypherDetectionEngine.NAME);
+
+        boolean heavy = stats.pairWork() >= detectionProperties.getBatchedMinPairWork()
+            || stats.skew() >= detectionProperties.getSkewFactor();
+        if (!heavy) {
+            return cypher;
+        }
+        boolean fitsInMemory = stats.entities() <= detectionProperties.getJavaMaxEntities();
+        if (fitsInMemory && (window != null || !batched.isAvailable())) {
+            return java;
+        }
+        if (batched.isAvailable()) {
+            return batched;
+        }
+        return cypher;
+    }
+
+    /** Reads the group statistics of a relationship's fingerprint */
+    public GroupStats stats(DetectedRelationship relationship) {
+        String query = "MATCH (n:" + relationship.label() + ") WHERE n." + relationship.fingerprintProperty() +
+            " IS NOT NULL WITH n." + relationship.fingerprintProperty() + " AS fingerprint, count(*) AS size " +
+            "RETURN count(fingerprint) AS groups, sum(size) AS entities, max(size) AS largest, " +
+            "sum(size * (size - 1) / 2) AS pairWork";
+        return neo4jClient.query(query).fetchAs(GroupStats.class)
+            .mappedBy((typeSystem, record) -> new GroupStats(
+                record.get("groups").asLong(0),
+                record.get("entities").asLong(0),
+                record.get("largest").asLong(0),
+                record.get("pairWork").asLong(0)))
+            .one()
+            .orElse(new GroupStats(0, 0, 0, 0));
+    }
+
+    private DetectionEngine configured(DetectedRelationship relationship) {
+        String name = detectionProperties.getEngines().get(relationship.name());
+        if (name == null) {
+            return null;
+        }
+        DetectionEngine engine = engines.get(name);
+        if (engine == null) {
+            log.warn("Unknown detection engine '{}' configured for {}, choosing one instead", name, relationship);
+            return null;
+        }
+        if (!engine.isAvailable()) {
+            log.warn("Detection engine '{}' configured for {} is unavailable, choosing one instead", name, relationship);
+            return null;
+        }
+        return engine;
+    }
+}
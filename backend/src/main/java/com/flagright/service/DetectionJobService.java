@@ -0,0 +1,502 @@
+package com.flagright.service;
+
+import com.flagright.Repository.DetectionJobRepository;
+import com.flagright.Repository.TransactionRepository;
+import com.flagright.Repository.UserRepository;
+import com.flagright.config.DetectionProperties;
+import com.flagright.exception.DetectionJobConflictException;
+import com.flagright.exception.DetectionJobNotFoundException;
+import com.flagright.model.dto.DetectionJobProgress;
+import com.flagright.model.entity.DetectionJob;
+import com.flagright.model.entity.Transaction;
+import com.flagright.model.entity.User;
+import com.flagright.util.InstanceId;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs full relationship detection as a background job. Each phase starts
+ * with a full pass over every relationship type of its entities for which
+ * the engine selector picks a set-based engine; the types left to the Cypher
+ * engine are linked as users and then transactions are walked in internal-id
+ * order in fixed-size chunks. Each chunk and the job's checkpoint commit
+ * together in one transaction, so a failure loses at most one chunk and a
+ * restarted process resumes where the last commit left off.
+ *
+ * <p>Only one run is active at a time across all instances. A run is claimed
+ * in the database: starting one takes a lock node, so concurrent starts on
+ * any instance claim at most one, and the job records its owner and a
+ * heartbeat the owner renews. Every chunk first takes the job's node lock
+ * and checks the claim is still held, so a run cancelled elsewhere or taken
+ * over after its owner went quiet stops at its next chunk. A run whose
+ * heartbeat is older than {@code job-claim-timeout} is adopted by the first
+ * instance to notice.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DetectionJobService {
+
+    private final DetectionJobRepository detectionJobRepository;
+    private final UserRepository userRepository;
+    private final TransactionRepository transactionRepository;
+    private final RelationshipDetectionService relationshipDetectionService;
+    private final GraphSummaryService graphSummaryService;
+    private final DetectionProperties detectionProperties;
+    private final RankingService rankingService;
+    private final TransactionTemplate transactionTemplate;
+    private final WriteConcurrency writeConcurrency;
+    private final Neo4jClient neo4jClient;
+
+    /** Serialises starts across instances; the uniqueness constraint on the name keeps it a single node */
+    private static final String LOCK_JOBS =
+        "MERGE (l:DetectionJobLock {name: 'detection'}) SET l._lock = true REMOVE l._lock";
+    /** Takes a job's node lock for the rest of the transaction and reports whether this instance holds its claim */
+    private static final String HOLDS_CLAIM =
+        "MATCH (j:DetectionJob) WHERE id(j) = $jobId SET j._lock = true REMOVE j._lock " +
+        "RETURN j.status = 'RUNNING' AND j.owner = $owner AS held";
+    /** Claims a running job that is unowned or whose owner has stopped renewing its heartbeat */
+    private static final String CLAIM =
+        "MATCH (j:DetectionJob) WHERE id(j) = $jobId SET j._lock = true REMOVE j._lock " +
+        "WITH j WHERE j.status = 'RUNNING' AND (j.owner IS NULL OR j.owner = $owner " +
+        "OR j.heartbeatAt IS NULL OR j.heartbeatAt < $staleBefore) " +
+        "SET j.owner = $owner, j.heartbeatAt = $now RETURN id(j) AS id";
+    private static final String HEARTBEAT =
+        "MATCH (j:DetectionJob) WHERE id(j) = $jobId AND j.owner = $owner AND j.status = 'RUNNING' " +
+        "SET j.heartbeatAt = $now RETURN count(j) AS renewed";
+    private static final String RELEASE =
+        "MATCH (j:DetectionJob) WHERE id(j) = $jobId AND j.owner = $owner SET j.owner = null, j.heartbeatAt = null";
+
+    private final String owner = InstanceId.current();
+
+    private final Object lock = new Object();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "detection-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile RunningJob running;
+
+    /** The job this process is executing, with what is needed for rate and ETA */
+    private static final class RunningJob {
+        private final Long jobId;
+        private final long startedNanos = System.nanoTime();
+        private final long processedAtStart;
+        private volatile boolean cancelRequested;
+        private volatile boolean claimLost;
+
+        private RunningJob(Long jobId, long processedAtStart) {
+            this.jobId = jobId;
+            this.processedAtStart = processedAtStart;
+        }
+    }
+
+    /** Picks up a job left running by a stopped instance once the application is up */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        try {
+            adoptInterrupted();
+        } catch (Exception e) {
+            log.warn("Failed to check for interrupted detection jobs, start one manually to resume", e);
+        }
+    }
+
+    /**
+     * Renews the claim on the run this instance is executing, or adopts a run
+     * whose owner has stopped renewing its claim when this instance is idle.
+     */
+    @Scheduled(fixedDelayString = "${flagright.detection.job-heartbeat-interval:10000}")
+    public void heartbeat() {
+        RunningJob current = running;
+        try {
+            if (current == null) {
+                adoptInterrupted();
+                return;
+            }
+            long renewed = neo4jClient.query(HEARTBEAT)
+                .bind(current.jobId).to("jobId")
+                .bind(owner).to("owner")
+                .bind(LocalDateTime.now()).to("now")
+                .fetchAs(Long.class)
+                .mappedBy((typeSystem, record) -> record.get("renewed").asLong())
+                .one()
+                .orElse(0L);
+            if (renewed == 0) {
+                log.warn("Relationship detection job {} is no longer claimed by this instance, stopping it",
+                    current.jobId);
+                current.claimLost = true;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to renew the claim on detection job {}", current == null ? null : current.jobId, e);
+        }
+    }
+
+    /** Claims and launches the first running job no live instance holds, unless this instance is busy */
+    private void adoptInterrupted() {
+        synchronized (lock) {
+            if (running != null) {
+                return;
+            }
+            for (DetectionJob candidate : detectionJobRepository.findByStatus(DetectionJob.Status.RUNNING)) {
+                Optional<Long> claimed = transactionTemplate.execute(status -> claim(candidate.getId()));
+                if (claimed != null && claimed.isPresent()) {
+                    DetectionJob job = findJob(candidate.getId());
+                    log.info("Resuming relationship detection job {} from {} after id {}",
+                        job.getId(), job.getPhase(), job.getCursor());
+                    launch(job);
+                    return;
+                }
+            }
+        }
+    }
+
+    private Optional<Long> claim(Long jobId) {
+        return neo4jClient.query(CLAIM)
+            .bind(jobId).to("jobId")
+            .bind(owner).to("owner")
+            .bind(LocalDateTime.now()).to("now")
+            .bind(staleBefore()).to("staleBefore")
+            .fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("id").asLong())
+            .one();
+    }
+
+    /**
+     * Starts a detection run. With resume, an interrupted or failed run
+     * continues from its checkpoint instead of starting over.
+     *
+     * @throws DetectionJobConflictException if a run is already in progress
+     */
+    public DetectionJobProgress start(boolean resume) {
+        synchronized (lock) {
+            if (running != null) {
+                throw new DetectionJobConflictException(running.jobId);
+            }
+
+            long usersTotal = userRepository.count();
+            long transactionsTotal = transactionRepository.count();
+            DetectionJob job = transactionTemplate.execute(status -> claimRun(resume, usersTotal, transactionsTotal));
+
+            launch(job);
+            return progress(job);
+        }
+    }
+
+    /**
+     * Resumes or creates a run claimed by this instance, under the job lock so
+     * that concurrent starts on any instance see each other's claims.
+     *
+     * @throws DetectionJobConflictException if another instance holds a live claim on a run
+     */
+    private DetectionJob claimRun(boolean resume, long usersTotal, long transactionsTotal) {
+        neo4jClient.query(LOCK_JOBS).run();
+        LocalDateTime staleBefore = staleBefore();
+        for (DetectionJob active : detectionJobRepository.findByStatus(DetectionJob.Status.RUNNING)) {
+            if (active.getOwner() != null && !owner.equals(active.getOwner()) && active.getHeartbeatAt() != null
+                && !active.getHeartbeatAt().isBefore(staleBefore)) {
+                throw new DetectionJobConflictException(active.getId());
+            }
+        }
+
+        DetectionJob job = resume ? findResumable().orElse(null) : null;
+        if (job != null) {
+            log.info("Resuming relationship detection job {} from {} after id {}",
+                job.getId(), job.getPhase(), job.getCursor());
+            job.setStatus(DetectionJob.Status.RUNNING);
+            job.setError(null);
+            job.setFinishedAt(null);
+        } else {
+            abandonUnfinished();
+            job = new DetectionJob(usersTotal, transactionsTotal);
+            log.info("Starting relationship detection job over {} users and {} transactions",
+                usersTotal, transactionsTotal);
+        }
+        job.setUsersTotal(Math.max(usersTotal, job.getUsersProcessed()));
+        job.setTransactionsTotal(Math.max(transactionsTotal, job.getTransactionsProcessed()));
+        job.setOwner(owner);
+        job.setUpdatedAt(LocalDateTime.now());
+        job.setHeartbeatAt(job.getUpdatedAt());
+        return detectionJobRepository.save(job);
+    }
+
+    /** Asks a run to stop after its current chunk; an interrupted or failed run is marked cancelled so it is not resumed */
+    public DetectionJobProgress cancel(Long jobId) {
+        synchronized (lock) {
+            RunningJob current = running;
+            if (current != null && current.jobId.equals(jobId)) {
+                log.info("Cancelling relationship detection job {}", jobId);
+                current.cancelRequested = true;
+                return progress(findJob(jobId));
+            }
+
+            // Another instance running it sees the status change at its next chunk and stops.
+            DetectionJob job = transactionTemplate.execute(status -> {
+                neo4jClient.query("MATCH (j:DetectionJob) WHERE id(j) = $jobId SET j._lock = true REMOVE j._lock")
+                    .bind(jobId).to("jobId").run();
+                DetectionJob stored = findJob(jobId);
+                if (stored.getStatus() == DetectionJob.Status.RUNNING
+                    || stored.getStatus() == DetectionJob.Status.FAILED) {
+                    log.info("Cancelling relationship detection job {}", jobId);
+                    stored.setStatus(DetectionJob.Status.CANCELLED);
+                    stored.setFinishedAt(LocalDateTime.now());
+                    stored.setUpdatedAt(stored.getFinishedAt());
+                    stored = detectionJobRepository.save(stored);
+                }
+                return stored;
+            });
+            return progress(job);
+        }
+    }
+
+    /** Gets the progress of a run */
+    public DetectionJobProgress getProgress(Long jobId) {
+        return progress(findJob(jobId));
+    }
+
+    /** Gets the progress of the most recently started run */
+    public DetectionJobProgress getLatestProgress() {
+        return detectionJobRepository.findFirstByOrderByStartedAtDesc()
+            .map(this::progress)
+            .orElseThrow(() -> new DetectionJobNotFoundException("No relationship detection job has been run"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // A run cut short here stays RUNNING; releasing the claim lets another instance resume it right away.
+        worker.shutdownNow();
+        RunningJob current = running;
+        if (current != null) {
+            try {
+                neo4jClient.query(RELEASE).bind(current.jobId).to("jobId").bind(owner).to("owner").run();
+            } catch (Exception e) {
+                log.warn("Failed to release detection job {}, it is resumed once its claim times out",
+                    current.jobId, e);
+            }
+        }
+    }
+
+    private void launch(DetectionJob job) {
+        RunningJob handle = new RunningJob(job.getId(), job.getUsersProcessed() + job.getTransactionsProcessed());
+        running = handle;
+        worker.submit(() -> run(handle));
+    }
+
+    private void run(RunningJob handle) {
+        long started = System.currentTimeMillis();
+        try {
+            DetectionJob job = findJob(handle.jobId);
+            while (job.getPhase() != DetectionJob.Phase.DONE) {
+                if (handle.claimLost) {
+                    throw new ClaimLostException(handle.jobId);
+                }
+                if (handle.cancelRequested) {
+                    finish(handle.jobId, DetectionJob.Status.CANCELLED, null);
+                    log.info("Relationship detection job {} cancelled", handle.jobId);
+                    return;
+                }
+                if (job.getCursor() == -1L) {
+                    runFullPasses(handle, job.getPhase());
+                }
+                job = writeConcurrency.retrying("Detection chunk",
+                    () -> transactionTemplate.execute(status -> processChunk(handle.jobId)));
+            }
+
+            graphSummaryService.invalidateAll();
+            rankingService.rebuildAfterBulkChange();
+            finish(handle.jobId, DetectionJob.Status.COMPLETED, null);
+            log.info("Relationship detection job {} completed in {} ms", handle.jobId, System.currentTimeMillis() - started);
+        } catch (ClaimLostException e) {
+            log.info("Relationship detection job {} stopped: {}", handle.jobId, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Relationship detection job {} failed, starting again resumes from the last checkpoint",
+                handle.jobId, e);
+            try {
+                finish(handle.jobId, DetectionJob.Status.FAILED, e.getMessage());
+            } catch (RuntimeException recordFailure) {
+                log.warn("Failed to record failure of detection job {}, it will be resumed on restart",
+                    handle.jobId, recordFailure);
+            }
+        } finally {
+            synchronized (lock) {
+                running = null;
+            }
+        }
+    }
+
+    /**
+     * Runs the full passes of a phase's relationship types, recording each
+     * completed type on the job so a resumed run neither repeats it nor links
+     * it again chunk by chunk.
+     */
+    private void runFullPasses(RunningJob handle, DetectionJob.Phase phase) {
+        Set<DetectedRelationship> done = fullPassRelationships(findJob(handle.jobId));
+        for (DetectedRelationship relationship : DetectedRelationship.values()) {
+            if (relationship.linksUsers() != (phase == DetectionJob.Phase.USERS) || done.contains(relationship)
+                || handle.cancelRequested) {
+                continue;
+            }
+            if (relationshipDetectionService.detectInFullPass(relationship)) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    requireClaim(handle.jobId);
+                    DetectionJob job = findJob(handle.jobId);
+                    List<String> linked = new ArrayList<>(fullPassRelationships(job).stream().map(Enum::name).toList());
+                    linked.add(relationship.name());
+                    job.setFullPassRelationships(linked);
+                    job.setUpdatedAt(LocalDateTime.now());
+                    detectionJobRepository.save(job);
+                });
+            }
+        }
+    }
+
+    private static Set<DetectedRelationship> fullPassRelationships(DetectionJob job) {
+        Set<DetectedRelationship> relationships = EnumSet.noneOf(DetectedRelationship.class);
+        if (job.getFullPassRelationships() != null) {
+            job.getFullPassRelationships().forEach(name -> relationships.add(DetectedRelationship.valueOf(name)));
+        }
+        return relationships;
+    }
+
+    /** Processes the next chunk of the current phase and advances the checkpoint in the same transaction */
+    private DetectionJob processChunk(Long jobId) {
+        requireClaim(jobId);
+        DetectionJob job = findJob(jobId);
+        int chunkSize = Math.max(1, detectionProperties.getJobChunkSize());
+
+        if (job.getPhase() == DetectionJob.Phase.USERS) {
+            List<User> users = userRepository.findChunkAfter(job.getCursor(), chunkSize);
+            if (users.isEmpty()) {
+                job.setPhase(DetectionJob.Phase.TRANSACTIONS);
+                job.setCursor(-1L);
+            } else {
+                relationshipDetectionService.detectUserChunk(users, fullPassRelationships(job));
+                job.setCursor(users.get(users.size() - 1).getId());
+                job.setUsersProcessed(job.getUsersProcessed() + users.size());
+            }
+        } else if (job.getPhase() == DetectionJob.Phase.TRANSACTIONS) {
+            List<Transaction> transactions = transactionRepository.findChunkAfter(job.getCursor(), chunkSize);
+            if (transactions.isEmpty()) {
+                job.setPhase(DetectionJob.Phase.DONE);
+            } else {
+                relationshipDetectionService.detectTransactionChunk(transactions, fullPassRelationships(job));
+                job.setCursor(transactions.get(transactions.size() - 1).getId());
+                job.setTransactionsProcessed(job.getTransactionsProcessed() + transactions.size());
+            }
+        }
+
+        job.setUpdatedAt(LocalDateTime.now());
+        job.setHeartbeatAt(job.getUpdatedAt());
+        log.debug("Detection job {} checkpoint: {} after id {}", jobId, job.getPhase(), job.getCursor());
+        return detectionJobRepository.save(job);
+    }
+
+    private void finish(Long jobId, DetectionJob.Status status, String error) {
+        transactionTemplate.executeWithoutResult(transaction -> {
+            requireClaim(jobId);
+            DetectionJob job = findJob(jobId);
+            job.setStatus(status);
+            job.setError(error);
+            job.setFinishedAt(LocalDateTime.now());
+            job.setUpdatedAt(job.getFinishedAt());
+            detectionJobRepository.save(job);
+        });
+    }
+
+    /**
+     * Locks the job's node until the surrounding transaction ends and checks
+     * that this instance still holds its claim, so no other instance can
+     * take the run over while this transaction writes to it.
+     *
+     * @throws ClaimLostException if the run was cancelled or taken over
+     */
+    private void requireClaim(Long jobId) {
+        boolean held = neo4jClient.query(HOLDS_CLAIM)
+            .bind(jobId).to("jobId")
+            .bind(owner).to("owner")
+            .fetchAs(Boolean.class)
+            .mappedBy((typeSystem, record) -> record.get("held").asBoolean(false))
+            .one()
+            .orElse(false);
+        if (!held) {
+            throw new ClaimLostException(jobId);
+        }
+    }
+
+    private LocalDateTime staleBefore() {
+        return LocalDateTime.now().minus(detectionProperties.getJobClaimTimeout());
+    }
+
+    /** Thrown in a run's thread when the run is no longer this instance's to execute */
+    private static final class ClaimLostException extends RuntimeException {
+        private ClaimLostException(Long jobId) {
+            super("job " + jobId + " was cancelled or is claimed by another instance");
+        }
+    }
+
+    /** A run left RUNNING by a stopped instance, or the latest run if it failed */
+    private Optional<DetectionJob> findResumable() {
+        Optional<DetectionJob> interrupted = detectionJobRepository.findByStatus(DetectionJob.Status.RUNNING)
+            .stream().findFirst();
+        if (interrupted.isPresent()) {
+            return interrupted;
+        }
+        return detectionJobRepository.findFirstByOrderByStartedAtDesc()
+            .filter(job -> job.getStatus() == DetectionJob.Status.FAILED);
+    }
+
+    /** Marks runs left behind by stopped instances as cancelled when a fresh run replaces them */
+    private void abandonUnfinished() {
+        for (DetectionJob job : detectionJobRepository.findByStatus(DetectionJob.Status.RUNNING)) {
+            job.setStatus(DetectionJob.Status.CANCELLED);
+            job.setFinishedAt(LocalDateTime.now());
+            job.setUpdatedAt(job.getFinishedAt());
+            detectionJobRepository.save(job);
+        }
+    }
+
+    private DetectionJob findJob(Long jobId) {
+        return detectionJobRepository.findById(jobId)
+            .orElseThrow(() -> new DetectionJobNotFoundException("Detection job not found with ID: " + jobId));
+    }
+
+    private DetectionJobProgress progress(DetectionJob job) {
+        long processed = job.getUsersProcessed() + job.getTransactionsProcessed();
+        long total = Math.max(processed, job.getUsersTotal() + job.getTransactionsTotal());
+        double percent = job.getPhase() == DetectionJob.Phase.DONE ? 100.0
+            : total == 0 ? 0.0 : Math.min(99.9, processed * 100.0 / total);
+
+        double rate = 0.0;
+        Long etaSeconds = null;
+        RunningJob current = running;
+        if (current != null && current.jobId.equals(job.getId())) {
+            double elapsedSeconds = (System.nanoTime() - current.startedNanos) / 1e9;
+            long processedThisRun = processed - current.processedAtStart;
+            if (elapsedSeconds > 0 && processedThisRun > 0) {
+                rate = processedThisRun / elapsedSeconds;
+                etaSeconds = (long) Math.ceil((total - processed) / rate);
+            }
+        }
+
+        return new DetectionJobProgress(job.getId(), job.getStatus().name(), job.getPhase().name(),
+            job.getUsersProcessed(), job.getUsersTotal(), job.getTransactionsProcessed(), job.getTransactionsTotal(),
+            Math.round(percent * 10) / 10.0, Math.round(rate * 10) / 10.0, etaSeconds,
+            job.getStartedAt(), job.getUpdatedAt(), job.getFinishedAt(), job.getError());
+    }
+}
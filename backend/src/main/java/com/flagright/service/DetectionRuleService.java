@@ -0,0 +1,521 @@
+package com.flagright.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flagright.config.DetectionProperties;
+import com.flagright.config.DetectionRuleProperties;
+import com.flagright.model.dto.DetectionRuleDefinition;
+import com.flagright.model.entity.Transaction;
+import com.flagright.model.entity.User;
+import com.flagright.util.TimeBuckets;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Detection for relationship types declared in a rules file rather than in
+ * code. Each rule names an entity, the attributes that must match, a
+ * normaliser, an optional window and a cap on group size; see
+ * {@link CompiledDetectionRule} for how one is checked and compiled.
+ *
+ * <p>A new or updated entity is linked by all rules for its kind with one
+ * statement that swaps in its rule keys and returns the previous ones, then
+ * one key seek and one merge per rule whose key is set; a changed key first
+ * drops the rule's old edges. A full pass scans each entity kind once for
+ * all of its rules, reading the union of their attributes, and links every
+ * rule's groups in memory as the Java engine does. The file is re-read on a
+ * schedule; a valid edit replaces the rule set without a restart, an invalid
+ * one is logged and the previous rules stay in force.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DetectionRuleService {
+
+    private final Neo4jClient neo4jClient;
+    private final ResourceLoader resourceLoader;
+    private final ObjectMapper objectMapper;
+    private final DetectionRuleProperties detectionRuleProperties;
+    private final DetectionProperties detectionProperties;
+    private final ChangeFeedService changeFeedService;
+    private final GraphSummaryService graphSummaryService;
+
+    private final ExecutorService backfiller = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "detection-rule-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Object passLock = new Object();
+
+    private volatile Rules rules = Rules.of(List.of());
+    private String loadedSource;
+
+    private record Member(long id, LocalDateTime createdAt) {
+    }
+
+    /** A compiled rule set, with each entity's rules and the statement that swaps their keys */
+    private record Rules(List<CompiledDetectionRule> all,
+                         Map<CompiledDetectionRule.Entity, List<CompiledDetectionRule>> byEntity,
+                         Map<CompiledDetectionRule.Entity, String> swapKeysQueries) {
+
+        private static Rules of(List<CompiledDetectionRule> compiled) {
+            Map<CompiledDetectionRule.Entity, List<CompiledDetectionRule>> byEntity =
+                new EnumMap<>(CompiledDetectionRule.Entity.class);
+            Map<CompiledDetectionRule.Entity, String> swapKeysQueries = new EnumMap<>(CompiledDetectionRule.Entity.class);
+            for (CompiledDetectionRule.Entity entity : CompiledDetectionRule.Entity.values()) {
+                List<CompiledDetectionRule> forEntity = compiled.stream().filter(rule -> rule.entity() == entity).toList();
+                byEntity.put(entity, forEntity);
+                if (!forEntity.isEmpty()) {
+                    swapKeysQueries.put(entity, swapKeysQuery(entity, forEntity));
+                }
+            }
+            return new Rules(compiled, byEntity, swapKeysQueries);
+        }
+
+        /** Returns an entity's previous keys for the rules, in order, and sets the new ones from $keys */
+        private static String swapKeysQuery(CompiledDetectionRule.Entity entity, List<CompiledDetectionRule> forEntity) {
+            StringBuilder previous = new StringBuilder();
+            StringBuilder assignments = new StringBuilder();
+            for (int i = 0; i < forEntity.size(); i++) {
+                String property = "n." + forEntity.get(i).keyProperty();
+                previous.append(i == 0 ? "" : ", ").append(property);
+                assignments.append(i == 0 ? "" : ", ").append(property).append(" = $keys[").append(i).append("]");
+            }
+            return "MATCH (n:" + entity.label() + ") WHERE id(n) = $id " +
+                "WITH n, [" + previous + "] AS previous SET " + assignments + " RETURN previous";
+        }
+    }
+
+    /** Loads the rules once the application is up */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        reloadQuietly();
+    }
+
+    /** Picks up edits to the rules file */
+    @Scheduled(fixedDelayString = "${flagright.rules.reload-interval:30000}",
+        initialDelayString = "${flagright.rules.reload-interval:30000}")
+    public void scheduledReload() {
+        if (detectionRuleProperties.isHotReload()) {
+            reloadQuietly();
+        }
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("Failed to load detection rules from {}, keeping the {} rules in force",
+                detectionRuleProperties.getLocation(), rules.all().size(), e);
+        }
+    }
+
+    /**
+     * Reads and compiles the rules file if it changed since it was last
+     * loaded, and returns the rules in force. New and changed rules are run
+     * over existing entities in the background.
+     *
+     * @throws IllegalArgumentException if any rule is invalid; the previous rules stay in force
+     */
+    public synchronized List<DetectionRuleDefinition> reload() {
+        String source = readSource();
+        if (Objects.equals(source, loadedSource)) {
+            return getRules();
+        }
+
+        List<CompiledDetectionRule> compiled = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (DetectionRuleDefinition definition : parse(source)) {
+            if (!definition.isEnabled()) {
+                continue;
+            }
+            CompiledDetectionRule rule = CompiledDetectionRule.compile(definition,
+                detectionRuleProperties.getDefaultCap());
+            if (!names.add(rule.name())) {
+                throw new IllegalArgumentException("Rule " + rule.name() + " is defined more than once");
+            }
+            compiled.add(rule);
+        }
+        for (CompiledDetectionRule rule : compiled) {
+            neo4jClient.query(rule.indexStatement()).run();
+        }
+
+        Map<String, DetectionRuleDefinition> previous = new HashMap<>();
+        for (CompiledDetectionRule rule : rules.all()) {
+            previous.put(rule.name(), rule.definition());
+        }
+        List<CompiledDetectionRule> changed = compiled.stream()
+            .filter(rule -> !rule.definition().equals(previous.get(rule.name())))
+            .toList();
+        previous.keySet().removeAll(names);
+        if (!previous.isEmpty()) {
+            log.warn("Detection rules {} were removed; their existing edges are left in place", previous.keySet());
+        }
+
+        rules = Rules.of(compiled);
+        loadedSource = source;
+        log.info("Loaded {} detection rules from {}, {} new or changed", compiled.size(),
+            detectionRuleProperties.getLocation(), changed.size());
+
+        if (!changed.isEmpty() && detectionRuleProperties.isBackfillOnChange()) {
+            backfiller.submit(() -> {
+                try {
+                    linkAll(changed);
+                    graphSummaryService.invalidateAll();
+                } catch (Exception e) {
+                    log.error("Backfill of detection rules failed", e);
+                }
+            });
+        }
+        return getRules();
+    }
+
+    /** Returns the definitions of the rules in force */
+    public List<DetectionRuleDefinition> getRules() {
+        return rules.all().stream().map(CompiledDetectionRule::definition).toList();
+    }
+
+    private String readSource() {
+        Resource resource = resourceLoader.getResource(detectionRuleProperties.getLocation());
+        if (!resource.exists()) {
+            return "";
+        }
+        try (InputStream in = resource.getInputStream()) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read detection rules from " +
+                detectionRuleProperties.getLocation(), e);
+        }
+    }
+
+    /** Parses a YAML or JSON document holding either a list of rules or a "rules" list */
+    private List<DetectionRuleDefinition> parse(String source) {
+        if (source.isBlank()) {
+            return List.of();
+        }
+        Object document;
+        try {
+            document = detectionRuleProperties.getLocation().endsWith(".json")
+                ? objectMapper.readValue(source, Object.class)
+                : new Yaml(new SafeConstructor(new LoaderOptions())).load(source);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Detection rules are not valid YAML or JSON: " + e.getMessage());
+        }
+        if (document instanceof Map<?, ?> map) {
+            document = map.get("rules");
+        }
+        if (document == null) {
+            return List.of();
+        }
+        try {
+            return objectMapper.convertValue(document, new TypeReference<List<DetectionRuleDefinition>>() { });
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Detection rules do not match the rule format: " + e.getMessage());
+        }
+    }
+
+    /** Links a user by every user rule, in the caller's transaction */
+    public void linkUser(User user) {
+        link(CompiledDetectionRule.Entity.USER, user.getId(), user, user.getCreatedAt(), "user-");
+    }
+
+    /** Links a transaction by every transaction rule, in the caller's transaction */
+    public void linkTransaction(Transaction transaction) {
+        link(CompiledDetectionRule.Entity.TRANSACTION, transaction.getId(), transaction, transaction.getCreatedAt(),
+            "transaction-");
+    }
+
+    private void link(CompiledDetectionRule.Entity entity, Long id, Object entityObject, LocalDateTime createdAt,
+                      String feedPrefix) {
+        Rules current = rules;
+        List<CompiledDetectionRule> forEntity = current.byEntity().get(entity);
+        if (forEntity.isEmpty()) {
+            return;
+        }
+        List<Long> keys = new ArrayList<>(forEntity.size());
+        for (CompiledDetectionRule rule : forEntity) {
+            keys.add(rule.keyOf(entityObject));
+        }
+        Map<String, Object> swapped = neo4jClient.query(current.swapKeysQueries().get(entity))
+            .bind(id).to("id")
+            .bind(keys).to("keys")
+            .fetch().one()
+            .orElse(null);
+        if (swapped == null) {
+            return;
+        }
+        List<?> previous = (List<?>) swapped.get("previous");
+
+        for (int i = 0; i < forEntity.size(); i++) {
+            CompiledDetectionRule rule = forEntity.get(i);
+            Long key = keys.get(i);
+            Object stored = previous.get(i);
+            Long previousKey = stored == null ? null : ((Number) stored).longValue();
+            if (previousKey != null && !previousKey.equals(key)) {
+                for (List<Long> edge : unlink(rule, List.of(id))) {
+                    changeFeedService.publishConnectionRemoved(feedPrefix + id, feedPrefix + edge.get(1), rule.name());
+                }
+            }
+            if (key != null) {
+                for (Long linkedId : linkAnchor(rule, id, key, createdAt)) {
+                    changeFeedService.publishConnection(feedPrefix + id, feedPrefix + linkedId, rule.name());
+                }
+            }
+        }
+    }
+
+    /**
+     * Links one entity to the others sharing its key, unless the group is
+     * over the rule's cap, and returns the ones whose edge is new
+     */
+    private List<Long> linkAnchor(CompiledDetectionRule rule, Long id, Long key, LocalDateTime createdAt) {
+        Collection<Map<String, Object>> candidates = neo4jClient.query(rule.candidateQuery())
+            .bind(key).to("key")
+            .bind(id).to("id")
+            .bind(rule.cap()).to("limit")
+            .fetch().all();
+        if (candidates.size() >= rule.cap()) {
+            log.debug("Skipped {} for {}: more than {} entities share its value", rule.name(), id, rule.cap());
+            return List.of();
+        }
+
+        List<List<Long>> pairs = new ArrayList<>();
+        for (Map<String, Object> candidate : candidates) {
+            if (TimeBuckets.withinWindow(createdAt, (LocalDateTime) candidate.get("createdAt"), rule.window())) {
+                pairs.add(List.of(id, ((Number) candidate.get("id")).longValue()));
+            }
+        }
+        if (pairs.isEmpty()) {
+            return List.of();
+        }
+
+        // Edges the MERGE found already in place were announced when they were made.
+        List<Long> created = new ArrayList<>();
+        for (Map<String, Object> row : neo4jClient.query(rule.mergeQuery())
+                .bind(pairs).to("pairs")
+                .bind(LocalDateTime.now()).to("now")
+                .fetch().all()) {
+            if (Boolean.TRUE.equals(row.get("created"))) {
+                created.add(((Number) row.get("otherId")).longValue());
+            }
+        }
+        return created;
+    }
+
+    /** Runs every rule over all existing entities and returns the pairs linked per rule */
+    public Map<String, Long> linkAll() {
+        Map<String, Long> linked = linkAll(rules.all());
+        graphSummaryService.invalidateAll();
+        return linked;
+    }
+
+    /** Runs rules over all existing entities, scanning each entity kind once for all of its rules */
+    private Map<String, Long> linkAll(List<CompiledDetectionRule> selected) {
+        synchronized (passLock) {
+            Map<String, Long> linked = new LinkedHashMap<>();
+            for (CompiledDetectionRule.Entity entity : CompiledDetectionRule.Entity.values()) {
+                List<CompiledDetectionRule> forEntity = selected.stream().filter(rule -> rule.entity() == entity)
+                    .toList();
+                if (!forEntity.isEmpty()) {
+                    linked.putAll(fusedPass(entity, forEntity));
+                }
+            }
+            return linked;
+        }
+    }
+
+    private Map<String, Long> fusedPass(CompiledDetectionRule.Entity entity, List<CompiledDetectionRule> forEntity) {
+        long started = System.currentTimeMillis();
+
+        // The union of the rules' attributes, and where each rule's attributes sit in it.
+        List<String> attributes = new ArrayList<>();
+        int[][] positions = new int[forEntity.size()][];
+        for (int r = 0; r < forEntity.size(); r++) {
+            List<String> ruleAttributes = forEntity.get(r).attributes();
+            positions[r] = new int[ruleAttributes.size()];
+            for (int a = 0; a < ruleAttributes.size(); a++) {
+                int position = attributes.indexOf(ruleAttributes.get(a));
+                if (position < 0) {
+                    position = attributes.size();
+                    attributes.add(ruleAttributes.get(a));
+                }
+                positions[r][a] = position;
+            }
+        }
+        List<String> present = new ArrayList<>();
+        for (String attribute : attributes) {
+            present.add("n." + attribute + " IS NOT NULL");
+        }
+        for (CompiledDetectionRule rule : forEntity) {
+            present.add("n." + rule.keyProperty() + " IS NOT NULL");
+        }
+        String scan = "MATCH (n:" + entity.label() + ") WHERE id(n) > $afterId AND (" +
+            String.join(" OR ", present) + ") " +
+            "RETURN id(n) AS id, n.createdAt AS createdAt, " +
+            "[" + String.join(", ", attributes.stream().map(attribute -> "n." + attribute).toList()) + "] AS attributes, " +
+            "[" + String.join(", ", forEntity.stream().map(rule -> "n." + rule.keyProperty()).toList()) + "] AS keys " +
+            "ORDER BY id(n) LIMIT $limit";
+
+        List<Map<Long, List<Member>>> groups = new ArrayList<>();
+        List<List<Map<String, Object>>> keyChanges = new ArrayList<>();
+        List<List<Long>> stale = new ArrayList<>();
+        for (int r = 0; r < forEntity.size(); r++) {
+            groups.add(new HashMap<>());
+            keyChanges.add(new ArrayList<>());
+            stale.add(new ArrayList<>());
+        }
+
+        int chunkSize = Math.max(1, detectionRuleProperties.getScanChunkSize());
+        long afterId = -1;
+        long scanned = 0;
+        while (true) {
+            Collection<Map<String, Object>> rows = neo4jClient.query(scan)
+                .bind(afterId).to("afterId")
+                .bind(chunkSize).to("limit")
+                .fetch().all();
+            for (Map<String, Object> row : rows) {
+                long id = ((Number) row.get("id")).longValue();
+                LocalDateTime createdAt = (LocalDateTime) row.get("createdAt");
+                List<?> values = (List<?>) row.get("attributes");
+                List<?> storedKeys = (List<?>) row.get("keys");
+                for (int r = 0; r < forEntity.size(); r++) {
+                    List<Object> ruleValues = new ArrayList<>(positions[r].length);
+                    for (int position : positions[r]) {
+                        ruleValues.add(values.get(position));
+                    }
+                    Long key = forEntity.get(r).keyOf(ruleValues);
+                    Object stored = storedKeys.get(r);
+                    Long storedKey = stored == null ? null : ((Number) stored).longValue();
+                    if (!Objects.equals(key, storedKey)) {
+                        Map<String, Object> change = new HashMap<>();
+                        change.put("id", id);
+                        change.put("key", key);
+                        keyChanges.get(r).add(change);
+                        if (storedKey != null) {
+                            stale.get(r).add(id);
+                        }
+                    }
+                    if (key != null) {
+                        groups.get(r).computeIfAbsent(key, k -> new ArrayList<>()).add(new Member(id, createdAt));
+                    }
+                }
+                afterId = id;
+            }
+            scanned += rows.size();
+            if (rows.size() < chunkSize) {
+                break;
+            }
+        }
+
+        Map<String, Long> linked = new LinkedHashMap<>();
+        int batchSize = Math.max(1, detectionProperties.getBatchSize());
+        for (int r = 0; r < forEntity.size(); r++) {
+            CompiledDetectionRule rule = forEntity.get(r);
+            for (int from = 0; from < stale.get(r).size(); from += batchSize) {
+                unlink(rule, stale.get(r).subList(from, Math.min(from + batchSize, stale.get(r).size())));
+            }
+            List<Map<String, Object>> changes = keyChanges.get(r);
+            for (int from = 0; from < changes.size(); from += batchSize) {
+                neo4jClient.query(rule.setKeysQuery())
+                    .bind(new ArrayList<>(changes.subList(from, Math.min(from + batchSize, changes.size()))))
+                    .to("rows").run();
+            }
+            linked.put(rule.name(), linkGroups(rule, groups.get(r).values(), batchSize));
+        }
+        log.info("Ran detection rules {} over {} {} entities in {} ms, linked {}", linked.keySet(), scanned,
+            entity.label(), System.currentTimeMillis() - started, linked);
+        return linked;
+    }
+
+    /** Merges every pair within each group, sweeping groups in time order when the rule has a window */
+    private long linkGroups(CompiledDetectionRule rule, Collection<List<Member>> groups, int batchSize) {
+        long linked = 0;
+        int skipped = 0;
+        List<List<Long>> pairs = new ArrayList<>(batchSize);
+        for (List<Member> members : groups) {
+            if (members.size() < 2) {
+                continue;
+            }
+            if (members.size() > rule.cap()) {
+                skipped++;
+                continue;
+            }
+            if (rule.window() != null) {
+                members.sort(Comparator.comparing(Member::createdAt, Comparator.nullsLast(Comparator.naturalOrder())));
+            }
+            for (int i = 0; i < members.size(); i++) {
+                for (int j = i + 1; j < members.size(); j++) {
+                    Member first = members.get(i);
+                    Member second = members.get(j);
+                    if (!TimeBuckets.withinWindow(first.createdAt(), second.createdAt(), rule.window())) {
+                        break;
+                    }
+                    pairs.add(List.of(first.id(), second.id()));
+                    linked++;
+                    if (pairs.size() >= batchSize) {
+                        mergePairs(rule, pairs);
+                        pairs.clear();
+                    }
+                }
+            }
+        }
+        mergePairs(rule, pairs);
+        if (skipped > 0) {
+            log.info("Skipped {} groups over the cap of {} for {}", skipped, rule.cap(), rule.name());
+        }
+        return linked;
+    }
+
+    private void mergePairs(CompiledDetectionRule rule, List<List<Long>> pairs) {
+        if (!pairs.isEmpty()) {
+            neo4jClient.query(rule.mergeQuery()).bind(new ArrayList<>(pairs)).to("pairs")
+                .bind(LocalDateTime.now()).to("now").run();
+        }
+    }
+
+    /** Removes the rule's edges of the given entities and returns each removed edge as [id, otherId] */
+    private List<List<Long>> unlink(CompiledDetectionRule rule, List<Long> ids) {
+        List<List<Long>> removed = new ArrayList<>();
+        for (Map<String, Object> row : neo4jClient.query(rule.unlinkQuery())
+                .bind(new ArrayList<>(ids)).to("ids")
+                .fetch().all()) {
+            removed.add(List.of(((Number) row.get("id")).longValue(), ((Number) row.get("otherId")).longValue()));
+        }
+        return removed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfiller.shutdownNow();
+    }
+}
@@ -0,0 +1,226 @@
+package com.flagright.service;
+
+import com.flagright.config.IdProperties;
+import com.flagright.util.InstanceId;
+import com.flagright.util.TimeOrderedIds;
+
+import jakarta.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out the stable, time-ordered {@code uid} that users, transactions
+ * and connections carry next to their internal Neo4j id. A uid is assigned
+ * before the write, so a batch can create nodes and the edges between them
+ * in one statement, and uids sort by creation time, so they are the keyset
+ * pagination cursor. Each instance needs its own worker number. It comes
+ * from {@code flagright.ids.worker-id} when set; otherwise the instance
+ * leases a free one from Neo4j on first use and renews the lease on a
+ * schedule. Ids are only handed out while the lease is known to be held: an
+ * instance that could not renew in time leases again, possibly a different
+ * number, before its next id, and a lapsed number is only given to another
+ * instance once its lease has expired.
+ */
+@Component
+@Slf4j
+public class EntityIds {
+
+    /** Labels whose nodes carry a uid */
+    public static final List<String> LABELS = List.of("User", "Transaction", "UserConnection", "TransactionConnection");
+
+    /**
+     * Takes the lowest expired worker number, or the next never leased one,
+     * under a lock node so concurrent instances never take the same number.
+     */
+    private static final String LEASE =
+        "MERGE (l:IdWorkerLock {name: 'ids'}) SET l._lock = true REMOVE l._lock " +
+        "WITH l OPTIONAL MATCH (expired:IdWorkerLease) WHERE expired.expiresAt < $now " +
+        "WITH expired ORDER BY expired.worker LIMIT 1 " +
+        "OPTIONAL MATCH (leased:IdWorkerLease) " +
+        "WITH expired, count(leased) AS leasedCount " +
+        "WITH coalesce(expired.worker, leasedCount) AS worker WHERE worker <= $maxWorker " +
+        "MERGE (w:IdWorkerLease {worker: worker}) SET w.owner = $owner, w.expiresAt = $expiresAt " +
+        "RETURN worker";
+    private static final String RENEW =
+        "MATCH (w:IdWorkerLease {worker: $worker}) WHERE w.owner = $owner AND w.expiresAt >= $now " +
+        "SET w.expiresAt = $expiresAt RETURN count(w) AS renewed";
+    private static final String RELEASE =
+        "MATCH (w:IdWorkerLease {worker: $worker}) WHERE w.owner = $owner SET w.expiresAt = $now";
+
+    private final IdProperties idProperties;
+    private final Neo4jClient neo4jClient;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate leaseTransactions;
+    private final String owner = InstanceId.current();
+
+    /** Generator for the current worker number; null until a lease is taken */
+    private volatile TimeOrderedIds ids;
+    private volatile int leasedWorker = -1;
+    /** Local time up to which the lease is certainly held; ids are not handed out past it */
+    private volatile long leaseValidUntilMillis;
+
+    public EntityIds(IdProperties idProperties, Neo4jClient neo4jClient, TransactionTemplate transactionTemplate) {
+        this.idProperties = idProperties;
+        this.neo4jClient = neo4jClient;
+        this.transactionTemplate = transactionTemplate;
+        // Ids are drawn inside callers' transactions; the lease must not roll back with them.
+        this.leaseTransactions = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.leaseTransactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (idProperties.getWorkerId() >= 0) {
+            this.ids = new TimeOrderedIds(idProperties.getWorkerId());
+            this.leaseValidUntilMillis = Long.MAX_VALUE;
+            log.info("Generating entity ids as configured worker {}", idProperties.getWorkerId());
+        }
+    }
+
+    /** A new uid */
+    public long next() {
+        TimeOrderedIds current = ids;
+        if (current == null || System.currentTimeMillis() >= leaseValidUntilMillis) {
+            current = renewOrLease();
+        }
+        return current.next();
+    }
+
+    /** Extends the worker lease well before it runs out */
+    @Scheduled(fixedDelayString = "${flagright.ids.lease-renew-interval:30000}")
+    public void renewLease() {
+        if (leasedWorker < 0) {
+            return;
+        }
+        try {
+            renewOrLease();
+        } catch (Exception e) {
+            log.warn("Failed to renew entity id worker lease {}, ids pause when it runs out", leasedWorker, e);
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        int worker = leasedWorker;
+        if (worker < 0) {
+            return;
+        }
+        try {
+            neo4jClient.query(RELEASE)
+                .bind(worker).to("worker")
+                .bind(owner).to("owner")
+                .bind(LocalDateTime.now()).to("now")
+                .run();
+        } catch (Exception e) {
+            log.warn("Failed to release entity id worker lease {}, it is reused once it expires", worker, e);
+        }
+    }
+
+    /**
+     * Renews the held lease, or takes a new one when none is held or it was
+     * lost; the validity window starts before the database is asked, so it
+     * never outlasts the expiry the database recorded.
+     */
+    private synchronized TimeOrderedIds renewOrLease() {
+        Duration duration = idProperties.getLeaseDuration();
+        long requestedAtMillis = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plus(duration);
+
+        if (leasedWorker >= 0) {
+            int worker = leasedWorker;
+            Long renewed = leaseTransactions.execute(status -> neo4jClient.query(RENEW)
+                .bind(worker).to("worker")
+                .bind(owner).to("owner")
+                .bind(now).to("now")
+                .bind(expiresAt).to("expiresAt")
+                .fetchAs(Long.class)
+                .mappedBy((typeSystem, record) -> record.get("renewed").asLong())
+                .one()
+                .orElse(0L));
+            if (renewed != null && renewed > 0) {
+                leaseValidUntilMillis = requestedAtMillis + duration.toMillis();
+                return ids;
+            }
+            log.warn("Entity id worker lease {} lapsed, leasing a worker number again", leasedWorker);
+        }
+
+        Integer worker = leaseTransactions.execute(status -> neo4jClient.query(LEASE)
+            .bind(owner).to("owner")
+            .bind(now).to("now")
+            .bind(expiresAt).to("expiresAt")
+            .bind(TimeOrderedIds.MAX_WORKER).to("maxWorker")
+            .fetchAs(Integer.class)
+            .mappedBy((typeSystem, record) -> record.get("worker").asInt())
+            .one()
+            .orElse(null));
+        if (worker == null) {
+            throw new IllegalStateException("All " + (TimeOrderedIds.MAX_WORKER + 1) +
+                " entity id worker numbers are leased; set flagright.ids.worker-id explicitly");
+        }
+        if (worker != leasedWorker) {
+            ids = new TimeOrderedIds(worker);
+            leasedWorker = worker;
+            log.info("Generating entity ids as leased worker {}", worker);
+        }
+        leaseValidUntilMillis = requestedAtMillis + duration.toMillis();
+        return ids;
+    }
+
+    /**
+     * Gives every node of a label stored before uids were introduced one,
+     * chunk by chunk in internal id order, which follows creation order for
+     * data written by this application. Migrated uids carry the migration
+     * time, so they sort before anything created afterwards. Nodes already
+     * given one, by a concurrent write or another instance migrating at the
+     * same time, keep theirs. Returns the number of nodes migrated.
+     */
+    public long backfill(String label) {
+        if (!LABELS.contains(label)) {
+            throw new IllegalArgumentException("Invalid label. Use one of " + String.join(", ", LABELS));
+        }
+        String select = "MATCH (n:" + label + ") WHERE n.uid IS NULL AND id(n) > $afterId " +
+            "RETURN id(n) AS id ORDER BY id(n) LIMIT $limit";
+        String assign = "UNWIND $rows AS row MATCH (n:" + label + ") WHERE id(n) = row.id AND n.uid IS NULL " +
+            "SET n.uid = row.uid RETURN count(n) AS assigned";
+        int chunkSize = Math.max(1, idProperties.getMigrationChunkSize());
+
+        long afterId = -1;
+        long migrated = 0;
+        while (true) {
+            long after = afterId;
+            List<Long> nodeIds = new ArrayList<>(neo4jClient.query(select)
+                .bind(after).to("afterId")
+                .bind(chunkSize).to("limit")
+                .fetchAs(Long.class)
+                .mappedBy((typeSystem, record) -> record.get("id").asLong())
+                .all());
+            if (nodeIds.isEmpty()) {
+                break;
+            }
+            List<Map<String, Object>> rows = new ArrayList<>(nodeIds.size());
+            for (Long nodeId : nodeIds) {
+                rows.add(Map.of("id", nodeId, "uid", next()));
+            }
+            Long assigned = transactionTemplate.execute(status -> neo4jClient.query(assign)
+                .bind(rows).to("rows")
+                .fetchAs(Long.class)
+                .mappedBy((typeSystem, record) -> record.get("assigned").asLong())
+                .one()
+                .orElse(0L));
+            migrated += assigned == null ? 0 : assigned;
+            afterId = nodeIds.get(nodeIds.size() - 1);
+        }
+        if (migrated > 0) {
+            log.info("Assigned uids to {} existing {} nodes", migrated, label);
+        }
+        return migrated;
+    }
+}
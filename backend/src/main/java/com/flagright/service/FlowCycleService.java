@@ -0,0 +1,397 @@
+package com.flagright.service;
+
+import com.flagright.config.FlowCycleProperties;
+import com.flagright.model.dto.FlowCycle;
+import com.flagright.model.entity.Transaction;
+import com.flagright.util.AfterCommit;
+import com.flagright.util.MoneyUnits;
+import com.flagright.util.StringDictionary;
+import com.flagright.util.TemporalCycleSearch;
+import com.flagright.util.TopK;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Detects money moving in a cycle, A to B to C and back to A, within a time
+ * window. Transfers are streamed from SENT/RECEIVED edges into primitive
+ * arrays and searched with {@link TemporalCycleSearch}: a full scan searches
+ * from every user in parallel, and after each new transaction an incremental
+ * check loads only the transfers reachable from its recipient within the
+ * window and reports the cycles that transaction closes.
+ *
+ * <p>Incremental checks wait in a bounded queue keyed by recipient. New
+ * transactions to a recipient whose check has not started yet join that
+ * check, so a burst into one account costs one search, and when the queue
+ * is full new checks are dropped and counted rather than piling up behind a
+ * slow search.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FlowCycleService {
+
+    private static final String FLOW_MATCH = "MATCH (s:User)-[:SENT]->(t:Transaction)-[:RECEIVED]->(r:User) ";
+    private static final int FETCH_SIZE = 2000;
+    private static final String FLOW_RETURN = "RETURN id(s) AS senderId, id(r) AS recipientId, id(t) AS transactionId, " +
+        "t.createdAt AS createdAt, t.amount AS amount, t.currency AS currency";
+
+    private final Driver driver;
+    private final FlowCycleProperties flowCycleProperties;
+    private final ChangeFeedService changeFeedService;
+
+    private final ExecutorService checker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "flow-cycle-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Transactions waiting for their check, by recipient, in arrival order; guarded by itself */
+    private final Map<Long, List<ClosingTransfer>> pendingChecks = new LinkedHashMap<>();
+    private final AtomicLong droppedChecks = new AtomicLong();
+    private final ConcurrentLinkedDeque<FlowCycle> recentCycles = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger recentCycleCount = new AtomicInteger();
+
+    /** A new transaction to be checked for closing a cycle */
+    private record ClosingTransfer(Long transactionId, Long senderId, LocalDateTime createdAt) {
+    }
+
+    /** Transfers in parallel primitive arrays, as loaded from the graph */
+    private static final class Flows {
+        private final Set<Long> transactionIds = new HashSet<>();
+        private long[] senders = new long[1024];
+        private long[] recipients = new long[1024];
+        private long[] transactions = new long[1024];
+        private long[] times = new long[1024];
+        private BigDecimal[] amounts = new BigDecimal[1024];
+        private String[] currencies = new String[1024];
+        private int size;
+
+        private void add(Record row) {
+            long transactionId = row.get("transactionId").asLong();
+            Value createdAt = row.get("createdAt");
+            if (createdAt.isNull() || !transactionIds.add(transactionId)) {
+                return;
+            }
+            if (size == senders.length) {
+                int capacity = size * 2;
+                senders = Arrays.copyOf(senders, capacity);
+                recipients = Arrays.copyOf(recipients, capacity);
+                transactions = Arrays.copyOf(transactions, capacity);
+                times = Arrays.copyOf(times, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                currencies = Arrays.copyOf(currencies, capacity);
+            }
+            senders[size] = row.get("senderId").asLong();
+            recipients[size] = row.get("recipientId").asLong();
+            transactions[size] = transactionId;
+            times[size] = createdAt.asLocalDateTime().toEpochSecond(ZoneOffset.UTC);
+            amounts[size] = toAmount(row.get("amount").asObject());
+            currencies[size] = row.get("currency").isNull() ? null : row.get("currency").asString();
+            size++;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        checker.shutdown();
+        if (!checker.awaitTermination(5, TimeUnit.SECONDS)) {
+            checker.shutdownNow();
+        }
+    }
+
+    /**
+     * Searches all transfers created in the given range, or all transfers,
+     * for cycles. Every starting user contributes up to
+     * {@code maxCyclesPerStart} cycles, and of those the {@code limit} most
+     * recently closed are returned, newest first.
+     */
+    public List<FlowCycle> scan(LocalDateTime from, LocalDateTime to, int limit) {
+        long started = System.currentTimeMillis();
+        int maxResults = Math.max(1, Math.min(limit, flowCycleProperties.getMaxResults()));
+        Flows flows = new Flows();
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("from", from);
+        parameters.put("to", to);
+        load(FLOW_MATCH + "WHERE ($from IS NULL OR t.createdAt >= $from) AND ($to IS NULL OR t.createdAt <= $to) " +
+            FLOW_RETURN, parameters, flows);
+
+        List<FlowCycle> cycles = search(flows, null, Set.of(), maxResults);
+        log.info("Scanned {} transfers for flow cycles in {} ms, found {}", flows.size,
+            System.currentTimeMillis() - started, cycles.size());
+        return cycles;
+    }
+
+    /** Checks in the background, once the caller's transaction commits, whether a new transaction closes a cycle */
+    public void checkAfterCommit(Transaction transaction) {
+        if (!flowCycleProperties.isIncremental() || transaction.getSender() == null
+                || transaction.getRecipient() == null) {
+            return;
+        }
+        ClosingTransfer transfer = new ClosingTransfer(transaction.getId(), transaction.getSender().getId(),
+            transaction.getCreatedAt());
+        Long recipientId = transaction.getRecipient().getId();
+        AfterCommit.run(() -> enqueue(recipientId, transfer));
+    }
+
+    /** Joins the recipient's waiting check, or queues a new one while there is room */
+    private void enqueue(Long recipientId, ClosingTransfer transfer) {
+        synchronized (pendingChecks) {
+            List<ClosingTransfer> waiting = pendingChecks.get(recipientId);
+            if (waiting != null) {
+                waiting.add(transfer);
+                return;
+            }
+            if (pendingChecks.size() >= Math.max(1, flowCycleProperties.getIncrementalQueueCapacity())) {
+                long dropped = droppedChecks.incrementAndGet();
+                if (Long.bitCount(dropped) == 1) {
+                    log.warn("Flow cycle check queue is full, {} checks dropped so far; transaction {} not checked",
+                        dropped, transfer.transactionId());
+                }
+                return;
+            }
+            waiting = new ArrayList<>();
+            waiting.add(transfer);
+            pendingChecks.put(recipientId, waiting);
+        }
+        checker.submit(() -> {
+            List<ClosingTransfer> transfers;
+            synchronized (pendingChecks) {
+                transfers = pendingChecks.remove(recipientId);
+            }
+            try {
+                checkClosingTransactions(recipientId, transfers);
+            } catch (RuntimeException e) {
+                log.warn("Flow cycle check failed for transactions to user {}", recipientId, e);
+            }
+        });
+    }
+
+    /**
+     * Finds the cycles a transaction from sender to recipient closes. As the
+     * newest transfer it can only be a cycle's last hop, so the cycle starts
+     * at the recipient: transfers are loaded hop by hop outward from the
+     * recipient, within the window before the transaction.
+     */
+    public List<FlowCycle> checkClosingTransaction(Long transactionId, Long senderId, Long recipientId,
+                                                   LocalDateTime createdAt) {
+        return checkClosingTransactions(recipientId, List.of(new ClosingTransfer(transactionId, senderId, createdAt)));
+    }
+
+    /**
+     * Finds the cycles that any of several transactions to one recipient
+     * close, with one load and one search covering the window before each.
+     */
+    private List<FlowCycle> checkClosingTransactions(Long recipientId, List<ClosingTransfer> transfers) {
+        List<ClosingTransfer> closing = transfers.stream()
+            .filter(transfer -> !transfer.senderId().equals(recipientId))
+            .toList();
+        if (closing.isEmpty()) {
+            return List.of();
+        }
+        LocalDateTime earliest = closing.stream().map(ClosingTransfer::createdAt).min(Comparator.naturalOrder()).get();
+        LocalDateTime latest = closing.stream().map(ClosingTransfer::createdAt).max(Comparator.naturalOrder()).get();
+        Set<Long> senders = new HashSet<>();
+        Set<Long> closingIds = new HashSet<>();
+        for (ClosingTransfer transfer : closing) {
+            senders.add(transfer.senderId());
+            closingIds.add(transfer.transactionId());
+        }
+        // Past the only sender a path cannot close; with several, each may lie on another's cycle.
+        Long onlySender = senders.size() == 1 ? senders.iterator().next() : null;
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("from", earliest.minus(flowCycleProperties.getWindow()));
+        parameters.put("to", latest);
+        Flows flows = new Flows();
+        Set<Long> expanded = new HashSet<>();
+        List<Long> frontier = List.of(recipientId);
+        for (int hop = 1; hop < flowCycleProperties.getMaxLength() && !frontier.isEmpty(); hop++) {
+            if (expanded.size() + frontier.size() > flowCycleProperties.getIncrementalMaxUsers()) {
+                log.debug("Flow cycle check for transactions {} stopped after {} hops at {} users",
+                    closingIds, hop - 1, expanded.size());
+                break;
+            }
+            expanded.addAll(frontier);
+            int before = flows.size;
+            parameters.put("frontier", frontier);
+            load(FLOW_MATCH + "WHERE id(s) IN $frontier AND t.createdAt >= $from AND t.createdAt <= $to " +
+                FLOW_RETURN, parameters, flows);
+
+            List<Long> next = new ArrayList<>();
+            for (int i = before; i < flows.size; i++) {
+                if (!expanded.contains(flows.recipients[i]) && !Long.valueOf(flows.recipients[i]).equals(onlySender)) {
+                    next.add(flows.recipients[i]);
+                }
+            }
+            frontier = next.stream().distinct().toList();
+        }
+        // Loaded last, the new transactions rank after every transfer made in the same second.
+        load(FLOW_MATCH + "WHERE id(t) IN $transactionIds " + FLOW_RETURN,
+            Map.of("transactionIds", List.copyOf(closingIds)), flows);
+
+        List<FlowCycle> cycles = search(flows, recipientId, closingIds, flowCycleProperties.getMaxCyclesPerStart());
+        for (FlowCycle cycle : cycles) {
+            log.warn("Transaction {} closed a {}-hop flow cycle through users {} within {}s",
+                cycle.getHops().get(cycle.getLength() - 1).getTransactionId(), cycle.getLength(),
+                cycle.getUserIds(), cycle.getDurationSeconds());
+            remember(cycle);
+            changeFeedService.publish(ChangeFeedService.ChangeType.CYCLE_DETECTED, cycle);
+        }
+        return cycles;
+    }
+
+    /** Streams transfer rows into the arrays instead of materialising the whole result */
+    private void load(String query, Map<String, Object> parameters, Flows flows) {
+        try (Session session = driver.session(SessionConfig.builder()
+                .withDefaultAccessMode(AccessMode.READ)
+                .withFetchSize(FETCH_SIZE)
+                .build())) {
+            Result result = session.run(query, parameters);
+            while (result.hasNext()) {
+                flows.add(result.next());
+            }
+        }
+    }
+
+    /** Gets the most recent incrementally detected cycles, newest first */
+    public List<FlowCycle> getRecentCycles(int limit) {
+        List<FlowCycle> result = new ArrayList<>();
+        Iterator<FlowCycle> iterator = recentCycles.descendingIterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    /**
+     * Runs the cycle search over loaded transfers. From one user it keeps
+     * the first {@code maxCycles} cycles whose last hop is one of the closing
+     * transactions; from every user it keeps the {@code maxCycles} most
+     * recently closed, newest first.
+     */
+    private List<FlowCycle> search(Flows flows, Long startUserId, Set<Long> closingTransactionIds, int maxCycles) {
+        Map<Long, Integer> indexByUser = new HashMap<>();
+        List<Long> userIds = new ArrayList<>();
+        StringDictionary currencies = new StringDictionary();
+        int[] sources = new int[flows.size];
+        int[] targets = new int[flows.size];
+        long[] minorAmounts = new long[flows.size];
+        int[] currencyCodes = new int[flows.size];
+        for (int i = 0; i < flows.size; i++) {
+            sources[i] = indexByUser.computeIfAbsent(flows.senders[i], id -> { userIds.add(id); return userIds.size() - 1; });
+            targets[i] = indexByUser.computeIfAbsent(flows.recipients[i], id -> { userIds.add(id); return userIds.size() - 1; });
+            minorAmounts[i] = MoneyUnits.toMinorUnits(flows.amounts[i], flows.currencies[i]);
+            currencyCodes[i] = currencies.encode(flows.currencies[i]);
+        }
+        Integer startIndex = startUserId == null ? null : indexByUser.get(startUserId);
+        if (flows.size == 0 || (startUserId != null && startIndex == null)) {
+            return new ArrayList<>();
+        }
+
+        TemporalCycleSearch.FlowGraph graph = TemporalCycleSearch.build(userIds.size(), sources, targets,
+            Arrays.copyOf(flows.times, flows.size), minorAmounts, currencyCodes);
+        TemporalCycleSearch.Limits limits = new TemporalCycleSearch.Limits(
+            flowCycleProperties.getWindow().getSeconds(), flowCycleProperties.getMinLength(),
+            flowCycleProperties.getMaxLength(), flowCycleProperties.getAmountTolerance(),
+            flowCycleProperties.isSameCurrency(), Math.max(1, flowCycleProperties.getMaxCyclesPerStart()));
+
+        List<int[]> found;
+        if (startIndex != null) {
+            List<int[]> closed = new ArrayList<>();
+            TemporalCycleSearch.search(graph, startIndex, limits, edges -> {
+                if (!closingTransactionIds.contains(flows.transactions[edges[edges.length - 1]])) {
+                    return TemporalCycleSearch.Verdict.SKIPPED;
+                }
+                if (closed.size() >= maxCycles) {
+                    return TemporalCycleSearch.Verdict.STOP;
+                }
+                closed.add(edges);
+                return TemporalCycleSearch.Verdict.ACCEPTED;
+            });
+            found = closed;
+        } else {
+            TopK<int[]> latest = new TopK<>(maxCycles);
+            IntStream.range(0, graph.nodeCount()).parallel().forEach(start ->
+                TemporalCycleSearch.search(graph, start, limits, edges -> {
+                    int last = edges[edges.length - 1];
+                    synchronized (latest) {
+                        latest.offer(flows.times[last], flows.transactions[last], edges);
+                    }
+                    return TemporalCycleSearch.Verdict.ACCEPTED;
+                }));
+            found = latest.toList();
+        }
+
+        LocalDateTime detectedAt = LocalDateTime.now();
+        List<FlowCycle> cycles = new ArrayList<>(found.size());
+        for (int[] edges : found) {
+            cycles.add(toCycle(flows, edges, detectedAt));
+        }
+        return cycles;
+    }
+
+    private static FlowCycle toCycle(Flows flows, int[] edges, LocalDateTime detectedAt) {
+        List<FlowCycle.Hop> hops = new ArrayList<>(edges.length);
+        List<Long> userIds = new ArrayList<>(edges.length);
+        for (int edge : edges) {
+            userIds.add(flows.senders[edge]);
+            hops.add(new FlowCycle.Hop(flows.transactions[edge], flows.senders[edge], flows.recipients[edge],
+                flows.amounts[edge], flows.currencies[edge], toDateTime(flows.times[edge])));
+        }
+        int first = edges[0];
+        int last = edges[edges.length - 1];
+        return new FlowCycle(userIds, hops, edges.length, toDateTime(flows.times[first]),
+            toDateTime(flows.times[last]), flows.times[last] - flows.times[first],
+            flows.amounts[first], flows.amounts[last], detectedAt);
+    }
+
+    private void remember(FlowCycle cycle) {
+        recentCycles.addLast(cycle);
+        if (recentCycleCount.incrementAndGet() > flowCycleProperties.getHistory()) {
+            if (recentCycles.pollFirst() != null) {
+                recentCycleCount.decrementAndGet();
+            }
+        }
+    }
+
+    private static LocalDateTime toDateTime(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC);
+    }
+
+    private static BigDecimal toAmount(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(String.valueOf(value));
+    }
+}
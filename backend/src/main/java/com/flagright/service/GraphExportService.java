@@ -0,0 +1,230 @@
+package com.flagright.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flagright.util.CountingOutputStream;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.springframework.stereotype.Service;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the whole user/transaction graph, or the part touched since a
+ * timestamp, straight from driver cursors. Records are written as they are
+ * pulled, so memory stays constant in the number of edges; the binary format
+ * only keeps the node id dictionary.
+ *
+ * <p>With a timestamp, the export holds users and transactions created or
+ * updated since then (a transaction's {@code updatedAt} moves on every status
+ * change), and edges created since then or touching such a node. Edges carry
+ * their own {@code createdAt}, so a link detected later between two older
+ * nodes is included. Edges written before that stamp was introduced are only
+ * found through their endpoints. Removed edges are not reported.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GraphExportService {
+
+    public enum Format { NDJSON, BINARY }
+
+    /** Magic header of the binary edge-list format, followed by a version byte */
+    public static final byte[] BINARY_MAGIC = "FRGE".getBytes(StandardCharsets.US_ASCII);
+    public static final int BINARY_VERSION = 1;
+
+    /** Binary record tags */
+    public static final int TAG_NODE = 1;
+    public static final int TAG_TYPE = 2;
+    public static final int TAG_EDGE = 3;
+
+    private static final int FETCH_SIZE = 2000;
+
+    private static final String USER_QUERY =
+        "MATCH (u:User) WHERE $since IS NULL OR u.createdAt >= $since OR u.updatedAt >= $since " +
+        "RETURN id(u) AS id, u.email AS email, u.phone AS phone, u.firstName AS firstName, " +
+        "u.lastName AS lastName, u.address AS address, u.dateOfBirth AS dateOfBirth, " +
+        "u.createdAt AS createdAt, u.updatedAt AS updatedAt";
+
+    private static final String TRANSACTION_QUERY =
+        "MATCH (t:Transaction) WHERE $since IS NULL OR t.createdAt >= $since OR t.updatedAt >= $since " +
+        "OR t.completedAt >= $since " +
+        "RETURN id(t) AS id, t.amount AS amount, t.currency AS currency, t.description AS description, " +
+        "t.ipAddress AS ipAddress, t.deviceId AS deviceId, t.paymentMethod AS paymentMethod, " +
+        "t.status AS status, t.createdAt AS createdAt, t.completedAt AS completedAt, t.updatedAt AS updatedAt";
+
+    private static final String EDGE_QUERY =
+        "MATCH (a)-[r]->(b) WHERE (a:User OR a:Transaction) AND (b:User OR b:Transaction) " +
+        "AND ($since IS NULL OR r.createdAt >= $since OR a.createdAt >= $since OR b.createdAt >= $since " +
+        "OR a.updatedAt >= $since OR b.updatedAt >= $since) " +
+        "RETURN id(a) AS source, labels(a)[0] AS sourceLabel, id(b) AS target, labels(b)[0] AS targetLabel, " +
+        "type(r) AS type";
+
+    private final Driver driver;
+    private final ObjectMapper objectMapper;
+
+    /** Parses an export format name */
+    public static Format parseFormat(String format) {
+        try {
+            return Format.valueOf(format.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid export format. Use 'ndjson' or 'binary'");
+        }
+    }
+
+    /** Writes the graph to the output stream in the requested format */
+    public void export(Format format, boolean gzip, LocalDateTime since, OutputStream target) throws IOException {
+        long started = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(target);
+        OutputStream out = gzip ? new GZIPOutputStream(counted, 1 << 16) : counted;
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("since", since);
+
+        long records;
+        try (Session session = driver.session(SessionConfig.builder()
+                .withDefaultAccessMode(AccessMode.READ)
+                .withFetchSize(FETCH_SIZE)
+                .build())) {
+            records = format == Format.NDJSON
+                ? writeNdjson(session, parameters, out)
+                : writeBinary(session, parameters, out);
+        }
+        if (gzip) {
+            ((GZIPOutputStream) out).finish();
+        }
+        out.flush();
+
+        double seconds = Math.max((System.nanoTime() - started) / 1e9, 1e-9);
+        log.info("Exported {} graph records as {}{}: {} bytes in {} s ({} MB/s)",
+            records, format, gzip ? "+gzip" : "", counted.getCount(),
+            String.format("%.2f", seconds), String.format("%.2f", counted.getCount() / 1e6 / seconds));
+    }
+
+    private long writeNdjson(Session session, Map<String, Object> parameters, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.createGenerator(out);
+        // Lines are ended explicitly; the default root separator would start every line after the first with a space.
+        generator.setRootValueSeparator(null);
+        long[] records = {0};
+
+        stream(session, USER_QUERY, parameters, nodeWriter(generator, "User", records));
+        stream(session, TRANSACTION_QUERY, parameters, nodeWriter(generator, "Transaction", records));
+        stream(session, EDGE_QUERY, parameters, record -> {
+            generator.writeStartObject();
+            generator.writeStringField("kind", "edge");
+            generator.writeStringField("type", record.get("type").asString());
+            generator.writeNumberField("source", record.get("source").asLong());
+            generator.writeNumberField("target", record.get("target").asLong());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            records[0]++;
+        });
+        generator.flush();
+        return records[0];
+    }
+
+    private static RecordWriter nodeWriter(JsonGenerator generator, String label, long[] records) {
+        return record -> {
+            generator.writeStartObject();
+            generator.writeStringField("kind", "node");
+            generator.writeStringField("label", label);
+            for (String key : record.keys()) {
+                generator.writeFieldName(key);
+                generator.writeObject(record.get(key).asObject());
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            records[0]++;
+        };
+    }
+
+    /**
+     * Binary edge list: magic, version, then tagged records. NODE and TYPE
+     * records define the next dense id or type code on first use; EDGE records
+     * reference them. All integers are unsigned LEB128 varints.
+     */
+    private long writeBinary(Session session, Map<String, Object> parameters, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(BINARY_MAGIC);
+        data.writeByte(BINARY_VERSION);
+
+        Map<Long, Integer> denseIds = new HashMap<>();
+        Map<String, Integer> typeCodes = new HashMap<>();
+        long[] records = {0};
+
+        stream(session, EDGE_QUERY, parameters, record -> {
+            int source = denseId(data, denseIds, record.get("source").asLong(), record.get("sourceLabel").asString());
+            int target = denseId(data, denseIds, record.get("target").asLong(), record.get("targetLabel").asString());
+            String type = record.get("type").asString();
+            Integer typeCode = typeCodes.get(type);
+            if (typeCode == null) {
+                typeCode = typeCodes.size();
+                typeCodes.put(type, typeCode);
+                data.writeByte(TAG_TYPE);
+                writeString(data, type);
+            }
+            data.writeByte(TAG_EDGE);
+            writeVarLong(data, source);
+            writeVarLong(data, target);
+            writeVarLong(data, typeCode);
+            records[0]++;
+        });
+        data.flush();
+        return records[0];
+    }
+
+    private static int denseId(DataOutputStream data, Map<Long, Integer> denseIds, long nodeId, String label)
+            throws IOException {
+        Integer dense = denseIds.get(nodeId);
+        if (dense == null) {
+            dense = denseIds.size();
+            denseIds.put(nodeId, dense);
+            data.writeByte(TAG_NODE);
+            writeVarLong(data, nodeId);
+            data.writeByte("User".equals(label) ? 0 : 1);
+        }
+        return dense;
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(data, bytes.length);
+        data.write(bytes);
+    }
+
+    private static void writeVarLong(DataOutputStream data, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            data.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        data.writeByte((int) value);
+    }
+
+    private static void stream(Session session, String query, Map<String, Object> parameters,
+                               RecordWriter writer) throws IOException {
+        Result result = session.run(query, parameters);
+        while (result.hasNext()) {
+            writer.write(result.next());
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(Record record) throws IOException;
+    }
+}
@@ -0,0 +1,279 @@
+package com.flagright.service;
+
+import com.flagright.config.LayoutProperties;
+import com.flagright.model.dto.GraphLayout;
+import com.flagright.util.ForceDirectedLayout;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Computes and caches the graph view with node coordinates attached, so the
+ * browser only has to render. Layouts are cached per view. When the graph
+ * changes, the previous layout keeps being served, marked stale, while a
+ * background thread recomputes it warm-started from the previous positions;
+ * only the first request for a view waits for a layout.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GraphLayoutService {
+
+    public enum View { ALL, USERS, TRANSACTIONS }
+
+    private static final String SIGNATURE_QUERY =
+        "MATCH (u:User) WITH count(u) AS users " +
+        "MATCH (t:Transaction) WITH users, count(t) AS transactions " +
+        "MATCH ()-[r]->() RETURN users, transactions, count(r) AS relationships";
+
+    private final Neo4jClient neo4jClient;
+    private final LayoutProperties layoutProperties;
+    private final VersionTracker versionTracker;
+
+    private final Map<View, CachedLayout> cache = new ConcurrentHashMap<>();
+    private final Map<View, Object> firstLayoutLocks = Map.of(
+        View.ALL, new Object(), View.USERS, new Object(), View.TRANSACTIONS, new Object());
+    /** Views with a recomputation queued or running */
+    private final Set<View> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "graph-layout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record CachedLayout(String signature, GraphLayout layout, Map<String, double[]> positions) {
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Gets the graph of a view with positions attached. A layout computed
+     * before the latest change is returned at once, marked stale, and a new
+     * one is computed in the background.
+     */
+    public GraphLayout getLayout(String view) {
+        View layoutView = parseView(view);
+        String signature = graphSignature();
+
+        CachedLayout cached = cache.get(layoutView);
+        if (cached == null) {
+            synchronized (firstLayoutLocks.get(layoutView)) {
+                cached = cache.get(layoutView);
+                if (cached == null) {
+                    cached = computeLayout(layoutView, signature, null);
+                    cache.put(layoutView, cached);
+                    return cached.layout();
+                }
+            }
+        }
+        if (cached.signature().equals(signature)) {
+            return cached.layout();
+        }
+        refreshInBackground(layoutView);
+        GraphLayout layout = cached.layout();
+        return new GraphLayout(layout.getView(), layout.getNodeCount(), layout.getEdgeCount(), layout.isWarmStarted(),
+            layout.getComputedAt(), true, layout.getNodes(), layout.getEdges());
+    }
+
+    /** Queues one recomputation of a view unless one is already queued or running */
+    private void refreshInBackground(View view) {
+        if (!refreshing.add(view)) {
+            return;
+        }
+        refresher.submit(() -> {
+            try {
+                // Read the signature before the graph, so changes made during the run trigger another.
+                String signature = graphSignature();
+                CachedLayout previous = cache.get(view);
+                if (previous == null || !previous.signature().equals(signature)) {
+                    cache.put(view, computeLayout(view, signature, previous));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to recompute the {} graph layout, serving the previous one", view, e);
+            } finally {
+                refreshing.remove(view);
+            }
+        });
+    }
+
+    /** Parses a layout view name */
+    public static View parseView(String view) {
+        if (view == null || view.trim().isEmpty()) {
+            return View.ALL;
+        }
+        try {
+            return View.valueOf(view.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid layout view. Use 'all', 'users' or 'transactions'");
+        }
+    }
+
+    private CachedLayout computeLayout(View view, String signature, CachedLayout previous) {
+        long started = System.currentTimeMillis();
+
+        Collection<Map<String, Object>> nodeRows = neo4jClient.query(
+                "MATCH (n) WHERE " + labelFilter(view, "n") + " " +
+                "RETURN id(n) AS id, CASE WHEN n:User THEN 'user' ELSE 'transaction' END AS type, " +
+                "CASE WHEN n:User THEN coalesce(n.firstName + ' ' + n.lastName, n.email) " +
+                "ELSE toString(n.amount) + ' ' + coalesce(n.currency, '') END AS label")
+            .fetch().all();
+        Collection<Map<String, Object>> edgeRows = neo4jClient.query(
+                "MATCH (a)-[r]->(b) WHERE " + labelFilter(view, "a") + " AND " + labelFilter(view, "b") + " " +
+                "RETURN id(a) AS source, id(b) AS target, type(r) AS type")
+            .fetch().all();
+
+        int nodeCount = nodeRows.size();
+        String[] ids = new String[nodeCount];
+        String[] types = new String[nodeCount];
+        String[] labels = new String[nodeCount];
+        Map<Long, Integer> indexByNodeId = new HashMap<>(nodeCount * 2);
+        int index = 0;
+        for (Map<String, Object> row : nodeRows) {
+            long nodeId = ((Number) row.get("id")).longValue();
+            types[index] = (String) row.get("type");
+            labels[index] = (String) row.get("label");
+            ids[index] = types[index] + "-" + nodeId;
+            indexByNodeId.put(nodeId, index++);
+        }
+
+        int[] sources = new int[edgeRows.size()];
+        int[] targets = new int[edgeRows.size()];
+        List<GraphLayout.Edge> edges = new ArrayList<>(edgeRows.size());
+        int edgeCount = 0;
+        for (Map<String, Object> row : edgeRows) {
+            Integer source = indexByNodeId.get(((Number) row.get("source")).longValue());
+            Integer target = indexByNodeId.get(((Number) row.get("target")).longValue());
+            if (source != null && target != null) {
+                sources[edgeCount] = source;
+                targets[edgeCount] = target;
+                edges.add(new GraphLayout.Edge(ids[source], ids[target], (String) row.get("type")));
+                edgeCount++;
+            }
+        }
+        int[] edgeSources = Arrays.copyOf(sources, edgeCount);
+        int[] edgeTargets = Arrays.copyOf(targets, edgeCount);
+
+        ForceDirectedLayout layout = new ForceDirectedLayout(nodeCount, edgeSources, edgeTargets,
+            layoutProperties.getIdealEdgeLength(), layoutProperties.getTheta(), layoutProperties.getGravity());
+        double[] x = new double[nodeCount];
+        double[] y = new double[nodeCount];
+
+        boolean warm = previous != null && seedFromPrevious(previous.positions(), ids, edgeSources, edgeTargets, x, y);
+        if (warm) {
+            layout.run(x, y, layoutProperties.getWarmIterations(), layoutProperties.getIdealEdgeLength());
+        } else {
+            layout.randomize(x, y, signature.hashCode());
+            double extent = layoutProperties.getIdealEdgeLength() * Math.sqrt(Math.max(nodeCount, 1));
+            layout.run(x, y, layoutProperties.getIterations(), extent / 10);
+        }
+
+        Map<String, double[]> positions = new HashMap<>(nodeCount * 2);
+        List<GraphLayout.Node> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            positions.put(ids[i], new double[] {x[i], y[i]});
+            nodes.add(new GraphLayout.Node(ids[i], types[i], labels[i],
+                Math.round(x[i] * 10) / 10.0, Math.round(y[i] * 10) / 10.0));
+        }
+
+        log.info("Computed {} layout for {} nodes and {} edges in {} ms (warm start: {})",
+            view, nodeCount, edgeCount, System.currentTimeMillis() - started, warm);
+        GraphLayout result = new GraphLayout(view.name(), nodeCount, edgeCount, warm, LocalDateTime.now(), false,
+            nodes, edges);
+        return new CachedLayout(signature, result, positions);
+    }
+
+    /**
+     * Seeds positions from a previous layout. Nodes that are new are placed
+     * next to the average of their already-placed neighbours, or near the
+     * origin when they have none. Returns false when nothing could be reused.
+     */
+    private static boolean seedFromPrevious(Map<String, double[]> previous, String[] ids,
+                                            int[] edgeSources, int[] edgeTargets, double[] x, double[] y) {
+        boolean[] placed = new boolean[ids.length];
+        int reused = 0;
+        for (int i = 0; i < ids.length; i++) {
+            double[] position = previous.get(ids[i]);
+            if (position != null) {
+                x[i] = position[0];
+                y[i] = position[1];
+                placed[i] = true;
+                reused++;
+            }
+        }
+        if (reused == 0) {
+            return false;
+        }
+
+        double[] sumX = new double[ids.length];
+        double[] sumY = new double[ids.length];
+        int[] neighbours = new int[ids.length];
+        for (int e = 0; e < edgeSources.length; e++) {
+            int s = edgeSources[e];
+            int t = edgeTargets[e];
+            if (placed[s] && !placed[t]) {
+                sumX[t] += x[s];
+                sumY[t] += y[s];
+                neighbours[t]++;
+            } else if (placed[t] && !placed[s]) {
+                sumX[s] += x[t];
+                sumY[s] += y[t];
+                neighbours[s]++;
+            }
+        }
+        Random random = new Random(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            if (!placed[i]) {
+                double baseX = neighbours[i] > 0 ? sumX[i] / neighbours[i] : 0;
+                double baseY = neighbours[i] > 0 ? sumY[i] / neighbours[i] : 0;
+                x[i] = baseX + (random.nextDouble() - 0.5) * 20;
+                y[i] = baseY + (random.nextDouble() - 0.5) * 20;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Identifies the graph a layout was computed from. The shared version
+     * counters catch every change committed through any instance, including
+     * edges replaced one for one; the counts catch writes made to the
+     * database directly.
+     */
+    private String graphSignature() {
+        String version = versionTracker.graphVersion();
+        return neo4jClient.query(SIGNATURE_QUERY)
+            .fetch().one()
+            .map(row -> version + ":" + row.get("users") + ":" + row.get("transactions") + ":" + row.get("relationships"))
+            .orElse(version + ":empty");
+    }
+
+    private static String labelFilter(View view, String variable) {
+        switch (view) {
+            case USERS:
+                return variable + ":User";
+            case TRANSACTIONS:
+                return variable + ":Transaction";
+            default:
+                return "(" + variable + ":User OR " + variable + ":Transaction)";
+        }
+    }
+}
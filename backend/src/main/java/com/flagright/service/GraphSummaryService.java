@@ -0,0 +1,704 @@
+package com.flagright.service;
+
+import com.flagright.config.SummaryProperties;
+import com.flagright.model.dto.GraphSummary;
+import com.flagright.util.AfterCommit;
+import com.flagright.util.LabelPropagation;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+/**
+ * Level-of-detail summaries of the user/transaction graph. The graph is
+ * clustered into communities once and kept in memory; the root level shows
+ * the largest clusters plus size buckets for the long tail, clusters expand
+ * into degree buckets, and small scopes expand into individual nodes. Every
+ * level is bounded by {@link SummaryProperties}, so payloads stay the same
+ * size however large the graph grows.
+ *
+ * <p>Detection reports nodes that gained links through {@link #markChanged};
+ * on the next read their neighbourhoods are merged into the snapshot and only
+ * the cached levels covering the affected clusters are dropped.
+ *
+ * <p>A full reclustering, after {@link #invalidateAll} or once patches have
+ * drifted too far, runs on a background thread; reads keep being answered
+ * from the previous snapshot until the new one replaces it. Only the very
+ * first read, with nothing to serve yet, waits for the clustering.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GraphSummaryService {
+
+    public static final String ROOT = "root";
+
+    private static final String NODE_QUERY =
+        "MATCH (n) WHERE n:User OR n:Transaction RETURN id(n) AS id, n:User AS user";
+
+    private static final String EDGE_QUERY =
+        "MATCH (a)-[r]->(b) WHERE (a:User OR a:Transaction) AND (b:User OR b:Transaction) " +
+        "RETURN id(a) AS source, id(b) AS target, type(r) AS type";
+
+    private static final String NEIGHBOURHOOD_QUERY =
+        "MATCH (n) WHERE id(n) IN $ids AND (n:User OR n:Transaction) " +
+        "OPTIONAL MATCH (n)-[r]-(m) WHERE m:User OR m:Transaction " +
+        "RETURN id(n) AS id, n:User AS user, id(m) AS neighbour, m:User AS neighbourUser, type(r) AS type";
+
+    private static final long CLUSTERING_SEED = 42L;
+
+    private final Neo4jClient neo4jClient;
+    private final SummaryProperties summaryProperties;
+    private final VersionTracker versionTracker;
+
+    private final Set<Long> pendingNodeIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, GraphSummary> cache = new HashMap<>();
+    private volatile boolean rebuildRequested = true;
+    private volatile ClusterSizes clusterSizes = new ClusterSizes(new long[0], new int[0]);
+    private Snapshot snapshot;
+    private long generation;
+    private boolean rebuilding;
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "graph-summary-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private enum Kind { ROOT, SIZE_BUCKET, CLUSTER, DEGREE_BUCKET }
+
+    /** Cluster size per node id as of the last full clustering, sorted by node id for lock-free lookups */
+    private record ClusterSizes(long[] nodeIds, int[] sizes) {
+    }
+
+    /** A parsed super-node id: root, sizes:k, cluster:c or cluster:c:user|transaction:k */
+    private record Scope(String id, Kind kind, int community, boolean users, int bucket) {
+    }
+
+    /** Precomputes the top-level summary once the application is up */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            getSummary(ROOT);
+        } catch (Exception e) {
+            log.warn("Failed to precompute graph summary, it will be built on first request", e);
+        }
+    }
+
+    /**
+     * Records that a node gained relationships; affected levels are patched on
+     * the next read after the surrounding transaction commits, so a read in
+     * between cannot patch from the graph without the change and drop it.
+     */
+    public void markChanged(Long nodeId) {
+        if (nodeId != null) {
+            AfterCommit.run(() -> pendingNodeIds.add(nodeId));
+            versionTracker.graphChanged();
+        }
+    }
+
+    /** Reclusters the whole graph after the next read once the surrounding transaction commits */
+    public void invalidateAll() {
+        AfterCommit.run(() -> rebuildRequested = true);
+        versionTracker.graphChanged();
+    }
+
+    /**
+     * Gets the size of the cluster a node belonged to at the last full
+     * clustering, or 0 when it was not clustered then. Reads a published
+     * copy, so it never waits for a summary to be computed.
+     */
+    public int clusterSizeOf(long nodeId) {
+        ClusterSizes current = clusterSizes;
+        int index = Arrays.binarySearch(current.nodeIds(), nodeId);
+        return index < 0 ? 0 : current.sizes()[index];
+    }
+
+    /** Gets the summary for the root or for one super-node */
+    public synchronized GraphSummary getSummary(String superNodeId) {
+        String id = superNodeId == null || superNodeId.trim().isEmpty() ? ROOT : superNodeId.trim();
+        Scope scope = parseScope(id);
+        refresh();
+
+        GraphSummary cached = cache.get(id);
+        if (cached == null) {
+            cached = compute(scope);
+            cache.put(id, cached);
+        }
+        return cached;
+    }
+
+    private static Scope parseScope(String id) {
+        if (ROOT.equals(id)) {
+            return new Scope(id, Kind.ROOT, -1, false, -1);
+        }
+        String[] parts = id.split(":");
+        try {
+            if (parts.length == 2 && "sizes".equals(parts[0])) {
+                return new Scope(id, Kind.SIZE_BUCKET, -1, false, Integer.parseInt(parts[1]));
+            }
+            if (parts.length == 2 && "cluster".equals(parts[0])) {
+                return new Scope(id, Kind.CLUSTER, Integer.parseInt(parts[1]), false, -1);
+            }
+            if (parts.length == 4 && "cluster".equals(parts[0])
+                    && ("user".equals(parts[2]) || "transaction".equals(parts[2]))) {
+                return new Scope(id, Kind.DEGREE_BUCKET, Integer.parseInt(parts[1]),
+                    "user".equals(parts[2]), Integer.parseInt(parts[3]));
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid summary node id: " + id);
+    }
+
+    private void refresh() {
+        if (snapshot == null) {
+            long started = System.currentTimeMillis();
+            install(loadNow(), started);
+            return;
+        }
+        // Changes stay pending during a rebuild, to be merged into the new snapshot if it was read before them.
+        if (rebuilding) {
+            return;
+        }
+        if (rebuildRequested) {
+            rebuildInBackground();
+            return;
+        }
+        if (pendingNodeIds.isEmpty()) {
+            return;
+        }
+
+        List<Long> nodeIds = new ArrayList<>(pendingNodeIds);
+        pendingNodeIds.removeAll(nodeIds);
+        Collection<Map<String, Object>> rows = neo4jClient.query(NEIGHBOURHOOD_QUERY)
+            .bind(nodeIds).to("ids")
+            .fetch().all();
+
+        Set<Integer> touched = snapshot.merge(rows);
+        if (snapshot.changesSinceRebuild > summaryProperties.getRebuildFraction() * Math.max(snapshot.size, 1)) {
+            rebuildInBackground();
+        }
+
+        cache.remove(ROOT);
+        cache.keySet().removeIf(key -> key.startsWith("sizes:") || touched.contains(communityOf(key)));
+        log.debug("Merged {} changed nodes into graph summary, {} clusters affected", nodeIds.size(), touched.size());
+    }
+
+    /**
+     * Loads and clusters a new snapshot on the rebuild thread, then swaps it
+     * in. Called with the lock held; the load itself runs without it.
+     */
+    private void rebuildInBackground() {
+        rebuilding = true;
+        long started = System.currentTimeMillis();
+        rebuildRequested = false;
+        pendingNodeIds.clear();
+        try {
+            rebuilder.execute(() -> {
+                Snapshot rebuilt = null;
+                try {
+                    rebuilt = load();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to recluster the graph summary, keeping the previous one", e);
+                }
+                synchronized (this) {
+                    rebuilding = false;
+                    if (rebuilt == null) {
+                        rebuildRequested = true;
+                    } else {
+                        install(rebuilt, started);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            rebuilding = false;
+            rebuildRequested = true;
+            throw e;
+        }
+    }
+
+    /** Loads a snapshot on the calling thread, for the first read when there is nothing to serve meanwhile */
+    private Snapshot loadNow() {
+        rebuildRequested = false;
+        pendingNodeIds.clear();
+        try {
+            return load();
+        } catch (RuntimeException e) {
+            rebuildRequested = true;
+            throw e;
+        }
+    }
+
+    private void install(Snapshot rebuilt, long started) {
+        snapshot = rebuilt;
+        generation++;
+        cache.clear();
+        clusterSizes = publishClusterSizes();
+        log.info("Clustered {} nodes and {} edges into {} communities in {} ms",
+            snapshot.size, snapshot.edgeCount(), snapshot.communityCount, System.currentTimeMillis() - started);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    private Snapshot load() {
+        Snapshot rebuilt = new Snapshot();
+        for (Map<String, Object> row : neo4jClient.query(NODE_QUERY).fetch().all()) {
+            rebuilt.node(((Number) row.get("id")).longValue(), Boolean.TRUE.equals(row.get("user")));
+        }
+        for (Map<String, Object> row : neo4jClient.query(EDGE_QUERY).fetch().all()) {
+            Integer source = rebuilt.indexByNodeId.get(((Number) row.get("source")).longValue());
+            Integer target = rebuilt.indexByNodeId.get(((Number) row.get("target")).longValue());
+            if (source != null && target != null) {
+                rebuilt.append(source, target, rebuilt.typeCode((String) row.get("type")));
+            }
+        }
+
+        rebuilt.communities = LabelPropagation.communities(rebuilt.size, rebuilt.neighbours, rebuilt.degrees,
+            summaryProperties.getPropagationIterations(), CLUSTERING_SEED);
+        rebuilt.communityCount = Arrays.stream(rebuilt.communities).max().orElse(-1) + 1;
+        return rebuilt;
+    }
+
+    private static int communityOf(String key) {
+        if (!key.startsWith("cluster:")) {
+            return -1;
+        }
+        int end = key.indexOf(':', "cluster:".length());
+        return Integer.parseInt(end < 0 ? key.substring("cluster:".length()) : key.substring("cluster:".length(), end));
+    }
+
+    private GraphSummary compute(Scope scope) {
+        switch (scope.kind()) {
+            case ROOT:
+                return summariseRoot(scope);
+            case SIZE_BUCKET:
+                return summariseSizeBucket(scope);
+            case CLUSTER:
+                return summariseCluster(scope);
+            default:
+                return summariseDegreeBucket(scope);
+        }
+    }
+
+    /** Largest clusters individually, the rest folded into buckets by cluster size */
+    private GraphSummary summariseRoot(Scope scope) {
+        int[] sizes = communitySizes();
+        int[] ranked = rankBySize(sizes, allCommunities());
+        int maxSuperNodes = summaryProperties.getMaxSuperNodes();
+
+        // Shrink the set of individual clusters until the size buckets for the rest also fit.
+        int top = Math.min(ranked.length, maxSuperNodes);
+        while (top > 0 && top < ranked.length
+                && top + sizeBucket(sizes[ranked[top]]) - sizeBucket(sizes[ranked[ranked.length - 1]]) + 1 > maxSuperNodes) {
+            top--;
+        }
+
+        List<GraphSummary.SuperNode> groups = new ArrayList<>();
+        int[] groupOfCommunity = new int[snapshot.communityCount];
+        for (int i = 0; i < top; i++) {
+            groupOfCommunity[ranked[i]] = groups.size();
+            groups.add(clusterNode(ranked[i]));
+        }
+        Map<Integer, Integer> groupOfBucket = new HashMap<>();
+        for (int i = top; i < ranked.length; i++) {
+            int bucket = sizeBucket(sizes[ranked[i]]);
+            Integer group = groupOfBucket.get(bucket);
+            if (group == null) {
+                group = groups.size();
+                groupOfBucket.put(bucket, group);
+                groups.add(new GraphSummary.SuperNode("sizes:" + bucket, "SIZE_BUCKET",
+                    "clusters of " + rangeLabel(bucket) + " nodes", 0, 0, 0, true));
+            }
+            groupOfCommunity[ranked[i]] = group;
+        }
+
+        int[] groupOf = new int[snapshot.size];
+        for (int i = 0; i < snapshot.size; i++) {
+            groupOf[i] = groupOfCommunity[snapshot.communities[i]];
+        }
+        return aggregate(scope, "CLUSTERS", groupOf, groups, false, false);
+    }
+
+    /** Clusters whose size falls in one bucket, largest first */
+    private GraphSummary summariseSizeBucket(Scope scope) {
+        int[] sizes = communitySizes();
+        List<Integer> inBucket = new ArrayList<>();
+        for (int c = 0; c < sizes.length; c++) {
+            if (sizes[c] > 0 && sizeBucket(sizes[c]) == scope.bucket()) {
+                inBucket.add(c);
+            }
+        }
+        int[] ranked = rankBySize(sizes, inBucket.stream().mapToInt(Integer::intValue).toArray());
+        int limit = Math.min(ranked.length, summaryProperties.getMaxSuperNodes());
+
+        List<GraphSummary.SuperNode> groups = new ArrayList<>(limit);
+        int[] groupOfCommunity = new int[snapshot.communityCount];
+        Arrays.fill(groupOfCommunity, -1);
+        for (int i = 0; i < limit; i++) {
+            groupOfCommunity[ranked[i]] = groups.size();
+            groups.add(clusterNode(ranked[i]));
+        }
+
+        int[] groupOf = new int[snapshot.size];
+        for (int i = 0; i < snapshot.size; i++) {
+            groupOf[i] = groupOfCommunity[snapshot.communities[i]];
+        }
+        return aggregate(scope, "CLUSTERS", groupOf, groups, false, limit < ranked.length);
+    }
+
+    /** Small clusters expand into their nodes, large ones into buckets by node type and degree */
+    private GraphSummary summariseCluster(Scope scope) {
+        int[] members = members(scope.community(), null, -1);
+        if (members.length <= summaryProperties.getMaxLeafNodes()) {
+            return summariseNodes(scope, members);
+        }
+
+        List<GraphSummary.SuperNode> groups = new ArrayList<>();
+        Map<String, Integer> groupById = new HashMap<>();
+        int[] groupOf = new int[snapshot.size];
+        Arrays.fill(groupOf, -1);
+        for (int i : members) {
+            boolean user = snapshot.users[i];
+            int bucket = degreeBucket(snapshot.degrees[i]);
+            String id = "cluster:" + scope.community() + ":" + (user ? "user" : "transaction") + ":" + bucket;
+            Integer group = groupById.get(id);
+            if (group == null) {
+                group = groups.size();
+                groupById.put(id, group);
+                groups.add(new GraphSummary.SuperNode(id, "DEGREE_BUCKET",
+                    (user ? "users" : "transactions") + " with " + rangeLabel(bucket - 1) + " links", 0, 0, 0, true));
+            }
+            groupOf[i] = group;
+        }
+        return aggregate(scope, "DEGREE_BUCKETS", groupOf, groups, false, false);
+    }
+
+    private GraphSummary summariseDegreeBucket(Scope scope) {
+        return summariseNodes(scope, members(scope.community(), scope.users(), scope.bucket()));
+    }
+
+    /** Individual nodes with typed edges, keeping the best-connected when the scope is too large */
+    private GraphSummary summariseNodes(Scope scope, int[] members) {
+        int limit = summaryProperties.getMaxLeafNodes();
+        int[] kept = members;
+        if (members.length > limit) {
+            kept = Arrays.stream(members).boxed()
+                .sorted((a, b) -> Integer.compare(snapshot.degrees[b], snapshot.degrees[a]))
+                .limit(limit)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        }
+
+        List<GraphSummary.SuperNode> groups = new ArrayList<>(kept.length);
+        int[] groupOf = new int[snapshot.size];
+        Arrays.fill(groupOf, -1);
+        for (int i : kept) {
+            groupOf[i] = groups.size();
+            String key = (snapshot.users[i] ? "user-" : "transaction-") + snapshot.nodeIds[i];
+            groups.add(new GraphSummary.SuperNode(key, "NODE", key, 0, 0, 0, false));
+        }
+        return aggregate(scope, "NODES", groupOf, groups, true, kept.length < members.length);
+    }
+
+    /**
+     * Folds the nodes mapped by {@code groupOf} into their super-nodes and sums
+     * the edges between them. Nodes mapped to -1 are outside the scope.
+     */
+    private GraphSummary aggregate(Scope scope, String level, int[] groupOf, List<GraphSummary.SuperNode> groups,
+                                   boolean typed, boolean truncated) {
+        Map<Long, Long> weights = new HashMap<>();
+        long totalNodes = 0;
+        long totalEdges = 0;
+
+        for (int i = 0; i < snapshot.size; i++) {
+            int group = groupOf[i];
+            if (group < 0) {
+                continue;
+            }
+            totalNodes++;
+            GraphSummary.SuperNode superNode = groups.get(group);
+            if (snapshot.users[i]) {
+                superNode.setUsers(superNode.getUsers() + 1);
+            } else {
+                superNode.setTransactions(superNode.getTransactions() + 1);
+            }
+
+            int[] neighbours = snapshot.neighbours[i];
+            for (int k = 0; k < snapshot.degrees[i]; k++) {
+                int j = neighbours[k];
+                int other = groupOf[j];
+                // Each edge is stored at both endpoints; count it from the lower index only.
+                if (other < 0 || j <= i) {
+                    continue;
+                }
+                totalEdges++;
+                if (other == group && !typed) {
+                    superNode.setInternalEdges(superNode.getInternalEdges() + 1);
+                } else {
+                    long low = Math.min(group, other);
+                    long high = Math.max(group, other);
+                    long type = typed ? snapshot.types[i][k] : 0;
+                    weights.merge((low << 36) | (high << 8) | type, 1L, Long::sum);
+                }
+            }
+        }
+
+        int maxSuperEdges = summaryProperties.getMaxSuperEdges();
+        List<GraphSummary.SuperEdge> edges = new ArrayList<>(Math.min(weights.size(), maxSuperEdges));
+        weights.entrySet().stream()
+            .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+            .limit(maxSuperEdges)
+            .forEach(entry -> {
+                long key = entry.getKey();
+                edges.add(new GraphSummary.SuperEdge(
+                    groups.get((int) (key >>> 36)).getId(),
+                    groups.get((int) ((key >>> 8) & 0xFFFFFFFL)).getId(),
+                    typed ? snapshot.relationshipTypes.get((int) (key & 0xFF)) : null,
+                    entry.getValue()));
+            });
+
+        return new GraphSummary(scope.id(), level, generation, totalNodes, totalEdges,
+            truncated || weights.size() > maxSuperEdges, LocalDateTime.now(), groups, edges);
+    }
+
+    private GraphSummary.SuperNode clusterNode(int community) {
+        return new GraphSummary.SuperNode("cluster:" + community, "CLUSTER", "cluster " + community, 0, 0, 0, true);
+    }
+
+    private int[] members(int community, Boolean users, int degreeBucket) {
+        if (community < 0 || community >= snapshot.communityCount) {
+            throw new IllegalArgumentException("Unknown summary cluster " + community
+                + ", the graph may have been reclustered; reload the root summary");
+        }
+        int[] members = new int[snapshot.size];
+        int count = 0;
+        for (int i = 0; i < snapshot.size; i++) {
+            if (snapshot.communities[i] == community
+                    && (users == null || snapshot.users[i] == users)
+                    && (degreeBucket < 0 || degreeBucket(snapshot.degrees[i]) == degreeBucket)) {
+                members[count++] = i;
+            }
+        }
+        return Arrays.copyOf(members, count);
+    }
+
+    private int[] communitySizes() {
+        int[] sizes = new int[snapshot.communityCount];
+        for (int i = 0; i < snapshot.size; i++) {
+            sizes[snapshot.communities[i]]++;
+        }
+        return sizes;
+    }
+
+    private ClusterSizes publishClusterSizes() {
+        int[] sizes = communitySizes();
+        int[] order = IntStream.range(0, snapshot.size).boxed()
+            .sorted(Comparator.comparingLong(i -> snapshot.nodeIds[i]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+        long[] nodeIds = new long[order.length];
+        int[] nodeSizes = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            nodeIds[i] = snapshot.nodeIds[order[i]];
+            nodeSizes[i] = sizes[snapshot.communities[order[i]]];
+        }
+        return new ClusterSizes(nodeIds, nodeSizes);
+    }
+
+    private int[] allCommunities() {
+        int[] communities = new int[snapshot.communityCount];
+        for (int c = 0; c < communities.length; c++) {
+            communities[c] = c;
+        }
+        return communities;
+    }
+
+    private static int[] rankBySize(int[] sizes, int[] communities) {
+        return Arrays.stream(communities).boxed()
+            .filter(c -> sizes[c] > 0)
+            .sorted((a, b) -> sizes[b] != sizes[a] ? Integer.compare(sizes[b], sizes[a]) : Integer.compare(a, b))
+            .mapToInt(Integer::intValue)
+            .toArray();
+    }
+
+    /** 0 for singletons, 1 for 2-3 nodes, 2 for 4-7 and so on */
+    private static int sizeBucket(int size) {
+        return 31 - Integer.numberOfLeadingZeros(Math.max(size, 1));
+    }
+
+    /** 0 for isolated nodes, 1 for one link, 2 for 2-3 links and so on */
+    private static int degreeBucket(int degree) {
+        return 32 - Integer.numberOfLeadingZeros(degree);
+    }
+
+    private static String rangeLabel(int bucket) {
+        if (bucket < 0) {
+            return "0";
+        }
+        long low = 1L << bucket;
+        long high = (1L << (bucket + 1)) - 1;
+        return low == high ? String.valueOf(low) : low + "-" + high;
+    }
+
+    /** Mutable in-memory copy of the graph with one adjacency list per node */
+    private static final class Snapshot {
+        private final Map<Long, Integer> indexByNodeId = new HashMap<>();
+        private final List<String> relationshipTypes = new ArrayList<>();
+        private long[] nodeIds = new long[1024];
+        private boolean[] users = new boolean[1024];
+        private int[][] neighbours = new int[1024][];
+        private byte[][] types = new byte[1024][];
+        private int[] degrees = new int[1024];
+        private int[] communities = new int[0];
+        private int communityCount;
+        private int size;
+        private int changesSinceRebuild;
+
+        /** Index of a node, adding it unclustered if it is not known yet */
+        int node(long nodeId, boolean user) {
+            Integer index = indexByNodeId.get(nodeId);
+            if (index != null) {
+                return index;
+            }
+            if (size == nodeIds.length) {
+                int capacity = size * 2;
+                nodeIds = Arrays.copyOf(nodeIds, capacity);
+                users = Arrays.copyOf(users, capacity);
+                neighbours = Arrays.copyOf(neighbours, capacity);
+                types = Arrays.copyOf(types, capacity);
+                degrees = Arrays.copyOf(degrees, capacity);
+            }
+            if (communities.length < nodeIds.length) {
+                int previous = communities.length;
+                communities = Arrays.copyOf(communities, nodeIds.length);
+                Arrays.fill(communities, previous, communities.length, -1);
+            }
+            nodeIds[size] = nodeId;
+            users[size] = user;
+            neighbours[size] = new int[2];
+            types[size] = new byte[2];
+            indexByNodeId.put(nodeId, size);
+            return size++;
+        }
+
+        int typeCode(String type) {
+            int code = relationshipTypes.indexOf(type);
+            if (code < 0) {
+                code = relationshipTypes.size();
+                relationshipTypes.add(type);
+            }
+            return code;
+        }
+
+        /** Records an undirected edge at both endpoints */
+        void append(int a, int b, int type) {
+            add(a, b, type);
+            if (a != b) {
+                add(b, a, type);
+            }
+        }
+
+        private void add(int from, int to, int type) {
+            if (degrees[from] == neighbours[from].length) {
+                neighbours[from] = Arrays.copyOf(neighbours[from], degrees[from] * 2);
+                types[from] = Arrays.copyOf(types[from], degrees[from] * 2);
+            }
+            neighbours[from][degrees[from]] = to;
+            types[from][degrees[from]] = (byte) type;
+            degrees[from]++;
+        }
+
+        private boolean contains(int from, int to, int type) {
+            for (int k = 0; k < degrees[from]; k++) {
+                if (neighbours[from][k] == to && types[from][k] == type) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Merges fresh neighbourhood rows into the snapshot. New nodes join the
+         * cluster most common among their neighbours, or start their own.
+         * Returns the clusters whose contents changed.
+         */
+        Set<Integer> merge(Collection<Map<String, Object>> rows) {
+            Set<Integer> touched = new HashSet<>();
+            Set<Integer> unclustered = new LinkedHashSet<>();
+            for (Map<String, Object> row : rows) {
+                int node = node(((Number) row.get("id")).longValue(), Boolean.TRUE.equals(row.get("user")));
+                if (communities[node] < 0) {
+                    unclustered.add(node);
+                }
+                if (row.get("neighbour") == null) {
+                    continue;
+                }
+                int neighbour = node(((Number) row.get("neighbour")).longValue(),
+                    Boolean.TRUE.equals(row.get("neighbourUser")));
+                if (communities[neighbour] < 0) {
+                    unclustered.add(neighbour);
+                }
+                int type = typeCode((String) row.get("type"));
+                if (!contains(node, neighbour, type)) {
+                    append(node, neighbour, type);
+                    changesSinceRebuild++;
+                    touched.add(communities[node]);
+                    touched.add(communities[neighbour]);
+                }
+            }
+
+            for (int node : unclustered) {
+                Map<Integer, Integer> votes = new HashMap<>();
+                int best = -1;
+                int bestVotes = 0;
+                for (int k = 0; k < degrees[node]; k++) {
+                    int community = communities[neighbours[node][k]];
+                    if (community < 0) {
+                        continue;
+                    }
+                    int count = votes.merge(community, 1, Integer::sum);
+                    if (count > bestVotes || (count == bestVotes && community < best)) {
+                        best = community;
+                        bestVotes = count;
+                    }
+                }
+                communities[node] = best >= 0 ? best : communityCount++;
+                touched.add(communities[node]);
+                changesSinceRebuild++;
+            }
+            touched.remove(-1);
+            return touched;
+        }
+
+        long edgeCount() {
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                total += degrees[i];
+            }
+            return total / 2;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.flagright.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flagright.Repository.TransactionRepository;
+import com.flagright.Repository.UserRepository;
+import com.flagright.config.IngestionProperties;
+import com.flagright.exception.UserNotFoundException;
+import com.flagright.model.dto.CreateTransactionRequest;
+import com.flagright.model.dto.CreateUserRequest;
+import com.flagright.model.dto.IngestionReceipt;
+import com.flagright.model.dto.IngestionStatus;
+import com.flagright.model.entity.Transaction;
+import com.flagright.model.entity.User;
+import com.flagright.util.MappedJournal;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional write-ahead ingestion. When enabled, user and transaction creates
+ * are appended to a local memory-mapped journal and acknowledged as soon as
+ * they are durable there, so a slow or restarting Neo4j neither fails nor
+ * holds the request. A single replayer applies entries to Neo4j in journal
+ * order, retrying with backoff while the database is unavailable and
+ * checkpointing after each batch. Every entry carries an ingestion key that
+ * is stored on the created node, so an entry applied just before a crash is
+ * recognised and skipped when it is replayed again. An entry Neo4j refuses
+ * permanently is kept as an {@code IngestionRejection} node with the reason
+ * and the original request, so the caller holding the receipt can look up
+ * what happened to it by ingestion key.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IngestionJournalService {
+
+    private static final long POLL_MILLIS = 200;
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+
+    private static final String RECORD_REJECTION =
+        "MERGE (r:IngestionRejection {ingestionKey: $key}) " +
+        "SET r.kind = $kind, r.reason = $reason, r.request = $request, r.acceptedAt = $acceptedAt, " +
+        "r.rejectedAt = $rejectedAt";
+    private static final String FIND_REJECTION =
+        "MATCH (r:IngestionRejection {ingestionKey: $key}) RETURN r.kind AS kind, r.reason AS reason, " +
+        "r.rejectedAt AS rejectedAt";
+
+    public enum Kind { USER, TRANSACTION }
+
+    /** What the journal holds for one accepted create */
+    private record JournalEntry(String key, Kind kind, long acceptedAtMillis,
+                                CreateUserRequest user, CreateTransactionRequest transaction) {
+    }
+
+    private final IngestionProperties ingestionProperties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final UserService userService;
+    private final TransactionService transactionService;
+    private final UserRepository userRepository;
+    private final TransactionRepository transactionRepository;
+    private final Neo4jClient neo4jClient;
+
+    private final ExecutorService replayer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ingestion-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private MappedJournal journal;
+    private Counter rejected;
+    private volatile boolean running;
+    private volatile long appliedSequence;
+    private volatile long pendingSinceMillis;
+
+    @PostConstruct
+    public void open() throws IOException {
+        IngestionProperties.Journal settings = ingestionProperties.getJournal();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        Timer fsync = Timer.builder("flagright.ingestion.journal.fsync")
+            .description("Time to force journal appends to disk")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        rejected = Counter.builder("flagright.ingestion.journal.rejected")
+            .description("Journal entries Neo4j refused permanently, kept as IngestionRejection nodes")
+            .register(meterRegistry);
+
+        journal = new MappedJournal(Path.of(settings.getDirectory()),
+            (int) Math.min(Integer.MAX_VALUE, settings.getSegmentSize().toBytes()),
+            nanos -> fsync.record(nanos, TimeUnit.NANOSECONDS));
+        appliedSequence = journal.checkpointSequence();
+
+        Gauge.builder("flagright.ingestion.journal.size", journal, MappedJournal::sizeBytes)
+            .description("Bytes held in journal segments").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("flagright.ingestion.journal.segments", journal, MappedJournal::segmentCount)
+            .description("Journal segment files on disk").register(meterRegistry);
+        Gauge.builder("flagright.ingestion.journal.replay.lag.entries", this,
+                service -> service.journal.lastSequence() - service.appliedSequence)
+            .description("Durable journal entries not yet applied to Neo4j").register(meterRegistry);
+        Gauge.builder("flagright.ingestion.journal.replay.lag", this, IngestionJournalService::replayLagSeconds)
+            .description("Age of the oldest journal entry not yet applied to Neo4j").baseUnit("seconds")
+            .register(meterRegistry);
+
+        log.info("Ingestion journal open at {}: {} entries pending replay", settings.getDirectory(),
+            journal.lastSequence() - appliedSequence);
+    }
+
+    /** Starts applying the journal once the application, and Neo4j access, is up */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startReplay() {
+        if (journal != null) {
+            running = true;
+            replayer.submit(this::replay);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Unapplied entries stay in the journal and are replayed on the next start.
+        running = false;
+        replayer.shutdown();
+        if (!replayer.awaitTermination(10, TimeUnit.SECONDS)) {
+            replayer.shutdownNow();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /** Returns true when creates are accepted into the journal instead of written directly */
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    /** Durably accepts a user create for background application */
+    public IngestionReceipt submitUser(CreateUserRequest request) {
+        return submit(new JournalEntry(UUID.randomUUID().toString(), Kind.USER, System.currentTimeMillis(),
+            request, null));
+    }
+
+    /** Durably accepts a transaction create for background application */
+    public IngestionReceipt submitTransaction(CreateTransactionRequest request) {
+        return submit(new JournalEntry(UUID.randomUUID().toString(), Kind.TRANSACTION, System.currentTimeMillis(),
+            null, request));
+    }
+
+    private IngestionReceipt submit(JournalEntry entry) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialise journal entry", e);
+        }
+        long sequence = journal.append(payload);
+        return new IngestionReceipt(entry.key(), sequence, LocalDateTime.now());
+    }
+
+    /**
+     * Gets what happened to a journaled create. A key that is neither applied
+     * nor rejected is reported as pending; that includes keys never issued.
+     */
+    public IngestionStatus getStatus(String ingestionKey) {
+        if (userRepository.existsByIngestionKey(ingestionKey)) {
+            return new IngestionStatus(ingestionKey, "APPLIED", Kind.USER.name(), null, null);
+        }
+        if (transactionRepository.existsByIngestionKey(ingestionKey)) {
+            return new IngestionStatus(ingestionKey, "APPLIED", Kind.TRANSACTION.name(), null, null);
+        }
+        return neo4jClient.query(FIND_REJECTION)
+            .bind(ingestionKey).to("key")
+            .fetchAs(IngestionStatus.class)
+            .mappedBy((typeSystem, record) -> new IngestionStatus(ingestionKey, "REJECTED",
+                record.get("kind").asString(null), record.get("reason").asString(null),
+                record.get("rejectedAt").isNull() ? null : record.get("rejectedAt").asLocalDateTime()))
+            .one()
+            .orElseGet(() -> new IngestionStatus(ingestionKey, "PENDING", null, null, null));
+    }
+
+    private void replay() {
+        int batchSize = Math.max(1, ingestionProperties.getJournal().getReplayBatchSize());
+        try {
+            while (running) {
+                List<MappedJournal.Entry> entries = journal.readNext(batchSize, POLL_MILLIS);
+                if (entries.isEmpty()) {
+                    pendingSinceMillis = 0;
+                    continue;
+                }
+                try {
+                    for (MappedJournal.Entry entry : entries) {
+                        if (!applyWithRetry(entry)) {
+                            return;
+                        }
+                        appliedSequence = entry.sequence();
+                    }
+                } finally {
+                    if (appliedSequence > journal.checkpointSequence()) {
+                        journal.checkpoint(appliedSequence);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Ingestion journal replay stopped, it resumes from the last checkpoint on restart", e);
+        }
+    }
+
+    /** Applies one entry, retrying transient failures; returns false when replay stopped first */
+    private boolean applyWithRetry(MappedJournal.Entry entry) throws InterruptedException {
+        JournalEntry decoded;
+        try {
+            decoded = objectMapper.readValue(entry.payload(), JournalEntry.class);
+        } catch (IOException e) {
+            log.error("Skipping unreadable ingestion journal entry {}", entry.sequence(), e);
+            rejected.increment();
+            return true;
+        }
+        pendingSinceMillis = decoded.acceptedAtMillis();
+
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        long maxBackoff = ingestionProperties.getJournal().getMaxRetryBackoff().toMillis();
+        while (running) {
+            try {
+                try {
+                    apply(decoded);
+                } catch (IllegalArgumentException | UserNotFoundException e) {
+                    // Recording the rejection is retried like the create itself, so it is never lost.
+                    recordRejection(decoded, e.getMessage());
+                }
+                return true;
+            } catch (RuntimeException e) {
+                log.warn("Failed to apply journaled {} create {}, retrying in {} ms",
+                    decoded.kind(), decoded.key(), backoff, e);
+                Thread.sleep(backoff);
+                backoff = Math.min(maxBackoff, backoff * 2);
+            }
+        }
+        return false;
+    }
+
+    private void apply(JournalEntry entry) {
+        if (entry.kind() == Kind.USER) {
+            if (userRepository.existsByIngestionKey(entry.key())) {
+                return;
+            }
+            CreateUserRequest request = entry.user();
+            User user = new User();
+            user.setEmail(request.getEmail());
+            user.setPhone(request.getPhone());
+            user.setFirstName(request.getFirstName());
+            user.setLastName(request.getLastName());
+            user.setAddress(request.getAddress());
+            user.setDateOfBirth(request.getDateOfBirth());
+            user.setIngestionKey(entry.key());
+            userService.createUser(user);
+        } else {
+            if (transactionRepository.existsByIngestionKey(entry.key())) {
+                return;
+            }
+            CreateTransactionRequest request = entry.transaction();
+            Transaction transaction = new Transaction();
+            transaction.setAmount(request.getAmount());
+            transaction.setCurrency(request.getCurrency());
+            transaction.setDescription(request.getDescription());
+            transaction.setIpAddress(request.getIpAddress());
+            transaction.setDeviceId(request.getDeviceId());
+            transaction.setPaymentMethod(request.getPaymentMethod());
+            transaction.setIngestionKey(entry.key());
+            transactionService.createTransaction(transaction, request.getSenderId(), request.getRecipientId());
+        }
+    }
+
+    private void recordRejection(JournalEntry entry, String reason) {
+        String request;
+        try {
+            request = objectMapper.writeValueAsString(entry.kind() == Kind.USER ? entry.user() : entry.transaction());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialise rejected journal entry", e);
+        }
+        neo4jClient.query(RECORD_REJECTION)
+            .bind(entry.key()).to("key")
+            .bind(entry.kind().name()).to("kind")
+            .bind(reason).to("reason")
+            .bind(request).to("request")
+            .bind(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.acceptedAtMillis()), ZoneId.systemDefault()))
+            .to("acceptedAt")
+            .bind(LocalDateTime.now()).to("rejectedAt")
+            .run();
+        log.warn("Rejected journaled {} create {}: {}", entry.kind(), entry.key(), reason);
+        rejected.increment();
+    }
+
+    private double replayLagSeconds() {
+        long pendingSince = pendingSinceMillis;
+        if (pendingSince == 0 || journal.lastSequence() <= appliedSequence) {
+            return 0.0;
+        }
+        return (System.currentTimeMillis() - pendingSince) / 1000.0;
+    }
+}
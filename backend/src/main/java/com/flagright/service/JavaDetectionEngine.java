@@ -0,0 +1,129 @@
+package com.flagright.service;
+
+import com.flagright.config.DetectionProperties;
+import com.flagright.util.TimeBuckets;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Joins in the application. A full pass reads only the id, fingerprint and
+ * timestamp of every entity carrying the attribute, groups them by
+ * fingerprint, sweeps each group in time order and writes the resulting
+ * pairs back in batches. One scan replaces a join per entity, at the cost of
+ * holding the attribute's population in memory.
+ */
+@Component
+@RequiredArgsConstructor
+public class JavaDetectionEngine implements DetectionEngine {
+
+    public static final String NAME = "java";
+
+    private static final Comparator<Member> BY_CREATED_AT =
+        Comparator.comparing(Member::createdAt, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final Neo4jClient neo4jClient;
+    private final DetectionProperties detectionProperties;
+
+    private record Member(long id, LocalDateTime createdAt) {
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<Long> linkFrom(DetectedRelationship relationship, Long anchorId, Duration window) {
+        String query = "MATCH (a:" + relationship.label() + ") WHERE id(a) = $anchorId " +
+            "MATCH (b:" + relationship.label() + ") WHERE b." + relationship.fingerprintProperty() +
+            " = a." + relationship.fingerprintProperty() + " AND id(b) <> id(a)" +
+            CypherDetectionEngine.bucketPredicate(window) +
+            " RETURN id(b) AS id, a.createdAt AS anchorCreatedAt, b.createdAt AS createdAt";
+        Duration comparable = comparableWindow(window);
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("anchorId", anchorId);
+        if (window != null) {
+            parameters.put("bucketSpan", TimeBuckets.bucketsSpanned(window));
+        }
+        List<Long> linked = new ArrayList<>();
+        List<List<Long>> pairs = new ArrayList<>();
+        for (Map<String, Object> row : neo4jClient.query(query).bindAll(parameters).fetch().all()) {
+            if (TimeBuckets.withinWindow((LocalDateTime) row.get("anchorCreatedAt"),
+                    (LocalDateTime) row.get("createdAt"), comparable)) {
+                long id = ((Number) row.get("id")).longValue();
+                linked.add(id);
+                pairs.add(List.of(anchorId, id));
+            }
+        }
+        mergePairs(relationship, pairs);
+        return linked;
+    }
+
+    @Override
+    public void linkAll(DetectedRelationship relationship, Duration window) {
+        String query = "MATCH (n:" + relationship.label() + ") WHERE n." + relationship.fingerprintProperty() +
+            " IS NOT NULL RETURN id(n) AS id, n." + relationship.fingerprintProperty() +
+            " AS fingerprint, n.createdAt AS createdAt";
+        Duration comparable = comparableWindow(window);
+
+        Map<Long, List<Member>> groups = new HashMap<>();
+        for (Map<String, Object> row : neo4jClient.query(query).fetch().all()) {
+            groups.computeIfAbsent(((Number) row.get("fingerprint")).longValue(), key -> new ArrayList<>())
+                .add(new Member(((Number) row.get("id")).longValue(), (LocalDateTime) row.get("createdAt")));
+        }
+
+        int batchSize = Math.max(1, detectionProperties.getBatchSize());
+        List<List<Long>> pairs = new ArrayList<>(batchSize);
+        for (List<Member> members : groups.values()) {
+            if (members.size() < 2) {
+                continue;
+            }
+            if (comparable != null) {
+                members.sort(BY_CREATED_AT);
+            }
+            for (int i = 0; i < members.size(); i++) {
+                for (int j = i + 1; j < members.size(); j++) {
+                    Member first = members.get(i);
+                    Member second = members.get(j);
+                    if (!TimeBuckets.withinWindow(first.createdAt(), second.createdAt(), comparable)) {
+                        break;
+                    }
+                    pairs.add(List.of(first.id(), second.id()));
+                    if (pairs.size() >= batchSize) {
+                        mergePairs(relationship, pairs);
+                        pairs.clear();
+                    }
+                }
+            }
+        }
+        mergePairs(relationship, pairs);
+    }
+
+    private void mergePairs(DetectedRelationship relationship, Collection<List<Long>> pairs) {
+        if (pairs.isEmpty()) {
+            return;
+        }
+        String query = "UNWIND $pairs AS pair " +
+            "MATCH (a:" + relationship.label() + ") WHERE id(a) = pair[0] " +
+            "MATCH (b:" + relationship.label() + ") WHERE id(b) = pair[1] " +
+            "MERGE (a)-[r:" + relationship.name() + "]-(b) ON CREATE SET r.createdAt = $now";
+        neo4jClient.query(query).bind(new ArrayList<>(pairs)).to("pairs").bind(LocalDateTime.now()).to("now").run();
+    }
+
+    /** The database compares whole seconds, so the window is truncated the same way here */
+    private static Duration comparableWindow(Duration window) {
+        return window == null ? null : Duration.ofSeconds(window.getSeconds());
+    }
+}
@@ -0,0 +1,326 @@
+package com.flagright.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flagright.model.dto.TransactionConnectionDto;
+import com.flagright.model.dto.UserConnectionDto;
+import com.flagright.model.entity.Transaction;
+import com.flagright.model.entity.User;
+import com.flagright.util.CountingOutputStream;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes list and connection responses in normalized form: each user or
+ * transaction appears once in an entity table keyed by id, and everything
+ * else refers to it by id. Field names are pre-encoded and each field has a
+ * fixed accessor, so writing needs no reflection or per-request serializer
+ * lookup, and output goes straight to the response through a streaming
+ * generator. Bytes written and CPU time are logged per response.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NormalizedResponseWriter {
+
+    /** Writes a prepared payload to the response body */
+    @FunctionalInterface
+    public interface Payload {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter<T> {
+        void write(JsonGenerator generator, T entity) throws IOException;
+    }
+
+    private record Field<T>(SerializedString name, ValueWriter<T> writer) {
+        void write(JsonGenerator generator, T entity) throws IOException {
+            generator.writeFieldName(name);
+            writer.write(generator, entity);
+        }
+    }
+
+    private static final Map<String, Field<User>> USER_FIELDS = fields(
+        field("id", (g, u) -> writeLong(g, u.getId())),
+        field("uid", (g, u) -> writeLong(g, u.getUid())),
+        field("email", (g, u) -> writeString(g, u.getEmail())),
+        field("phone", (g, u) -> writeString(g, u.getPhone())),
+        field("firstName", (g, u) -> writeString(g, u.getFirstName())),
+        field("lastName", (g, u) -> writeString(g, u.getLastName())),
+        field("address", (g, u) -> writeString(g, u.getAddress())),
+        field("dateOfBirth", (g, u) -> writeString(g, u.getDateOfBirth())),
+        field("createdAt", (g, u) -> writeTimestamp(g, u.getCreatedAt())),
+        field("updatedAt", (g, u) -> writeTimestamp(g, u.getUpdatedAt())));
+
+    private static final Map<String, Field<Transaction>> TRANSACTION_FIELDS = fields(
+        field("id", (g, t) -> writeLong(g, t.getId())),
+        field("uid", (g, t) -> writeLong(g, t.getUid())),
+        field("amount", (g, t) -> writeDecimal(g, t.getAmount())),
+        field("currency", (g, t) -> writeString(g, t.getCurrency())),
+        field("description", (g, t) -> writeString(g, t.getDescription())),
+        field("ipAddress", (g, t) -> writeString(g, t.getIpAddress())),
+        field("deviceId", (g, t) -> writeString(g, t.getDeviceId())),
+        field("paymentMethod", (g, t) -> writeString(g, t.getPaymentMethod())),
+        field("status", (g, t) -> writeString(g, t.getStatus())),
+        field("createdAt", (g, t) -> writeTimestamp(g, t.getCreatedAt())),
+        field("completedAt", (g, t) -> writeTimestamp(g, t.getCompletedAt())));
+
+    private static final SerializedString TRANSACTIONS = new SerializedString("transactions");
+    private static final SerializedString USERS = new SerializedString("users");
+    private static final SerializedString CONNECTIONS = new SerializedString("connections");
+    private static final SerializedString SENDER_ID = new SerializedString("senderId");
+    private static final SerializedString RECIPIENT_ID = new SerializedString("recipientId");
+    private static final SerializedString USER_ID = new SerializedString("userId");
+    private static final SerializedString TRANSACTION_ID = new SerializedString("transactionId");
+    private static final SerializedString RELATIONSHIP_TYPES = new SerializedString("relationshipTypes");
+    private static final SerializedString SHARED_VALUES = new SerializedString("sharedValues");
+    private static final SerializedString CREATED_AT = new SerializedString("createdAt");
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Prepares a transaction list as {"transactions": [...], "users": {id: {...}}},
+     * with senderId and recipientId referencing the user table. Field lists are
+     * validated here so bad requests fail before the response starts.
+     */
+    public Payload transactions(List<Transaction> transactions, String transactionFields, String userFields) {
+        List<Field<Transaction>> selectedTransactionFields = select(transactionFields, TRANSACTION_FIELDS, "transaction");
+        List<Field<User>> selectedUserFields = select(userFields, USER_FIELDS, "user");
+
+        return out -> write("transactions", transactions.size(), out, generator -> {
+            Map<Long, User> users = new LinkedHashMap<>();
+            generator.writeFieldName(TRANSACTIONS);
+            generator.writeStartArray();
+            for (Transaction transaction : transactions) {
+                writeTransaction(generator, transaction, selectedTransactionFields, users);
+            }
+            generator.writeEndArray();
+            writeUserTable(generator, users.values(), selectedUserFields);
+        });
+    }
+
+    /** Prepares a user's connections as {"connections": [...], "users": {id: {...}}} */
+    public Payload userConnections(List<UserConnectionDto> connections, String userFields) {
+        List<Field<User>> selectedUserFields = select(userFields, USER_FIELDS, "user");
+
+        return out -> write("user connections", connections.size(), out, generator -> {
+            Map<Long, User> users = new LinkedHashMap<>();
+            generator.writeFieldName(CONNECTIONS);
+            generator.writeStartArray();
+            for (UserConnectionDto connection : connections) {
+                generator.writeStartObject();
+                generator.writeFieldName(USER_ID);
+                writeLong(generator, reference(connection.getUser(), users));
+                writeRelationships(generator, connection.getRelationshipTypes(), connection.getSharedValues(),
+                    connection.getCreatedAt());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            writeUserTable(generator, users.values(), selectedUserFields);
+        });
+    }
+
+    /**
+     * Prepares a transaction's connections as {"connections": [...],
+     * "transactions": {id: {...}}, "users": {id: {...}}}
+     */
+    public Payload transactionConnections(List<TransactionConnectionDto> connections, String transactionFields,
+                                          String userFields) {
+        List<Field<Transaction>> selectedTransactionFields = select(transactionFields, TRANSACTION_FIELDS, "transaction");
+        List<Field<User>> selectedUserFields = select(userFields, USER_FIELDS, "user");
+
+        return out -> write("transaction connections", connections.size(), out, generator -> {
+            Map<Long, Transaction> transactions = new LinkedHashMap<>();
+            generator.writeFieldName(CONNECTIONS);
+            generator.writeStartArray();
+            for (TransactionConnectionDto connection : connections) {
+                Transaction transaction = connection.getTransaction();
+                if (transaction != null && transaction.getId() != null) {
+                    transactions.putIfAbsent(transaction.getId(), transaction);
+                }
+                generator.writeStartObject();
+                generator.writeFieldName(TRANSACTION_ID);
+                writeLong(generator, transaction == null ? null : transaction.getId());
+                writeRelationships(generator, connection.getRelationshipTypes(), connection.getSharedValues(),
+                    connection.getCreatedAt());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            Map<Long, User> users = new LinkedHashMap<>();
+            generator.writeFieldName(TRANSACTIONS);
+            generator.writeStartObject();
+            for (Transaction transaction : transactions.values()) {
+                generator.writeFieldName(String.valueOf(transaction.getId()));
+                writeTransaction(generator, transaction, selectedTransactionFields, users);
+            }
+            generator.writeEndObject();
+            writeUserTable(generator, users.values(), selectedUserFields);
+        });
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private void write(String kind, int entities, OutputStream target, Body body) throws IOException {
+        long cpuStarted = THREADS.getCurrentThreadCpuTime();
+        CountingOutputStream counted = new CountingOutputStream(target);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(counted);
+
+        generator.writeStartObject();
+        body.write(generator);
+        generator.writeEndObject();
+        generator.flush();
+
+        long cpuMicros = (THREADS.getCurrentThreadCpuTime() - cpuStarted) / 1000;
+        log.info("Wrote {} normalized {}: {} bytes, {} us CPU", entities, kind, counted.getCount(), cpuMicros);
+    }
+
+    private static void writeTransaction(JsonGenerator generator, Transaction transaction,
+                                         List<Field<Transaction>> selected, Map<Long, User> users) throws IOException {
+        generator.writeStartObject();
+        for (Field<Transaction> field : selected) {
+            field.write(generator, transaction);
+        }
+        generator.writeFieldName(SENDER_ID);
+        writeLong(generator, reference(transaction.getSender(), users));
+        generator.writeFieldName(RECIPIENT_ID);
+        writeLong(generator, reference(transaction.getRecipient(), users));
+        generator.writeEndObject();
+    }
+
+    private static void writeUserTable(JsonGenerator generator, Iterable<User> users, List<Field<User>> selected)
+            throws IOException {
+        generator.writeFieldName(USERS);
+        generator.writeStartObject();
+        for (User user : users) {
+            generator.writeFieldName(String.valueOf(user.getId()));
+            generator.writeStartObject();
+            for (Field<User> field : selected) {
+                field.write(generator, user);
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeRelationships(JsonGenerator generator, List<String> relationshipTypes,
+                                           Map<String, String> sharedValues, LocalDateTime createdAt) throws IOException {
+        generator.writeFieldName(RELATIONSHIP_TYPES);
+        generator.writeStartArray();
+        if (relationshipTypes != null) {
+            for (String type : relationshipTypes) {
+                generator.writeString(type);
+            }
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(SHARED_VALUES);
+        generator.writeStartObject();
+        if (sharedValues != null) {
+            for (Map.Entry<String, String> entry : sharedValues.entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                writeString(generator, entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+        generator.writeFieldName(CREATED_AT);
+        writeTimestamp(generator, createdAt);
+    }
+
+    /** Adds a user to the entity table and returns the id to reference it by */
+    private static Long reference(User user, Map<Long, User> users) {
+        if (user == null || user.getId() == null) {
+            return null;
+        }
+        users.putIfAbsent(user.getId(), user);
+        return user.getId();
+    }
+
+    /** Resolves a comma-separated field list against a table; id is always included and null means all fields */
+    private static <T> List<Field<T>> select(String spec, Map<String, Field<T>> table, String kind) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return new ArrayList<>(table.values());
+        }
+        Map<String, Field<T>> selected = new LinkedHashMap<>();
+        selected.put("id", table.get("id"));
+        for (String name : spec.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            Field<T> field = table.get(trimmed);
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown " + kind + " field '" + trimmed + "'. Use any of " + table.keySet());
+            }
+            selected.put(trimmed, field);
+        }
+        return new ArrayList<>(selected.values());
+    }
+
+    private static <T> Field<T> field(String name, ValueWriter<T> writer) {
+        return new Field<>(new SerializedString(name), writer);
+    }
+
+    @SafeVarargs
+    private static <T> Map<String, Field<T>> fields(Field<T>... fields) {
+        Map<String, Field<T>> table = new LinkedHashMap<>();
+        for (Field<T> field : fields) {
+            table.put(field.name().getValue(), field);
+        }
+        return Collections.unmodifiableMap(table);
+    }
+
+    private static void writeLong(JsonGenerator generator, Long value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    private static void writeDecimal(JsonGenerator generator, BigDecimal value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    private static void writeString(JsonGenerator generator, String value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value);
+        }
+    }
+
+    /** Same ISO-8601 form the default Jackson mapping produces for LocalDateTime */
+    private static void writeTimestamp(JsonGenerator generator, LocalDateTime value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(value));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.flagright.service;
+
+import com.flagright.config.QueryAccountingProperties;
+import com.flagright.util.InstrumentedDriver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Per-request accounting of the Neo4j queries the instrumented driver runs.
+ * A request opens a {@link Ledger} on its thread; every query it runs adds
+ * its rows and database time, keyed by its shape, the Cypher text with
+ * literals blanked out. When the request ends, the totals go to metrics
+ * tagged with the route, and any shape run {@code repeat-threshold} times or
+ * more is logged as a probable N+1. Queries over the slow-query threshold
+ * are logged wherever they run, with literals and parameter values masked
+ * so customer data stays out of the log.
+ */
+@Component
+@Slf4j
+public class QueryAccounting implements InstrumentedDriver.QueryListener {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.)*'|\"(?:[^\"\\\\]|\\\\.)*\"");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final QueryAccountingProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ThreadLocal<Ledger> current = new ThreadLocal<>();
+    private final Timer queryTime;
+    private final Counter slowQueries;
+
+    /** Queries, rows and database time of one request, by query shape */
+    public static final class Ledger {
+        private final String request;
+        private final Map<String, Integer> runsByShape = new HashMap<>();
+        private int queries;
+        private long rows;
+        private long nanos;
+
+        private Ledger(String request) {
+            this.request = request;
+        }
+
+        private synchronized void add(String shape, long queryRows, long queryNanos) {
+            queries++;
+            rows += queryRows;
+            nanos += queryNanos;
+            runsByShape.merge(shape, 1, Integer::sum);
+        }
+
+        public synchronized int queries() {
+            return queries;
+        }
+
+        public synchronized long rows() {
+            return rows;
+        }
+
+        public synchronized long nanos() {
+            return nanos;
+        }
+
+        /** Shapes run at least {@code threshold} times, with their run counts */
+        public synchronized Map<String, Integer> repeatedShapes(int threshold) {
+            Map<String, Integer> repeated = new HashMap<>();
+            runsByShape.forEach((shape, runs) -> {
+                if (runs >= threshold) {
+                    repeated.put(shape, runs);
+                }
+            });
+            return repeated;
+        }
+    }
+
+    public QueryAccounting(QueryAccountingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.queryTime = Timer.builder("flagright.db.query")
+            .description("Database time of single Neo4j queries")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.slowQueries = Counter.builder("flagright.db.query.slow")
+            .description("Neo4j queries over the slow-query threshold")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /** Starts accounting for a request on the current thread */
+    public Ledger open(String request) {
+        Ledger ledger = new Ledger(request);
+        current.set(ledger);
+        return ledger;
+    }
+
+    /**
+     * Ends a request's accounting: records its totals under the route and
+     * logs repeated query shapes.
+     *
+     * @param route the matched route pattern, which keeps metric tags bounded
+     */
+    public void close(Ledger ledger, String method, String route) {
+        current.remove();
+        DistributionSummary.builder("flagright.db.request.queries")
+            .description("Neo4j queries per request").tags("method", method, "route", route)
+            .register(meterRegistry).record(ledger.queries());
+        DistributionSummary.builder("flagright.db.request.rows")
+            .description("Rows read from Neo4j per request").tags("method", method, "route", route)
+            .register(meterRegistry).record(ledger.rows());
+        Timer.builder("flagright.db.request.time")
+            .description("Neo4j time per request").tags("method", method, "route", route)
+            .register(meterRegistry).record(ledger.nanos(), TimeUnit.NANOSECONDS);
+
+        Map<String, Integer> repeated = ledger.repeatedShapes(Math.max(2, properties.getRepeatThreshold()));
+        if (!repeated.isEmpty()) {
+            Counter.builder("flagright.db.request.repeated")
+                .description("Requests that ran one query shape often enough to suggest N+1")
+                .tags("method", method, "route", route)
+                .register(meterRegistry).increment();
+            repeated.forEach((shape, runs) -> log.warn("Probable N+1 in {}: {} runs of {}", ledger.request, runs,
+                truncate(shape)));
+        }
+        log.debug("{} ran {} queries reading {} rows in {} ms", ledger.request, ledger.queries(), ledger.rows(),
+            TimeUnit.NANOSECONDS.toMillis(ledger.nanos()));
+    }
+
+    /** The request's summary as response headers; Server-Timing shows in browser developer tools */
+    public Map<String, String> headers(Ledger ledger) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Server-Timing", String.format(Locale.ROOT, "db;dur=%.1f;desc=\"%d queries\"",
+            ledger.nanos() / 1e6, ledger.queries()));
+        headers.put("X-DB-Queries", Integer.toString(ledger.queries()));
+        headers.put("X-DB-Rows", Long.toString(ledger.rows()));
+        int repeated = ledger.repeatedShapes(Math.max(2, properties.getRepeatThreshold())).size();
+        if (repeated > 0) {
+            headers.put("X-DB-Repeated-Queries", Integer.toString(repeated));
+        }
+        return headers;
+    }
+
+    public boolean isResponseHeaders() {
+        return properties.isEnabled() && properties.isResponseHeaders();
+    }
+
+    @Override
+    public Object begin() {
+        return current.get();
+    }
+
+    @Override
+    public void completed(Object context, String cypher, Map<String, Object> parameters, long rows, long nanos) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        String shape = shapeOf(cypher);
+        Ledger ledger = (Ledger) context;
+        if (ledger != null) {
+            ledger.add(shape, rows, nanos);
+        }
+        queryTime.record(nanos, TimeUnit.NANOSECONDS);
+        if (nanos >= properties.getSlowQueryThreshold().toNanos()) {
+            slowQueries.increment();
+            log.warn("Slow query, {} ms and {} rows{}: {} with {}", TimeUnit.NANOSECONDS.toMillis(nanos), rows,
+                ledger == null ? "" : " in " + ledger.request, truncate(shape), sanitize(parameters));
+        }
+    }
+
+    /** Cypher with string literals blanked and whitespace collapsed, so runs differing only in values match */
+    static String shapeOf(String cypher) {
+        return WHITESPACE.matcher(STRING_LITERAL.matcher(cypher).replaceAll("?")).replaceAll(" ").trim();
+    }
+
+    private String truncate(String shape) {
+        int max = Math.max(50, properties.getMaxLoggedQueryLength());
+        return shape.length() <= max ? shape : shape.substring(0, max) + "...";
+    }
+
+    /** Parameter names with value types and sizes, never the values, except numbers and booleans */
+    static String sanitize(Map<String, Object> parameters) {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        List<String> names = new ArrayList<>(parameters.keySet());
+        names.sort(null);
+        for (String name : names) {
+            joiner.add(name + ": " + describe(parameters.get(name)));
+        }
+        return joiner.toString();
+    }
+
+    private static String describe(Object value) {
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            return String.valueOf(value);
+        }
+        if (value instanceof CharSequence text) {
+            return "<string of " + text.length() + ">";
+        }
+        if (value instanceof Collection<?> collection) {
+            return "<list of " + collection.size() + ">";
+        }
+        if (value instanceof Map<?, ?> map) {
+            return "<map of " + map.size() + ">";
+        }
+        return "<" + value.getClass().getSimpleName() + ">";
+    }
+}
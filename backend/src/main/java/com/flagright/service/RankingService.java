@@ -0,0 +1,402 @@
+package com.flagright.service;
+
+import com.flagright.config.RankingProperties;
+import com.flagright.model.dto.RankingEntry;
+import com.flagright.util.AfterCommit;
+import com.flagright.util.TopK;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hub and risk rankings over an in-memory degree index. The index holds, per
+ * relationship type, the number of connections of every user and of every
+ * shared device, IP and payment method (keyed by fingerprint), plus each
+ * user's total across types. Connection writes adjust it once they commit;
+ * bulk detection passes and a periodic job rebuild it from the graph. Deltas
+ * that arrive while a rebuild reads the graph are applied to the old index
+ * and also replayed onto the new one before it replaces the old, so none is
+ * lost; one whose commit raced the start of the read may be counted twice
+ * until the next rebuild.
+ *
+ * <p>Each entry also remembers its degree at the start of the current UTC
+ * day, so "jumped today" is the gain since then. Rankings scan one map and
+ * keep the best {@code limit} entries in a bounded heap, so a request costs
+ * O(n log k) with no database access. The risk score adds log-scaled degree,
+ * cluster size from the last graph clustering and transactions in the
+ * velocity window, each weighted by {@link RankingProperties}. Cluster size
+ * and velocity are looked up once per entry on rebuild and on a short
+ * schedule, not per request.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RankingService {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    public enum Entity {
+        USER(null, null),
+        DEVICE(DetectedRelationship.SAME_DEVICE, VelocityService.Dimension.DEVICE),
+        IP(DetectedRelationship.SAME_IP, VelocityService.Dimension.IP),
+        PAYMENT_METHOD(DetectedRelationship.SAME_PAYMENT_METHOD, VelocityService.Dimension.PAYMENT_METHOD);
+
+        private final DetectedRelationship relationship;
+        private final VelocityService.Dimension dimension;
+
+        Entity(DetectedRelationship relationship, VelocityService.Dimension dimension) {
+            this.relationship = relationship;
+            this.dimension = dimension;
+        }
+    }
+
+    public enum Metric { DEGREE, JUMP, RISK }
+
+    private final Neo4jClient neo4jClient;
+    private final GraphSummaryService graphSummaryService;
+    private final VelocityService velocityService;
+    private final RankingProperties rankingProperties;
+
+    private volatile Index index = new Index();
+    /** Deltas applied while a rebuild reads the graph, to replay onto the new index; null when none runs */
+    private List<Delta> replay;
+    private final Object deltaLock = new Object();
+
+    /** One adjustment of an entry's degree; a null relationship means a user's total */
+    private record Delta(DetectedRelationship relationship, Long key, String value, long amount) {
+    }
+
+    /**
+     * Connection count of one entity and its value at the start of the day
+     * it last changed, with the cluster size and velocity the risk score
+     * reads, as of the last refresh
+     */
+    private static final class Degree {
+        private final String value;
+        private long degree;
+        private long day;
+        private long atDayStart;
+        private volatile int clusterSize;
+        private volatile long velocity;
+
+        private Degree(String value, long degree, long day, long atDayStart) {
+            this.value = value;
+            this.degree = degree;
+            this.day = day;
+            this.atDayStart = atDayStart;
+        }
+
+        private synchronized void add(long delta, long today) {
+            if (day != today) {
+                atDayStart = degree;
+                day = today;
+            }
+            degree = Math.max(0, degree + delta);
+        }
+
+        private synchronized long degree() {
+            return degree;
+        }
+
+        private synchronized long gainedSince(long today) {
+            return day == today ? degree - atDayStart : 0;
+        }
+    }
+
+    /** Degrees per relationship type plus user totals; the maps are fixed when the index is built */
+    private static final class Index {
+        private final Map<DetectedRelationship, ConcurrentHashMap<Long, Degree>> byType =
+            new EnumMap<>(DetectedRelationship.class);
+        private final ConcurrentHashMap<Long, Degree> userTotals = new ConcurrentHashMap<>();
+
+        private Index() {
+            for (DetectedRelationship relationship : DetectedRelationship.values()) {
+                byType.put(relationship, new ConcurrentHashMap<>());
+            }
+        }
+    }
+
+    /** Loads the index once the application is up */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        rebuildAfterBulkChange();
+    }
+
+    /** Reloads the index after detection linked entities in bulk, logging rather than failing the caller */
+    public void rebuildAfterBulkChange() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("Failed to load the degree index, rankings stay stale until the next rebuild", e);
+        }
+    }
+
+    /** Periodically reloads the index so any missed update is corrected */
+    @Scheduled(fixedDelayString = "${flagright.rankings.rebuild-interval:3600000}",
+        initialDelayString = "${flagright.rankings.rebuild-interval:3600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /** Refreshes the cluster sizes and velocities the risk score reads */
+    @Scheduled(fixedDelayString = "${flagright.rankings.risk-refresh-interval:60000}",
+        initialDelayString = "${flagright.rankings.risk-refresh-interval:60000}")
+    public void refreshRiskInputs() {
+        refreshRiskInputs(index);
+    }
+
+    /** Adds per-user deltas to the degree of one user relationship type once the caller's transaction commits */
+    public void connectionsChanged(DetectedRelationship relationship, Map<Long, Long> deltas) {
+        List<Delta> changes = new ArrayList<>(deltas.size() * 2);
+        for (Map.Entry<Long, Long> delta : deltas.entrySet()) {
+            changes.add(new Delta(relationship, delta.getKey(), null, delta.getValue()));
+            changes.add(new Delta(null, delta.getKey(), null, delta.getValue()));
+        }
+        AfterCommit.run(() -> apply(changes));
+    }
+
+    /** Counts new links between transactions sharing a value once the caller's transaction commits */
+    public void valueLinked(DetectedRelationship relationship, Long fingerprint, String value, long links) {
+        if (fingerprint == null || links == 0) {
+            return;
+        }
+        AfterCommit.run(() -> apply(List.of(new Delta(relationship, fingerprint, value, links))));
+    }
+
+    /** Applies deltas to the current index, and keeps them for replay while a rebuild is reading */
+    private void apply(List<Delta> deltas) {
+        long today = today();
+        synchronized (deltaLock) {
+            Index current = index;
+            for (Delta delta : deltas) {
+                apply(current, delta, today);
+            }
+            if (replay != null) {
+                replay.addAll(deltas);
+            }
+        }
+    }
+
+    private static void apply(Index target, Delta delta, long today) {
+        Map<Long, Degree> degrees = delta.relationship() == null ? target.userTotals
+            : target.byType.get(delta.relationship());
+        degrees.computeIfAbsent(delta.key(), id -> new Degree(delta.value(), 0, today, 0)).add(delta.amount(), today);
+    }
+
+    /**
+     * Reloads every degree from the graph: users from their connection nodes,
+     * shared values from the edges between transactions. Gains already seen
+     * today are kept.
+     */
+    public synchronized void rebuild() {
+        long started = System.currentTimeMillis();
+        synchronized (deltaLock) {
+            replay = new ArrayList<>();
+        }
+        try {
+            Index rebuilt = load();
+            synchronized (deltaLock) {
+                long today = today();
+                for (Delta delta : replay) {
+                    apply(rebuilt, delta, today);
+                }
+                index = rebuilt;
+            }
+            refreshRiskInputs(rebuilt);
+            int sharedValues = 0;
+            for (Entity entity : Entity.values()) {
+                sharedValues += entity.relationship == null ? 0 : rebuilt.byType.get(entity.relationship).size();
+            }
+            log.info("Loaded degree index for {} users and {} shared values in {} ms", rebuilt.userTotals.size(),
+                sharedValues, System.currentTimeMillis() - started);
+        } finally {
+            synchronized (deltaLock) {
+                replay = null;
+            }
+        }
+    }
+
+    private Index load() {
+        long today = today();
+        Index previous = index;
+        Index rebuilt = new Index();
+
+        Map<Long, Long> userTotals = new HashMap<>();
+        for (Map<String, Object> row : neo4jClient.query(
+                "MATCH (c:UserConnection) UNWIND [c.userId1, c.userId2] AS userId " +
+                "RETURN userId, c.relationshipType AS type, count(*) AS degree").fetch().all()) {
+            DetectedRelationship relationship = relationshipOf((String) row.get("type"));
+            if (relationship == null || !relationship.linksUsers()) {
+                continue;
+            }
+            Long userId = ((Number) row.get("userId")).longValue();
+            long degree = ((Number) row.get("degree")).longValue();
+            rebuilt.byType.get(relationship).put(userId,
+                carryOver(previous.byType.get(relationship).get(userId), null, degree, today));
+            userTotals.merge(userId, degree, Long::sum);
+        }
+        userTotals.forEach((userId, degree) ->
+            rebuilt.userTotals.put(userId, carryOver(previous.userTotals.get(userId), null, degree, today)));
+
+        for (DetectedRelationship relationship : DetectedRelationship.values()) {
+            if (relationship.linksUsers()) {
+                continue;
+            }
+            String query = "MATCH (a:Transaction)-[:" + relationship.name() + "]->(:Transaction) " +
+                "RETURN a." + relationship.fingerprintProperty() + " AS fingerprint, " +
+                "min(a." + relationship.valueProperty() + ") AS value, count(*) AS degree";
+            for (Map<String, Object> row : neo4jClient.query(query).fetch().all()) {
+                if (row.get("fingerprint") == null) {
+                    continue;
+                }
+                Long fingerprint = ((Number) row.get("fingerprint")).longValue();
+                String value = row.get("value") == null ? null : relationship.sharedValue((String) row.get("value"));
+                rebuilt.byType.get(relationship).put(fingerprint, carryOver(previous.byType.get(relationship)
+                    .get(fingerprint), value, ((Number) row.get("degree")).longValue(), today));
+            }
+        }
+
+        return rebuilt;
+    }
+
+    /** Looks up each entry's cluster size and velocity once, so ranking by risk does not per request */
+    private void refreshRiskInputs(Index target) {
+        target.userTotals.forEach((userId, degree) -> {
+            degree.clusterSize = graphSummaryService.clusterSizeOf(userId);
+            degree.velocity = velocityOf(Entity.USER, userId);
+        });
+        for (Entity entity : Entity.values()) {
+            if (entity.relationship == null) {
+                continue;
+            }
+            target.byType.get(entity.relationship).forEach((fingerprint, degree) ->
+                degree.velocity = velocityOf(entity, fingerprint));
+        }
+        for (DetectedRelationship relationship : DetectedRelationship.values()) {
+            if (relationship.linksUsers()) {
+                target.byType.get(relationship).forEach((userId, degree) -> {
+                    Degree total = target.userTotals.get(userId);
+                    degree.clusterSize = total == null ? graphSummaryService.clusterSizeOf(userId) : total.clusterSize;
+                    degree.velocity = total == null ? velocityOf(Entity.USER, userId) : total.velocity;
+                });
+            }
+        }
+    }
+
+    /** A freshly loaded degree that keeps the day-start baseline of the entry it replaces */
+    private static Degree carryOver(Degree previous, String value, long degree, long today) {
+        long atDayStart = degree;
+        if (previous != null) {
+            synchronized (previous) {
+                if (previous.day == today) {
+                    atDayStart = Math.min(degree, previous.atDayStart);
+                }
+            }
+        }
+        return new Degree(value, degree, today, atDayStart);
+    }
+
+    /**
+     * Ranks users, devices, IPs or payment methods.
+     *
+     * @param relationshipType for users, restricts degree to one SHARES_* type; ignored for other entities
+     */
+    public List<RankingEntry> rank(Entity entity, Metric metric, String relationshipType, int limit) {
+        int k = Math.max(1, Math.min(limit, rankingProperties.getMaxLimit()));
+        long today = today();
+        DetectedRelationship relationship = entity.relationship;
+        if (entity == Entity.USER && relationshipType != null) {
+            relationship = relationshipOf(relationshipType);
+            if (relationship == null || !relationship.linksUsers()) {
+                throw new IllegalArgumentException("Invalid relationship type for users. Use one of " +
+                    "SHARES_EMAIL, SHARES_PHONE, SHARES_ADDRESS");
+            }
+        }
+        Map<Long, Degree> degrees = relationship == null ? index.userTotals : index.byType.get(relationship);
+
+        TopK<Map.Entry<Long, Degree>> top = new TopK<>(k);
+        for (Map.Entry<Long, Degree> entry : degrees.entrySet()) {
+            Degree degree = entry.getValue();
+            double score;
+            switch (metric) {
+                case DEGREE -> score = degree.degree();
+                case JUMP -> score = degree.gainedSince(today);
+                default -> score = riskScore(degree.degree(), degree.clusterSize, degree.velocity);
+            }
+            if (score > 0) {
+                top.offer(score, entry.getKey(), entry);
+            }
+        }
+
+        List<RankingEntry> ranking = new ArrayList<>(k);
+        for (Map.Entry<Long, Degree> entry : top.toList()) {
+            long id = entry.getKey();
+            Degree degree = entry.getValue();
+            long current = degree.degree();
+            ranking.add(new RankingEntry(ranking.size() + 1, entity.name(), id, degree.value,
+                relationship == null ? null : relationship.name(), current, degree.gainedSince(today),
+                degree.clusterSize, degree.velocity, riskScore(current, degree.clusterSize, degree.velocity)));
+        }
+        return ranking;
+    }
+
+    private double riskScore(long degree, int clusterSize, long velocity) {
+        return rankingProperties.getDegreeWeight() * Math.log1p(degree)
+            + rankingProperties.getClusterWeight() * Math.log1p(clusterSize)
+            + rankingProperties.getVelocityWeight() * Math.log1p(velocity);
+    }
+
+    private long velocityOf(Entity entity, long id) {
+        if (entity == Entity.USER) {
+            return velocityService.windowCount(VelocityService.Dimension.SENDER, id)
+                + velocityService.windowCount(VelocityService.Dimension.RECIPIENT, id);
+        }
+        return velocityService.windowCount(entity.dimension, id);
+    }
+
+    /** Parses an entity name such as "user" or "payment-method" */
+    public static Entity parseEntity(String entity) {
+        try {
+            return Entity.valueOf(entity.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid entity. Use one of user, device, ip, payment-method");
+        }
+    }
+
+    /** Parses a ranking metric: degree, jump or risk */
+    public static Metric parseMetric(String metric) {
+        try {
+            return Metric.valueOf(metric.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid ranking. Use one of degree, jump, risk");
+        }
+    }
+
+    private static DetectedRelationship relationshipOf(String type) {
+        if (type == null) {
+            return null;
+        }
+        try {
+            return DetectedRelationship.valueOf(type.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long today() {
+        return Math.floorDiv(System.currentTimeMillis(), MILLIS_PER_DAY);
+    }
+}
@@ -0,0 +1,117 @@
+package com.flagright.service;
+
+import com.flagright.config.ReadProperties;
+import com.flagright.exception.EndpointSaturatedException;
+import com.flagright.util.SingleFlight;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency control for expensive endpoints. Each endpoint gets a
+ * bulkhead, a fair semaphore sized from {@code flagright.reads}, so a burst
+ * on one slow endpoint queues or is rejected with 503 instead of taking the
+ * whole Neo4j pool from the others. Identical requests that arrive while one
+ * is being computed wait for it and share its result rather than running
+ * their own; only the computing request holds a bulkhead slot.
+ *
+ * <p>Coalescing keys carry the version tag of the data read, so a request
+ * never shares a computation that started before a write it could already
+ * see. Coalesced and rejected requests are counted per endpoint under
+ * {@code flagright.reads.*}.
+ */
+@Component
+@Slf4j
+public class ReadConcurrency {
+
+    private final ReadProperties readProperties;
+    private final MeterRegistry meterRegistry;
+    private final SingleFlight<List<Object>> singleFlight = new SingleFlight<>();
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    private record Bulkhead(String endpoint, Semaphore permits, int maxConcurrent, long maxWaitNanos,
+                            Counter coalesced, Counter rejected) {
+    }
+
+    public ReadConcurrency(ReadProperties readProperties, MeterRegistry meterRegistry) {
+        this.readProperties = readProperties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("flagright.reads.in.flight", singleFlight, SingleFlight::size)
+            .description("Distinct computations that concurrent requests can join").register(meterRegistry);
+    }
+
+    /**
+     * Runs a computation within the endpoint's bulkhead, or joins the one
+     * already running for the same key.
+     *
+     * @param key identifies the result, including the version of the data it reads
+     * @throws EndpointSaturatedException if no bulkhead slot frees up in time
+     */
+    public <T> T coalesced(String endpoint, Object key, Supplier<T> work) {
+        Bulkhead bulkhead = bulkhead(endpoint);
+        if (!readProperties.isCoalesce()) {
+            return limited(bulkhead, work);
+        }
+        SingleFlight.Result<T> result = singleFlight.run(List.of(endpoint, key), () -> limited(bulkhead, work));
+        if (result.shared()) {
+            bulkhead.coalesced().increment();
+        }
+        return result.value();
+    }
+
+    /**
+     * Runs work within the endpoint's bulkhead.
+     *
+     * @throws EndpointSaturatedException if no bulkhead slot frees up in time
+     */
+    public <T> T limited(String endpoint, Supplier<T> work) {
+        return limited(bulkhead(endpoint), work);
+    }
+
+    private <T> T limited(Bulkhead bulkhead, Supplier<T> work) {
+        boolean acquired;
+        try {
+            acquired = bulkhead.permits().tryAcquire(bulkhead.maxWaitNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            bulkhead.rejected().increment();
+            throw new EndpointSaturatedException(bulkhead.endpoint(), bulkhead.maxConcurrent());
+        }
+        try {
+            return work.get();
+        } finally {
+            bulkhead.permits().release();
+        }
+    }
+
+    private Bulkhead bulkhead(String endpoint) {
+        return bulkheads.computeIfAbsent(endpoint, name -> {
+            ReadProperties.Bulkhead settings = readProperties.bulkheadFor(name);
+            int maxConcurrent = Math.max(1, settings.getMaxConcurrent());
+            Semaphore permits = new Semaphore(maxConcurrent, true);
+            Gauge.builder("flagright.reads.active", permits, semaphore -> maxConcurrent - semaphore.availablePermits())
+                .description("Computations holding a bulkhead slot").tag("endpoint", name).register(meterRegistry);
+            log.debug("Bulkhead for {}: {} concurrent, {} max wait", name, maxConcurrent, settings.getMaxWait());
+            return new Bulkhead(name, permits, maxConcurrent, Math.max(0, settings.getMaxWait().toNanos()),
+                Counter.builder("flagright.reads.coalesced")
+                    .description("Requests answered by joining an identical running computation")
+                    .tag("endpoint", name).register(meterRegistry),
+                Counter.builder("flagright.reads.rejected")
+                    .description("Requests rejected because the endpoint's bulkhead stayed full")
+                    .tag("endpoint", name).register(meterRegistry));
+        });
+    }
+}
@@ -1,22 +1,26 @@
 package com.flagright.service;
 
+import com.flagright.config.DetectionProperties;
 import com.flagright.Repository.TransactionConnectionRepository;
-import com.flagright.Repository.TransactionRepository;
 import com.flagright.Repository.UserConnectionRepository;
-import com.flagright.Repository.UserRepository;
 import com.flagright.model.entity.Transaction;
 import com.flagright.model.entity.User;
-import com.flagright.model.entity.UserConnection;
-import com.flagright.model.entity.TransactionConnection;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.neo4j.core.Neo4jClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -24,307 +28,401 @@ import java.util.stream.Collectors;
 @Transactional
 public class RelationshipDetectionService {
 
-    private final UserRepository userRepository;
-    private final TransactionRepository transactionRepository;
+    /** Creates a connection node unless one exists for the ordered pair; returns whether it was created */
+    private static final String MERGE_USER_CONNECTION =
+        "MERGE (c:UserConnection {userId1: $id1, userId2: $id2, relationshipType: $type}) " +
+        "ON CREATE SET c.uid = $uid, c.sharedValue = $sharedValue, c.createdAt = localdatetime(), c.merging = true " +
+        "WITH c, c.merging IS NOT NULL AS created REMOVE c.merging RETURN created";
+    private static final String MERGE_TRANSACTION_CONNECTION =
+        "MERGE (c:TransactionConnection {transactionId1: $id1, transactionId2: $id2, relationshipType: $type}) " +
+        "ON CREATE SET c.uid = $uid, c.sharedValue = $sharedValue, c.createdAt = localdatetime(), c.merging = true " +
+        "WITH c, c.merging IS NOT NULL AS created REMOVE c.merging RETURN created";
+
     private final UserConnectionRepository userConnectionRepository;
     private final TransactionConnectionRepository transactionConnectionRepository;
+    private final DetectionProperties detectionProperties;
+    private final DetectionEngineSelector detectionEngineSelector;
+    private final Neo4jClient neo4jClient;
+    private final EntityIds entityIds;
+    private final GraphSummaryService graphSummaryService;
+    private final ChangeFeedService changeFeedService;
+    private final VersionTracker versionTracker;
+    private final UserSummaryService userSummaryService;
+    private final RankingService rankingService;
+    private final DetectionRuleService detectionRuleService;
+    private final WriteConcurrency writeConcurrency;
 
     /** Detects relationships for a specific user */
     public void detectUserRelationships(User user) {
         log.info("Detecting relationships for user: {}", user.getEmail());
         
+        // Outside the try, so a lock timeout fails the transaction and it is retried rather than left unlinked.
+        lockLinkValues(List.of(DetectedRelationship.fingerprintsOf(user)));
         try {
-            if (user.getEmail() != null && !user.getEmail().trim().isEmpty()) {
-                userRepository.createEmailConnections();
-                log.debug("Created email connections for user: {}", user.getEmail());
-            }
-            
-            if (user.getPhone() != null && !user.getPhone().trim().isEmpty()) {
-                userRepository.createPhoneConnections();
-                log.debug("Created phone connections for user: {}", user.getPhone());
-            }
+            detectUser(user);
+        } catch (Exception e) {
+            log.error("Relationship detection failed for user {}", user.getEmail(), e);
+        }
+
+        graphSummaryService.markChanged(user.getId());
+    }
+
+    /** Links a user through the engine chosen for each attribute it carries */
+    private void detectUser(User user) {
+        detectUser(user, Set.of());
+    }
 
-            if (user.getAddress() != null && !user.getAddress().trim().isEmpty()) {
-                userRepository.createAddressConnections();
-                log.debug("Created address connections for user: {}", user.getAddress());
+    /** Links a user on each attribute it carries, except the types a full pass has already linked */
+    private void detectUser(User user, Set<DetectedRelationship> linkedInFullPass) {
+        Map<DetectedRelationship, Long> fingerprints = DetectedRelationship.fingerprintsOf(user);
+        for (DetectedRelationship relationship : fingerprints.keySet()) {
+            if (fingerprints.get(relationship) == null || linkedInFullPass.contains(relationship)) {
+                continue;
             }
-            
-            Long relationshipCount = userRepository.countUserRelationships();
-            log.debug("Total graph relationships after Cypher: {}", relationshipCount);
-            
-        } catch (Exception e) {
-            log.warn("Cypher-based relationship detection failed for user {}, using Java-based approach", user.getEmail(), e);
+            linkUser(user, relationship, relationship.sharedValue(relationship.rawValueOf(user)));
+            log.debug("Created {} connections for user: {}", relationship, user.getId());
         }
-        
-        try {
-            detectUserRelationshipsJava(user);
-        } catch (Exception e) {
-            log.error("Java-based relationship detection also failed for user {}", user.getEmail(), e);
+
+        detectionRuleService.linkUser(user);
+    }
+
+    private void linkUser(User user, DetectedRelationship relationship, String sharedValue) {
+        List<Long> linked = detectionEngineSelector.forAnchor(relationship)
+            .linkFrom(relationship, user.getId(), null);
+        for (Long linkedId : linked) {
+            createUserConnectionIfNotExists(user.getId(), linkedId, relationship, sharedValue);
         }
     }
+    
+    /**
+     * Brings a user's relationships in line with an update, in the caller's
+     * transaction. Only attributes whose fingerprint changed are touched: the
+     * edges and connection nodes tied to the old value are removed and the new
+     * value is linked, so the work is proportional to the affected neighbours.
+     *
+     * @param previousFingerprints the user's fingerprints before the update, from {@link DetectedRelationship#fingerprintsOf}
+     */
+    public void updateUserRelationships(User user, Map<DetectedRelationship, Long> previousFingerprints) {
+        Map<DetectedRelationship, Long> currentFingerprints = DetectedRelationship.fingerprintsOf(user);
+        lockLinkValues(List.of(previousFingerprints, currentFingerprints));
+        boolean removedAny = false;
+        boolean changedAny = false;
 
-    /** Java-based relationship detection for a user */
-    private void detectUserRelationshipsJava(User user) {
-        log.debug("Running Java-based relationship detection for user: {}", user.getEmail());
-        
-        List<User> allUsers = userRepository.findAll();
-        
-        if (user.getPhone() != null && !user.getPhone().trim().isEmpty()) {
-            List<User> usersWithSamePhone = allUsers.stream()
-                .filter(u -> u.getPhone() != null && u.getPhone().equals(user.getPhone()) && !u.getId().equals(user.getId()))
-                .collect(Collectors.toList());
-            
-            for (User connectedUser : usersWithSamePhone) {
-                createUserConnectionIfNotExists(user.getId(), connectedUser.getId(), "SHARES_PHONE", user.getPhone());
+        for (Map.Entry<DetectedRelationship, Long> current : currentFingerprints.entrySet()) {
+            DetectedRelationship relationship = current.getKey();
+            if (Objects.equals(previousFingerprints.get(relationship), current.getValue())) {
+                continue;
             }
-        }
-        
-        if (user.getAddress() != null && !user.getAddress().trim().isEmpty()) {
-            List<User> usersWithSameAddress = allUsers.stream()
-                .filter(u -> u.getAddress() != null && u.getAddress().equals(user.getAddress()) && !u.getId().equals(user.getId()))
-                .collect(Collectors.toList());
-            
-            for (User connectedUser : usersWithSameAddress) {
-                createUserConnectionIfNotExists(user.getId(), connectedUser.getId(), "SHARES_ADDRESS", user.getAddress());
+            changedAny = true;
+            if (previousFingerprints.get(relationship) != null) {
+                removedAny |= unlinkUser(user.getId(), relationship) > 0;
             }
+            if (current.getValue() != null) {
+                linkUser(user, relationship, relationship.sharedValue(relationship.rawValueOf(user)));
+            }
+            log.debug("Refreshed {} connections for user {}", relationship, user.getId());
         }
-        
-        if (user.getEmail() != null && !user.getEmail().trim().isEmpty()) {
-            List<User> usersWithSameEmail = allUsers.stream()
-                .filter(u -> u.getEmail() != null && u.getEmail().equals(user.getEmail()) && !u.getId().equals(user.getId()))
-                .collect(Collectors.toList());
-            
-            for (User connectedUser : usersWithSameEmail) {
-                createUserConnectionIfNotExists(user.getId(), connectedUser.getId(), "SHARES_EMAIL", user.getEmail());
+        detectionRuleService.linkUser(user);
+
+        if (removedAny) {
+            graphSummaryService.invalidateAll();
+        } else if (changedAny) {
+            graphSummaryService.markChanged(user.getId());
+        }
+    }
+
+    /** Removes a user's edges and connection nodes of one type and returns how many neighbours lost a link */
+    private int unlinkUser(Long userId, DetectedRelationship relationship) {
+        String query = "MATCH (a:User)-[r:" + relationship.name() + "]-(b:User) WHERE id(a) = $userId " +
+            "DELETE r RETURN DISTINCT id(b) AS id";
+        Collection<Long> unlinked = neo4jClient.query(query)
+            .bind(userId).to("userId")
+            .fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("id").asLong())
+            .all();
+        List<Long> disconnected = userConnectionRepository.deleteByUserIdAndRelationshipType(userId, relationship.name());
+        if (!disconnected.isEmpty()) {
+            Map<Long, Long> deltas = new HashMap<>();
+            deltas.put(userId, -(long) disconnected.size());
+            for (Long neighbourId : disconnected) {
+                deltas.merge(neighbourId, -1L, Long::sum);
             }
+            userSummaryService.connectionsChanged(relationship, deltas);
+            rankingService.connectionsChanged(relationship, deltas);
         }
+
+        for (Long neighbourId : unlinked) {
+            changeFeedService.publishConnectionRemoved("user-" + userId, "user-" + neighbourId, relationship.name());
+            versionTracker.userConnectionsChanged(neighbourId);
+        }
+        if (!unlinked.isEmpty()) {
+            versionTracker.userConnectionsChanged(userId);
+        }
+        return unlinked.size();
     }
-    
+
     /**
-     * Helper method to create a UserConnection if it doesn't already exist
+     * Creates the UserConnection for a linked pair unless it exists. New
+     * connections store the lower id first, so the merge and the uniqueness
+     * constraint on (userId1, userId2, relationshipType) see one key per pair;
+     * connections stored the other way round before are still recognised.
      */
-    private void createUserConnectionIfNotExists(Long userId1, Long userId2, String relationshipType, String sharedValue) {
-        if (!userConnectionRepository.existsByUserId1AndUserId2AndRelationshipType(userId1, userId2, relationshipType) &&
-            !userConnectionRepository.existsByUserId1AndUserId2AndRelationshipType(userId2, userId1, relationshipType)) {
-            
-            UserConnection connection = new UserConnection(userId1, userId2, relationshipType, sharedValue);
-            userConnectionRepository.save(connection);
+    private void createUserConnectionIfNotExists(Long userId1, Long userId2, DetectedRelationship relationship,
+                                                 String sharedValue) {
+        String relationshipType = relationship.name();
+        Long first = Math.min(userId1, userId2);
+        Long second = Math.max(userId1, userId2);
+        if (userConnectionRepository.existsByUserId1AndUserId2AndRelationshipType(second, first, relationshipType)) {
+            return;
+        }
+        if (mergeConnection(MERGE_USER_CONNECTION, first, second, relationshipType, sharedValue)) {
+            userSummaryService.connectionsChanged(relationship, Map.of(userId1, 1L, userId2, 1L));
+            rankingService.connectionsChanged(relationship, Map.of(userId1, 1L, userId2, 1L));
+            changeFeedService.publishConnection("user-" + userId1, "user-" + userId2, relationshipType);
+            versionTracker.userConnectionsChanged(userId1);
+            versionTracker.userConnectionsChanged(userId2);
             log.debug("Created {} connection between users {} and {} with shared value: {}", 
                 relationshipType, userId1, userId2, sharedValue);
         }
     }
 
-    /** Detects relationships for a specific transaction */
+    private boolean mergeConnection(String query, Long first, Long second, String relationshipType,
+                                    String sharedValue) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("id1", first);
+        parameters.put("id2", second);
+        parameters.put("type", relationshipType);
+        parameters.put("sharedValue", sharedValue);
+        parameters.put("uid", entityIds.next());
+        return neo4jClient.query(query).bindAll(parameters)
+            .fetchAs(Boolean.class)
+            .mappedBy((typeSystem, record) -> record.get("created").asBoolean())
+            .one()
+            .orElse(false);
+    }
+
+    /**
+     * Locks the fingerprints the given entities are linked on until commit,
+     * all in one call so that concurrent writers take them in the same order.
+     * Writers linking the same value then take turns instead of deadlocking
+     * on the nodes they share.
+     */
+    private void lockLinkValues(Collection<Map<DetectedRelationship, Long>> fingerprints) {
+        List<String> values = new ArrayList<>();
+        for (Map<DetectedRelationship, Long> entity : fingerprints) {
+            entity.forEach((relationship, fingerprint) -> {
+                if (fingerprint != null) {
+                    values.add(relationship.name() + ":" + fingerprint);
+                }
+            });
+        }
+        writeConcurrency.lockValues("link", values);
+    }
+
+    private static Map<DetectedRelationship, Long> fingerprintsOf(Transaction transaction) {
+        Map<DetectedRelationship, Long> fingerprints = new HashMap<>();
+        for (DetectedRelationship relationship : DetectedRelationship.values()) {
+            if (!relationship.linksUsers()) {
+                fingerprints.put(relationship, relationship.fingerprintOf(transaction));
+            }
+        }
+        return fingerprints;
+    }
+
+    /** Detects relationships for a specific transaction against candidates in nearby time buckets */
     public void detectTransactionRelationships(Transaction transaction) {
         log.info("Detecting relationships for transaction: {}", transaction.getId());
-        
-        if (transaction.getDeviceId() != null && !transaction.getDeviceId().trim().isEmpty()) {
-            transactionRepository.createDeviceConnections();
+        lockLinkValues(List.of(fingerprintsOf(transaction)));
+
+        if (transaction.getDeviceFingerprint() != null) {
+            List<Long> linked = linkNewTransaction(transaction, DetectedRelationship.SAME_DEVICE,
+                transaction.getDeviceFingerprint(), transaction.getDeviceId());
+            publishTransactionConnections(transaction.getId(), linked, "SAME_DEVICE");
             log.debug("Created device connections for transaction: {}", transaction.getId());
         }
         
-        if (transaction.getIpAddress() != null && !transaction.getIpAddress().trim().isEmpty()) {
-            transactionRepository.createIpConnections();
+        if (transaction.getIpFingerprint() != null) {
+            List<Long> linked = linkNewTransaction(transaction, DetectedRelationship.SAME_IP,
+                transaction.getIpFingerprint(), transaction.getIpAddress());
+            publishTransactionConnections(transaction.getId(), linked, "SAME_IP");
             log.debug("Created IP connections for transaction: {}", transaction.getId());
         }
         
-        if (transaction.getPaymentMethod() != null && !transaction.getPaymentMethod().trim().isEmpty()) {
-            transactionRepository.createPaymentMethodConnections();
+        if (transaction.getPaymentMethodFingerprint() != null) {
+            List<Long> linked = linkNewTransaction(transaction, DetectedRelationship.SAME_PAYMENT_METHOD,
+                transaction.getPaymentMethodFingerprint(), transaction.getPaymentMethod());
+            publishTransactionConnections(transaction.getId(), linked, "SAME_PAYMENT_METHOD");
             log.debug("Created payment method connections for transaction: {}", transaction.getId());
         }
-        
+        detectionRuleService.linkTransaction(transaction);
+
+        graphSummaryService.markChanged(transaction.getId());
     }
 
-    /** Detects all relationships across all users and transactions */
-    public void detectAllRelationships() {
-        log.info("Running full relationship detection across all entities");
-  
-        try {
-            userRepository.createEmailConnections();
-            userRepository.createPhoneConnections();
-            userRepository.createAddressConnections();
+    private List<Long> linkTransaction(Transaction transaction, DetectedRelationship relationship) {
+        return detectionEngineSelector.forAnchor(relationship)
+            .linkFrom(relationship, transaction.getId(), detectionProperties.windowFor(relationship.name()));
+    }
 
-            transactionRepository.createDeviceConnections();
-            transactionRepository.createIpConnections();
-            transactionRepository.createPaymentMethodConnections();
-        } catch (Exception e) {
-            log.warn("Cypher-based relationship detection failed, using Java-based approach", e);
-        }
-        
-        detectAllRelationshipsJava();
-        
-        log.info("Completed full relationship detection");
+    /** Links a newly created transaction, whose every link is new, and counts the links for rankings */
+    private List<Long> linkNewTransaction(Transaction transaction, DetectedRelationship relationship,
+                                          Long fingerprint, String rawValue) {
+        List<Long> linked = linkTransaction(transaction, relationship);
+        rankingService.valueLinked(relationship, fingerprint, relationship.sharedValue(rawValue), linked.size());
+        return linked;
     }
 
-    /** Java-based relationship detection for all entities */
-    public void detectAllRelationshipsJava() {
-        log.info("Running Java-based relationship detection");
-        
-        List<User> allUsers = userRepository.findAll();
-        log.info("Processing {} users for relationship detection", allUsers.size());
-        
-        Map<String, List<User>> phoneGroups = allUsers.stream()
-            .filter(u -> u.getPhone() != null && !u.getPhone().trim().isEmpty())
-            .collect(Collectors.groupingBy(User::getPhone));
-        
-        Map<String, List<User>> addressGroups = allUsers.stream()
-            .filter(u -> u.getAddress() != null && !u.getAddress().trim().isEmpty())
-            .collect(Collectors.groupingBy(User::getAddress));
-        
-        createUserPhoneRelationships(phoneGroups);
-        
-        createUserAddressRelationships(addressGroups);
-        
-        List<Transaction> allTransactions = transactionRepository.findAll();
-        log.info("Processing {} transactions for relationship detection", allTransactions.size());
-        
-        Map<String, List<Transaction>> deviceGroups = allTransactions.stream()
-            .filter(t -> t.getDeviceId() != null && !t.getDeviceId().trim().isEmpty())
-            .collect(Collectors.groupingBy(Transaction::getDeviceId));
-        
-        Map<String, List<Transaction>> ipGroups = allTransactions.stream()
-            .filter(t -> t.getIpAddress() != null && !t.getIpAddress().trim().isEmpty())
-            .collect(Collectors.groupingBy(Transaction::getIpAddress));
-        
-        Map<String, List<Transaction>> paymentGroups = allTransactions.stream()
-            .filter(t -> t.getPaymentMethod() != null && !t.getPaymentMethod().trim().isEmpty())
-            .collect(Collectors.groupingBy(Transaction::getPaymentMethod));
-        
-        createTransactionDeviceRelationships(deviceGroups);
-        createTransactionIpRelationships(ipGroups);
-        createTransactionPaymentRelationships(paymentGroups);
-        
-        log.info("Java-based relationship detection completed");
+    private void publishTransactionConnections(Long transactionId, List<Long> linkedIds, String relationshipType) {
+        for (Long linkedId : linkedIds) {
+            changeFeedService.publishConnection("transaction-" + transactionId, "transaction-" + linkedId, relationshipType);
+        }
     }
 
-    private void createUserPhoneRelationships(Map<String, List<User>> phoneGroups) {
-        int relationshipsCreated = 0;
-        for (Map.Entry<String, List<User>> entry : phoneGroups.entrySet()) {
-            List<User> usersWithSharedPhone = entry.getValue();
-            if (usersWithSharedPhone.size() > 1) {
-                String sharedPhone = entry.getKey();
-                log.debug("Found {} users sharing phone: {}", usersWithSharedPhone.size(), sharedPhone);
-                
-                for (int i = 0; i < usersWithSharedPhone.size(); i++) {
-                    for (int j = i + 1; j < usersWithSharedPhone.size(); j++) {
-                        User user1 = usersWithSharedPhone.get(i);
-                        User user2 = usersWithSharedPhone.get(j);
-                        
-                        if (!userConnectionRepository.existsByUserId1AndUserId2AndRelationshipType(
-                                user1.getId(), user2.getId(), "SHARES_PHONE") &&
-                            !userConnectionRepository.existsByUserId1AndUserId2AndRelationshipType(
-                                user2.getId(), user1.getId(), "SHARES_PHONE")) {
-                            
-                            UserConnection connection = new UserConnection(
-                                user1.getId(), user2.getId(), "SHARES_PHONE", sharedPhone
-                            );
-                            userConnectionRepository.save(connection);
-                            relationshipsCreated++;
-                        }
-                    }
-                }
-            }
+    /**
+     * Runs a full pass over one relationship type when the selector picks a
+     * set-based engine for it from the attribute's statistics, then records
+     * the connection node behind every new edge. When the selector picks the
+     * Cypher engine the pass is skipped, since the detection job then links
+     * the type anchored chunk by chunk, which is the same join checkpointed.
+     * Engines bound their own transactions, so this runs outside one; both
+     * steps merge, so a pass cut short is safe to run again.
+     *
+     * @return true when the full pass ran and the type needs no anchored linking
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean detectInFullPass(DetectedRelationship relationship) {
+        Duration window = relationship.linksUsers() ? null : detectionProperties.windowFor(relationship.name());
+        DetectionEngine engine = detectionEngineSelector.forFullPass(relationship, window);
+        if (CypherDetectionEngine.NAME.equals(engine.name())) {
+            return false;
         }
-        log.info("Created {} phone relationships", relationshipsCreated);
+
+        long started = System.currentTimeMillis();
+        engine.linkAll(relationship, window);
+        int recorded = recordMissingConnections(relationship);
+        log.info("Detected {} with the {} engine in {} ms, recorded {} new connections",
+            relationship, engine.name(), System.currentTimeMillis() - started, recorded);
+        return true;
     }
 
-    private void createUserAddressRelationships(Map<String, List<User>> addressGroups) {
-        int relationshipsCreated = 0;
-        for (Map.Entry<String, List<User>> entry : addressGroups.entrySet()) {
-            List<User> usersWithSharedAddress = entry.getValue();
-            if (usersWithSharedAddress.size() > 1) {
-                String sharedAddress = entry.getKey();
-                log.debug("Found {} users sharing address: {}", usersWithSharedAddress.size(), sharedAddress);
-                
-                for (int i = 0; i < usersWithSharedAddress.size(); i++) {
-                    for (int j = i + 1; j < usersWithSharedAddress.size(); j++) {
-                        User user1 = usersWithSharedAddress.get(i);
-                        User user2 = usersWithSharedAddress.get(j);
-                        
-                        if (!userConnectionRepository.existsByUserId1AndUserId2AndRelationshipType(
-                                user1.getId(), user2.getId(), "SHARES_ADDRESS") &&
-                            !userConnectionRepository.existsByUserId1AndUserId2AndRelationshipType(
-                                user2.getId(), user1.getId(), "SHARES_ADDRESS")) {
-                            
-                            UserConnection connection = new UserConnection(
-                                user1.getId(), user2.getId(), "SHARES_ADDRESS", sharedAddress
-                            );
-                            userConnectionRepository.save(connection);
-                            relationshipsCreated++;
-                        }
-                    }
-                }
-            }
+    /**
+     * Detects relationships for one chunk of users with queries anchored on
+     * each user, in the caller's transaction. Used by the background detection
+     * job so that each chunk commits on its own.
+     *
+     * @param linkedInFullPass types already linked by {@link #detectInFullPass}, which are skipped
+     */
+    public void detectUserChunk(List<User> users, Set<DetectedRelationship> linkedInFullPass) {
+        lockLinkValues(users.stream().map(DetectedRelationship::fingerprintsOf).toList());
+        for (User user : users) {
+            detectUser(user, linkedInFullPass);
         }
-        log.info("Created {} address relationships", relationshipsCreated);
     }
 
-    private void createTransactionDeviceRelationships(Map<String, List<Transaction>> deviceGroups) {
-        int relationshipsCreated = 0;
-        for (Map.Entry<String, List<Transaction>> entry : deviceGroups.entrySet()) {
-            List<Transaction> txs = entry.getValue();
-            if (txs.size() > 1) {
-                String sharedDevice = entry.getKey();
-                for (int i = 0; i < txs.size(); i++) {
-                    for (int j = i + 1; j < txs.size(); j++) {
-                        Transaction tx1 = txs.get(i);
-                        Transaction tx2 = txs.get(j);
-                        if (!transactionConnectionRepository.existsByTransactionId1AndTransactionId2AndRelationshipType(
-                                tx1.getId(), tx2.getId(), "SAME_DEVICE")) {
-                            transactionConnectionRepository.save(new TransactionConnection(
-                                tx1.getId(), tx2.getId(), "SAME_DEVICE", sharedDevice));
-                            relationshipsCreated++;
-                        }
-                    }
+    /**
+     * Detects relationships for one chunk of transactions against candidates
+     * in nearby time buckets, in the caller's transaction.
+     *
+     * @param linkedInFullPass types already linked by {@link #detectInFullPass}, which are skipped
+     */
+    public void detectTransactionChunk(List<Transaction> transactions, Set<DetectedRelationship> linkedInFullPass) {
+        lockLinkValues(transactions.stream().map(RelationshipDetectionService::fingerprintsOf).toList());
+        for (Transaction transaction : transactions) {
+            for (DetectedRelationship relationship : DetectedRelationship.values()) {
+                if (relationship.linksUsers() || linkedInFullPass.contains(relationship)
+                    || relationship.fingerprintOf(transaction) == null) {
+                    continue;
                 }
+                createTransactionConnections(transaction.getId(), linkTransaction(transaction, relationship),
+                    relationship.name(), relationship.sharedValue(relationship.rawValueOf(transaction)));
             }
+            detectionRuleService.linkTransaction(transaction);
         }
-        log.info("Created {} device relationships", relationshipsCreated);
     }
 
-    private void createTransactionIpRelationships(Map<String, List<Transaction>> ipGroups) {
-        int relationshipsCreated = 0;
-        for (Map.Entry<String, List<Transaction>> entry : ipGroups.entrySet()) {
-            List<Transaction> txs = entry.getValue();
-            if (txs.size() > 1) {
-                String sharedIp = entry.getKey();
-                for (int i = 0; i < txs.size(); i++) {
-                    for (int j = i + 1; j < txs.size(); j++) {
-                        Transaction tx1 = txs.get(i);
-                        Transaction tx2 = txs.get(j);
-                        if (!transactionConnectionRepository.existsByTransactionId1AndTransactionId2AndRelationshipType(
-                                tx1.getId(), tx2.getId(), "SAME_IP")) {
-                            transactionConnectionRepository.save(new TransactionConnection(
-                                tx1.getId(), tx2.getId(), "SAME_IP", sharedIp));
-                            relationshipsCreated++;
-                        }
-                    }
-                }
+    /** Records a TransactionConnection for each newly linked transaction, as a full pass does, lower id first */
+    private void createTransactionConnections(Long transactionId, List<Long> linkedIds, String relationshipType,
+                                              String sharedValue) {
+        for (Long linkedId : linkedIds) {
+            Long first = Math.min(transactionId, linkedId);
+            Long second = Math.max(transactionId, linkedId);
+            if (!transactionConnectionRepository.existsByTransactionId1AndTransactionId2AndRelationshipType(
+                    second, first, relationshipType) &&
+                mergeConnection(MERGE_TRANSACTION_CONNECTION, first, second, relationshipType, sharedValue)) {
+                changeFeedService.publishConnection("transaction-" + transactionId, "transaction-" + linkedId,
+                    relationshipType);
             }
         }
-        log.info("Created {} IP relationships", relationshipsCreated);
     }
 
-    private void createTransactionPaymentRelationships(Map<String, List<Transaction>> paymentGroups) {
-        int relationshipsCreated = 0;
-        for (Map.Entry<String, List<Transaction>> entry : paymentGroups.entrySet()) {
-            List<Transaction> txs = entry.getValue();
-            if (txs.size() > 1) {
-                String sharedPayment = entry.getKey();
-                for (int i = 0; i < txs.size(); i++) {
-                    for (int j = i + 1; j < txs.size(); j++) {
-                        Transaction tx1 = txs.get(i);
-                        Transaction tx2 = txs.get(j);
-                        if (!transactionConnectionRepository.existsByTransactionId1AndTransactionId2AndRelationshipType(
-                                tx1.getId(), tx2.getId(), "SAME_PAYMENT_METHOD")) {
-                            transactionConnectionRepository.save(new TransactionConnection(
-                                tx1.getId(), tx2.getId(), "SAME_PAYMENT_METHOD", sharedPayment));
-                            relationshipsCreated++;
-                        }
+    /**
+     * Creates the connection node behind every edge of a relationship type
+     * that does not have one yet, so the list endpoints agree with the graph
+     * whichever engine merged the edges. Anchors are read a page at a time in
+     * id order, each with the edges still missing a connection, so the edges
+     * of a large population are never held at once. Returns the number created.
+     */
+    private int recordMissingConnections(DetectedRelationship relationship) {
+        String connectionLabel = relationship.linksUsers() ? "UserConnection" : "TransactionConnection";
+        String id1 = relationship.linksUsers() ? "userId1" : "transactionId1";
+        String id2 = relationship.linksUsers() ? "userId2" : "transactionId2";
+        String query = "MATCH (a:" + relationship.label() + ") WHERE id(a) > $after " +
+            "WITH a ORDER BY id(a) LIMIT $pageSize " +
+            "RETURN id(a) AS id1, a." + relationship.valueProperty() + " AS value, " +
+            "[(a)-[:" + relationship.name() + "]-(b:" + relationship.label() + ") WHERE id(a) < id(b) " +
+            "AND NOT EXISTS { MATCH (c:" + connectionLabel + ") WHERE c." + id1 + " = id(a) AND c." + id2 +
+            " = id(b) AND c.relationshipType = $type } " +
+            "AND NOT EXISTS { MATCH (c:" + connectionLabel + ") WHERE c." + id1 + " = id(b) AND c." + id2 +
+            " = id(a) AND c.relationshipType = $type } | id(b)] AS missing";
+
+        // Merged rather than saved, so a connection an anchored write creates meanwhile is not duplicated.
+        String merge = "UNWIND $rows AS row MERGE (c:" + connectionLabel + " {" + id1 + ": row.id1, " + id2 +
+            ": row.id2, relationshipType: $type}) " +
+            "ON CREATE SET c.uid = row.uid, c.sharedValue = row.sharedValue, c.createdAt = localdatetime()";
+
+        int batchSize = Math.max(1, detectionProperties.getBatchSize());
+        List<Map<String, Object>> connections = new ArrayList<>();
+        Map<Long, Long> degreeDeltas = new HashMap<>();
+        int recorded = 0;
+        long after = -1;
+        Collection<Map<String, Object>> page;
+        do {
+            page = neo4jClient.query(query)
+                .bind(after).to("after")
+                .bind(batchSize).to("pageSize")
+                .bind(relationship.name()).to("type")
+                .fetch().all();
+            for (Map<String, Object> row : page) {
+                Long first = ((Number) row.get("id1")).longValue();
+                after = first;
+                for (Object missing : (List<?>) row.get("missing")) {
+                    Long second = ((Number) missing).longValue();
+                    Map<String, Object> connection = new HashMap<>();
+                    connection.put("id1", first);
+                    connection.put("id2", second);
+                    connection.put("sharedValue", relationship.sharedValue((String) row.get("value")));
+                    connection.put("uid", entityIds.next());
+                    connections.add(connection);
+                    if (relationship.linksUsers()) {
+                        versionTracker.userConnectionsChanged(first);
+                        versionTracker.userConnectionsChanged(second);
+                        degreeDeltas.merge(first, 1L, Long::sum);
+                        degreeDeltas.merge(second, 1L, Long::sum);
+                    }
+                    if (++recorded % batchSize == 0) {
+                        neo4jClient.query(merge).bind(new ArrayList<>(connections)).to("rows")
+                            .bind(relationship.name()).to("type").run();
+                        connections.clear();
                     }
                 }
             }
+        } while (page.size() == batchSize);
+        if (!connections.isEmpty()) {
+            neo4jClient.query(merge).bind(connections).to("rows").bind(relationship.name()).to("type").run();
+        }
+        if (!degreeDeltas.isEmpty()) {
+            userSummaryService.connectionsChanged(relationship, degreeDeltas);
         }
-        log.info("Created {} payment method relationships", relationshipsCreated);
+        return recorded;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,172 @@
+package com.flagright.service;
+
+import com.flagright.model.entity.Transaction;
+import com.flagright.util.AfterCommit;
+import com.flagright.util.MoneyUnits;
+import com.flagright.util.StringDictionary;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Columnar in-memory copy of the transaction fields used by analytics.
+ * Each field lives in its own primitive array, strings are dictionary-encoded
+ * and amounts are held as long minor units of their own currency, so
+ * aggregations scan contiguous memory instead of entity graphs. Currencies
+ * and statuses are stored in canonical case, so filters and groups do not
+ * split by how a client spelled them. Loaded once
+ * at startup and kept current by the transaction write path as its writes
+ * commit.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionColumnStore {
+
+    /** Marker for rows without a creation timestamp */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Neo4jClient neo4jClient;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> rowsById = new HashMap<>();
+    private final StringDictionary currencies = new StringDictionary();
+    private final StringDictionary statuses = new StringDictionary();
+    private final StringDictionary paymentMethods = new StringDictionary();
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] createdAt = new long[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private int[] currencyCodes = new int[INITIAL_CAPACITY];
+    private int[] statusCodes = new int[INITIAL_CAPACITY];
+    private int[] paymentMethodCodes = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /** Canonical form of a status, as stored in the status column and expected by its filter */
+    public static String normalizeStatus(String status) {
+        return status == null ? null : status.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /** Read-only view of the columns, valid only inside {@link #read} */
+    public record Columns(int size, long[] ids, long[] createdAt, long[] amounts,
+                          int[] currencyCodes, int[] statusCodes, int[] paymentMethodCodes,
+                          StringDictionary currencies, StringDictionary statuses, StringDictionary paymentMethods) {
+    }
+
+    /** Loads every stored transaction into the snapshot */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            Collection<Map<String, Object>> rows = neo4jClient.query(
+                    "MATCH (t:Transaction) RETURN id(t) AS id, t.amount AS amount, t.currency AS currency, " +
+                    "t.status AS status, t.paymentMethod AS paymentMethod, t.createdAt AS createdAt")
+                .fetch().all();
+
+            lock.writeLock().lock();
+            try {
+                for (Map<String, Object> row : rows) {
+                    upsertRow(((Number) row.get("id")).longValue(),
+                        toAmount(row.get("amount")),
+                        (String) row.get("currency"),
+                        (String) row.get("status"),
+                        (String) row.get("paymentMethod"),
+                        (LocalDateTime) row.get("createdAt"));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Loaded {} transactions into the columnar snapshot", rows.size());
+        } catch (Exception e) {
+            log.warn("Failed to load transaction snapshot, analytics will only cover new writes", e);
+        }
+    }
+
+    /**
+     * Adds a transaction to the snapshot, or refreshes it if already present,
+     * once the surrounding transaction commits, so a rolled-back write never
+     * shows up in analytics. The fields are read now, when the call is made.
+     */
+    public void upsert(Transaction transaction) {
+        if (transaction.getId() == null) {
+            return;
+        }
+        long id = transaction.getId();
+        BigDecimal amount = transaction.getAmount();
+        String currency = transaction.getCurrency();
+        String status = transaction.getStatus();
+        String paymentMethod = transaction.getPaymentMethod();
+        LocalDateTime created = transaction.getCreatedAt();
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                upsertRow(id, amount, currency, status, paymentMethod, created);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /** Runs a reader against a consistent view of the columns */
+    public <R> R read(Function<Columns, R> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(new Columns(size, ids, createdAt, amounts, currencyCodes, statusCodes,
+                paymentMethodCodes, currencies, statuses, paymentMethods));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void upsertRow(long id, BigDecimal amount, String currency, String status, String paymentMethod,
+                           LocalDateTime created) {
+        Integer row = rowsById.get(id);
+        if (row == null) {
+            ensureCapacity(size + 1);
+            row = size++;
+            rowsById.put(id, row);
+        }
+        ids[row] = id;
+        createdAt[row] = created == null ? NO_TIMESTAMP : created.toEpochSecond(ZoneOffset.UTC);
+        amounts[row] = MoneyUnits.toMinorUnits(amount, currency);
+        currencyCodes[row] = currencies.encode(MoneyUnits.normalizeCurrency(currency));
+        statusCodes[row] = statuses.encode(normalizeStatus(status));
+        paymentMethodCodes[row] = paymentMethods.encode(paymentMethod);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        createdAt = Arrays.copyOf(createdAt, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        currencyCodes = Arrays.copyOf(currencyCodes, capacity);
+        statusCodes = Arrays.copyOf(statusCodes, capacity);
+        paymentMethodCodes = Arrays.copyOf(paymentMethodCodes, capacity);
+    }
+
+    private static BigDecimal toAmount(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(String.valueOf(value));
+    }
+}
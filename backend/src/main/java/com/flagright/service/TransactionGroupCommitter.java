@@ -0,0 +1,193 @@
+package com.flagright.service;
+
+import com.flagright.config.IngestionProperties;
+import com.flagright.exception.IngestionOverloadedException;
+import com.flagright.model.entity.Transaction;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional group commit for transaction creation. When enabled, creates are
+ * checked on the caller's thread, queued, and committed by a single flusher
+ * in one Neo4j transaction per batch; a batch closes when it reaches
+ * {@code max-batch-size} or its oldest create has waited {@code max-wait},
+ * and its nodes and edges are written in a single statement.
+ * Each caller's future completes once its batch has committed, so an
+ * acknowledged create is always durable. When a batch fails, its creates are
+ * retried one transaction each so that one bad create cannot fail the rest.
+ * Disabled, creates run directly in their own transaction as before.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionGroupCommitter {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final TransactionService transactionService;
+    private final IngestionProperties ingestionProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final WriteConcurrency writeConcurrency;
+
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "transaction-group-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private BlockingQueue<PendingCreate> queue;
+    private volatile boolean running;
+
+    private record PendingCreate(Transaction transaction, Long senderId, Long recipientId, long enqueuedNanos,
+                                 CompletableFuture<Transaction> result) {
+    }
+
+    @PostConstruct
+    public void start() {
+        IngestionProperties.GroupCommit settings = ingestionProperties.getGroupCommit();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(Math.max(1, settings.getQueueCapacity()));
+        running = true;
+        flusher.submit(this::drain);
+        log.info("Group commit enabled for transaction creates: up to {} per batch, {} max wait",
+            settings.getMaxBatchSize(), settings.getMaxWait());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // The flusher commits whatever is still queued before it exits.
+        running = false;
+        flusher.shutdown();
+        if (!flusher.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Group commit flusher did not finish within 10s, queued creates are lost");
+            flusher.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a transaction, completing once it has committed.
+     *
+     * @throws IngestionOverloadedException if group commit is enabled and its queue is full
+     */
+    public CompletableFuture<Transaction> create(Transaction transaction, Long senderId, Long recipientId) {
+        if (queue == null) {
+            return CompletableFuture.completedFuture(writeConcurrency.retrying("Create transaction", () -> {
+                // A rolled-back attempt may have assigned an id that no longer exists.
+                transaction.setId(null);
+                return transactionService.createTransaction(transaction, senderId, recipientId);
+            }));
+        }
+
+        // Rejecting invalid creates here keeps them from failing a whole batch.
+        transactionService.checkCreatable(transaction, senderId, recipientId);
+        PendingCreate pending = new PendingCreate(transaction, senderId, recipientId, System.nanoTime(),
+            new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            throw new IngestionOverloadedException(queue.size() + queue.remainingCapacity());
+        }
+        return pending.result();
+    }
+
+    private void drain() {
+        IngestionProperties.GroupCommit settings = ingestionProperties.getGroupCommit();
+        int maxBatchSize = Math.max(1, settings.getMaxBatchSize());
+        long maxWaitNanos = settings.getMaxWait().toNanos();
+        List<PendingCreate> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingCreate first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = first.enqueuedNanos() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingCreate next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(batch, new IllegalStateException("Transaction ingestion stopped before commit"));
+                break;
+            } catch (RuntimeException e) {
+                log.error("Group commit flusher failed on a batch of {} creates", batch.size(), e);
+                fail(batch, e);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        List<PendingCreate> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        fail(abandoned, new IllegalStateException("Transaction ingestion stopped before commit"));
+    }
+
+    private void flush(List<PendingCreate> batch) {
+        long started = System.nanoTime();
+        List<Transaction> created;
+        try {
+            created = writeConcurrency.retrying("Group commit", () -> transactionTemplate.execute(status -> {
+                List<TransactionService.NewTransaction> creates = new ArrayList<>(batch.size());
+                for (PendingCreate pending : batch) {
+                    pending.transaction().setId(null);
+                    creates.add(new TransactionService.NewTransaction(
+                        pending.transaction(), pending.senderId(), pending.recipientId()));
+                }
+                return transactionService.createTransactions(creates);
+            }));
+        } catch (RuntimeException e) {
+            log.warn("Group commit of {} transaction creates failed, committing them one by one", batch.size(), e);
+            for (PendingCreate pending : batch) {
+                commitAlone(pending);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(created.get(i));
+        }
+        log.debug("Group committed {} transaction creates in {} ms, oldest waited {} ms", batch.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+            TimeUnit.NANOSECONDS.toMillis(started - batch.get(0).enqueuedNanos()));
+    }
+
+    private void commitAlone(PendingCreate pending) {
+        try {
+            // The rolled-back attempt may have assigned an id that no longer exists.
+            pending.result().complete(writeConcurrency.retrying("Create transaction", () -> {
+                pending.transaction().setId(null);
+                return transactionService.createTransaction(
+                    pending.transaction(), pending.senderId(), pending.recipientId());
+            }));
+        } catch (RuntimeException e) {
+            pending.result().completeExceptionally(e);
+        }
+    }
+
+    private static void fail(List<PendingCreate> pending, RuntimeException cause) {
+        for (PendingCreate create : pending) {
+            create.result().completeExceptionally(cause);
+        }
+    }
+}
@@ -7,10 +7,18 @@ import com.flagright.model.dto.TransactionConnectionDto;
 import com.flagright.Repository.TransactionConnectionRepository;
 import com.flagright.Repository.TransactionRepository;
 import com.flagright.exception.TransactionNotFoundException;
+import com.flagright.exception.UserNotFoundException;
+import com.flagright.util.AttributeNormalizer;
+import com.flagright.util.TimeBuckets;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.data.neo4j.core.mapping.Constants;
+import org.springframework.data.neo4j.core.mapping.Neo4jMappingContext;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -19,6 +27,7 @@ import java.util.stream.Collectors;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
@@ -30,31 +39,109 @@ public class TransactionService {
     private final TransactionConnectionRepository transactionConnectionRepository;
     private final UserService userService;
     private final RelationshipDetectionService relationshipDetectionService;
+    private final VelocityService velocityService;
+    private final TransactionColumnStore transactionColumnStore;
+    private final ChangeFeedService changeFeedService;
+    private final VersionTracker versionTracker;
+    private final UserSummaryService userSummaryService;
+    private final FlowCycleService flowCycleService;
+    private final EntityIds entityIds;
+    private final Neo4jClient neo4jClient;
+    private final Neo4jMappingContext mappingContext;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int BACKFILL_CHUNK_SIZE = 10000;
+
+    private static final String CREATE_TRANSACTIONS =
+        "UNWIND $rows AS row " +
+        "MATCH (s:User) WHERE id(s) = row.senderId " +
+        "MATCH (r:User) WHERE id(r) = row.recipientId " +
+        "CREATE (s)-[sent:SENT]->(t:Transaction)-[received:RECEIVED]->(r) " +
+        "SET t = row.properties, sent.createdAt = t.createdAt, received.createdAt = t.createdAt " +
+        "RETURN t.uid AS uid, id(t) AS id";
+
+    /** A transaction to create and the users it is between */
+    public record NewTransaction(Transaction transaction, Long senderId, Long recipientId) {
+    }
 
     /** Creates a new transaction between two users */
     public Transaction createTransaction(Transaction transaction, Long senderId, Long recipientId) {
         log.info("Creating transaction from user {} to user {} for amount {}", 
                 senderId, recipientId, transaction.getAmount());
+        return createTransactions(List.of(new NewTransaction(transaction, senderId, recipientId))).get(0);
+    }
 
-        User sender = userService.getUserById(senderId);
-        User recipient = userService.getUserById(recipientId);
+    /**
+     * Creates transactions, writing all of them and their SENT and RECEIVED
+     * edges in one statement. Each is given its uid before the write, and the
+     * uids the statement returns map the new nodes back to their transactions.
+     */
+    public List<Transaction> createTransactions(List<NewTransaction> creates) {
+        Map<Long, User> users = new HashMap<>();
+        Function<Transaction, Map<String, Object>> binder = mappingContext.getRequiredBinderFunctionFor(Transaction.class);
+        List<Map<String, Object>> rows = new ArrayList<>(creates.size());
+        for (NewTransaction create : creates) {
+            Transaction transaction = create.transaction();
+            User sender = users.computeIfAbsent(create.senderId(), userService::getUserById);
+            User recipient = users.computeIfAbsent(create.recipientId(), userService::getUserById);
 
-        validateTransaction(transaction);
+            validateTransaction(transaction);
 
-        transaction.setSender(sender);
-        transaction.setRecipient(recipient);
-        transaction.setStatus("PENDING");
-        transaction.setCreatedAt(LocalDateTime.now());
+            transaction.setSender(sender);
+            transaction.setRecipient(recipient);
+            transaction.setStatus("PENDING");
+            transaction.setCreatedAt(LocalDateTime.now());
+            transaction.setUpdatedAt(transaction.getCreatedAt());
+            transaction.setCreatedAtBucket(TimeBuckets.bucketOf(transaction.getCreatedAt()));
+            AttributeNormalizer.applyFingerprints(transaction);
+            if (transaction.getUid() == null) {
+                transaction.setUid(entityIds.next());
+            }
 
-        Transaction savedTransaction = transactionRepository.save(transaction);
+            Map<String, Object> row = new HashMap<>();
+            row.put("senderId", create.senderId());
+            row.put("recipientId", create.recipientId());
+            row.put("properties", binder.apply(transaction).get(Constants.NAME_OF_PROPERTIES_PARAM));
+            rows.add(row);
+        }
+
+        Map<Long, Long> createdIds = new HashMap<>();
+        for (Map<String, Object> created : neo4jClient.query(CREATE_TRANSACTIONS).bind(rows).to("rows").fetch().all()) {
+            createdIds.put(((Number) created.get("uid")).longValue(), ((Number) created.get("id")).longValue());
+        }
 
-        transactionRepository.createSentRelationship(senderId, savedTransaction.getId());
-        transactionRepository.createReceivedRelationship(recipientId, savedTransaction.getId());
+        List<Transaction> savedTransactions = new ArrayList<>(creates.size());
+        for (NewTransaction create : creates) {
+            Transaction savedTransaction = create.transaction();
+            Long id = createdIds.get(savedTransaction.getUid());
+            if (id == null) {
+                throw new UserNotFoundException("User not found with ID: " + create.senderId() + " or " +
+                    create.recipientId());
+            }
+            savedTransaction.setId(id);
+
+            relationshipDetectionService.detectTransactionRelationships(savedTransaction);
+            userSummaryService.transactionCreated(savedTransaction);
+            flowCycleService.checkAfterCommit(savedTransaction);
 
-        relationshipDetectionService.detectTransactionRelationships(savedTransaction);
+            savedTransaction.setVelocityBreaches(velocityService.record(savedTransaction));
+            transactionColumnStore.upsert(savedTransaction);
+            changeFeedService.publish(ChangeFeedService.ChangeType.TRANSACTION_CREATED, savedTransaction);
 
-        log.info("Transaction created with ID: {}", savedTransaction.getId());
-        return savedTransaction;
+            log.info("Transaction created with ID: {}", savedTransaction.getId());
+            savedTransactions.add(savedTransaction);
+        }
+        versionTracker.transactionsChanged();
+        return savedTransactions;
+    }
+
+    /** Checks that a transaction could be created, without writing anything */
+    @Transactional(readOnly = true)
+    public void checkCreatable(Transaction transaction, Long senderId, Long recipientId) {
+        userService.getUserById(senderId);
+        userService.getUserById(recipientId);
+        validateTransaction(transaction);
     }
 
     /** Updates transaction status */
@@ -62,13 +149,20 @@ public class TransactionService {
         log.info("Updating transaction {} status to {}", transactionId, status);
         
         Transaction transaction = getTransactionById(transactionId);
+        String previousStatus = transaction.getStatus();
         transaction.setStatus(status);
         
+        transaction.setUpdatedAt(LocalDateTime.now());
         if ("COMPLETED".equals(status)) {
-            transaction.setCompletedAt(LocalDateTime.now());
+            transaction.setCompletedAt(transaction.getUpdatedAt());
         }
         
-        return transactionRepository.save(transaction);
+        Transaction updatedTransaction = transactionRepository.save(transaction);
+        userSummaryService.statusChanged(updatedTransaction, previousStatus);
+        transactionColumnStore.upsert(updatedTransaction);
+        changeFeedService.publish(ChangeFeedService.ChangeType.TRANSACTION_UPDATED, updatedTransaction);
+        versionTracker.transactionsChanged();
+        return updatedTransaction;
     }
 
     /** Gets transaction by ID */
@@ -85,6 +179,13 @@ public class TransactionService {
         return transactionRepository.findAll();
     }
 
+    /** Gets up to {@code limit} transactions created after the one with uid {@code afterUid}, oldest first */
+    @Transactional(readOnly = true)
+    public List<Transaction> getTransactionsAfter(long afterUid, int limit) {
+        log.info("Fetching transactions after uid {}", afterUid);
+        return transactionRepository.findPageAfterUid(afterUid, Math.min(Math.max(limit, 1), MAX_PAGE_SIZE));
+    }
+
     /** Gets transactions sent or received by a user */
     @Transactional(readOnly = true)
     public List<Transaction> getTransactionsByUser(Long userId, String type) {
@@ -179,6 +280,60 @@ public class TransactionService {
         return transactionRepository.findByCreatedAtBetween(start, end);
     }
 
+    /**
+     * Computes fingerprints and time buckets for transactions stored before
+     * they were introduced, chunk by chunk in internal id order with one
+     * transaction per chunk. Transactions without a payment method or
+     * timestamp have nothing to backfill and are not revisited on every
+     * start. Returns the number of transactions backfilled.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int backfillFingerprints() {
+        int backfilled = 0;
+        long afterId = -1;
+        while (true) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map<String, Object> stored : neo4jClient.query(
+                    "MATCH (t:Transaction) WHERE id(t) > $afterId " +
+                    "AND ((t.paymentMethod IS NOT NULL AND t.paymentMethodFingerprint IS NULL) " +
+                    "OR (t.createdAt IS NOT NULL AND t.createdAtBucket IS NULL)) " +
+                    "RETURN id(t) AS id, t.ipAddress AS ipAddress, t.deviceId AS deviceId, " +
+                    "t.paymentMethod AS paymentMethod, t.createdAt AS createdAt ORDER BY id(t) LIMIT $limit")
+                .bind(afterId).to("afterId")
+                .bind(BACKFILL_CHUNK_SIZE).to("limit")
+                .fetch().all()) {
+                Transaction transaction = new Transaction();
+                transaction.setIpAddress((String) stored.get("ipAddress"));
+                transaction.setDeviceId((String) stored.get("deviceId"));
+                transaction.setPaymentMethod((String) stored.get("paymentMethod"));
+                AttributeNormalizer.applyFingerprints(transaction);
+                Map<String, Object> row = new HashMap<>();
+                row.put("id", stored.get("id"));
+                row.put("ip", transaction.getIpFingerprint());
+                row.put("device", transaction.getDeviceFingerprint());
+                row.put("paymentMethod", transaction.getPaymentMethodFingerprint());
+                row.put("bucket", TimeBuckets.bucketOf((LocalDateTime) stored.get("createdAt")));
+                rows.add(row);
+            }
+            if (rows.isEmpty()) {
+                break;
+            }
+            Long updated = transactionTemplate.execute(status -> neo4jClient.query(
+                    "UNWIND $rows AS row MATCH (t:Transaction) WHERE id(t) = row.id " +
+                    "SET t.ipFingerprint = row.ip, t.deviceFingerprint = row.device, " +
+                    "t.paymentMethodFingerprint = row.paymentMethod, t.createdAtBucket = row.bucket " +
+                    "RETURN count(t) AS updated")
+                .bind(rows).to("rows")
+                .fetchAs(Long.class)
+                .mappedBy((typeSystem, record) -> record.get("updated").asLong())
+                .one()
+                .orElse(0L));
+            backfilled += updated == null ? 0 : updated.intValue();
+            afterId = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+        }
+        return backfilled;
+    }
+
     /** Validates transaction data */
     private void validateTransaction(Transaction transaction) {
         if (transaction.getAmount() == null || transaction.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
@@ -0,0 +1,245 @@
+package com.flagright.service;
+
+import com.flagright.model.dto.TransactionStats;
+import com.flagright.util.MoneyUnits;
+import com.flagright.util.QuantileSketch;
+import com.flagright.util.StringDictionary;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Group-by aggregates over the columnar transaction snapshot. Rows are split
+ * into fixed-size chunks that are aggregated in parallel and then merged.
+ * Sums add amounts at face value, so group by currency when mixing currencies.
+ * Each currency is stored in its own minor units; rows are brought to the
+ * finest scale among the stored currencies before they are added, and sums
+ * saturate at the long range instead of wrapping. Currency and status
+ * filters match regardless of case. Percentiles are exact for groups of up
+ * to {@value #EXACT_PERCENTILE_LIMIT} rows and within one percent beyond,
+ * so a group's memory stays bounded however many rows it has.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionStatsService {
+
+    public enum GroupBy { NONE, HOUR, DAY, CURRENCY, STATUS, PAYMENT_METHOD }
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final long SECONDS_PER_HOUR = 3600;
+    private static final long SECONDS_PER_DAY = 86400;
+    private static final int EXACT_PERCENTILE_LIMIT = 4096;
+    private static final double PERCENTILE_ACCURACY = 0.01;
+
+    private final TransactionColumnStore columnStore;
+
+    /** Computes count, sum, p50 and p95 amount per group for transactions matching the filters */
+    public TransactionStats getStats(String groupBy, LocalDateTime from, LocalDateTime to, String currency, String status) {
+        GroupBy grouping = parseGroupBy(groupBy);
+        log.info("Computing transaction stats grouped by {}", grouping);
+
+        return columnStore.read(columns -> {
+            int currencyFilter = currency == null ? Integer.MIN_VALUE
+                : columns.currencies().lookup(MoneyUnits.normalizeCurrency(currency));
+            int statusFilter = status == null ? Integer.MIN_VALUE
+                : columns.statuses().lookup(TransactionColumnStore.normalizeStatus(status));
+            if (currencyFilter == StringDictionary.MISSING_CODE || statusFilter == StringDictionary.MISSING_CODE) {
+                return new TransactionStats(grouping.name(), 0, List.of());
+            }
+            int scale = commonScale(columns.currencies());
+            Filter filter = new Filter(
+                from == null ? Long.MIN_VALUE : from.toEpochSecond(ZoneOffset.UTC),
+                to == null ? Long.MAX_VALUE : to.toEpochSecond(ZoneOffset.UTC),
+                currencyFilter, statusFilter, from != null || to != null,
+                commonUnitMultipliers(columns.currencies(), scale));
+
+            int chunks = (columns.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            Map<Long, Accumulator> merged = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> aggregateChunk(columns, chunk * CHUNK_SIZE,
+                    Math.min(columns.size(), (chunk + 1) * CHUNK_SIZE), grouping, filter))
+                .reduce(new HashMap<>(), TransactionStatsService::merge);
+
+            return toStats(grouping, merged, columns, scale);
+        });
+    }
+
+    /** Parses a group-by name such as "day" or "paymentMethod" */
+    public static GroupBy parseGroupBy(String groupBy) {
+        if (groupBy == null || groupBy.trim().isEmpty()) {
+            return GroupBy.NONE;
+        }
+        String normalized = groupBy.trim().replaceAll("([a-z])([A-Z])", "$1_$2").replace('-', '_').toUpperCase(Locale.ROOT);
+        try {
+            return GroupBy.valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid groupBy. Use one of hour, day, currency, status, paymentMethod");
+        }
+    }
+
+    /**
+     * Row filters, with the multiplier bringing each currency's minor units
+     * to the common scale, indexed by currency code plus one so that rows
+     * without a currency use the first entry.
+     */
+    private record Filter(long fromSecond, long toSecond, int currencyCode, int statusCode, boolean timeBounded,
+                          long[] toCommonUnits) {
+    }
+
+    /** The most fraction digits of any stored currency, so that every amount is exact at that scale */
+    private static int commonScale(StringDictionary currencies) {
+        int scale = MoneyUnits.fractionDigits(null);
+        for (int code = 0; code < currencies.size(); code++) {
+            scale = Math.max(scale, MoneyUnits.fractionDigits(currencies.decode(code)));
+        }
+        return scale;
+    }
+
+    private static long[] commonUnitMultipliers(StringDictionary currencies, int scale) {
+        long[] multipliers = new long[currencies.size() + 1];
+        multipliers[0] = powerOfTen(scale - MoneyUnits.fractionDigits(null));
+        for (int code = 0; code < currencies.size(); code++) {
+            multipliers[code + 1] = powerOfTen(scale - MoneyUnits.fractionDigits(currencies.decode(code)));
+        }
+        return multipliers;
+    }
+
+    private static long powerOfTen(int exponent) {
+        long power = 1;
+        for (int i = 0; i < exponent; i++) {
+            power *= 10;
+        }
+        return power;
+    }
+
+    private static Map<Long, Accumulator> aggregateChunk(TransactionColumnStore.Columns columns, int start, int end,
+                                                         GroupBy grouping, Filter filter) {
+        Map<Long, Accumulator> groups = new HashMap<>();
+        long[] createdAt = columns.createdAt();
+        long[] amounts = columns.amounts();
+        int[] currencyCodes = columns.currencyCodes();
+        int[] statusCodes = columns.statusCodes();
+        boolean timeGrouping = grouping == GroupBy.HOUR || grouping == GroupBy.DAY;
+
+        for (int row = start; row < end; row++) {
+            long created = createdAt[row];
+            boolean noTimestamp = created == TransactionColumnStore.NO_TIMESTAMP;
+            if ((filter.timeBounded() || timeGrouping) && noTimestamp) {
+                continue;
+            }
+            if (created < filter.fromSecond() || created > filter.toSecond()) {
+                continue;
+            }
+            if (filter.currencyCode() != Integer.MIN_VALUE && currencyCodes[row] != filter.currencyCode()) {
+                continue;
+            }
+            if (filter.statusCode() != Integer.MIN_VALUE && statusCodes[row] != filter.statusCode()) {
+                continue;
+            }
+            long key;
+            switch (grouping) {
+                case HOUR:
+                    key = Math.floorDiv(created, SECONDS_PER_HOUR);
+                    break;
+                case DAY:
+                    key = Math.floorDiv(created, SECONDS_PER_DAY);
+                    break;
+                case CURRENCY:
+                    key = currencyCodes[row];
+                    break;
+                case STATUS:
+                    key = statusCodes[row];
+                    break;
+                case PAYMENT_METHOD:
+                    key = columns.paymentMethodCodes()[row];
+                    break;
+                default:
+                    key = 0;
+            }
+            groups.computeIfAbsent(key, k -> new Accumulator())
+                .add(MoneyUnits.multiply(amounts[row], filter.toCommonUnits()[Math.max(0, currencyCodes[row] + 1)]));
+        }
+        return groups;
+    }
+
+    private static Map<Long, Accumulator> merge(Map<Long, Accumulator> left, Map<Long, Accumulator> right) {
+        Map<Long, Accumulator> result = new HashMap<>(left);
+        right.forEach((key, accumulator) -> result.merge(key, accumulator, Accumulator::merge));
+        return result;
+    }
+
+    private static TransactionStats toStats(GroupBy grouping, Map<Long, Accumulator> merged,
+                                            TransactionColumnStore.Columns columns, int scale) {
+        List<Map.Entry<Long, Accumulator>> entries = new ArrayList<>(merged.entrySet());
+        if (grouping == GroupBy.HOUR || grouping == GroupBy.DAY) {
+            entries.sort(Map.Entry.comparingByKey());
+        } else {
+            entries.sort(Comparator.comparingLong((Map.Entry<Long, Accumulator> e) -> e.getValue().count).reversed());
+        }
+
+        long totalCount = 0;
+        List<TransactionStats.Group> groups = new ArrayList<>(entries.size());
+        for (Map.Entry<Long, Accumulator> entry : entries) {
+            Accumulator accumulator = entry.getValue();
+            totalCount += accumulator.count;
+            groups.add(new TransactionStats.Group(
+                groupKey(grouping, entry.getKey(), columns),
+                accumulator.count,
+                BigDecimal.valueOf(accumulator.sum, scale),
+                BigDecimal.valueOf(accumulator.amounts.quantile(0.50), scale),
+                BigDecimal.valueOf(accumulator.amounts.quantile(0.95), scale)));
+        }
+        return new TransactionStats(grouping.name(), totalCount, groups);
+    }
+
+    private static String groupKey(GroupBy grouping, long key, TransactionColumnStore.Columns columns) {
+        switch (grouping) {
+            case HOUR:
+                return LocalDateTime.ofEpochSecond(key * SECONDS_PER_HOUR, 0, ZoneOffset.UTC).toString();
+            case DAY:
+                return LocalDate.ofEpochDay(key).toString();
+            case CURRENCY:
+                return columns.currencies().decode((int) key);
+            case STATUS:
+                return columns.statuses().decode((int) key);
+            case PAYMENT_METHOD:
+                return columns.paymentMethods().decode((int) key);
+            default:
+                return "ALL";
+        }
+    }
+
+    /** Running count, saturating sum and amount distribution for one group */
+    private static final class Accumulator {
+        private int count;
+        private long sum;
+        private final QuantileSketch amounts = new QuantileSketch(EXACT_PERCENTILE_LIMIT, PERCENTILE_ACCURACY);
+
+        void add(long amount) {
+            count++;
+            sum = MoneyUnits.add(sum, amount);
+            amounts.add(amount);
+        }
+
+        /** Folds another chunk's accumulator for the same group into this one */
+        Accumulator merge(Accumulator other) {
+            count += other.count;
+            sum = MoneyUnits.add(sum, other.sum);
+            amounts.merge(other.amounts);
+            return this;
+        }
+    }
+}
@@ -6,18 +6,25 @@ import com.flagright.model.dto.UserConnectionDto;
 import com.flagright.Repository.UserConnectionRepository;
 import com.flagright.Repository.UserRepository;
 import com.flagright.exception.UserNotFoundException;
+import com.flagright.util.AttributeNormalizer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.neo4j.core.Neo4jClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
+import java.util.Locale;
 import java.util.Optional;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 
 @Service
 @RequiredArgsConstructor
@@ -28,11 +35,27 @@ public class UserService {
     private final UserRepository userRepository;
     private final UserConnectionRepository userConnectionRepository;
     private final RelationshipDetectionService relationshipDetectionService;
+    private final ChangeFeedService changeFeedService;
+    private final VersionTracker versionTracker;
+    private final WriteConcurrency writeConcurrency;
+    private final EntityIds entityIds;
+    private final Neo4jClient neo4jClient;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MIN_FUZZY_TOKEN_LENGTH = 4;
+    private static final int BACKFILL_CHUNK_SIZE = 10000;
+    private static final Pattern SEARCH_TOKEN_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}.']+");
 
     /** Creates a new user */
     public User createUser(User user) {
         log.info("Creating new user with email: {}", user.getEmail());
 
+        // Held until commit, so a concurrent signup with the same email sees this one's user.
+        if (user.getEmail() != null) {
+            writeConcurrency.lockValues("email", List.of(user.getEmail()));
+        }
         Optional<User> existingUser = userRepository.findByEmail(user.getEmail());
 
         if (existingUser.isPresent()) {
@@ -41,10 +64,22 @@ public class UserService {
 
         user.setCreatedAt(LocalDateTime.now());
         user.setUpdatedAt(LocalDateTime.now());
+        AttributeNormalizer.applyFingerprints(user);
+        if (user.getUid() == null) {
+            user.setUid(entityIds.next());
+        }
 
-        User savedUser = userRepository.save(user);
+        User savedUser;
+        try {
+            savedUser = userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            // Another instance claimed the email or ingestion key first; the uniqueness constraints caught it.
+            throw new IllegalArgumentException("User with email already exists: " + user.getEmail());
+        }
 
         relationshipDetectionService.detectUserRelationships(savedUser);
+        changeFeedService.publish(ChangeFeedService.ChangeType.USER_CREATED, savedUser);
+        versionTracker.usersChanged();
 
         log.info("User created successfully with ID: {}", savedUser.getId());
         return savedUser;
@@ -55,6 +90,7 @@ public class UserService {
         log.info("Updating user with ID: {}", userId);
 
         User existingUser = getUserById(userId);
+        Map<DetectedRelationship, Long> previousFingerprints = DetectedRelationship.fingerprintsOf(existingUser);
 
         if (userUpdates.getFirstName() != null) {
             existingUser.setFirstName(userUpdates.getFirstName());
@@ -70,10 +106,18 @@ public class UserService {
         }
 
         existingUser.setUpdatedAt(LocalDateTime.now());
+        AttributeNormalizer.applyFingerprints(existingUser);
         
         User updatedUser = userRepository.save(existingUser);
 
-        relationshipDetectionService.detectUserRelationships(updatedUser);
+        relationshipDetectionService.updateUserRelationships(updatedUser, previousFingerprints);
+        changeFeedService.publish(ChangeFeedService.ChangeType.USER_UPDATED, updatedUser);
+        versionTracker.usersChanged();
+        // Connection lists embed the connected user, so every neighbour's list changed too.
+        for (UserConnection connection : userConnectionRepository.findByUserId1OrUserId2(userId, userId)) {
+            versionTracker.userConnectionsChanged(
+                connection.getUserId1().equals(userId) ? connection.getUserId2() : connection.getUserId1());
+        }
 
         return updatedUser;
     }
@@ -93,6 +137,13 @@ public class UserService {
         return userRepository.findAll();
     }
 
+    /** Gets up to {@code limit} users created after the one with uid {@code afterUid}, oldest first */
+    @Transactional(readOnly = true)
+    public List<User> getUsersAfter(long afterUid, int limit) {
+        log.info("Fetching users after uid {}", afterUid);
+        return userRepository.findPageAfterUid(afterUid, Math.min(Math.max(limit, 1), MAX_PAGE_SIZE));
+    }
+
     /** Gets user connections with relationship details */
     @Transactional(readOnly = true)
     public List<UserConnectionDto> getUserConnections(Long userId) {
@@ -137,16 +188,109 @@ public class UserService {
         return userRepository.findByEmail(email);
     }
 
-    /** Searches users by first name */
-    @Transactional(readOnly = true)
-    public List<User> searchUsers(String searchTerm) {
+    /**
+     * Searches users by name, email, phone and address using the full-text
+     * index, best matches first; an empty term pages through all users in
+     * creation order. Runs without a surrounding transaction, so that when
+     * the full-text query fails, the first-name fallback gets a fresh
+     * transaction of its own rather than the one the failure rolled back.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<User> searchUsers(String searchTerm, int page, int size) {
         log.info("Searching users with term: " + searchTerm);
-        
+
+        int pageSize = Math.min(Math.max(size, 1), MAX_SEARCH_PAGE_SIZE);
+        long skip = (long) Math.max(page, 0) * pageSize;
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
-            return getAllUsers();
+            return userRepository.findPage(skip, pageSize);
+        }
+
+        String query = toFullTextQuery(searchTerm);
+        if (query.isEmpty()) {
+            return List.of();
         }
         
-        return userRepository.findByFirstNameContainingIgnoreCase(searchTerm.trim());
+        try {
+            return userRepository.searchFullText(query, skip, pageSize);
+        } catch (Exception e) {
+            log.warn("Full-text user search failed, falling back to first name scan", e);
+            return userRepository.findPageByFirstNameContaining(searchTerm.trim(), skip, pageSize);
+        }
+    }
+
+    /** Builds a Lucene query that ranks exact terms above prefix and typo-tolerant matches */
+    static String toFullTextQuery(String searchTerm) {
+        StringBuilder query = new StringBuilder();
+        for (String token : SEARCH_TOKEN_SEPARATORS.split(searchTerm.trim().toLowerCase(Locale.ROOT))) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(" AND ");
+            }
+            query.append('(').append(token).append("^4 OR ").append(token).append("*^2");
+            if (token.length() >= MIN_FUZZY_TOKEN_LENGTH) {
+                query.append(" OR ").append(token).append('~').append(token.length() >= 8 ? 2 : 1);
+            }
+            query.append(')');
+        }
+        return query.toString();
+    }
+
+    /**
+     * Computes fingerprints for users stored before normalisation was
+     * introduced, chunk by chunk in internal id order with one transaction
+     * per chunk. Only users with an attribute still lacking its fingerprint
+     * are read, so users without contact details are not revisited on every
+     * start, and fingerprints set meanwhile by a concurrent update are kept.
+     * Returns the number of users backfilled.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int backfillFingerprints() {
+        int backfilled = 0;
+        long afterId = -1;
+        while (true) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map<String, Object> stored : neo4jClient.query(
+                    "MATCH (u:User) WHERE id(u) > $afterId " +
+                    "AND ((u.email IS NOT NULL AND u.emailFingerprint IS NULL) " +
+                    "OR (u.phone IS NOT NULL AND u.phoneFingerprint IS NULL) " +
+                    "OR (u.address IS NOT NULL AND u.addressFingerprint IS NULL)) " +
+                    "RETURN id(u) AS id, u.email AS email, u.phone AS phone, u.address AS address " +
+                    "ORDER BY id(u) LIMIT $limit")
+                .bind(afterId).to("afterId")
+                .bind(BACKFILL_CHUNK_SIZE).to("limit")
+                .fetch().all()) {
+                User user = new User();
+                user.setEmail((String) stored.get("email"));
+                user.setPhone((String) stored.get("phone"));
+                user.setAddress((String) stored.get("address"));
+                AttributeNormalizer.applyFingerprints(user);
+                Map<String, Object> row = new HashMap<>();
+                row.put("id", stored.get("id"));
+                row.put("email", user.getEmailFingerprint());
+                row.put("phone", user.getPhoneFingerprint());
+                row.put("address", user.getAddressFingerprint());
+                rows.add(row);
+            }
+            if (rows.isEmpty()) {
+                break;
+            }
+            Long updated = transactionTemplate.execute(status -> neo4jClient.query(
+                    "UNWIND $rows AS row MATCH (u:User) WHERE id(u) = row.id " +
+                    "SET u.emailFingerprint = coalesce(u.emailFingerprint, row.email), " +
+                    "u.phoneFingerprint = coalesce(u.phoneFingerprint, row.phone), " +
+                    "u.addressFingerprint = coalesce(u.addressFingerprint, row.address) " +
+                    "RETURN count(u) AS updated")
+                .bind(rows).to("rows")
+                .fetchAs(Long.class)
+                .mappedBy((typeSystem, record) -> record.get("updated").asLong())
+                .one()
+                .orElse(0L));
+            backfilled += updated == null ? 0 : updated.intValue();
+            afterId = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+        }
+        return backfilled;
     }
 
 }
@@ -0,0 +1,427 @@
+package com.flagright.service;
+
+import com.flagright.config.UserSummaryProperties;
+import com.flagright.exception.UserNotFoundException;
+import com.flagright.model.dto.UserActivitySummary;
+import com.flagright.model.entity.Transaction;
+import com.flagright.util.MoneyUnits;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Per-user counters kept beside the graph so list and dashboard views read
+ * them with two index lookups instead of aggregating edges. A
+ * {@code (:UserSummary {userId})} node holds degree per user relationship
+ * type and sent, received and completed transaction counts; one
+ * {@code (:UserCurrencyTotal {userId, currency})} node per currency holds
+ * amount totals in minor units.
+ *
+ * <p>Writers adjust the counters by delta in their own transaction, taking
+ * the node's write lock before reading the old value so concurrent
+ * increments are not lost. Currency codes are upper-cased, and totals
+ * saturate at the long range instead of overflowing, so one huge amount
+ * cannot fail the write or every later reconciliation. A scheduled
+ * reconciliation recomputes the counters from connections and SENT/RECEIVED
+ * edges chunk by chunk and overwrites any that drifted.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserSummaryService {
+
+    private static final String COMPLETED = "COMPLETED";
+    private static final int WRITE_CHUNK_SIZE = 1000;
+    private static final List<DetectedRelationship> USER_RELATIONSHIPS = Arrays.stream(DetectedRelationship.values())
+        .filter(DetectedRelationship::linksUsers)
+        .toList();
+
+    private static final String ADJUST_TRANSACTION_COUNTS =
+        "UNWIND $rows AS row " +
+        "MERGE (s:UserSummary {userId: row.userId}) " +
+        "SET s._lock = true " +
+        "WITH s, row " +
+        "SET s.sentCount = coalesce(s.sentCount, 0) + row.sent, " +
+        "    s.receivedCount = coalesce(s.receivedCount, 0) + row.received, " +
+        "    s.completedSentCount = coalesce(s.completedSentCount, 0) + row.completedSent, " +
+        "    s.completedReceivedCount = coalesce(s.completedReceivedCount, 0) + row.completedReceived, " +
+        "    s.updatedAt = localdatetime() " +
+        "REMOVE s._lock";
+
+    private static final String ADJUST_CURRENCY_TOTALS =
+        "UNWIND $rows AS row " +
+        "MERGE (c:UserCurrencyTotal {userId: row.userId, currency: row.currency}) " +
+        "SET c._lock = true " +
+        "WITH c, row " +
+        "SET c.sentMinor = CASE WHEN coalesce(c.sentMinor, 0) > $max - row.sentMinor THEN $max " +
+        "        ELSE coalesce(c.sentMinor, 0) + row.sentMinor END, " +
+        "    c.receivedMinor = CASE WHEN coalesce(c.receivedMinor, 0) > $max - row.receivedMinor THEN $max " +
+        "        ELSE coalesce(c.receivedMinor, 0) + row.receivedMinor END " +
+        "REMOVE c._lock";
+
+    private final Neo4jClient neo4jClient;
+    private final UserSummaryProperties userSummaryProperties;
+    private final TransactionTemplate transactionTemplate;
+
+    /** Counters for one user, either as stored or as recomputed from the graph */
+    private static final class Tally {
+        private final Map<String, Long> connections = new TreeMap<>();
+        private long sent;
+        private long received;
+        private long completedSent;
+        private long completedReceived;
+        private final Map<String, long[]> totals = new TreeMap<>();
+        private LocalDateTime updatedAt;
+
+        private Tally() {
+            for (DetectedRelationship relationship : USER_RELATIONSHIPS) {
+                connections.put(relationship.name(), 0L);
+            }
+        }
+
+        private long[] totalsFor(String currency) {
+            return totals.computeIfAbsent(currency, key -> new long[2]);
+        }
+
+        private boolean sameCounts(Tally other) {
+            if (sent != other.sent || received != other.received || completedSent != other.completedSent
+                    || completedReceived != other.completedReceived || !connections.equals(other.connections)
+                    || !totals.keySet().equals(other.totals.keySet())) {
+                return false;
+            }
+            for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+                if (!Arrays.equals(entry.getValue(), other.totals.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Counts a newly created transaction for its sender and recipient, in the caller's transaction */
+    public void transactionCreated(Transaction transaction) {
+        if (transaction.getSender() == null || transaction.getRecipient() == null) {
+            return;
+        }
+        Long senderId = transaction.getSender().getId();
+        Long recipientId = transaction.getRecipient().getId();
+        int completed = COMPLETED.equals(transaction.getStatus()) ? 1 : 0;
+        String currency = MoneyUnits.normalizeCurrency(transaction.getCurrency());
+        long minor = MoneyUnits.toMinorUnits(transaction.getAmount(), currency);
+
+        Map<Long, long[]> counts = new TreeMap<>();
+        long[] senderCounts = counts.computeIfAbsent(senderId, id -> new long[4]);
+        senderCounts[0] += 1;
+        senderCounts[2] += completed;
+        long[] recipientCounts = counts.computeIfAbsent(recipientId, id -> new long[4]);
+        recipientCounts[1] += 1;
+        recipientCounts[3] += completed;
+        adjustTransactionCounts(counts);
+
+        Map<Long, long[]> totals = new TreeMap<>();
+        long[] senderTotals = totals.computeIfAbsent(senderId, id -> new long[2]);
+        senderTotals[0] = MoneyUnits.add(senderTotals[0], minor);
+        long[] recipientTotals = totals.computeIfAbsent(recipientId, id -> new long[2]);
+        recipientTotals[1] = MoneyUnits.add(recipientTotals[1], minor);
+        List<Map<String, Object>> rows = new ArrayList<>(totals.size());
+        totals.forEach((userId, amounts) -> rows.add(Map.of("userId", userId, "currency", currency,
+            "sentMinor", amounts[0], "receivedMinor", amounts[1])));
+        neo4jClient.query(ADJUST_CURRENCY_TOTALS)
+            .bind(rows).to("rows")
+            .bind(Long.MAX_VALUE).to("max")
+            .run();
+    }
+
+    /** Moves a transaction in or out of the completed counts after a status change, in the caller's transaction */
+    public void statusChanged(Transaction transaction, String previousStatus) {
+        int delta = (COMPLETED.equals(transaction.getStatus()) ? 1 : 0) - (COMPLETED.equals(previousStatus) ? 1 : 0);
+        if (delta == 0 || transaction.getSender() == null || transaction.getRecipient() == null) {
+            return;
+        }
+        Map<Long, long[]> counts = new TreeMap<>();
+        counts.computeIfAbsent(transaction.getSender().getId(), id -> new long[4])[2] += delta;
+        counts.computeIfAbsent(transaction.getRecipient().getId(), id -> new long[4])[3] += delta;
+        adjustTransactionCounts(counts);
+    }
+
+    /** Adds per-user deltas to the degree of one user relationship type, in the caller's transaction if any */
+    public void connectionsChanged(DetectedRelationship relationship, Map<Long, Long> deltas) {
+        if (!relationship.linksUsers()) {
+            throw new IllegalArgumentException(relationship + " does not link users");
+        }
+        String query = "UNWIND $rows AS row " +
+            "MERGE (s:UserSummary {userId: row.userId}) " +
+            "SET s._lock = true " +
+            "WITH s, row " +
+            "SET s." + relationship.name() + " = coalesce(s." + relationship.name() + ", 0) + row.delta, " +
+            "    s.updatedAt = localdatetime() " +
+            "REMOVE s._lock";
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<Long, Long> delta : new TreeMap<>(deltas).entrySet()) {
+            if (delta.getValue() != 0) {
+                rows.add(Map.of("userId", delta.getKey(), "delta", delta.getValue()));
+            }
+            if (rows.size() == WRITE_CHUNK_SIZE) {
+                neo4jClient.query(query).bind(rows).to("rows").run();
+                rows = new ArrayList<>();
+            }
+        }
+        if (!rows.isEmpty()) {
+            neo4jClient.query(query).bind(rows).to("rows").run();
+        }
+    }
+
+    private void adjustTransactionCounts(Map<Long, long[]> counts) {
+        List<Map<String, Object>> rows = new ArrayList<>(counts.size());
+        counts.forEach((userId, values) -> rows.add(Map.of("userId", userId, "sent", values[0],
+            "received", values[1], "completedSent", values[2], "completedReceived", values[3])));
+        neo4jClient.query(ADJUST_TRANSACTION_COUNTS).bind(rows).to("rows").run();
+    }
+
+    /** Gets the summary of one user */
+    public UserActivitySummary getSummary(Long userId) {
+        List<UserActivitySummary> summaries = getSummaries(List.of(userId));
+        if (summaries.isEmpty()) {
+            throw new UserNotFoundException("User not found with ID: " + userId);
+        }
+        return summaries.get(0);
+    }
+
+    /** Gets the summaries of existing users among the given ids, in the order given */
+    public List<UserActivitySummary> getSummaries(Collection<Long> userIds) {
+        List<Long> ids = userIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> existing = new HashSet<>(neo4jClient.query("MATCH (u:User) WHERE id(u) IN $ids RETURN id(u) AS id")
+            .bind(ids).to("ids")
+            .fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("id").asLong())
+            .all());
+        Map<Long, Tally> stored = readStored(existing);
+
+        List<UserActivitySummary> summaries = new ArrayList<>(existing.size());
+        for (Long id : ids) {
+            if (existing.contains(id)) {
+                summaries.add(toSummary(id, stored.getOrDefault(id, new Tally())));
+            }
+        }
+        return summaries;
+    }
+
+    private static UserActivitySummary toSummary(Long userId, Tally tally) {
+        List<UserActivitySummary.CurrencyTotal> totals = new ArrayList<>(tally.totals.size());
+        tally.totals.forEach((currency, amounts) -> totals.add(new UserActivitySummary.CurrencyTotal(currency,
+            MoneyUnits.fromMinorUnits(amounts[0], currency), MoneyUnits.fromMinorUnits(amounts[1], currency))));
+        long totalConnections = tally.connections.values().stream().mapToLong(Long::longValue).sum();
+        return new UserActivitySummary(userId, new LinkedHashMap<>(tally.connections), totalConnections,
+            tally.sent, tally.received, tally.completedSent, tally.completedReceived, totals, tally.updatedAt);
+    }
+
+    /** Periodically repairs counters that drifted from the graph */
+    @Scheduled(fixedDelayString = "${flagright.user-summary.reconcile-interval:3600000}",
+        initialDelayString = "${flagright.user-summary.reconcile-initial-delay:60000}")
+    public void scheduledReconcile() {
+        if (userSummaryProperties.isReconcileEnabled()) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Recomputes every user's counters from the graph and overwrites those
+     * that drifted, one transaction per chunk of users. Returns the number
+     * of users repaired.
+     */
+    public synchronized int reconcile() {
+        long started = System.currentTimeMillis();
+        int chunkSize = Math.max(1, userSummaryProperties.getReconcileChunkSize());
+        long afterId = -1;
+        int checked = 0;
+        int repaired = 0;
+
+        while (true) {
+            List<Long> ids = new ArrayList<>(neo4jClient.query(
+                    "MATCH (u:User) WHERE id(u) > $afterId RETURN id(u) AS id ORDER BY id LIMIT $limit")
+                .bind(afterId).to("afterId")
+                .bind(chunkSize).to("limit")
+                .fetchAs(Long.class)
+                .mappedBy((typeSystem, record) -> record.get("id").asLong())
+                .all());
+            if (ids.isEmpty()) {
+                break;
+            }
+            Integer chunkRepaired = transactionTemplate.execute(status -> reconcileChunk(ids));
+            repaired += chunkRepaired == null ? 0 : chunkRepaired;
+            checked += ids.size();
+            afterId = ids.get(ids.size() - 1);
+        }
+
+        if (repaired > 0) {
+            log.warn("Repaired drifted summaries for {} of {} users in {} ms", repaired, checked,
+                System.currentTimeMillis() - started);
+        } else {
+            log.info("Checked summaries for {} users in {} ms, none drifted", checked,
+                System.currentTimeMillis() - started);
+        }
+        return repaired;
+    }
+
+    private int reconcileChunk(List<Long> ids) {
+        // Locking the chunk's summaries first makes concurrent writers either commit before the
+        // recount, and be included in it, or apply their delta on top of the repaired value.
+        neo4jClient.query("MATCH (s:UserSummary) WHERE s.userId IN $ids WITH s ORDER BY s.userId SET s._lock = true")
+            .bind(ids).to("ids").run();
+
+        Map<Long, Tally> stored = readStored(ids);
+        Map<Long, Tally> actual = recount(ids);
+        List<Long> drifted = new ArrayList<>();
+        for (Long id : ids) {
+            Tally expected = actual.getOrDefault(id, new Tally());
+            if (!expected.sameCounts(stored.getOrDefault(id, new Tally()))) {
+                drifted.add(id);
+            }
+        }
+        if (!drifted.isEmpty()) {
+            overwrite(drifted, actual);
+            log.debug("Summary drift repaired for users {}", drifted);
+        }
+
+        neo4jClient.query("MATCH (s:UserSummary) WHERE s.userId IN $ids REMOVE s._lock").bind(ids).to("ids").run();
+        return drifted.size();
+    }
+
+    private Map<Long, Tally> readStored(Collection<Long> ids) {
+        Map<Long, Tally> stored = new HashMap<>();
+        if (ids.isEmpty()) {
+            return stored;
+        }
+        for (Map<String, Object> row : neo4jClient.query(
+                "MATCH (s:UserSummary) WHERE s.userId IN $ids RETURN s.userId AS userId, s {.*} AS counters")
+                .bind(ids).to("ids").fetch().all()) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> counters = (Map<String, Object>) row.get("counters");
+            Tally tally = stored.computeIfAbsent(((Number) row.get("userId")).longValue(), id -> new Tally());
+            for (DetectedRelationship relationship : USER_RELATIONSHIPS) {
+                tally.connections.put(relationship.name(), asLong(counters.get(relationship.name())));
+            }
+            tally.sent = asLong(counters.get("sentCount"));
+            tally.received = asLong(counters.get("receivedCount"));
+            tally.completedSent = asLong(counters.get("completedSentCount"));
+            tally.completedReceived = asLong(counters.get("completedReceivedCount"));
+            tally.updatedAt = (LocalDateTime) counters.get("updatedAt");
+        }
+        for (Map<String, Object> row : neo4jClient.query(
+                "MATCH (c:UserCurrencyTotal) WHERE c.userId IN $ids " +
+                "RETURN c.userId AS userId, c.currency AS currency, c.sentMinor AS sentMinor, c.receivedMinor AS receivedMinor")
+                .bind(ids).to("ids").fetch().all()) {
+            long sentMinor = asLong(row.get("sentMinor"));
+            long receivedMinor = asLong(row.get("receivedMinor"));
+            if (sentMinor == 0 && receivedMinor == 0) {
+                continue;
+            }
+            Tally tally = stored.computeIfAbsent(((Number) row.get("userId")).longValue(), id -> new Tally());
+            long[] amounts = tally.totalsFor((String) row.get("currency"));
+            amounts[0] = MoneyUnits.add(amounts[0], sentMinor);
+            amounts[1] = MoneyUnits.add(amounts[1], receivedMinor);
+        }
+        return stored;
+    }
+
+    /** Recomputes counters from connection nodes and SENT/RECEIVED edges */
+    private Map<Long, Tally> recount(List<Long> ids) {
+        Map<Long, Tally> actual = new HashMap<>();
+        for (Map<String, Object> row : neo4jClient.query(
+                "MATCH (c:UserConnection) WHERE c.userId1 IN $ids " +
+                "RETURN c.userId1 AS userId, c.relationshipType AS type, count(*) AS connections " +
+                "UNION ALL " +
+                "MATCH (c:UserConnection) WHERE c.userId2 IN $ids " +
+                "RETURN c.userId2 AS userId, c.relationshipType AS type, count(*) AS connections")
+                .bind(ids).to("ids").fetch().all()) {
+            Tally tally = actual.computeIfAbsent(((Number) row.get("userId")).longValue(), id -> new Tally());
+            tally.connections.computeIfPresent((String) row.get("type"),
+                (type, count) -> count + asLong(row.get("connections")));
+        }
+
+        countTransactions(actual, "MATCH (u:User)-[:SENT]->(t:Transaction) WHERE id(u) IN $ids", ids, true);
+        countTransactions(actual, "MATCH (t:Transaction)-[:RECEIVED]->(u:User) WHERE id(u) IN $ids", ids, false);
+        return actual;
+    }
+
+    private void countTransactions(Map<Long, Tally> actual, String match, List<Long> ids, boolean sent) {
+        String query = match + " WITH DISTINCT u, t " +
+            "RETURN id(u) AS userId, t.amount AS amount, t.currency AS currency, t.status AS status";
+        for (Map<String, Object> row : neo4jClient.query(query).bind(ids).to("ids").fetch().all()) {
+            Tally tally = actual.computeIfAbsent(((Number) row.get("userId")).longValue(), id -> new Tally());
+            boolean completed = COMPLETED.equals(row.get("status"));
+            String currency = MoneyUnits.normalizeCurrency((String) row.get("currency"));
+            if (sent) {
+                tally.sent++;
+                tally.completedSent += completed ? 1 : 0;
+            } else {
+                tally.received++;
+                tally.completedReceived += completed ? 1 : 0;
+            }
+            if (currency != null) {
+                long[] amounts = tally.totalsFor(currency);
+                int side = sent ? 0 : 1;
+                amounts[side] = MoneyUnits.add(amounts[side],
+                    MoneyUnits.toMinorUnits(toAmount(row.get("amount")), currency));
+            }
+        }
+    }
+
+    private void overwrite(List<Long> drifted, Map<Long, Tally> actual) {
+        List<Map<String, Object>> summaries = new ArrayList<>(drifted.size());
+        List<Map<String, Object>> totals = new ArrayList<>();
+        for (Long id : drifted) {
+            Tally tally = actual.getOrDefault(id, new Tally());
+            Map<String, Object> counters = new HashMap<>(tally.connections);
+            counters.put("sentCount", tally.sent);
+            counters.put("receivedCount", tally.received);
+            counters.put("completedSentCount", tally.completedSent);
+            counters.put("completedReceivedCount", tally.completedReceived);
+            summaries.add(Map.of("userId", id, "counters", counters));
+            tally.totals.forEach((currency, amounts) -> totals.add(Map.of("userId", id, "currency", currency,
+                "sentMinor", amounts[0], "receivedMinor", amounts[1])));
+        }
+
+        neo4jClient.query("UNWIND $rows AS row MERGE (s:UserSummary {userId: row.userId}) " +
+                "SET s += row.counters, s.updatedAt = localdatetime()")
+            .bind(summaries).to("rows").run();
+        neo4jClient.query("MATCH (c:UserCurrencyTotal) WHERE c.userId IN $ids DELETE c")
+            .bind(drifted).to("ids").run();
+        neo4jClient.query("UNWIND $rows AS row CREATE (:UserCurrencyTotal {userId: row.userId, " +
+                "currency: row.currency, sentMinor: row.sentMinor, receivedMinor: row.receivedMinor})")
+            .bind(totals).to("rows").run();
+    }
+
+    private static long asLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private static BigDecimal toAmount(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(String.valueOf(value));
+    }
+}
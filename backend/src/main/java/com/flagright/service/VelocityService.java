@@ -0,0 +1,332 @@
+package com.flagright.service;
+
+import com.flagright.config.VelocityProperties;
+import com.flagright.model.dto.VelocityBreach;
+import com.flagright.model.dto.VelocitySnapshot;
+import com.flagright.model.entity.Transaction;
+import com.flagright.util.AttributeNormalizer;
+import com.flagright.util.MoneyUnits;
+import com.flagright.util.SlidingWindowCounter;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streaming velocity checks over in-memory sliding windows. Transaction
+ * counters are keyed by attribute fingerprint or user id; amount counters are
+ * also keyed by currency and sum in that currency's minor units, so an
+ * amount threshold is checked against the spend in one currency at a time.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VelocityService {
+
+    public enum Dimension { DEVICE, IP, PAYMENT_METHOD, SENDER, RECIPIENT }
+
+    private final VelocityProperties velocityProperties;
+
+    /** Amount counter key: a dimension value and the currency its amounts are summed in */
+    private record AmountKey(Long key, String currency) {
+    }
+
+    private final Map<Dimension, ConcurrentHashMap<Long, SlidingWindowCounter>> counters = createCounterMaps();
+    private final Map<Dimension, ConcurrentHashMap<AmountKey, SlidingWindowCounter>> amountCounters =
+        createCounterMaps();
+    private final ConcurrentLinkedDeque<VelocityBreach> recentBreaches = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger recentBreachCount = new AtomicInteger();
+
+    /**
+     * Checks a created transaction against every applicable threshold and
+     * returns the breaches it causes, then adds it to the counters once the
+     * surrounding transaction commits, so a rolled-back write never counts.
+     * The check reads the committed counters plus everything recorded
+     * earlier in the same transaction, so a group-committed batch sees its
+     * own earlier items; concurrent transactions near a threshold may still
+     * each see the other uncounted.
+     */
+    public List<VelocityBreach> record(Transaction transaction) {
+        long now = System.currentTimeMillis();
+        String currency = currencyOf(transaction);
+        long amount = MoneyUnits.toMinorUnits(transaction.getAmount(), currency);
+        Pending pending = pending();
+        List<VelocityBreach> breaches = new ArrayList<>();
+
+        for (Dimension dimension : Dimension.values()) {
+            Long key = keyOf(dimension, transaction);
+            if (key == null) {
+                continue;
+            }
+            AmountKey amountKey = new AmountKey(key, currency);
+            SlidingWindowCounter counter = counters.get(dimension).get(key);
+            SlidingWindowCounter amountCounter = amountCounters.get(dimension).get(amountKey);
+            long count = (counter == null ? 0 : counter.count(now)) + pending.count(dimension, key) + 1;
+            long sum = MoneyUnits.add(MoneyUnits.add(amountCounter == null ? 0 : amountCounter.sum(now),
+                pending.sum(dimension, amountKey)), amount);
+            checkThreshold(dimension, displayValue(dimension, transaction), currency, count, sum,
+                transaction.getId(), breaches);
+            pending.add(dimension, key, amountKey, amount);
+        }
+        pending.breaches.addAll(breaches);
+        if (pending.unbound) {
+            apply(pending);
+        }
+        return breaches;
+    }
+
+    /**
+     * Records made in one transaction and not yet applied to the counters.
+     * Bound to the transaction, or unbound and applied at once when there is
+     * none.
+     */
+    private static final class Pending {
+        private final boolean unbound;
+        private final Map<Dimension, Map<Long, Long>> counts = new EnumMap<>(Dimension.class);
+        private final Map<Dimension, Map<AmountKey, Long>> sums = new EnumMap<>(Dimension.class);
+        private final List<VelocityBreach> breaches = new ArrayList<>();
+
+        private Pending(boolean unbound) {
+            this.unbound = unbound;
+        }
+
+        private long count(Dimension dimension, Long key) {
+            return counts.getOrDefault(dimension, Map.of()).getOrDefault(key, 0L);
+        }
+
+        private long sum(Dimension dimension, AmountKey key) {
+            return sums.getOrDefault(dimension, Map.of()).getOrDefault(key, 0L);
+        }
+
+        private void add(Dimension dimension, Long key, AmountKey amountKey, long amount) {
+            counts.computeIfAbsent(dimension, d -> new HashMap<>()).merge(key, 1L, Long::sum);
+            sums.computeIfAbsent(dimension, d -> new HashMap<>()).merge(amountKey, amount, MoneyUnits::add);
+        }
+    }
+
+    /** The current transaction's pending records, bound on first use and applied after it commits */
+    private Pending pending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new Pending(true);
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Pending bound = new Pending(false);
+            TransactionSynchronizationManager.bindResource(this, bound);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(bound);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(VelocityService.this);
+                }
+            });
+            pending = bound;
+        }
+        return pending;
+    }
+
+    /**
+     * Adds pending records to the counters. Counters are updated inside
+     * {@code compute}, so eviction cannot remove one between its lookup and
+     * the record and drop the count.
+     */
+    private void apply(Pending pending) {
+        long committed = System.currentTimeMillis();
+        pending.counts.forEach((dimension, keys) -> keys.forEach((key, count) ->
+            counters.get(dimension).compute(key, (k, counter) -> {
+                SlidingWindowCounter target = counter == null ? newCounter() : counter;
+                target.record(committed, count, 0);
+                return target;
+            })));
+        pending.sums.forEach((dimension, keys) -> keys.forEach((key, sum) ->
+            amountCounters.get(dimension).compute(key, (k, counter) -> {
+                SlidingWindowCounter target = counter == null ? newCounter() : counter;
+                target.record(committed, sum);
+                return target;
+            })));
+        for (VelocityBreach breach : pending.breaches) {
+            log.warn("Velocity breach on {} {}: {} transactions, amount {} {} within {}s",
+                breach.getDimension(), breach.getValue(), breach.getCount(), breach.getAmount(),
+                breach.getCurrency(), breach.getWindowSeconds());
+            remember(breach);
+        }
+    }
+
+    /**
+     * Gets the current window totals for one value of a dimension. The amount
+     * is the spend in the given currency, or null when no currency is given.
+     */
+    public VelocitySnapshot getSnapshot(Dimension dimension, String value, String currency) {
+        Long key = keyOf(dimension, value);
+        SlidingWindowCounter counter = key == null ? null : counters.get(dimension).get(key);
+        long now = System.currentTimeMillis();
+        long count = counter == null ? 0 : counter.count(now);
+        String normalized = MoneyUnits.normalizeCurrency(currency);
+        BigDecimal amount = null;
+        if (normalized != null) {
+            SlidingWindowCounter amountCounter = key == null ? null
+                : amountCounters.get(dimension).get(new AmountKey(key, normalized));
+            amount = MoneyUnits.fromMinorUnits(amountCounter == null ? 0 : amountCounter.sum(now), normalized);
+        }
+        return new VelocitySnapshot(dimension.name(), value, count, amount, normalized, windowSeconds());
+    }
+
+    /** Gets the number of transactions in the current window for one key of a dimension, e.g. a sender's user id */
+    public long windowCount(Dimension dimension, Long key) {
+        SlidingWindowCounter counter = key == null ? null : counters.get(dimension).get(key);
+        return counter == null ? 0 : counter.count(System.currentTimeMillis());
+    }
+
+    /** Gets the most recent breaches, newest first, optionally restricted to one dimension */
+    public List<VelocityBreach> getRecentBreaches(Dimension dimension, int limit) {
+        List<VelocityBreach> result = new ArrayList<>();
+        Iterator<VelocityBreach> iterator = recentBreaches.descendingIterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            VelocityBreach breach = iterator.next();
+            if (dimension == null || dimension.name().equals(breach.getDimension())) {
+                result.add(breach);
+            }
+        }
+        return result;
+    }
+
+    /** Parses a dimension name from a request */
+    public static Dimension parseDimension(String dimension) {
+        try {
+            return Dimension.valueOf(dimension.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown velocity dimension: " + dimension);
+        }
+    }
+
+    /** Drops counters that have seen nothing within the window so memory tracks active keys only */
+    @Scheduled(fixedDelayString = "${flagright.velocity.eviction-interval:60000}")
+    public void evictIdleCounters() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for (Dimension dimension : Dimension.values()) {
+            evicted += evictIdle(counters.get(dimension), now);
+            evicted += evictIdle(amountCounters.get(dimension), now);
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle velocity counters", evicted);
+        }
+    }
+
+    /** Removes idle counters one key at a time under the map's lock for that key, so a concurrent record is never lost */
+    private static <K> int evictIdle(ConcurrentHashMap<K, SlidingWindowCounter> dimensionCounters, long now) {
+        int evicted = 0;
+        for (K key : dimensionCounters.keySet()) {
+            boolean[] removed = new boolean[1];
+            dimensionCounters.computeIfPresent(key, (k, counter) -> {
+                removed[0] = counter.isIdle(now);
+                return removed[0] ? null : counter;
+            });
+            evicted += removed[0] ? 1 : 0;
+        }
+        return evicted;
+    }
+
+    private void checkThreshold(Dimension dimension, String value, String currency, long count, long sum,
+                                Long transactionId, List<VelocityBreach> breaches) {
+        VelocityProperties.Threshold threshold = velocityProperties.getThresholds().get(dimension.name());
+        if (threshold == null) {
+            return;
+        }
+        BigDecimal amount = MoneyUnits.fromMinorUnits(sum, currency);
+
+        if (threshold.getMaxCount() != null && count > threshold.getMaxCount()) {
+            breaches.add(new VelocityBreach(transactionId, dimension.name(), value, "COUNT", count, amount, currency,
+                BigDecimal.valueOf(threshold.getMaxCount()), windowSeconds(), LocalDateTime.now()));
+        }
+        BigDecimal maxAmount = threshold.maxAmountFor(currency);
+        if (maxAmount != null && sum > MoneyUnits.toMinorUnits(maxAmount, currency)) {
+            breaches.add(new VelocityBreach(transactionId, dimension.name(), value, "AMOUNT", count, amount, currency,
+                maxAmount, windowSeconds(), LocalDateTime.now()));
+        }
+    }
+
+    private void remember(VelocityBreach breach) {
+        recentBreaches.addLast(breach);
+        if (recentBreachCount.incrementAndGet() > velocityProperties.getBreachHistory()) {
+            if (recentBreaches.pollFirst() != null) {
+                recentBreachCount.decrementAndGet();
+            }
+        }
+    }
+
+    private SlidingWindowCounter newCounter() {
+        return new SlidingWindowCounter(velocityProperties.getWindow().toMillis(), velocityProperties.getSlots());
+    }
+
+    private long windowSeconds() {
+        return velocityProperties.getWindow().getSeconds();
+    }
+
+    private static Long keyOf(Dimension dimension, Transaction transaction) {
+        return switch (dimension) {
+            case DEVICE -> transaction.getDeviceFingerprint();
+            case IP -> transaction.getIpFingerprint();
+            case PAYMENT_METHOD -> transaction.getPaymentMethodFingerprint();
+            case SENDER -> transaction.getSender() != null ? transaction.getSender().getId() : null;
+            case RECIPIENT -> transaction.getRecipient() != null ? transaction.getRecipient().getId() : null;
+        };
+    }
+
+    private static Long keyOf(Dimension dimension, String value) {
+        return switch (dimension) {
+            case DEVICE -> AttributeNormalizer.fingerprint(AttributeNormalizer.normalizeDeviceId(value));
+            case IP -> AttributeNormalizer.fingerprint(AttributeNormalizer.normalizeIp(value));
+            case PAYMENT_METHOD -> AttributeNormalizer.fingerprint(AttributeNormalizer.normalizePaymentMethod(value));
+            case SENDER, RECIPIENT -> {
+                try {
+                    yield Long.valueOf(value.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("User id must be numeric: " + value);
+                }
+            }
+        };
+    }
+
+    private static String displayValue(Dimension dimension, Transaction transaction) {
+        return switch (dimension) {
+            case DEVICE -> transaction.getDeviceId();
+            case IP -> transaction.getIpAddress();
+            case PAYMENT_METHOD -> transaction.getPaymentMethod();
+            case SENDER -> String.valueOf(transaction.getSender().getId());
+            case RECIPIENT -> String.valueOf(transaction.getRecipient().getId());
+        };
+    }
+
+    private static String currencyOf(Transaction transaction) {
+        return MoneyUnits.normalizeCurrency(transaction.getCurrency());
+    }
+
+    private static <K> Map<Dimension, ConcurrentHashMap<K, SlidingWindowCounter>> createCounterMaps() {
+        Map<Dimension, ConcurrentHashMap<K, SlidingWindowCounter>> maps = new EnumMap<>(Dimension.class);
+        for (Dimension dimension : Dimension.values()) {
+            maps.put(dimension, new ConcurrentHashMap<>());
+        }
+        return maps;
+    }
+}
@@ -0,0 +1,162 @@
+package com.flagright.service;
+
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Version counters for the user and transaction collections and for each
+ * user's connection neighbourhood, kept in {@code (:ChangeVersion {key})}
+ * nodes so every instance behind the load balancer reads the same values.
+ * Write and detection paths mark what they changed; the marks are collected
+ * per transaction and bumped in one statement just before it commits, so a
+ * version moves exactly when the change becomes visible and a rolled-back
+ * write leaves it alone. Controllers turn the versions into strong ETags, so
+ * unchanged polls are answered with 304 after one indexed lookup instead of
+ * the full read. A graph counter moves on any change to the edges between
+ * them, for caches of the whole graph. A version node created afresh, for
+ * instance after the graph was cleared, starts from the current time so it
+ * never repeats a tag handed out before.
+ */
+@Component
+public class VersionTracker {
+
+    private static final String USERS = "users";
+    private static final String TRANSACTIONS = "transactions";
+    private static final String GRAPH = "graph";
+
+    private static final String BUMP =
+        "UNWIND $keys AS key " +
+        "MERGE (v:ChangeVersion {key: key}) " +
+        "ON CREATE SET v.version = timestamp() " +
+        "ON MATCH SET v.version = v.version + 1";
+    private static final String READ =
+        "MATCH (v:ChangeVersion) WHERE v.key IN $keys RETURN v.key AS key, v.version AS version";
+
+    private final Neo4jClient neo4jClient;
+
+    public VersionTracker(Neo4jClient neo4jClient) {
+        this.neo4jClient = neo4jClient;
+    }
+
+    /** Marks the user list as changed */
+    public void usersChanged() {
+        mark(USERS);
+    }
+
+    /** Marks the transaction list as changed */
+    public void transactionsChanged() {
+        mark(TRANSACTIONS);
+    }
+
+    /** Marks the edges of the graph as changed */
+    public void graphChanged() {
+        mark(GRAPH);
+    }
+
+    /** Marks a user's connection list as changed */
+    public void userConnectionsChanged(Long userId) {
+        if (userId != null) {
+            mark(connectionsKey(userId));
+        }
+    }
+
+    /** ETag of the user list */
+    public String usersTag() {
+        return tag("u" + read(List.of(USERS)).getOrDefault(USERS, 0L));
+    }
+
+    /** ETag of the transaction list, which embeds sender and recipient users */
+    public String transactionsTag() {
+        Map<String, Long> versions = read(List.of(TRANSACTIONS, USERS));
+        return tag("t" + versions.getOrDefault(TRANSACTIONS, 0L) + "u" + versions.getOrDefault(USERS, 0L));
+    }
+
+    /** ETag of a user's connection list */
+    public String userConnectionsTag(Long userId) {
+        String key = connectionsKey(userId);
+        return tag("c" + userId + "v" + read(List.of(key)).getOrDefault(key, 0L));
+    }
+
+    /** Version of the whole graph, moved by any committed change to users, transactions or edges */
+    public String graphVersion() {
+        Map<String, Long> versions = read(List.of(USERS, TRANSACTIONS, GRAPH));
+        return "u" + versions.getOrDefault(USERS, 0L) + "t" + versions.getOrDefault(TRANSACTIONS, 0L) +
+            "g" + versions.getOrDefault(GRAPH, 0L);
+    }
+
+    /** Whether an If-None-Match header value matches the tag */
+    public static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(tag) || trimmed.equals("W/" + tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a key to the current transaction's pending bumps, or bumps it
+     * straight away when there is no transaction. Keys are bumped in sorted
+     * order so two committing writers lock shared version nodes in the same
+     * order.
+     */
+    private void mark(String key) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            bump(Set.of(key));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> pending = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Set<String> keys = new TreeSet<>();
+            TransactionSynchronizationManager.bindResource(this, keys);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    bump(keys);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(VersionTracker.this);
+                }
+            });
+            pending = keys;
+        }
+        pending.add(key);
+    }
+
+    private void bump(Set<String> keys) {
+        if (!keys.isEmpty()) {
+            neo4jClient.query(BUMP).bind(List.copyOf(keys)).to("keys").run();
+        }
+    }
+
+    private Map<String, Long> read(List<String> keys) {
+        Map<String, Long> versions = new HashMap<>();
+        for (Map<String, Object> row : neo4jClient.query(READ).bind(keys).to("keys").fetch().all()) {
+            versions.put((String) row.get("key"), ((Number) row.get("version")).longValue());
+        }
+        return versions;
+    }
+
+    private static String connectionsKey(Long userId) {
+        return "connections:" + userId;
+    }
+
+    private static String tag(String version) {
+        return "\"" + version + "\"";
+    }
+}
@@ -0,0 +1,120 @@
+package com.flagright.service;
+
+import com.flagright.config.ConcurrencyProperties;
+import com.flagright.util.StripedLocks;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.exceptions.TransientException;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency control for writers, keyed on the attribute values they touch.
+ * A writer locks its values (an email it is claiming, a fingerprint it is
+ * linking) before it writes and holds them until its transaction completes,
+ * so writers on the same value in this instance go one at a time and cannot
+ * deadlock each other in the database. Uniqueness constraints and MERGE
+ * backstop the locks across instances.
+ *
+ * <p>Deadlocks the database still detects, and value locks not granted in
+ * time, fail the transaction with a transient error; {@link #retrying}
+ * reruns the whole transaction with exponential backoff and jitter. Writes
+ * to the database roll back with the attempt, and the in-memory side effects
+ * of a write (change feed events, velocity counters, rankings, graph
+ * summary invalidation, the analytics column store and flow-cycle checks)
+ * are registered with {@code AfterCommit}, so an attempt that rolls back
+ * leaves none behind and a retry does not apply them twice. Version tags are
+ * bumped in the database as part of the commit and roll back with it.
+ */
+@Component
+@Slf4j
+public class WriteConcurrency {
+
+    private final ConcurrencyProperties concurrencyProperties;
+    private final StripedLocks locks;
+
+    public WriteConcurrency(ConcurrencyProperties concurrencyProperties) {
+        this.concurrencyProperties = concurrencyProperties;
+        this.locks = new StripedLocks(concurrencyProperties.getLockStripes());
+    }
+
+    /**
+     * Locks attribute values until the current transaction completes.
+     *
+     * @param namespace keeps equal values of different attributes apart, e.g. "email"
+     * @throws CannotAcquireLockException if the values stay locked past the lock timeout
+     */
+    public void lockValues(String namespace, Collection<?> values) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Value locks are held until commit and need a transaction");
+        }
+        Runnable unlock;
+        try {
+            unlock = locks.tryLock(values.stream().map(value -> namespace + ":" + value).toList(),
+                concurrencyProperties.getLockTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("Interrupted waiting for " + namespace + " locks");
+        }
+        if (unlock == null) {
+            throw new CannotAcquireLockException("Timed out waiting for " + namespace + " locks");
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock.run();
+            }
+        });
+    }
+
+    /**
+     * Runs a unit of work that starts its own transaction, retrying it on
+     * deadlocks and other transient failures. Inside an outer transaction the
+     * work runs once, since only the outer transaction can be retried.
+     */
+    public <T> T retrying(String operation, Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+        int maxAttempts = Math.max(1, concurrencyProperties.getMaxAttempts());
+        long backoff = Math.max(1, concurrencyProperties.getInitialBackoff().toMillis());
+        long maxBackoff = Math.max(backoff, concurrencyProperties.getMaxBackoff().toMillis());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return work.get();
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts || !isTransient(e)) {
+                    throw e;
+                }
+                long sleep = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+                log.debug("{} hit a transient failure on attempt {}, retrying in {} ms: {}", operation, attempt,
+                    sleep, e.getMessage());
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = Math.min(maxBackoff, backoff * 2);
+            }
+        }
+    }
+
+    /** Deadlocks and lock timeouts surface either translated by Spring or as the driver's own exception */
+    static boolean isTransient(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException || cause instanceof TransientException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
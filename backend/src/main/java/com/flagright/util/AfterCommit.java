@@ -0,0 +1,25 @@
+package com.flagright.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/** Defers side effects such as notifications until the surrounding transaction has committed */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /** Runs the action after the current transaction commits, or immediately when there is none */
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
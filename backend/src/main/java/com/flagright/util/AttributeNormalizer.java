@@ -0,0 +1,164 @@
+package com.flagright.util;
+
+import com.flagright.model.entity.Transaction;
+import com.flagright.model.entity.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Canonicalises shared attributes and derives the fixed-width fingerprints
+ * used as join keys by relationship detection.
+ */
+public final class AttributeNormalizer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern ADDRESS_PUNCTUATION = Pattern.compile("[.,#;:'\"]");
+    private static final Pattern DEVICE_SEPARATORS = Pattern.compile("[\\s\\-:_.]");
+
+    private static final Map<String, String> ADDRESS_ABBREVIATIONS = Map.ofEntries(
+        Map.entry("street", "st"),
+        Map.entry("avenue", "ave"),
+        Map.entry("road", "rd"),
+        Map.entry("boulevard", "blvd"),
+        Map.entry("drive", "dr"),
+        Map.entry("lane", "ln"),
+        Map.entry("court", "ct"),
+        Map.entry("place", "pl"),
+        Map.entry("square", "sq"),
+        Map.entry("suite", "ste"),
+        Map.entry("apartment", "apt"),
+        Map.entry("north", "n"),
+        Map.entry("south", "s"),
+        Map.entry("east", "e"),
+        Map.entry("west", "w")
+    );
+
+    private AttributeNormalizer() {
+    }
+
+    /** Trims and lower-cases an email address */
+    public static String normalizeEmail(String email) {
+        if (isBlank(email)) {
+            return null;
+        }
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Reduces a phone number to an E.164-like "+digits" form */
+    public static String normalizePhone(String phone) {
+        if (isBlank(phone)) {
+            return null;
+        }
+        String digits = phone.replaceAll("\\D", "");
+        if (digits.startsWith("00")) {
+            digits = digits.substring(2);
+        }
+        return digits.isEmpty() ? null : "+" + digits;
+    }
+
+    /** Lower-cases an address, strips punctuation, collapses whitespace and abbreviates common words */
+    public static String normalizeAddress(String address) {
+        if (isBlank(address)) {
+            return null;
+        }
+        String cleaned = ADDRESS_PUNCTUATION.matcher(address.toLowerCase(Locale.ROOT)).replaceAll(" ");
+        String[] tokens = WHITESPACE.split(cleaned.trim());
+        StringBuilder result = new StringBuilder(cleaned.length());
+        for (String token : tokens) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(ADDRESS_ABBREVIATIONS.getOrDefault(token, token));
+        }
+        return result.length() == 0 ? null : result.toString();
+    }
+
+    /** Canonicalises IPv4 octets and lower-cases IPv6, unwrapping IPv4-mapped addresses */
+    public static String normalizeIp(String ipAddress) {
+        if (isBlank(ipAddress)) {
+            return null;
+        }
+        String ip = ipAddress.trim().toLowerCase(Locale.ROOT);
+        if (ip.startsWith("::ffff:") && ip.indexOf('.') > 0) {
+            ip = ip.substring("::ffff:".length());
+        }
+        if (ip.indexOf(':') < 0) {
+            String[] octets = ip.split("\\.", -1);
+            if (octets.length == 4) {
+                StringBuilder result = new StringBuilder(15);
+                for (String octet : octets) {
+                    if (octet.isEmpty() || !octet.chars().allMatch(Character::isDigit) || octet.length() > 3) {
+                        return ip;
+                    }
+                    if (result.length() > 0) {
+                        result.append('.');
+                    }
+                    result.append(Integer.parseInt(octet));
+                }
+                return result.toString();
+            }
+        }
+        return ip;
+    }
+
+    /** Lower-cases a device id and strips separator characters */
+    public static String normalizeDeviceId(String deviceId) {
+        if (isBlank(deviceId)) {
+            return null;
+        }
+        String normalized = DEVICE_SEPARATORS.matcher(deviceId.toLowerCase(Locale.ROOT)).replaceAll("");
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    /** Upper-cases a payment method and collapses whitespace into underscores */
+    public static String normalizePaymentMethod(String paymentMethod) {
+        if (isBlank(paymentMethod)) {
+            return null;
+        }
+        return WHITESPACE.matcher(paymentMethod.trim().toUpperCase(Locale.ROOT)).replaceAll("_");
+    }
+
+    /** Returns a 64-bit fingerprint of a canonical value, or null when there is no value */
+    public static Long fingerprint(String canonicalValue) {
+        if (canonicalValue == null) {
+            return null;
+        }
+        byte[] digest = sha256().digest(canonicalValue.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(digest, 0, Long.BYTES).getLong();
+    }
+
+    /** Recomputes all attribute fingerprints on a user */
+    public static void applyFingerprints(User user) {
+        user.setEmailFingerprint(fingerprint(normalizeEmail(user.getEmail())));
+        user.setPhoneFingerprint(fingerprint(normalizePhone(user.getPhone())));
+        user.setAddressFingerprint(fingerprint(normalizeAddress(user.getAddress())));
+    }
+
+    /** Recomputes all attribute fingerprints on a transaction */
+    public static void applyFingerprints(Transaction transaction) {
+        transaction.setIpFingerprint(fingerprint(normalizeIp(transaction.getIpAddress())));
+        transaction.setDeviceFingerprint(fingerprint(normalizeDeviceId(transaction.getDeviceId())));
+        transaction.setPaymentMethodFingerprint(fingerprint(normalizePaymentMethod(transaction.getPaymentMethod())));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.flagright.util;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Fruchterman-Reingold force-directed layout with Barnes-Hut approximated
+ * repulsion. Each iteration builds a quadtree over the current positions and
+ * computes per-node displacement in parallel, so a pass costs O(n log n + m).
+ * Positions are updated in place, which lets callers warm-start from a
+ * previous layout by seeding the arrays and running fewer, cooler iterations.
+ */
+public final class ForceDirectedLayout {
+
+    private static final int MAX_TREE_DEPTH = 48;
+    private static final double MIN_DISTANCE = 0.01;
+
+    private final int nodeCount;
+    private final int[] adjacencyOffsets;
+    private final int[] adjacency;
+    private final double idealEdgeLength;
+    private final double theta;
+    private final double gravity;
+
+    /**
+     * @param nodeCount       number of nodes, indexed 0..nodeCount-1
+     * @param edgeSources     source index of each edge
+     * @param edgeTargets     target index of each edge; edges are treated as undirected
+     * @param idealEdgeLength preferred distance between connected nodes
+     * @param theta           Barnes-Hut opening angle; larger is faster and coarser
+     * @param gravity         pull toward the origin that keeps disconnected components together
+     */
+    public ForceDirectedLayout(int nodeCount, int[] edgeSources, int[] edgeTargets,
+                               double idealEdgeLength, double theta, double gravity) {
+        this.nodeCount = nodeCount;
+        this.idealEdgeLength = idealEdgeLength;
+        this.theta = theta;
+        this.gravity = gravity;
+
+        int[] degree = new int[nodeCount + 1];
+        for (int e = 0; e < edgeSources.length; e++) {
+            if (edgeSources[e] != edgeTargets[e]) {
+                degree[edgeSources[e]]++;
+                degree[edgeTargets[e]]++;
+            }
+        }
+        adjacencyOffsets = new int[nodeCount + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            adjacencyOffsets[i + 1] = adjacencyOffsets[i] + degree[i];
+        }
+        adjacency = new int[adjacencyOffsets[nodeCount]];
+        int[] fill = new int[nodeCount];
+        for (int e = 0; e < edgeSources.length; e++) {
+            int s = edgeSources[e];
+            int t = edgeTargets[e];
+            if (s != t) {
+                adjacency[adjacencyOffsets[s] + fill[s]++] = t;
+                adjacency[adjacencyOffsets[t] + fill[t]++] = s;
+            }
+        }
+    }
+
+    /** Places every node at a random position inside a square sized for the graph */
+    public void randomize(double[] x, double[] y, long seed) {
+        Random random = new Random(seed);
+        double extent = idealEdgeLength * Math.sqrt(Math.max(nodeCount, 1));
+        for (int i = 0; i < nodeCount; i++) {
+            x[i] = (random.nextDouble() - 0.5) * extent;
+            y[i] = (random.nextDouble() - 0.5) * extent;
+        }
+    }
+
+    /** Runs the given number of iterations, cooling linearly from the start temperature */
+    public void run(double[] x, double[] y, int iterations, double startTemperature) {
+        double[] dx = new double[nodeCount];
+        double[] dy = new double[nodeCount];
+        double k2 = idealEdgeLength * idealEdgeLength;
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            double temperature = startTemperature * (1.0 - (double) iteration / iterations);
+            Cell root = buildTree(x, y);
+
+            IntStream.range(0, nodeCount).parallel().forEach(i -> {
+                double[] force = new double[2];
+                root.repel(i, x, y, k2, theta * theta, force);
+                for (int a = adjacencyOffsets[i]; a < adjacencyOffsets[i + 1]; a++) {
+                    int j = adjacency[a];
+                    double ddx = x[i] - x[j];
+                    double ddy = y[i] - y[j];
+                    double distance = Math.max(Math.sqrt(ddx * ddx + ddy * ddy), MIN_DISTANCE);
+                    double attraction = distance / idealEdgeLength;
+                    force[0] -= ddx * attraction;
+                    force[1] -= ddy * attraction;
+                }
+                force[0] -= gravity * x[i];
+                force[1] -= gravity * y[i];
+                dx[i] = force[0];
+                dy[i] = force[1];
+            });
+
+            IntStream.range(0, nodeCount).parallel().forEach(i -> {
+                double length = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+                if (length > 0) {
+                    double step = Math.min(length, temperature);
+                    x[i] += dx[i] / length * step;
+                    y[i] += dy[i] / length * step;
+                }
+            });
+        }
+    }
+
+    private Cell buildTree(double[] x, double[] y) {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < nodeCount; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        double size = Math.max(Math.max(maxX - minX, maxY - minY), 1.0) * 1.0001;
+        Cell root = new Cell(minX, minY, size);
+        for (int i = 0; i < nodeCount; i++) {
+            root.insert(i, x, y, 0);
+        }
+        return root;
+    }
+
+    /** Quadtree cell tracking the centre of mass of the bodies beneath it */
+    private static final class Cell {
+        private final double minX;
+        private final double minY;
+        private final double size;
+        private double massX;
+        private double massY;
+        private int mass;
+        private int body = -1;
+        private Cell[] children;
+
+        Cell(double minX, double minY, double size) {
+            this.minX = minX;
+            this.minY = minY;
+            this.size = size;
+        }
+
+        void insert(int i, double[] x, double[] y, int depth) {
+            massX = (massX * mass + x[i]) / (mass + 1);
+            massY = (massY * mass + y[i]) / (mass + 1);
+            mass++;
+
+            if (mass == 1) {
+                body = i;
+                return;
+            }
+            if (depth >= MAX_TREE_DEPTH) {
+                // Coincident bodies: keep them aggregated in this leaf.
+                body = -1;
+                return;
+            }
+            if (children == null) {
+                children = new Cell[4];
+                if (body >= 0) {
+                    int existing = body;
+                    body = -1;
+                    child(existing, x, y).insert(existing, x, y, depth + 1);
+                }
+            }
+            child(i, x, y).insert(i, x, y, depth + 1);
+        }
+
+        private Cell child(int i, double[] x, double[] y) {
+            double half = size / 2;
+            int quadrant = (x[i] >= minX + half ? 1 : 0) + (y[i] >= minY + half ? 2 : 0);
+            if (children[quadrant] == null) {
+                children[quadrant] = new Cell(
+                    (quadrant & 1) == 0 ? minX : minX + half,
+                    (quadrant & 2) == 0 ? minY : minY + half,
+                    half);
+            }
+            return children[quadrant];
+        }
+
+        void repel(int i, double[] x, double[] y, double k2, double theta2, double[] force) {
+            if (mass == 0 || (children == null && body == i)) {
+                return;
+            }
+            double ddx = x[i] - massX;
+            double ddy = y[i] - massY;
+            double distance2 = ddx * ddx + ddy * ddy;
+
+            if (children == null || size * size < theta2 * distance2) {
+                if (distance2 < MIN_DISTANCE * MIN_DISTANCE) {
+                    // Push overlapping nodes apart in a direction derived from the index.
+                    ddx = Math.cos(i) * MIN_DISTANCE;
+                    ddy = Math.sin(i) * MIN_DISTANCE;
+                    distance2 = MIN_DISTANCE * MIN_DISTANCE;
+                }
+                double repulsion = k2 * mass / distance2;
+                force[0] += ddx * repulsion;
+                force[1] += ddy * repulsion;
+                return;
+            }
+            for (Cell child : children) {
+                if (child != null) {
+                    child.repel(i, x, y, k2, theta2, force);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.flagright.util;
+
+import java.net.InetAddress;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Names this process among the instances sharing the database, for the
+ * claims and leases they hold in it. Host and pid make it readable; the
+ * random suffix keeps it unique when a restarted container reuses both.
+ */
+public final class InstanceId {
+
+    private static final String CURRENT = host() + "/" + ProcessHandle.current().pid() + "/" +
+        Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36);
+
+    private InstanceId() {
+    }
+
+    public static String current() {
+        return CURRENT;
+    }
+
+    private static String host() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "localhost";
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.flagright.util;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Query;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.Value;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Wraps a Neo4j driver so every query run through its sessions and
+ * transactions, which is every query SDN repositories and the Neo4jClient
+ * run, is reported to a listener with its row count and database time. Time
+ * is what callers spend inside the driver: running the query and pulling
+ * its records, not mapping them. A query is reported once its result is
+ * exhausted or consumed, or at the latest when its transaction or session
+ * ends.
+ */
+public final class InstrumentedDriver {
+
+    private InstrumentedDriver() {
+    }
+
+    /** Receives completed queries */
+    public interface QueryListener {
+
+        /** Called on the thread that runs a query; the result is handed back on completion */
+        Object begin();
+
+        void completed(Object context, String cypher, Map<String, Object> parameters, long rows, long nanos);
+    }
+
+    public static Driver wrap(Driver driver, QueryListener listener) {
+        return proxy(Driver.class, driver, (proxy, method, args) -> {
+            Object value = invoke(driver, method, args);
+            return value instanceof Session session && "session".equals(method.getName())
+                ? proxy(Session.class, session, new RunnerHandler(session, listener))
+                : value;
+        });
+    }
+
+    /** One query, accumulating rows and time until it completes */
+    private static final class Execution {
+        private final QueryListener listener;
+        private final Object context;
+        private final String cypher;
+        private final Map<String, Object> parameters;
+        private long rows;
+        private long nanos;
+        private boolean completed;
+
+        private Execution(QueryListener listener, Object context, String cypher, Map<String, Object> parameters) {
+            this.listener = listener;
+            this.context = context;
+            this.cypher = cypher;
+            this.parameters = parameters;
+        }
+
+        private void complete() {
+            if (!completed) {
+                completed = true;
+                listener.completed(context, cypher, parameters, rows, nanos);
+            }
+        }
+    }
+
+    /** Sessions and transactions: times run() and completes what is still open when they end */
+    private static final class RunnerHandler implements InvocationHandler {
+        private final Object target;
+        private final QueryListener listener;
+        private final List<Execution> open = new ArrayList<>();
+
+        private RunnerHandler(Object target, QueryListener listener) {
+            this.target = target;
+            this.listener = listener;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "run":
+                    return run(method, args);
+                case "beginTransaction":
+                    Object transaction = InstrumentedDriver.invoke(target, method, args);
+                    return transaction instanceof Transaction
+                        ? proxy(Transaction.class, transaction, new RunnerHandler(transaction, listener))
+                        : transaction;
+                case "commit":
+                case "rollback":
+                case "close":
+                    completeOpen();
+                    return InstrumentedDriver.invoke(target, method, args);
+                default:
+                    return InstrumentedDriver.invoke(target, method, args);
+            }
+        }
+
+        private Object run(Method method, Object[] args) throws Throwable {
+            completeOpen();
+            Execution execution = new Execution(listener, listener.begin(), cypherOf(args), parametersOf(args));
+            long started = System.nanoTime();
+            Object result;
+            try {
+                result = InstrumentedDriver.invoke(target, method, args);
+            } catch (Throwable e) {
+                execution.nanos += System.nanoTime() - started;
+                execution.complete();
+                throw e;
+            }
+            execution.nanos += System.nanoTime() - started;
+            if (!(result instanceof Result)) {
+                execution.complete();
+                return result;
+            }
+            open.add(execution);
+            return proxy(Result.class, result, new ResultHandler((Result) result, execution));
+        }
+
+        private void completeOpen() {
+            for (Execution execution : open) {
+                execution.complete();
+            }
+            open.clear();
+        }
+    }
+
+    /** Results: counts records and times every call that reaches the server */
+    private static final class ResultHandler implements InvocationHandler {
+        private final Result target;
+        private final Execution execution;
+
+        private ResultHandler(Result target, Execution execution) {
+            this.target = target;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("stream".equals(name) && method.getParameterCount() == 0) {
+                Stream<Record> records = target.stream();
+                return StreamSupport.stream(new CountingSpliterator(records.spliterator(), execution), false)
+                    .onClose(() -> {
+                        records.close();
+                        execution.complete();
+                    });
+            }
+            if ("forEachRemaining".equals(name)) {
+                @SuppressWarnings("unchecked")
+                Consumer<Object> action = (Consumer<Object>) args[0];
+                args = new Object[] {(Consumer<Object>) record -> {
+                    execution.rows++;
+                    action.accept(record);
+                }};
+            }
+
+            long started = System.nanoTime();
+            Object value;
+            try {
+                value = InstrumentedDriver.invoke(target, method, args);
+            } catch (Throwable e) {
+                execution.nanos += System.nanoTime() - started;
+                if (e instanceof NoSuchElementException) {
+                    execution.complete();
+                }
+                throw e;
+            }
+            execution.nanos += System.nanoTime() - started;
+            switch (name) {
+                case "next" -> execution.rows++;
+                case "single" -> {
+                    execution.rows++;
+                    execution.complete();
+                }
+                case "list" -> {
+                    execution.rows += ((Collection<?>) value).size();
+                    execution.complete();
+                }
+                case "hasNext" -> {
+                    if (!((Boolean) value)) {
+                        execution.complete();
+                    }
+                }
+                case "consume", "forEachRemaining" -> execution.complete();
+                default -> {
+                }
+            }
+            return value;
+        }
+    }
+
+    /** Counts and times records pulled through a result stream, completing the query when it runs dry */
+    private static final class CountingSpliterator implements Spliterator<Record> {
+        private final Spliterator<Record> source;
+        private final Execution execution;
+
+        private CountingSpliterator(Spliterator<Record> source, Execution execution) {
+            this.source = source;
+            this.execution = execution;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Record> action) {
+            long started = System.nanoTime();
+            Record[] next = new Record[1];
+            boolean advanced = source.tryAdvance(record -> next[0] = record);
+            execution.nanos += System.nanoTime() - started;
+            if (!advanced) {
+                execution.complete();
+                return false;
+            }
+            execution.rows++;
+            action.accept(next[0]);
+            return true;
+        }
+
+        @Override
+        public Spliterator<Record> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics() & ~(SIZED | SUBSIZED);
+        }
+    }
+
+    private static String cypherOf(Object[] args) {
+        if (args == null || args.length == 0) {
+            return "";
+        }
+        return args[0] instanceof Query query ? query.text() : String.valueOf(args[0]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parametersOf(Object[] args) {
+        if (args == null || args.length == 0) {
+            return Map.of();
+        }
+        if (args[0] instanceof Query query) {
+            return query.parameters().asMap();
+        }
+        if (args.length > 1) {
+            if (args[1] instanceof Map<?, ?> parameters) {
+                return (Map<String, Object>) parameters;
+            }
+            if (args[1] instanceof Value parameters) {
+                return parameters.asMap();
+            }
+            if (args[1] instanceof Record parameters) {
+                return parameters.asMap();
+            }
+        }
+        return Map.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.flagright.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Community detection by asynchronous label propagation. Every node starts in
+ * its own community and repeatedly adopts the label most common among its
+ * neighbours until labels stop changing. Each pass is O(n + m), and a fixed
+ * seed keeps the result stable for the same graph.
+ */
+public final class LabelPropagation {
+
+    private LabelPropagation() {
+    }
+
+    /**
+     * Assigns a community to every node.
+     *
+     * @param nodeCount     number of nodes, indexed 0..nodeCount-1
+     * @param neighbours    adjacency list per node; only the first {@code degrees[i]} entries are read
+     * @param degrees       number of valid entries in each adjacency list
+     * @param maxIterations upper bound on passes over the graph
+     * @param seed          seed for the visiting order
+     * @return dense community ids in 0..k-1, numbered in order of first appearance
+     */
+    public static int[] communities(int nodeCount, int[][] neighbours, int[] degrees, int maxIterations, long seed) {
+        int[] labels = new int[nodeCount];
+        int[] order = new int[nodeCount];
+        int maxDegree = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            labels[i] = i;
+            order[i] = i;
+            maxDegree = Math.max(maxDegree, degrees[i]);
+        }
+
+        int[] counts = new int[nodeCount];
+        int[] touched = new int[maxDegree];
+        Random random = new Random(seed);
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            shuffle(order, random);
+            int changed = 0;
+            for (int i : order) {
+                int touchedCount = 0;
+                for (int k = 0; k < degrees[i]; k++) {
+                    int j = neighbours[i][k];
+                    if (j != i && counts[labels[j]]++ == 0) {
+                        touched[touchedCount++] = labels[j];
+                    }
+                }
+                if (touchedCount == 0) {
+                    continue;
+                }
+
+                // Keep the current label on ties so the pass converges, otherwise prefer the smallest.
+                int current = labels[i];
+                int best = current;
+                int bestCount = counts[current];
+                for (int t = 0; t < touchedCount; t++) {
+                    int label = touched[t];
+                    int count = counts[label];
+                    if (count > bestCount || (count == bestCount && best != current && label < best)) {
+                        best = label;
+                        bestCount = count;
+                    }
+                    counts[label] = 0;
+                }
+                if (best != current) {
+                    labels[i] = best;
+                    changed++;
+                }
+            }
+            if (changed == 0) {
+                break;
+            }
+        }
+        return densify(labels);
+    }
+
+    private static void shuffle(int[] order, Random random) {
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    private static int[] densify(int[] labels) {
+        int[] dense = new int[labels.length];
+        Arrays.fill(dense, -1);
+        int next = 0;
+        int[] result = new int[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            int label = labels[i];
+            if (dense[label] < 0) {
+                dense[label] = next++;
+            }
+            result[i] = dense[label];
+        }
+        return result;
+    }
+}
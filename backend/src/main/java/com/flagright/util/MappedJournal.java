@@ -0,0 +1,355 @@
+package com.flagright.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of opaque records in fixed-size, memory-mapped segment
+ * files. Each record is {@code [length][crc][sequence][payload]}; a zero
+ * length or a checksum mismatch marks the end of the written part of a
+ * segment, so a record torn by a crash is discarded on reopen and the rest
+ * of the segment is cleared. Sequences
+ * start at 1 and have no gaps.
+ *
+ * <p>{@link #append} returns once the record is forced to disk. Appenders
+ * that arrive while a force is in flight share the next one, so fsync cost
+ * is spread over concurrent writers. A single consumer reads with
+ * {@link #seekAfter} and {@link #readNext}, records how far it has applied
+ * with {@link #checkpoint}, and segments wholly at or below the checkpoint
+ * are deleted.
+ */
+public final class MappedJournal implements Closeable {
+
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int ZERO_CHUNK_BYTES = 64 * 1024;
+
+    /** One record read back from the journal */
+    public record Entry(long sequence, byte[] payload) {
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final long firstSequence;
+        private int writePosition;
+        private long lastSequence;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, long firstSequence) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.firstSequence = firstSequence;
+            this.lastSequence = firstSequence - 1;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final LongConsumer forceNanos;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Object syncLock = new Object();
+
+    private Segment active;
+    private long lastSequence;
+    private volatile long durableSequence;
+    private volatile long checkpointSequence;
+
+    private Segment readSegment;
+    private int readPosition;
+    private long readSequence;
+
+    /**
+     * Opens or creates a journal, recovering the written end of every segment.
+     *
+     * @param forceNanos receives the duration of every force to disk
+     */
+    public MappedJournal(Path directory, int segmentBytes, LongConsumer forceNanos) throws IOException {
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Segments must hold at least one record header");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.forceNanos = forceNanos;
+        Files.createDirectories(directory);
+
+        checkpointSequence = readCheckpoint();
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            Segment segment = map(path, Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            recover(segment);
+            segments.put(segment.firstSequence, segment);
+        }
+
+        if (segments.isEmpty()) {
+            active = createSegment(checkpointSequence + 1);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        lastSequence = active.lastSequence;
+        durableSequence = lastSequence;
+        seekAfter(checkpointSequence);
+    }
+
+    /** Appends a record and returns its sequence once it is durable */
+    public long append(byte[] payload) {
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (payload.length == 0) {
+            throw new IllegalArgumentException("Records must not be empty");
+        }
+        if (recordBytes > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes does not fit in a segment");
+        }
+
+        long sequence;
+        synchronized (this) {
+            if (active.writePosition + recordBytes > segmentBytes) {
+                roll();
+            }
+            sequence = ++lastSequence;
+            CRC32 crc = new CRC32();
+            crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+            crc.update(payload);
+
+            MappedByteBuffer buffer = active.buffer;
+            int position = active.writePosition;
+            buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+            buffer.putLong(position + 2 * Integer.BYTES, sequence);
+            buffer.put(position + HEADER_BYTES, payload);
+            // The length goes last: until it is set, readers and recovery see the end of the segment.
+            buffer.putInt(position, payload.length);
+            active.writePosition = position + recordBytes;
+            active.lastSequence = sequence;
+            notifyAll();
+        }
+        sync(sequence);
+        return sequence;
+    }
+
+    /** Positions the reader just after the given sequence */
+    public synchronized void seekAfter(long sequence) {
+        Map.Entry<Long, Segment> floor = segments.floorEntry(sequence + 1);
+        readSegment = floor != null ? floor.getValue() : segments.firstEntry().getValue();
+        readPosition = 0;
+        readSequence = readSegment.firstSequence - 1;
+        while (readSequence < sequence && readSequence < readSegment.lastSequence) {
+            readPosition += HEADER_BYTES + readSegment.buffer.getInt(readPosition);
+            readSequence++;
+        }
+    }
+
+    /** Reads up to {@code max} durable records after the reader's position, waiting up to {@code waitMillis} for one */
+    public synchronized List<Entry> readNext(int max, long waitMillis) throws InterruptedException {
+        if (readSequence >= durableSequence && waitMillis > 0) {
+            wait(waitMillis);
+        }
+        List<Entry> entries = new ArrayList<>(Math.min(max, 64));
+        while (entries.size() < max && readSequence < durableSequence) {
+            if (readSequence >= readSegment.lastSequence) {
+                Map.Entry<Long, Segment> next = segments.higherEntry(readSegment.firstSequence);
+                if (next == null) {
+                    break;
+                }
+                readSegment = next.getValue();
+                readPosition = 0;
+                continue;
+            }
+            int length = readSegment.buffer.getInt(readPosition);
+            byte[] payload = new byte[length];
+            readSegment.buffer.get(readPosition + HEADER_BYTES, payload);
+            readSequence++;
+            entries.add(new Entry(readSequence, payload));
+            readPosition += HEADER_BYTES + length;
+        }
+        return entries;
+    }
+
+    /** Records that every record up to {@code sequence} has been applied and drops segments no longer needed */
+    public void checkpoint(long sequence) {
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write journal checkpoint", e);
+        }
+        try {
+            Files.move(temporary, directory.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to publish journal checkpoint", e);
+        }
+        checkpointSequence = sequence;
+
+        List<Segment> obsolete = new ArrayList<>();
+        synchronized (this) {
+            while (segments.size() > 1) {
+                Segment oldest = segments.firstEntry().getValue();
+                if (oldest == active || oldest == readSegment || oldest.lastSequence > sequence) {
+                    break;
+                }
+                segments.pollFirstEntry();
+                obsolete.add(oldest);
+            }
+        }
+        for (Segment segment : obsolete) {
+            closeQuietly(segment);
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete journal segment " + segment.path, e);
+            }
+        }
+    }
+
+    /** Sequence of the last durable record */
+    public long lastSequence() {
+        return durableSequence;
+    }
+
+    /** Sequence of the last record the consumer has applied */
+    public long checkpointSequence() {
+        return checkpointSequence;
+    }
+
+    /** Bytes written across the segments still on disk */
+    public synchronized long sizeBytes() {
+        long bytes = 0;
+        for (Segment segment : segments.values()) {
+            bytes += segment.writePosition;
+        }
+        return bytes;
+    }
+
+    /** Number of segment files on disk */
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            closeQuietly(segment);
+        }
+        segments.clear();
+    }
+
+    /** Forces the active segment unless a concurrent force already covered {@code sequence} */
+    private void sync(long sequence) {
+        synchronized (syncLock) {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            Segment segment;
+            long target;
+            synchronized (this) {
+                segment = active;
+                target = lastSequence;
+            }
+            long started = System.nanoTime();
+            segment.buffer.force();
+            forceNanos.accept(System.nanoTime() - started);
+            durableSequence = target;
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /** Seals the active segment, forcing it, and starts a new one after its last record */
+    private void roll() {
+        active.buffer.force();
+        active = createSegment(active.lastSequence + 1);
+    }
+
+    private Segment createSegment(long firstSequence) {
+        try {
+            Segment segment = map(directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX)),
+                firstSequence);
+            segments.put(firstSequence, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create journal segment", e);
+        }
+    }
+
+    private Segment map(Path path, long firstSequence) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Segment(path, channel, buffer, firstSequence);
+    }
+
+    /** Walks a segment's records to find where the intact part ends */
+    private void recover(Segment segment) {
+        int position = 0;
+        long expected = segment.firstSequence;
+        while (position + HEADER_BYTES <= segmentBytes) {
+            int length = segment.buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segmentBytes
+                    || segment.buffer.getLong(position + 2 * Integer.BYTES) != expected) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer.get(position + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, expected));
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+            expected++;
+        }
+        // Clear a torn or corrupt tail so neither it nor intact records behind it are mistaken for new ones.
+        if (position + Integer.BYTES <= segmentBytes && segment.buffer.getInt(position) != 0) {
+            byte[] zeros = new byte[Math.min(ZERO_CHUNK_BYTES, segmentBytes - position)];
+            for (int offset = position; offset < segmentBytes; offset += zeros.length) {
+                segment.buffer.put(offset, zeros, 0, Math.min(zeros.length, segmentBytes - offset));
+            }
+            segment.buffer.force();
+        }
+        segment.writePosition = position;
+        segment.lastSequence = expected - 1;
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        return bytes.length < Long.BYTES ? 0 : ByteBuffer.wrap(bytes).getLong();
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException ignored) {
+            // The mapping stays valid until collected; nothing more can be done here.
+        }
+    }
+}
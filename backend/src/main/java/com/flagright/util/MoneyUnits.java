@@ -0,0 +1,81 @@
+package com.flagright.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * Converts monetary amounts to and from long minor units (e.g. cents).
+ * Conversions and sums saturate at the long range rather than throw, so an
+ * amount too large to count exactly caps a total instead of failing the
+ * write that carries it.
+ */
+public final class MoneyUnits {
+
+    private static final int DEFAULT_FRACTION_DIGITS = 2;
+    private static final BigDecimal MAX_MINOR = BigDecimal.valueOf(Long.MAX_VALUE);
+    private static final BigDecimal MIN_MINOR = BigDecimal.valueOf(Long.MIN_VALUE);
+
+    private MoneyUnits() {
+    }
+
+    /** Returns the number of minor-unit digits for a currency code, defaulting to two */
+    public static int fractionDigits(String currency) {
+        if (currency == null) {
+            return DEFAULT_FRACTION_DIGITS;
+        }
+        try {
+            int digits = Currency.getInstance(normalizeCurrency(currency)).getDefaultFractionDigits();
+            return digits < 0 ? DEFAULT_FRACTION_DIGITS : digits;
+        } catch (IllegalArgumentException e) {
+            return DEFAULT_FRACTION_DIGITS;
+        }
+    }
+
+    /** Canonical form of a currency code, so totals and filters do not split by letter case */
+    public static String normalizeCurrency(String currency) {
+        return currency == null ? null : currency.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /** Converts an amount to minor units of its currency, saturating at the long range */
+    public static long toMinorUnits(BigDecimal amount, String currency) {
+        if (amount == null) {
+            return 0L;
+        }
+        BigDecimal minor = amount.movePointRight(fractionDigits(currency)).setScale(0, RoundingMode.HALF_UP);
+        if (minor.compareTo(MAX_MINOR) > 0) {
+            return Long.MAX_VALUE;
+        }
+        if (minor.compareTo(MIN_MINOR) < 0) {
+            return Long.MIN_VALUE;
+        }
+        return minor.longValue();
+    }
+
+    /** Adds two minor-unit amounts, saturating at the long range */
+    public static long add(long total, long amount) {
+        long sum = total + amount;
+        // Overflow only when both operands share a sign the result does not have.
+        if (((total ^ sum) & (amount ^ sum)) < 0) {
+            return total < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return sum;
+    }
+
+    /** Multiplies a minor-unit amount by a factor, such as a power of ten between scales, saturating at the long range */
+    public static long multiply(long amount, long factor) {
+        long product = amount * factor;
+        long high = Math.multiplyHigh(amount, factor);
+        // The product fits when the high half is just the sign extension of the low half.
+        if (high == product >> 63) {
+            return product;
+        }
+        return (amount < 0) == (factor < 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+
+    /** Converts minor units of a currency back to an amount */
+    public static BigDecimal fromMinorUnits(long minorUnits, String currency) {
+        return BigDecimal.valueOf(minorUnits, fractionDigits(currency));
+    }
+}
@@ -0,0 +1,142 @@
+package com.flagright.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Nearest-rank quantiles of a stream of longs in bounded memory. The first
+ * {@code exactLimit} values are kept as they are, so small groups get exact
+ * answers; past that they are folded into logarithmic buckets whose bounds
+ * grow by a fixed ratio, so a quantile is off by at most the relative
+ * accuracy and the number of buckets depends only on the range of the
+ * values, never on how many there are. Sketches of disjoint parts of a
+ * stream merge into the sketch of the whole. Not thread-safe.
+ */
+public final class QuantileSketch {
+
+    private final int exactLimit;
+    private final double gamma;
+    private final double logGamma;
+
+    private long[] exact = new long[16];
+    private int exactCount;
+    private final TreeMap<Integer, Long> positive = new TreeMap<>();
+    private final TreeMap<Integer, Long> negative = new TreeMap<>();
+    private long zeros;
+    private long count;
+
+    /**
+     * @param exactLimit       values kept exactly before switching to buckets
+     * @param relativeAccuracy largest relative error of a bucketed quantile, e.g. 0.01
+     */
+    public QuantileSketch(int exactLimit, double relativeAccuracy) {
+        if (exactLimit < 0 || relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Need exactLimit >= 0 and 0 < relativeAccuracy < 1");
+        }
+        this.exactLimit = exactLimit;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /** Number of values added */
+    public long count() {
+        return count;
+    }
+
+    public void add(long value) {
+        count++;
+        if (exact != null) {
+            if (exactCount < exactLimit) {
+                if (exactCount == exact.length) {
+                    exact = Arrays.copyOf(exact, Math.min(exactLimit, exactCount * 2));
+                }
+                exact[exactCount++] = value;
+                return;
+            }
+            foldExact();
+        }
+        bucket(value);
+    }
+
+    /** Adds every value of another sketch with the same settings into this one and returns this one */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.exact != null) {
+            for (int i = 0; i < other.exactCount; i++) {
+                add(other.exact[i]);
+            }
+            return this;
+        }
+        if (exact != null) {
+            foldExact();
+        }
+        count += other.count;
+        zeros += other.zeros;
+        other.positive.forEach((index, n) -> positive.merge(index, n, Long::sum));
+        other.negative.forEach((index, n) -> negative.merge(index, n, Long::sum));
+        return this;
+    }
+
+    /** Nearest-rank quantile, or 0 when the sketch is empty */
+    public long quantile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        if (exact != null) {
+            long[] sorted = Arrays.copyOf(exact, exactCount);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(rank, exactCount) - 1];
+        }
+
+        long seen = 0;
+        // Most negative first: the largest magnitude buckets of the negative side.
+        for (Map.Entry<Integer, Long> bucket : negative.descendingMap().entrySet()) {
+            seen += bucket.getValue();
+            if (seen >= rank) {
+                return -representative(bucket.getKey());
+            }
+        }
+        seen += zeros;
+        if (seen >= rank) {
+            return 0;
+        }
+        for (Map.Entry<Integer, Long> bucket : positive.entrySet()) {
+            seen += bucket.getValue();
+            if (seen >= rank) {
+                return representative(bucket.getKey());
+            }
+        }
+        return positive.isEmpty() ? 0 : representative(positive.lastKey());
+    }
+
+    private void foldExact() {
+        for (int i = 0; i < exactCount; i++) {
+            bucket(exact[i]);
+        }
+        exact = null;
+        exactCount = 0;
+    }
+
+    private void bucket(long value) {
+        if (value == 0) {
+            zeros++;
+        } else if (value > 0) {
+            positive.merge(index(value), 1L, Long::sum);
+        } else {
+            // Long.MIN_VALUE has no positive counterpart; its neighbour lands in the same bucket.
+            negative.merge(index(value == Long.MIN_VALUE ? Long.MAX_VALUE : -value), 1L, Long::sum);
+        }
+    }
+
+    /** Bucket i holds magnitudes in (gamma^(i-1), gamma^i] */
+    private int index(long magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    /** The point of a bucket within the relative accuracy of every magnitude in it */
+    private long representative(int index) {
+        // Math.round saturates at Long.MAX_VALUE for the top bucket.
+        return Math.round(2 * Math.pow(gamma, index) / (gamma + 1));
+    }
+}
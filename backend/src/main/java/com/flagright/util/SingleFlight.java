@@ -0,0 +1,60 @@
+package com.flagright.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls with the same key into one. The first caller
+ * for a key runs the work on its own thread; callers that arrive while it is
+ * running wait for it and get its result, or its exception. Nothing is
+ * cached: once the work finishes, the next call for the key runs it again.
+ * Callers share the result object, so it must not be modified.
+ */
+public final class SingleFlight<K> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /** A call's result, and whether it came from another caller's run */
+    public record Result<V>(V value, boolean shared) {
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> Result<V> run(K key, Supplier<V> work) {
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            return new Result<>((V) await(running), true);
+        }
+        try {
+            V value = work.get();
+            own.complete(value);
+            return new Result<>(value, false);
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /** Calls running now */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private static Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.flagright.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free sliding-window counter backed by a ring of time slots.
+ * Each slot holds an event count and an amount sum; a slot is recycled
+ * the first time it is touched in a new rotation, so recording and reading
+ * cost O(slots) regardless of how many events have been seen.
+ */
+public final class SlidingWindowCounter {
+
+    private static final long RESETTING = -1L;
+
+    private final int slots;
+    private final long slotMillis;
+    private final AtomicLongArray stamps;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray sums;
+    private volatile long lastUpdated;
+
+    public SlidingWindowCounter(long windowMillis, int slots) {
+        if (slots <= 0 || windowMillis < slots) {
+            throw new IllegalArgumentException("Window must cover at least one millisecond per slot");
+        }
+        this.slots = slots;
+        this.slotMillis = windowMillis / slots;
+        this.stamps = new AtomicLongArray(slots);
+        this.counts = new AtomicLongArray(slots);
+        this.sums = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            stamps.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    /** Records one event with the given amount at the given time */
+    public void record(long nowMillis, long amount) {
+        record(nowMillis, 1, amount);
+    }
+
+    /** Records a number of events with the given total amount at the given time */
+    public void record(long nowMillis, long events, long amount) {
+        long slot = nowMillis / slotMillis;
+        int index = (int) Math.floorMod(slot, (long) slots);
+        while (true) {
+            long stamp = stamps.get(index);
+            if (stamp == slot) {
+                break;
+            }
+            if (stamp == RESETTING) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (stamp > slot) {
+                // Event older than the slot's current rotation; it has already left the window.
+                return;
+            }
+            if (stamps.compareAndSet(index, stamp, RESETTING)) {
+                counts.set(index, 0);
+                sums.set(index, 0);
+                stamps.set(index, slot);
+                break;
+            }
+        }
+        counts.addAndGet(index, events);
+        sums.addAndGet(index, amount);
+        lastUpdated = nowMillis;
+    }
+
+    /** Returns the number of events recorded within the window ending at the given time */
+    public long count(long nowMillis) {
+        return total(nowMillis, counts);
+    }
+
+    /** Returns the sum of amounts recorded within the window ending at the given time */
+    public long sum(long nowMillis) {
+        return total(nowMillis, sums);
+    }
+
+    /** Returns true when nothing has been recorded within the window ending at the given time */
+    public boolean isIdle(long nowMillis) {
+        return nowMillis - lastUpdated >= slotMillis * slots;
+    }
+
+    private long total(long nowMillis, AtomicLongArray values) {
+        long current = nowMillis / slotMillis;
+        long oldest = current - slots + 1;
+        long total = 0;
+        for (int i = 0; i < slots; i++) {
+            long stamp = stamps.get(i);
+            if (stamp >= oldest && stamp <= current) {
+                total += values.get(i);
+            }
+        }
+        return total;
+    }
+}
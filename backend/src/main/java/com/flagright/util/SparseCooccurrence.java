@@ -0,0 +1,222 @@
+package com.flagright.util;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Row-to-row similarity of a sparse binary matrix, such as users by the
+ * devices they used. The co-occurrence counts are the off-diagonal entries
+ * of {@code B * B^T}, computed one row at a time from compressed sparse row
+ * and column forms with a dense per-thread accumulator, so a row costs the
+ * number of non-zeros it reaches rather than the matrix width. Rows run in
+ * parallel.
+ *
+ * <p>Columns with more rows than {@code maxColumnDegree} (a carrier IP
+ * shared by thousands) are left out, since they would add a quadratic number
+ * of weak pairs. Each row keeps its {@code topK} most similar rows by
+ * Jaccard similarity, after the shared-count and Jaccard thresholds; a pair
+ * is reported once if either row kept the other.
+ */
+public final class SparseCooccurrence {
+
+    private SparseCooccurrence() {
+    }
+
+    /** Thresholds and pruning bounds */
+    public record Limits(int minShared, double minJaccard, int topK, int maxColumnDegree) {
+        public Limits {
+            if (minShared < 1 || topK < 1 || maxColumnDegree < 2) {
+                throw new IllegalArgumentException("Need minShared >= 1, topK >= 1 and maxColumnDegree >= 2");
+            }
+        }
+    }
+
+    /** Receives one similar pair of rows, {@code row < other} */
+    @FunctionalInterface
+    public interface PairSink {
+        void accept(int row, int other, int shared, double jaccard);
+    }
+
+    /** A binary matrix in compressed sparse row form; duplicate entries are removed when it is built */
+    public static final class Csr {
+        private final int rows;
+        private final int columns;
+        private final int[] offsets;
+        private final int[] indices;
+
+        private Csr(int rows, int columns, int[] offsets, int[] indices) {
+            this.rows = rows;
+            this.columns = columns;
+            this.offsets = offsets;
+            this.indices = indices;
+        }
+
+        /** Builds a matrix from parallel (row, column) coordinate arrays */
+        public static Csr of(int rows, int columns, int[] rowIndexes, int[] columnIndexes) {
+            int[] offsets = new int[rows + 1];
+            for (int row : rowIndexes) {
+                offsets[row + 1]++;
+            }
+            for (int row = 0; row < rows; row++) {
+                offsets[row + 1] += offsets[row];
+            }
+            int[] next = Arrays.copyOf(offsets, rows);
+            int[] indices = new int[rowIndexes.length];
+            for (int i = 0; i < rowIndexes.length; i++) {
+                indices[next[rowIndexes[i]]++] = columnIndexes[i];
+            }
+
+            // Sort and deduplicate each row in place, then compact.
+            int write = 0;
+            int[] compactOffsets = new int[rows + 1];
+            for (int row = 0; row < rows; row++) {
+                Arrays.sort(indices, offsets[row], offsets[row + 1]);
+                int previous = -1;
+                for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+                    if (indices[i] != previous) {
+                        indices[write++] = indices[i];
+                        previous = indices[i];
+                    }
+                }
+                compactOffsets[row + 1] = write;
+            }
+            return new Csr(rows, columns, compactOffsets, Arrays.copyOf(indices, write));
+        }
+
+        /** The transpose, i.e. this matrix in compressed sparse column form */
+        public Csr transpose() {
+            int[] columnOffsets = new int[columns + 1];
+            for (int index : indices) {
+                columnOffsets[index + 1]++;
+            }
+            for (int column = 0; column < columns; column++) {
+                columnOffsets[column + 1] += columnOffsets[column];
+            }
+            int[] next = Arrays.copyOf(columnOffsets, columns);
+            int[] rowIndexes = new int[indices.length];
+            for (int row = 0; row < rows; row++) {
+                for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+                    rowIndexes[next[indices[i]]++] = row;
+                }
+            }
+            return new Csr(columns, rows, columnOffsets, rowIndexes);
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public int nonZeros() {
+            return indices.length;
+        }
+
+        private int rowLength(int row) {
+            return offsets[row + 1] - offsets[row];
+        }
+    }
+
+    /** Per-thread dense accumulator with the list of rows it touched */
+    private static final class Accumulator {
+        private final int[] counts;
+        private final int[] touched;
+        private int size;
+
+        private Accumulator(int rows) {
+            counts = new int[rows];
+            touched = new int[rows];
+        }
+    }
+
+    /**
+     * Reports every pair of similar rows.
+     *
+     * @return the number of pairs reported
+     */
+    public static long similarRows(Csr matrix, Limits limits, PairSink sink) {
+        Csr byColumn = matrix.transpose();
+        int rows = matrix.rows;
+        int k = limits.topK();
+
+        // Row lengths over the columns that take part, so Jaccard ignores pruned hub columns.
+        int[] lengths = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            for (int i = matrix.offsets[row]; i < matrix.offsets[row + 1]; i++) {
+                if (byColumn.rowLength(matrix.indices[i]) <= limits.maxColumnDegree()) {
+                    lengths[row]++;
+                }
+            }
+        }
+
+        // Phase one: each row's top K neighbours, in fixed-width slots.
+        int[] neighbours = new int[Math.multiplyExact(rows, k)];
+        int[] shared = new int[neighbours.length];
+        float[] jaccard = new float[neighbours.length];
+        int[] kept = new int[rows];
+        ThreadLocal<Accumulator> accumulators = ThreadLocal.withInitial(() -> new Accumulator(rows));
+
+        IntStream.range(0, rows).parallel().forEach(row -> {
+            if (lengths[row] == 0) {
+                return;
+            }
+            Accumulator accumulator = accumulators.get();
+            for (int i = matrix.offsets[row]; i < matrix.offsets[row + 1]; i++) {
+                int column = matrix.indices[i];
+                if (byColumn.rowLength(column) > limits.maxColumnDegree()) {
+                    continue;
+                }
+                for (int j = byColumn.offsets[column]; j < byColumn.offsets[column + 1]; j++) {
+                    int other = byColumn.indices[j];
+                    if (other != row && accumulator.counts[other]++ == 0) {
+                        accumulator.touched[accumulator.size++] = other;
+                    }
+                }
+            }
+
+            TopK<int[]> top = new TopK<>(k);
+            for (int t = 0; t < accumulator.size; t++) {
+                int other = accumulator.touched[t];
+                int count = accumulator.counts[other];
+                accumulator.counts[other] = 0;
+                double similarity = (double) count / (lengths[row] + lengths[other] - count);
+                if (count >= limits.minShared() && similarity >= limits.minJaccard()) {
+                    top.offer(similarity, other, new int[] {other, count});
+                }
+            }
+            accumulator.size = 0;
+
+            int slot = row * k;
+            for (int[] entry : top.toList()) {
+                neighbours[slot] = entry[0];
+                shared[slot] = entry[1];
+                jaccard[slot] = (float) ((double) entry[1] / (lengths[row] + lengths[entry[0]] - entry[1]));
+                slot++;
+            }
+            kept[row] = slot - row * k;
+        });
+
+        // Phase two: report each kept pair once, from its lower row unless only the higher row kept it.
+        long reported = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int slot = row * k; slot < row * k + kept[row]; slot++) {
+                int other = neighbours[slot];
+                if (row < other) {
+                    sink.accept(row, other, shared[slot], jaccard[slot]);
+                    reported++;
+                } else if (!keeps(neighbours, kept, k, other, row)) {
+                    sink.accept(other, row, shared[slot], jaccard[slot]);
+                    reported++;
+                }
+            }
+        }
+        return reported;
+    }
+
+    private static boolean keeps(int[] neighbours, int[] kept, int k, int row, int other) {
+        for (int slot = row * k; slot < row * k + kept[row]; slot++) {
+            if (neighbours[slot] == other) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,50 @@
+package com.flagright.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Assigns dense int codes to repeated string values so they can be stored in primitive columns */
+public final class StringDictionary {
+
+    /** Code used for null values */
+    public static final int NULL_CODE = -1;
+
+    /** Code returned by {@link #lookup} for values that have never been encoded */
+    public static final int MISSING_CODE = -2;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /** Returns the code for a value, assigning a new one if it has not been seen */
+    public synchronized int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    /** Returns the code for a value without assigning one, or MISSING_CODE when unknown */
+    public synchronized int lookup(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        return codes.getOrDefault(value, MISSING_CODE);
+    }
+
+    /** Returns the value for a code */
+    public synchronized String decode(int code) {
+        return code == NULL_CODE ? null : values.get(code);
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+}
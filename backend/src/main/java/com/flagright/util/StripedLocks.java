@@ -0,0 +1,60 @@
+package com.flagright.util;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed array of locks that arbitrary keys hash onto, so writers touching
+ * the same attribute value serialise while unrelated writers rarely meet.
+ * Several keys are locked in ascending stripe order, each stripe once, so two
+ * callers locking overlapping key sets cannot deadlock on each other.
+ */
+public final class StripedLocks {
+
+    private final ReentrantLock[] stripes;
+
+    public StripedLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, Math.min(stripeCount, 1 << 20)) * 2 - 1);
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Locks the stripes of all keys, waiting at most the timeout in total.
+     *
+     * @return an action that unlocks them, to be run on the same thread, or null if the locks could not be taken in time
+     */
+    public Runnable tryLock(Collection<?> keys, long timeout, TimeUnit unit) throws InterruptedException {
+        int[] indexes = keys.stream().mapToInt(this::stripeOf).sorted().distinct().toArray();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int locked = 0;
+        try {
+            for (int index : indexes) {
+                if (!stripes[index].tryLock(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+                locked++;
+            }
+        } finally {
+            if (locked < indexes.length) {
+                unlock(indexes, locked);
+            }
+        }
+        return locked < indexes.length ? null : () -> unlock(indexes, indexes.length);
+    }
+
+    private void unlock(int[] indexes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[indexes[i]].unlock();
+        }
+    }
+
+    private int stripeOf(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (stripes.length - 1);
+    }
+}
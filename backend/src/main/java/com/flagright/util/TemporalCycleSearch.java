@@ -0,0 +1,330 @@
+package com.flagright.util;
+
+import java.util.Arrays;
+
+/**
+ * Finds time-respecting cycles in a directed multigraph of timed, valued
+ * edges, such as money moving between users. A cycle is a simple path of
+ * edges whose times strictly increase (ties broken by input order) and that
+ * returns to its first node within a time window of its first edge, so each
+ * cycle is found exactly once: from its earliest edge.
+ *
+ * <p>Edges are held in compressed sparse row form, each node's outgoing
+ * edges sorted by time, so a search jumps straight to the first edge after
+ * the current one and stops at the window's end. Nodes that cannot lie on
+ * any cycle, having no incoming or no outgoing edge once such nodes are
+ * removed, are trimmed before searching. A search from one start node uses
+ * only per-thread state, so different start nodes can run in parallel.
+ */
+public final class TemporalCycleSearch {
+
+    private TemporalCycleSearch() {
+    }
+
+    /** Bounds on the cycles reported */
+    public record Limits(long windowSeconds, int minLength, int maxLength, double amountTolerance,
+                         boolean sameCurrency, int maxCyclesPerStart) {
+        public Limits {
+            if (minLength < 2 || maxLength < minLength) {
+                throw new IllegalArgumentException("Cycle lengths must satisfy 2 <= minLength <= maxLength");
+            }
+        }
+    }
+
+    /** Edges in compressed sparse row form, outgoing edges of each node sorted by time */
+    public static final class FlowGraph {
+        private final int nodeCount;
+        private final int[] offsets;
+        private final int[] targets;
+        private final long[] times;
+        private final long[] amounts;
+        private final int[] currencies;
+        /** Global time order of each edge, used to require strictly later edges */
+        private final int[] ranks;
+        /** Input index of each edge */
+        private final int[] inputIndexes;
+        private final boolean[] trimmed;
+
+        private FlowGraph(int nodeCount, int[] offsets, int[] targets, long[] times, long[] amounts,
+                          int[] currencies, int[] ranks, int[] inputIndexes, boolean[] trimmed) {
+            this.nodeCount = nodeCount;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.times = times;
+            this.amounts = amounts;
+            this.currencies = currencies;
+            this.ranks = ranks;
+            this.inputIndexes = inputIndexes;
+            this.trimmed = trimmed;
+        }
+
+        public int nodeCount() {
+            return nodeCount;
+        }
+
+        public int edgeCount() {
+            return targets.length;
+        }
+
+        /** Returns true if the node has no chance of lying on a cycle */
+        public boolean isTrimmed(int node) {
+            return trimmed[node];
+        }
+    }
+
+    /**
+     * Builds a flow graph from parallel edge arrays.
+     *
+     * @param nodeCount  nodes are indexed 0..nodeCount-1
+     * @param times      edge times in seconds
+     * @param amounts    edge amounts, compared only with other edges' amounts
+     * @param currencies currency codes, compared for equality only
+     */
+    public static FlowGraph build(int nodeCount, int[] sources, int[] targets, long[] times, long[] amounts,
+                                  int[] currencies) {
+        int edgeCount = sources.length;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (long time : times) {
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+        if (edgeCount > 0 && maxTime - minTime >= 1L << 31) {
+            throw new IllegalArgumentException("Edge times must span less than 2^31 seconds");
+        }
+
+        // Sort by (time, input index) with one primitive sort of packed keys.
+        long[] keys = new long[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            keys[i] = ((times[i] - minTime) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] rankOf = new int[edgeCount];
+        for (int rank = 0; rank < edgeCount; rank++) {
+            rankOf[(int) keys[rank]] = rank;
+        }
+
+        // A stable counting sort by source keeps each node's edges in time order.
+        int[] offsets = new int[nodeCount + 1];
+        for (int source : sources) {
+            offsets[source + 1]++;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            offsets[node + 1] += offsets[node];
+        }
+        int[] next = Arrays.copyOf(offsets, nodeCount);
+        int[] csrTargets = new int[edgeCount];
+        long[] csrTimes = new long[edgeCount];
+        long[] csrAmounts = new long[edgeCount];
+        int[] csrCurrencies = new int[edgeCount];
+        int[] csrRanks = new int[edgeCount];
+        int[] csrInputIndexes = new int[edgeCount];
+        for (int rank = 0; rank < edgeCount; rank++) {
+            int edge = (int) keys[rank];
+            int position = next[sources[edge]]++;
+            csrTargets[position] = targets[edge];
+            csrTimes[position] = times[edge];
+            csrAmounts[position] = amounts[edge];
+            csrCurrencies[position] = currencies[edge];
+            csrRanks[position] = rankOf[edge];
+            csrInputIndexes[position] = edge;
+        }
+
+        return new FlowGraph(nodeCount, offsets, csrTargets, csrTimes, csrAmounts, csrCurrencies, csrRanks,
+            csrInputIndexes, trim(nodeCount, offsets, csrTargets));
+    }
+
+    /** Repeatedly removes nodes left without incoming or outgoing edges; they cannot be on a cycle */
+    private static boolean[] trim(int nodeCount, int[] offsets, int[] targets) {
+        int[] inDegree = new int[nodeCount];
+        int[] outDegree = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                if (targets[e] != node) {
+                    outDegree[node]++;
+                    inDegree[targets[e]]++;
+                }
+            }
+        }
+
+        // Incoming edges per node, to update out-degrees when a target is trimmed.
+        int[] inOffsets = new int[nodeCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            inOffsets[node + 1] = inOffsets[node] + inDegree[node];
+        }
+        int[] inNext = Arrays.copyOf(inOffsets, nodeCount);
+        int[] inSources = new int[inOffsets[nodeCount]];
+        for (int node = 0; node < nodeCount; node++) {
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                if (targets[e] != node) {
+                    inSources[inNext[targets[e]]++] = node;
+                }
+            }
+        }
+
+        boolean[] trimmed = new boolean[nodeCount];
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (inDegree[node] == 0 || outDegree[node] == 0) {
+                trimmed[node] = true;
+                queue[tail++] = node;
+            }
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                int target = targets[e];
+                if (target != node && !trimmed[target] && --inDegree[target] == 0) {
+                    trimmed[target] = true;
+                    queue[tail++] = target;
+                }
+            }
+            for (int i = inOffsets[node]; i < inOffsets[node + 1]; i++) {
+                int source = inSources[i];
+                if (!trimmed[source] && --outDegree[source] == 0) {
+                    trimmed[source] = true;
+                    queue[tail++] = source;
+                }
+            }
+        }
+        return trimmed;
+    }
+
+    /** What a sink did with a reported cycle */
+    public enum Verdict { ACCEPTED, SKIPPED, STOP }
+
+    /** Receives cycles as they are found */
+    @FunctionalInterface
+    public interface CycleSink {
+        Verdict offer(int[] edges);
+    }
+
+    /**
+     * Reports every cycle whose earliest edge leaves {@code start}, as the
+     * input indexes of its edges in order. Only cycles the sink accepts count
+     * towards {@code maxCyclesPerStart}; the sink returns STOP to end the
+     * search from this start early.
+     */
+    public static void search(FlowGraph graph, int start, Limits limits, CycleSink sink) {
+        if (graph.trimmed[start]) {
+            return;
+        }
+        Search search = new Search(graph, start, limits, sink);
+        boolean[] onPath = ON_PATH.get();
+        if (onPath.length < graph.nodeCount) {
+            onPath = new boolean[graph.nodeCount];
+            ON_PATH.set(onPath);
+        }
+        search.onPath = onPath;
+
+        onPath[start] = true;
+        try {
+            for (int e = graph.offsets[start]; e < graph.offsets[start + 1] && !search.stopped; e++) {
+                int target = graph.targets[e];
+                if (target == start || graph.trimmed[target]) {
+                    continue;
+                }
+                search.deadline = graph.times[e] + limits.windowSeconds();
+                search.path[0] = e;
+                onPath[target] = true;
+                search.extend(1);
+                onPath[target] = false;
+            }
+        } finally {
+            onPath[start] = false;
+        }
+    }
+
+    /** Reused per thread; every search leaves it all false */
+    private static final ThreadLocal<boolean[]> ON_PATH = ThreadLocal.withInitial(() -> new boolean[0]);
+
+    private static final class Search {
+        private final FlowGraph graph;
+        private final int start;
+        private final Limits limits;
+        private final CycleSink sink;
+        private final int[] path;
+        private boolean[] onPath;
+        private long deadline;
+        private int found;
+        private boolean stopped;
+
+        private Search(FlowGraph graph, int start, Limits limits, CycleSink sink) {
+            this.graph = graph;
+            this.start = start;
+            this.limits = limits;
+            this.sink = sink;
+            this.path = new int[limits.maxLength()];
+        }
+
+        /** Extends a path of {@code depth} edges from its last edge's target */
+        private void extend(int depth) {
+            int last = path[depth - 1];
+            int node = graph.targets[last];
+            for (int e = firstAfter(node, graph.ranks[last]); e < graph.offsets[node + 1] && !stopped; e++) {
+                if (graph.times[e] > deadline) {
+                    break;
+                }
+                int target = graph.targets[e];
+                if (!accepts(last, e)) {
+                    continue;
+                }
+                if (target == start) {
+                    if (depth + 1 >= limits.minLength()) {
+                        path[depth] = e;
+                        report(depth + 1);
+                    }
+                    continue;
+                }
+                // A path that cannot come back within the length bound is not worth extending.
+                if (depth + 2 > limits.maxLength() || onPath[target] || graph.trimmed[target]) {
+                    continue;
+                }
+                path[depth] = e;
+                onPath[target] = true;
+                extend(depth + 1);
+                onPath[target] = false;
+            }
+        }
+
+        private boolean accepts(int previous, int edge) {
+            if (limits.sameCurrency() && graph.currencies[edge] != graph.currencies[path[0]]) {
+                return false;
+            }
+            if (limits.amountTolerance() >= 0) {
+                long before = graph.amounts[previous];
+                return Math.abs(graph.amounts[edge] - before) <= limits.amountTolerance() * before;
+            }
+            return true;
+        }
+
+        /** Position of the first edge leaving node that ranks after the given rank */
+        private int firstAfter(int node, int rank) {
+            int low = graph.offsets[node];
+            int high = graph.offsets[node + 1];
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (graph.ranks[mid] <= rank) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void report(int length) {
+            int[] edges = new int[length];
+            for (int i = 0; i < length; i++) {
+                edges[i] = graph.inputIndexes[path[i]];
+            }
+            Verdict verdict = sink.offer(edges);
+            if (verdict == Verdict.STOP
+                || (verdict == Verdict.ACCEPTED && ++found >= limits.maxCyclesPerStart())) {
+                stopped = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.flagright.util;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/** Maps timestamps to the fixed-width buckets that back the transaction candidate index */
+public final class TimeBuckets {
+
+    /** Width of one bucket; changing it requires re-bucketing stored transactions */
+    public static final long BUCKET_SECONDS = 3600;
+
+    private TimeBuckets() {
+    }
+
+    /** Returns the bucket containing a timestamp, or null when there is none */
+    public static Long bucketOf(LocalDateTime timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        return Math.floorDiv(timestamp.toEpochSecond(ZoneOffset.UTC), BUCKET_SECONDS);
+    }
+
+    /** Returns how many buckets either side of a timestamp's bucket a window can reach */
+    public static long bucketsSpanned(Duration window) {
+        return (window.getSeconds() + BUCKET_SECONDS - 1) / BUCKET_SECONDS;
+    }
+
+    /** Returns true when both timestamps are known and at most {@code window} apart */
+    public static boolean withinWindow(LocalDateTime first, LocalDateTime second, Duration window) {
+        if (window == null) {
+            return true;
+        }
+        if (first == null || second == null) {
+            return false;
+        }
+        return Duration.between(first, second).abs().compareTo(window) <= 0;
+    }
+}
@@ -0,0 +1,64 @@
+package com.flagright.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the {@code k} highest-scoring items seen, in a min-heap of at most
+ * {@code k} entries, so selecting from n items costs O(n log k) time and
+ * O(k) memory. Equal scores rank the lower key first, so results are
+ * stable from call to call.
+ */
+public final class TopK<T> {
+
+    private record Entry<T>(double score, long key, T item) {
+    }
+
+    /** Worst entry first: lowest score, then highest key */
+    private static final Comparator<Entry<?>> WORST_FIRST = Comparator.<Entry<?>>comparingDouble(Entry::score)
+        .thenComparing(Comparator.<Entry<?>>comparingLong(Entry::key).reversed());
+
+    private final int k;
+    private final PriorityQueue<Entry<T>> heap;
+
+    public TopK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        this.heap = new PriorityQueue<>(k + 1, WORST_FIRST);
+    }
+
+    /** Returns true if an item with this score and key would currently make the cut */
+    public boolean accepts(double score, long key) {
+        if (heap.size() < k) {
+            return true;
+        }
+        Entry<T> worst = heap.peek();
+        return score > worst.score() || (score == worst.score() && key < worst.key());
+    }
+
+    /** Offers an item, evicting the current worst when full */
+    public void offer(double score, long key, T item) {
+        if (!accepts(score, key)) {
+            return;
+        }
+        heap.add(new Entry<>(score, key, item));
+        if (heap.size() > k) {
+            heap.poll();
+        }
+    }
+
+    /** Returns the kept items, best first */
+    public List<T> toList() {
+        List<Entry<T>> entries = new ArrayList<>(heap);
+        entries.sort(WORST_FIRST.reversed());
+        List<T> items = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries) {
+            items.add(entry.item());
+        }
+        return items;
+    }
+}
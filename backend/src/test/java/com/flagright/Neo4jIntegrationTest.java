@@ -0,0 +1,36 @@
+package com.flagright;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.testcontainers.containers.Neo4jContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Base for tests that run the application against a real Neo4j with APOC.
+ * One container is started for all test classes, so they share the cached
+ * application context; each test starts from an empty graph. Skipped when
+ * Docker is not available.
+ */
+@SpringBootTest
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class Neo4jIntegrationTest {
+
+    @ServiceConnection
+    protected static final Neo4jContainer<?> NEO4J = new Neo4jContainer<>("neo4j:5")
+        .withEnv("NEO4J_PLUGINS", "[\"apoc\"]");
+
+    static {
+        NEO4J.start();
+    }
+
+    @Autowired
+    protected Neo4jClient neo4jClient;
+
+    @BeforeEach
+    void clearGraph() {
+        neo4jClient.query("MATCH (n) DETACH DELETE n").run();
+    }
+}
@@ -0,0 +1,134 @@
+package com.flagright.service;
+
+import com.flagright.Neo4jIntegrationTest;
+import com.flagright.util.TimeBuckets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs every detection engine's full pass over the same fixture and checks
+ * each merges exactly the pairs a brute-force join finds, with and without
+ * a linking window.
+ */
+class DetectionEngineEquivalenceTest extends Neo4jIntegrationTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 0, 0);
+    private static final Duration WINDOW = Duration.ofHours(2);
+
+    @Autowired
+    private List<DetectionEngine> engines;
+
+    private final List<Map<String, Object>> users = new ArrayList<>();
+    private final List<Map<String, Object>> transactions = new ArrayList<>();
+
+    @BeforeEach
+    void createFixture() {
+        Random random = new Random(42);
+        users.clear();
+        transactions.clear();
+        for (int i = 0; i < 60; i++) {
+            Map<String, Object> user = new HashMap<>();
+            user.put("key", String.format("u%03d", i));
+            // A skewed spread: one large group, a few small ones and some users without the attribute
+            user.put("emailFingerprint", i % 7 == 0 ? null : (long) (i < 30 ? 1 : random.nextInt(6)));
+            user.put("createdAt", START.plusSeconds(random.nextInt(3 * 24 * 3600)));
+            users.add(user);
+        }
+        for (int i = 0; i < 80; i++) {
+            Map<String, Object> transaction = new HashMap<>();
+            LocalDateTime createdAt = i % 11 == 0 ? null : START.plusSeconds(random.nextInt(2 * 24 * 3600));
+            transaction.put("key", String.format("t%03d", i));
+            transaction.put("transactionId", "tx-" + i);
+            transaction.put("deviceFingerprint", (long) random.nextInt(6));
+            transaction.put("createdAt", createdAt);
+            transaction.put("createdAtBucket", TimeBuckets.bucketOf(createdAt));
+            transactions.add(transaction);
+        }
+        neo4jClient.query("UNWIND $rows AS row CREATE (u:User) SET u = row").bind(users).to("rows").run();
+        neo4jClient.query("UNWIND $rows AS row CREATE (t:Transaction) SET t = row").bind(transactions).to("rows").run();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {CypherDetectionEngine.NAME, JavaDetectionEngine.NAME, BatchedCypherDetectionEngine.NAME})
+    void everyEngineMergesTheSamePairs(String name) {
+        DetectionEngine engine = engine(name);
+        assumeTrue(engine.isAvailable(), name + " engine is not available against this database");
+
+        engine.linkAll(DetectedRelationship.SHARES_EMAIL, null);
+        engine.linkAll(DetectedRelationship.SAME_DEVICE, WINDOW);
+
+        assertThat(edges(DetectedRelationship.SHARES_EMAIL))
+            .isNotEmpty()
+            .isEqualTo(expectedPairs(users, "emailFingerprint", null));
+        assertThat(edges(DetectedRelationship.SAME_DEVICE))
+            .isNotEmpty()
+            .isEqualTo(expectedPairs(transactions, "deviceFingerprint", WINDOW));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {CypherDetectionEngine.NAME, JavaDetectionEngine.NAME, BatchedCypherDetectionEngine.NAME})
+    void runningAPassAgainAddsNoEdges(String name) {
+        DetectionEngine engine = engine(name);
+        assumeTrue(engine.isAvailable(), name + " engine is not available against this database");
+
+        engine.linkAll(DetectedRelationship.SHARES_EMAIL, null);
+        long first = edgeCount(DetectedRelationship.SHARES_EMAIL);
+        engine.linkAll(DetectedRelationship.SHARES_EMAIL, null);
+
+        assertThat(edgeCount(DetectedRelationship.SHARES_EMAIL)).isEqualTo(first);
+    }
+
+    private DetectionEngine engine(String name) {
+        return engines.stream().filter(engine -> engine.name().equals(name)).findFirst().orElseThrow();
+    }
+
+    /** Linked pairs by fixture key, lower key first; fails on duplicate edges */
+    private Set<String> edges(DetectedRelationship relationship) {
+        String query = "MATCH (a:" + relationship.label() + ")-[:" + relationship.name() + "]-(b:" +
+            relationship.label() + ") WHERE a.key < b.key RETURN a.key + '-' + b.key AS pair";
+        List<String> pairs = new ArrayList<>(neo4jClient.query(query).fetchAs(String.class)
+            .mappedBy((typeSystem, record) -> record.get("pair").asString()).all());
+        assertThat(pairs).doesNotHaveDuplicates();
+        return new TreeSet<>(pairs);
+    }
+
+    private long edgeCount(DetectedRelationship relationship) {
+        return neo4jClient.query("MATCH ()-[r:" + relationship.name() + "]->() RETURN count(r) AS edges")
+            .fetchAs(Long.class).mappedBy((typeSystem, record) -> record.get("edges").asLong())
+            .one().orElse(0L);
+    }
+
+    private static Set<String> expectedPairs(List<Map<String, Object>> entities, String fingerprintProperty,
+                                             Duration window) {
+        Set<String> pairs = new TreeSet<>();
+        for (Map<String, Object> a : entities) {
+            for (Map<String, Object> b : entities) {
+                String keyA = (String) a.get("key");
+                String keyB = (String) b.get("key");
+                Object fingerprint = a.get(fingerprintProperty);
+                if (keyA.compareTo(keyB) < 0 && fingerprint != null && fingerprint.equals(b.get(fingerprintProperty))
+                    && TimeBuckets.withinWindow((LocalDateTime) a.get("createdAt"),
+                        (LocalDateTime) b.get("createdAt"), window)) {
+                    pairs.add(keyA + "-" + keyB);
+                }
+            }
+        }
+        return pairs;
+    }
+}
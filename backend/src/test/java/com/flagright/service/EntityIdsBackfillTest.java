@@ -0,0 +1,58 @@
+package com.flagright.service;
+
+import com.flagright.Neo4jIntegrationTest;
+import com.flagright.config.IdProperties;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Migrating nodes stored before uids were introduced through
+ * {@link EntityIds#backfill} on an instance without a configured worker
+ * number, which has to lease one before it can hand out the first uid.
+ */
+class EntityIdsBackfillTest extends Neo4jIntegrationTest {
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void backfillLeasesAWorkerWhenNoneIsConfigured() {
+        neo4jClient.query("UNWIND range(1, 25) AS i CREATE (:User {email: 'user' + i + '@example.com'})").run();
+        IdProperties properties = new IdProperties();
+        properties.setMigrationChunkSize(10);
+        EntityIds entityIds = new EntityIds(properties, neo4jClient, transactionTemplate);
+
+        try {
+            assertThat(entityIds.backfill("User")).isEqualTo(25);
+        } finally {
+            entityIds.releaseLease();
+        }
+
+        assertThat(count("MATCH (u:User) WHERE u.uid IS NULL RETURN count(u) AS n")).isZero();
+        assertThat(count("MATCH (u:User) RETURN count(DISTINCT u.uid) AS n")).isEqualTo(25);
+    }
+
+    @Test
+    void backfillLeavesExistingUidsAlone() {
+        neo4jClient.query("CREATE (:User {email: 'kept@example.com', uid: 42}), (:User {email: 'new@example.com'})")
+            .run();
+        EntityIds entityIds = new EntityIds(new IdProperties(), neo4jClient, transactionTemplate);
+
+        try {
+            assertThat(entityIds.backfill("User")).isEqualTo(1);
+        } finally {
+            entityIds.releaseLease();
+        }
+
+        assertThat(count("MATCH (u:User {email: 'kept@example.com'}) RETURN u.uid AS n")).isEqualTo(42);
+    }
+
+    private long count(String query) {
+        return neo4jClient.query(query).fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("n").asLong()).one().orElse(0L);
+    }
+}
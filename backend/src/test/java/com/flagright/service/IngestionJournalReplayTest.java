@@ -0,0 +1,138 @@
+package com.flagright.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flagright.Neo4jIntegrationTest;
+import com.flagright.Repository.TransactionRepository;
+import com.flagright.Repository.UserRepository;
+import com.flagright.config.IngestionProperties;
+import com.flagright.model.dto.CreateUserRequest;
+import com.flagright.model.dto.IngestionReceipt;
+import com.flagright.model.entity.User;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Replay of the ingestion journal across restarts of
+ * {@link IngestionJournalService}: an entry applied before a crash but not
+ * yet checkpointed is recognised by its ingestion key and not applied
+ * again, and a checkpointed entry is not replayed at all.
+ */
+class IngestionJournalReplayTest extends Neo4jIntegrationTest {
+
+    @TempDir
+    Path directory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Test
+    void entryAppliedBeforeACrashIsNotAppliedAgain() throws Exception {
+        IngestionJournalService crashed = open(new SimpleMeterRegistry());
+        IngestionReceipt receipt = crashed.submitUser(request("alice@example.com"));
+        crashed.shutdown();
+
+        // The create reached Neo4j, but the replayer died before checkpointing it.
+        User applied = new User();
+        applied.setEmail("alice@example.com");
+        applied.setFirstName("Alice");
+        applied.setLastName("Example");
+        applied.setIngestionKey(receipt.getIngestionKey());
+        userService.createUser(applied);
+
+        MeterRegistry meters = new SimpleMeterRegistry();
+        IngestionJournalService restarted = open(meters);
+        try {
+            restarted.startReplay();
+            awaitReplayed(meters);
+        } finally {
+            restarted.shutdown();
+        }
+
+        assertThat(count("MATCH (u:User {email: 'alice@example.com'}) RETURN count(u) AS n")).isEqualTo(1);
+        assertThat(count("MATCH (r:IngestionRejection) RETURN count(r) AS n")).isZero();
+        assertThat(meters.get("flagright.ingestion.journal.rejected").counter().count()).isZero();
+    }
+
+    @Test
+    void checkpointedEntryIsNotReplayedAfterRestart() throws Exception {
+        MeterRegistry meters = new SimpleMeterRegistry();
+        IngestionJournalService first = open(meters);
+        IngestionReceipt receipt;
+        try {
+            receipt = first.submitUser(request("bob@example.com"));
+            first.startReplay();
+            awaitReplayed(meters);
+        } finally {
+            first.shutdown();
+        }
+        assertThat(first.getStatus(receipt.getIngestionKey()).getStatus()).isEqualTo("APPLIED");
+
+        // Removing the node would let a replay create it again, so its absence shows nothing was replayed.
+        neo4jClient.query("MATCH (u:User {email: 'bob@example.com'}) DETACH DELETE u").run();
+
+        MeterRegistry restartedMeters = new SimpleMeterRegistry();
+        IngestionJournalService restarted = open(restartedMeters);
+        try {
+            assertThat(restartedMeters.get("flagright.ingestion.journal.replay.lag.entries").gauge().value())
+                .isZero();
+            restarted.startReplay();
+            awaitReplayed(restartedMeters);
+        } finally {
+            restarted.shutdown();
+        }
+
+        assertThat(count("MATCH (u:User {email: 'bob@example.com'}) RETURN count(u) AS n")).isZero();
+    }
+
+    private IngestionJournalService open(MeterRegistry meters) throws Exception {
+        IngestionProperties properties = new IngestionProperties();
+        properties.getJournal().setEnabled(true);
+        properties.getJournal().setDirectory(directory.toString());
+        IngestionJournalService service = new IngestionJournalService(properties, objectMapper, meters, userService,
+            transactionService, userRepository, transactionRepository, neo4jClient);
+        service.open();
+        return service;
+    }
+
+    private static CreateUserRequest request(String email) {
+        CreateUserRequest request = new CreateUserRequest();
+        request.setEmail(email);
+        request.setFirstName("Test");
+        request.setLastName("User");
+        return request;
+    }
+
+    private static void awaitReplayed(MeterRegistry meters) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (meters.get("flagright.ingestion.journal.replay.lag.entries").gauge().value() > 0) {
+            assertThat(System.currentTimeMillis()).as("journal replayed in time").isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private long count(String query) {
+        return neo4jClient.query(query).fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("n").asLong()).one().orElse(0L);
+    }
+}
@@ -0,0 +1,159 @@
+package com.flagright.service;
+
+import com.flagright.Neo4jIntegrationTest;
+import com.flagright.Repository.UserRepository;
+import com.flagright.model.entity.User;
+import com.flagright.util.AttributeNormalizer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Updates to a user's attributes through
+ * {@link RelationshipDetectionService#updateUserRelationships}: a new value
+ * is linked, a removed value is unlinked, a changed value moves the user
+ * between groups, and untouched attributes keep their links.
+ */
+class UserRelationshipUpdateTest extends Neo4jIntegrationTest {
+
+    private static final String PHONE = "+1 415 555 0100";
+    private static final String OTHER_PHONE = "+1 212 555 0199";
+    private static final String ADDRESS = "1 Market Street, San Francisco";
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RelationshipDetectionService relationshipDetectionService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void addingAValueLinksTheUserToItsGroup() {
+        User alice = create("alice@example.com", PHONE, null);
+        User bob = create("bob@example.com", null, null);
+
+        userService.updateUser(bob.getId(), updates(PHONE, null));
+
+        assertThat(linked(alice, bob, "SHARES_PHONE")).isTrue();
+        assertThat(connections(alice, bob, "SHARES_PHONE")).isEqualTo(1);
+        assertThat(degree(alice, "SHARES_PHONE")).isEqualTo(1);
+        assertThat(degree(bob, "SHARES_PHONE")).isEqualTo(1);
+    }
+
+    @Test
+    void removingAValueUnlinksTheUser() {
+        User alice = create("alice@example.com", PHONE, null);
+        User bob = create("bob@example.com", PHONE, null);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            User stored = userRepository.findById(bob.getId()).orElseThrow();
+            Map<DetectedRelationship, Long> previous = DetectedRelationship.fingerprintsOf(stored);
+            stored.setPhone(null);
+            AttributeNormalizer.applyFingerprints(stored);
+            relationshipDetectionService.updateUserRelationships(userRepository.save(stored), previous);
+        });
+
+        assertThat(linked(alice, bob, "SHARES_PHONE")).isFalse();
+        assertThat(connections(alice, bob, "SHARES_PHONE")).isZero();
+        assertThat(degree(alice, "SHARES_PHONE")).isZero();
+        assertThat(degree(bob, "SHARES_PHONE")).isZero();
+    }
+
+    @Test
+    void changingAValueMovesTheUserBetweenGroups() {
+        User alice = create("alice@example.com", PHONE, null);
+        User bob = create("bob@example.com", PHONE, null);
+        User carol = create("carol@example.com", OTHER_PHONE, null);
+
+        userService.updateUser(bob.getId(), updates(OTHER_PHONE, null));
+
+        assertThat(linked(alice, bob, "SHARES_PHONE")).isFalse();
+        assertThat(connections(alice, bob, "SHARES_PHONE")).isZero();
+        assertThat(linked(bob, carol, "SHARES_PHONE")).isTrue();
+        assertThat(connections(bob, carol, "SHARES_PHONE")).isEqualTo(1);
+        assertThat(degree(alice, "SHARES_PHONE")).isZero();
+        assertThat(degree(bob, "SHARES_PHONE")).isEqualTo(1);
+        assertThat(degree(carol, "SHARES_PHONE")).isEqualTo(1);
+    }
+
+    @Test
+    void changingOneValueLeavesTheOtherLinksAlone() {
+        User alice = create("alice@example.com", PHONE, ADDRESS);
+        User bob = create("bob@example.com", PHONE, ADDRESS);
+
+        userService.updateUser(bob.getId(), updates(OTHER_PHONE, null));
+
+        assertThat(linked(alice, bob, "SHARES_PHONE")).isFalse();
+        assertThat(linked(alice, bob, "SHARES_ADDRESS")).isTrue();
+        assertThat(connections(alice, bob, "SHARES_ADDRESS")).isEqualTo(1);
+        assertThat(degree(bob, "SHARES_ADDRESS")).isEqualTo(1);
+    }
+
+    @Test
+    void rewritingTheSameValueChangesNothing() {
+        User alice = create("alice@example.com", PHONE, null);
+        User bob = create("bob@example.com", PHONE, null);
+
+        userService.updateUser(bob.getId(), updates(" +1 (415) 555-0100 ", null));
+
+        assertThat(linked(alice, bob, "SHARES_PHONE")).isTrue();
+        assertThat(connections(alice, bob, "SHARES_PHONE")).isEqualTo(1);
+        assertThat(degree(bob, "SHARES_PHONE")).isEqualTo(1);
+    }
+
+    private User create(String email, String phone, String address) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPhone(phone);
+        user.setAddress(address);
+        user.setFirstName("Update");
+        user.setLastName("Test");
+        return userService.createUser(user);
+    }
+
+    private static User updates(String phone, String address) {
+        User updates = new User();
+        updates.setPhone(phone);
+        updates.setAddress(address);
+        return updates;
+    }
+
+    private boolean linked(User first, User second, String type) {
+        return neo4jClient.query("MATCH (a:User)-[:" + type + "]-(b:User) WHERE id(a) = $first AND id(b) = $second " +
+                "RETURN count(*) > 0 AS linked")
+            .bind(first.getId()).to("first")
+            .bind(second.getId()).to("second")
+            .fetchAs(Boolean.class).mappedBy((typeSystem, record) -> record.get("linked").asBoolean())
+            .one().orElse(false);
+    }
+
+    private long connections(User first, User second, String type) {
+        return neo4jClient.query("MATCH (c:UserConnection {relationshipType: $type}) " +
+                "WHERE (c.userId1 = $first AND c.userId2 = $second) OR (c.userId1 = $second AND c.userId2 = $first) " +
+                "RETURN count(c) AS connections")
+            .bind(type).to("type")
+            .bind(first.getId()).to("first")
+            .bind(second.getId()).to("second")
+            .fetchAs(Long.class).mappedBy((typeSystem, record) -> record.get("connections").asLong())
+            .one().orElse(0L);
+    }
+
+    /** The user's degree for a type as kept in its summary counters */
+    private long degree(User user, String type) {
+        return neo4jClient.query("OPTIONAL MATCH (s:UserSummary {userId: $userId}) " +
+                "RETURN coalesce(s." + type + ", 0) AS degree")
+            .bind(user.getId()).to("userId")
+            .fetchAs(Long.class).mappedBy((typeSystem, record) -> record.get("degree").asLong())
+            .one().orElse(0L);
+    }
+}
@@ -0,0 +1,179 @@
+package com.flagright.service;
+
+import com.flagright.Neo4jIntegrationTest;
+import com.flagright.model.dto.DetectionJobProgress;
+import com.flagright.model.entity.User;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs signups and detection concurrently and checks that neither users nor
+ * links are duplicated: value locks serialise writers within the instance
+ * and constraints and MERGE backstop them.
+ */
+class WriteConcurrencyStressTest extends Neo4jIntegrationTest {
+
+    private static final int THREADS = 16;
+    private static final String SHARED_PHONE = "+1 415 555 0100";
+    private static final String SHARED_ADDRESS = "1 Market Street, San Francisco";
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private WriteConcurrency writeConcurrency;
+
+    @Autowired
+    private DetectionJobService detectionJobService;
+
+    @Test
+    void concurrentSignupsWithOneEmailCreateOneUser() throws Exception {
+        List<Callable<Boolean>> signups = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int attempt = i;
+            signups.add(() -> {
+                try {
+                    signUp("same@example.com", "+1 212 555 " + String.format("%04d", attempt));
+                    return true;
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            });
+        }
+
+        List<Boolean> created = runConcurrently(signups);
+
+        assertThat(created).filteredOn(Boolean::booleanValue).hasSize(1);
+        assertThat(count("MATCH (u:User {email: 'same@example.com'}) RETURN count(u) AS n")).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentSignupsSharingValuesLinkEachPairOnce() throws Exception {
+        List<Callable<Boolean>> signups = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int user = i;
+            signups.add(() -> {
+                signUp("user" + user + "@example.com", SHARED_PHONE);
+                return true;
+            });
+        }
+
+        runConcurrently(signups);
+
+        long pairs = (long) THREADS * (THREADS - 1) / 2;
+        assertLinkedOnce("SHARES_PHONE", pairs);
+        assertLinkedOnce("SHARES_ADDRESS", pairs);
+        assertThat(count("MATCH (s:UserSummary) WHERE s.SHARES_PHONE <> $degree RETURN count(s) AS n",
+            "degree", THREADS - 1)).isZero();
+    }
+
+    @Test
+    void signupsDuringADetectionJobLinkEachPairOnce() throws Exception {
+        for (int i = 0; i < THREADS; i++) {
+            signUp("existing" + i + "@example.com", SHARED_PHONE);
+        }
+
+        List<Callable<Boolean>> work = new ArrayList<>();
+        work.add(() -> {
+            DetectionJobProgress started = detectionJobService.start(false);
+            awaitJob(started.getId());
+            return true;
+        });
+        for (int i = 0; i < THREADS; i++) {
+            int user = i;
+            work.add(() -> {
+                signUp("new" + user + "@example.com", SHARED_PHONE);
+                return true;
+            });
+        }
+
+        runConcurrently(work);
+
+        long users = 2L * THREADS;
+        assertLinkedOnce("SHARES_PHONE", users * (users - 1) / 2);
+    }
+
+    private User signUp(String email, String phone) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPhone(phone);
+        user.setFirstName("Stress");
+        user.setLastName("Test");
+        user.setAddress(SHARED_ADDRESS);
+        return writeConcurrency.retrying("Create user", () -> {
+            user.setId(null);
+            return userService.createUser(user);
+        });
+    }
+
+    /** Every pair has one edge and one connection node of the type, and all pairs are linked */
+    private void assertLinkedOnce(String type, long expectedPairs) {
+        assertThat(count("MATCH (a:User)-[r:" + type + "]-(b:User) WHERE id(a) < id(b) " +
+            "WITH a, b, count(r) AS edges WHERE edges > 1 RETURN count(*) AS n")).isZero();
+        assertThat(count("MATCH (c:UserConnection {relationshipType: $type}) " +
+            "WITH CASE WHEN c.userId1 < c.userId2 THEN [c.userId1, c.userId2] ELSE [c.userId2, c.userId1] END AS pair, " +
+            "count(*) AS connections WHERE connections > 1 RETURN count(*) AS n", "type", type)).isZero();
+        assertThat(count("MATCH ()-[r:" + type + "]->() RETURN count(r) AS n")).isEqualTo(expectedPairs);
+        assertThat(count("MATCH (c:UserConnection {relationshipType: $type}) RETURN count(c) AS n", "type", type))
+            .isEqualTo(expectedPairs);
+    }
+
+    private long count(String query) {
+        return neo4jClient.query(query).fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("n").asLong()).one().orElse(0L);
+    }
+
+    private long count(String query, String name, Object value) {
+        return neo4jClient.query(query).bind(value).to(name).fetchAs(Long.class)
+            .mappedBy((typeSystem, record) -> record.get("n").asLong()).one().orElse(0L);
+    }
+
+    private void awaitJob(Long jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(2);
+        while (!"COMPLETED".equals(detectionJobService.getProgress(jobId).getStatus())) {
+            assertThat(System.currentTimeMillis()).as("detection job finished in time").isLessThan(deadline);
+            assertThat(detectionJobService.getProgress(jobId).getStatus()).isIn("RUNNING", "COMPLETED");
+            Thread.sleep(50);
+        }
+    }
+
+    /** Starts every task at once on its own thread and returns their results, rethrowing the first failure */
+    private static <T> List<T> runConcurrently(List<Callable<T>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get(2, TimeUnit.MINUTES));
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
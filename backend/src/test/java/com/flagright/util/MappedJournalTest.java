@@ -0,0 +1,156 @@
+package com.flagright.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Recovery and replay of {@link MappedJournal} over segment files in a
+ * temporary directory: records survive a reopen, a torn or corrupted tail
+ * is cut off and overwritten, and a reopened reader resumes after the
+ * checkpoint.
+ */
+class MappedJournalTest {
+
+    private static final int HEADER_BYTES = 16;
+    private static final int SEGMENT_BYTES = 4096;
+    private static final Path FIRST_SEGMENT = Path.of(String.format("%020d.journal", 1));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendedRecordsAreReadBackInOrderAfterReopen() throws Exception {
+        try (MappedJournal journal = open()) {
+            assertThat(journal.append(bytes("one"))).isEqualTo(1);
+            assertThat(journal.append(bytes("two"))).isEqualTo(2);
+            assertThat(journal.append(bytes("three"))).isEqualTo(3);
+        }
+
+        try (MappedJournal journal = open()) {
+            assertThat(journal.lastSequence()).isEqualTo(3);
+            assertThat(texts(journal.readNext(10, 0))).containsExactly("one", "two", "three");
+        }
+    }
+
+    @Test
+    void tornTailIsDiscardedAndOverwritten() throws Exception {
+        try (MappedJournal journal = open()) {
+            journal.append(bytes("one"));
+            journal.append(bytes("two"));
+        }
+        // A crash after the length of a third record reached disk but before the rest did.
+        int end = 2 * (HEADER_BYTES + 3);
+        writeInt(directory.resolve(FIRST_SEGMENT), end, 5);
+
+        try (MappedJournal journal = open()) {
+            assertThat(journal.lastSequence()).isEqualTo(2);
+            assertThat(journal.append(bytes("three"))).isEqualTo(3);
+        }
+
+        try (MappedJournal journal = open()) {
+            assertThat(texts(journal.readNext(10, 0))).containsExactly("one", "two", "three");
+        }
+    }
+
+    @Test
+    void recordWithBadChecksumEndsTheSegment() throws Exception {
+        try (MappedJournal journal = open()) {
+            journal.append(bytes("one"));
+            journal.append(bytes("two"));
+            journal.append(bytes("six"));
+        }
+        // Flip the first payload byte of the second record; its checksum no longer matches.
+        int payload = HEADER_BYTES + 3 + HEADER_BYTES;
+        writeByte(directory.resolve(FIRST_SEGMENT), payload, (byte) 'x');
+
+        try (MappedJournal journal = open()) {
+            assertThat(journal.lastSequence()).isEqualTo(1);
+            assertThat(texts(journal.readNext(10, 0))).containsExactly("one");
+            assertThat(journal.append(bytes("new"))).isEqualTo(2);
+        }
+
+        // The intact third record behind the corrupt one must not come back once the gap is refilled.
+        try (MappedJournal journal = open()) {
+            assertThat(journal.lastSequence()).isEqualTo(2);
+            assertThat(texts(journal.readNext(10, 0))).containsExactly("one", "new");
+        }
+    }
+
+    @Test
+    void reopenedReaderResumesAfterTheCheckpoint() throws Exception {
+        try (MappedJournal journal = open()) {
+            for (int i = 1; i <= 5; i++) {
+                journal.append(bytes("record" + i));
+            }
+            List<MappedJournal.Entry> applied = journal.readNext(3, 0);
+            journal.checkpoint(applied.get(applied.size() - 1).sequence());
+            // The crash comes before records 4 and 5 are checkpointed, though they may have been read.
+            journal.readNext(10, 0);
+        }
+
+        try (MappedJournal journal = open()) {
+            assertThat(journal.checkpointSequence()).isEqualTo(3);
+            List<MappedJournal.Entry> replayed = journal.readNext(10, 0);
+            assertThat(replayed).extracting(MappedJournal.Entry::sequence).containsExactly(4L, 5L);
+            assertThat(texts(replayed)).containsExactly("record4", "record5");
+        }
+    }
+
+    @Test
+    void checkpointDeletesSegmentsItCovers() throws Exception {
+        byte[] payload = new byte[1000];
+        payload[0] = 1;
+        try (MappedJournal journal = open()) {
+            for (int i = 0; i < 12; i++) {
+                journal.append(payload);
+            }
+            assertThat(journal.segmentCount()).isGreaterThan(1);
+
+            List<MappedJournal.Entry> entries = journal.readNext(20, 0);
+            assertThat(entries).hasSize(12);
+            journal.checkpoint(12);
+
+            assertThat(journal.segmentCount()).isEqualTo(1);
+        }
+
+        try (MappedJournal journal = open()) {
+            assertThat(journal.lastSequence()).isEqualTo(12);
+            assertThat(journal.readNext(20, 0)).isEmpty();
+            assertThat(journal.append(payload)).isEqualTo(13);
+        }
+    }
+
+    private MappedJournal open() throws IOException {
+        return new MappedJournal(directory, SEGMENT_BYTES, nanos -> { });
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> texts(List<MappedJournal.Entry> entries) {
+        return entries.stream().map(entry -> new String(entry.payload(), StandardCharsets.UTF_8)).toList();
+    }
+
+    private static void writeInt(Path path, int position, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, value), position);
+        }
+    }
+
+    private static void writeByte(Path path, int position, byte value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {value}), position);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.flagright.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Quantiles from {@link QuantileSketch}: exact while the values fit under
+ * the limit, within the relative accuracy once bucketed, and the same after
+ * merging sketches of parts of a stream as for the whole.
+ */
+class QuantileSketchTest {
+
+    @Test
+    void smallStreamsAreExact() {
+        QuantileSketch sketch = new QuantileSketch(100, 0.01);
+        for (long value : new long[] {500, 100, 300, 200, 400}) {
+            sketch.add(value);
+        }
+
+        assertThat(sketch.quantile(0.50)).isEqualTo(300);
+        assertThat(sketch.quantile(0.95)).isEqualTo(500);
+        assertThat(new QuantileSketch(100, 0.01).quantile(0.5)).isZero();
+    }
+
+    @Test
+    void bucketedQuantilesStayWithinTheAccuracy() {
+        QuantileSketch sketch = new QuantileSketch(10, 0.01);
+        for (long value = 1; value <= 100_000; value++) {
+            sketch.add(value);
+        }
+
+        assertThat(sketch.count()).isEqualTo(100_000);
+        assertThat((double) sketch.quantile(0.50)).isCloseTo(50_000, within(500.0));
+        assertThat((double) sketch.quantile(0.95)).isCloseTo(95_000, within(950.0));
+    }
+
+    @Test
+    void negativeZeroAndExtremeValuesAreOrdered() {
+        QuantileSketch sketch = new QuantileSketch(0, 0.01);
+        sketch.add(Long.MIN_VALUE);
+        sketch.add(-1_000);
+        sketch.add(0);
+        sketch.add(1_000);
+        sketch.add(Long.MAX_VALUE);
+
+        assertThat(sketch.quantile(0.10)).isLessThan(-1_000_000_000_000L);
+        assertThat((double) sketch.quantile(0.30)).isCloseTo(-1_000, within(10.0));
+        assertThat(sketch.quantile(0.50)).isZero();
+        assertThat((double) sketch.quantile(0.70)).isCloseTo(1_000, within(10.0));
+        assertThat(sketch.quantile(1.00)).isGreaterThan(1_000_000_000_000L);
+    }
+
+    @Test
+    void mergedSketchesMatchTheWholeStream() {
+        QuantileSketch whole = new QuantileSketch(50, 0.01);
+        QuantileSketch exactPart = new QuantileSketch(50, 0.01);
+        QuantileSketch bucketedPart = new QuantileSketch(50, 0.01);
+        for (long value = 1; value <= 1_000; value++) {
+            whole.add(value);
+            (value <= 20 ? exactPart : bucketedPart).add(value);
+        }
+
+        QuantileSketch merged = new QuantileSketch(50, 0.01).merge(exactPart).merge(bucketedPart);
+
+        assertThat(merged.count()).isEqualTo(whole.count());
+        assertThat(merged.quantile(0.50)).isEqualTo(whole.quantile(0.50));
+        assertThat(merged.quantile(0.95)).isEqualTo(whole.quantile(0.95));
+    }
+}
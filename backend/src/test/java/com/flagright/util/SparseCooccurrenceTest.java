@@ -0,0 +1,123 @@
+package com.flagright.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Similar rows found by {@link SparseCooccurrence} on small hand-built
+ * matrices: shared counts and Jaccard similarity, the thresholds, hub
+ * columns over the degree cap left out of both, and each row keeping only
+ * its top K with every kept pair reported once.
+ */
+class SparseCooccurrenceTest {
+
+    private record Pair(int row, int other, int shared, double jaccard) {
+    }
+
+    @Test
+    void pairsCarrySharedCountAndJaccard() {
+        SparseCooccurrence.Csr matrix = matrix(3, 6, new int[][] {{0, 1, 2}, {1, 2, 3}, {5}});
+
+        List<Pair> pairs = similarRows(matrix, new SparseCooccurrence.Limits(1, 0.0, 5, 10));
+
+        assertThat(pairs).hasSize(1);
+        assertThat(pairs.get(0).row()).isZero();
+        assertThat(pairs.get(0).other()).isEqualTo(1);
+        assertThat(pairs.get(0).shared()).isEqualTo(2);
+        assertThat(pairs.get(0).jaccard()).isCloseTo(0.5, within(1e-6));
+    }
+
+    @Test
+    void duplicateEntriesCountOnce() {
+        SparseCooccurrence.Csr matrix = SparseCooccurrence.Csr.of(2, 2,
+            new int[] {0, 0, 0, 1}, new int[] {0, 0, 1, 0});
+
+        assertThat(matrix.nonZeros()).isEqualTo(3);
+        List<Pair> pairs = similarRows(matrix, new SparseCooccurrence.Limits(1, 0.0, 5, 10));
+
+        assertThat(pairs).extracting(Pair::shared).containsExactly(1);
+        assertThat(pairs.get(0).jaccard()).isCloseTo(0.5, within(1e-6));
+    }
+
+    @Test
+    void thresholdsDropWeakPairs() {
+        SparseCooccurrence.Csr matrix = matrix(2, 6, new int[][] {{0, 1, 2}, {1, 2, 3}});
+
+        assertThat(similarRows(matrix, new SparseCooccurrence.Limits(3, 0.0, 5, 10))).isEmpty();
+        assertThat(similarRows(matrix, new SparseCooccurrence.Limits(1, 0.6, 5, 10))).isEmpty();
+        assertThat(similarRows(matrix, new SparseCooccurrence.Limits(2, 0.5, 5, 10))).hasSize(1);
+    }
+
+    @Test
+    void columnsOverTheDegreeCapAreLeftOut() {
+        // Column 9 is a hub shared by all four rows; only rows 0 and 1 also share column 0.
+        SparseCooccurrence.Csr matrix = matrix(4, 10, new int[][] {{0, 9}, {0, 9}, {9}, {9}});
+
+        List<Pair> capped = similarRows(matrix, new SparseCooccurrence.Limits(1, 0.0, 5, 3));
+
+        assertThat(capped).hasSize(1);
+        assertThat(capped.get(0).row()).isZero();
+        assertThat(capped.get(0).other()).isEqualTo(1);
+        assertThat(capped.get(0).shared()).isEqualTo(1);
+        // The hub does not count towards row lengths either, so the two rows are identical.
+        assertThat(capped.get(0).jaccard()).isCloseTo(1.0, within(1e-6));
+
+        assertThat(similarRows(matrix, new SparseCooccurrence.Limits(1, 0.0, 5, 4))).hasSize(6);
+    }
+
+    @Test
+    void eachRowKeepsItsTopKAndKeptPairsAreReportedOnce() {
+        // Jaccard: (0,1) 0.8, (0,2) 0.5, (1,2) 0.4, (1,3) 1/6; rows 0 and 3 share nothing.
+        SparseCooccurrence.Csr matrix = matrix(4, 6,
+            new int[][] {{0, 1, 2, 3}, {0, 1, 2, 3, 4}, {0, 1}, {4, 5}});
+
+        List<Pair> top1 = similarRows(matrix, new SparseCooccurrence.Limits(1, 0.0, 1, 10));
+        List<Pair> all = similarRows(matrix, new SparseCooccurrence.Limits(1, 0.0, 5, 10));
+
+        // Rows 0 and 1 keep each other, row 2 keeps 0 and row 3 keeps 1; nobody keeps (1,2).
+        assertThat(top1).extracting(pair -> pair.row() + "-" + pair.other())
+            .containsExactlyInAnyOrder("0-1", "0-2", "1-3");
+        assertThat(all).extracting(pair -> pair.row() + "-" + pair.other())
+            .containsExactlyInAnyOrder("0-1", "0-2", "1-2", "1-3");
+    }
+
+    @Test
+    void reportedCountMatchesThePairsDelivered() {
+        SparseCooccurrence.Csr matrix = matrix(4, 6,
+            new int[][] {{0, 1, 2, 3}, {0, 1, 2, 3, 4}, {0, 1}, {4, 5}});
+        List<Pair> pairs = new ArrayList<>();
+
+        long reported = SparseCooccurrence.similarRows(matrix, new SparseCooccurrence.Limits(1, 0.0, 2, 10),
+            (row, other, shared, jaccard) -> pairs.add(new Pair(row, other, shared, jaccard)));
+
+        assertThat(reported).isEqualTo(pairs.size());
+        assertThat(pairs).allSatisfy(pair -> assertThat(pair.row()).isLessThan(pair.other()));
+    }
+
+    /** Builds a matrix from the column lists of each row */
+    private static SparseCooccurrence.Csr matrix(int rows, int columns, int[][] columnsByRow) {
+        List<Integer> rowIndexes = new ArrayList<>();
+        List<Integer> columnIndexes = new ArrayList<>();
+        for (int row = 0; row < columnsByRow.length; row++) {
+            for (int column : columnsByRow[row]) {
+                rowIndexes.add(row);
+                columnIndexes.add(column);
+            }
+        }
+        return SparseCooccurrence.Csr.of(rows, columns,
+            rowIndexes.stream().mapToInt(Integer::intValue).toArray(),
+            columnIndexes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static List<Pair> similarRows(SparseCooccurrence.Csr matrix, SparseCooccurrence.Limits limits) {
+        List<Pair> pairs = new ArrayList<>();
+        SparseCooccurrence.similarRows(matrix, limits,
+            (row, other, shared, jaccard) -> pairs.add(new Pair(row, other, shared, jaccard)));
+        return pairs;
+    }
+}
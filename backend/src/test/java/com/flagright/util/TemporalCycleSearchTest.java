@@ -0,0 +1,160 @@
+package com.flagright.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cycles found by {@link TemporalCycleSearch} on small hand-built graphs:
+ * edge times must increase along a cycle, each cycle is reported once from
+ * its earliest edge, the window, length, amount and currency bounds apply,
+ * and a sink accepting only cycles closed by a given edge still finds them
+ * past the per-start cap.
+ */
+class TemporalCycleSearchTest {
+
+    private static final TemporalCycleSearch.Limits ANY =
+        new TemporalCycleSearch.Limits(1_000, 2, 6, -1, false, 100);
+
+    @Test
+    void timeOrderedCycleIsReportedOnceFromItsEarliestEdge() {
+        TemporalCycleSearch.FlowGraph graph = graph(3, new int[] {0, 1, 2}, new int[] {1, 2, 0},
+            new long[] {10, 20, 30});
+
+        assertThat(cycles(graph, ANY)).containsExactly(List.of(0, 1, 2));
+    }
+
+    @Test
+    void cycleWhoseTimesDoNotIncreaseIsIgnored() {
+        TemporalCycleSearch.FlowGraph graph = graph(3, new int[] {0, 1, 2}, new int[] {1, 2, 0},
+            new long[] {30, 20, 10});
+
+        assertThat(cycles(graph, ANY)).isEmpty();
+    }
+
+    @Test
+    void equalTimesAreOrderedByInput() {
+        TemporalCycleSearch.FlowGraph graph = graph(2, new int[] {0, 1}, new int[] {1, 0}, new long[] {10, 10});
+
+        assertThat(cycles(graph, ANY)).containsExactly(List.of(0, 1));
+    }
+
+    @Test
+    void cycleMustCloseWithinTheWindowOfItsFirstEdge() {
+        TemporalCycleSearch.FlowGraph graph = graph(2, new int[] {0, 1}, new int[] {1, 0}, new long[] {0, 100});
+
+        assertThat(cycles(graph, new TemporalCycleSearch.Limits(99, 2, 6, -1, false, 100))).isEmpty();
+        assertThat(cycles(graph, new TemporalCycleSearch.Limits(100, 2, 6, -1, false, 100)))
+            .containsExactly(List.of(0, 1));
+    }
+
+    @Test
+    void lengthBoundsAreApplied() {
+        TemporalCycleSearch.FlowGraph graph = graph(3, new int[] {0, 1, 2}, new int[] {1, 2, 0},
+            new long[] {10, 20, 30});
+
+        assertThat(cycles(graph, new TemporalCycleSearch.Limits(1_000, 4, 6, -1, false, 100))).isEmpty();
+        assertThat(cycles(graph, new TemporalCycleSearch.Limits(1_000, 2, 2, -1, false, 100))).isEmpty();
+        assertThat(cycles(graph, new TemporalCycleSearch.Limits(1_000, 3, 3, -1, false, 100)))
+            .containsExactly(List.of(0, 1, 2));
+    }
+
+    @Test
+    void amountsMustStayWithinTheToleranceHopToHop() {
+        int[] sources = {0, 1};
+        int[] targets = {1, 0};
+        long[] times = {10, 20};
+        TemporalCycleSearch.Limits limits = new TemporalCycleSearch.Limits(1_000, 2, 6, 0.1, false, 100);
+
+        assertThat(cycles(TemporalCycleSearch.build(2, sources, targets, times, new long[] {100, 50},
+            new int[] {0, 0}), limits)).isEmpty();
+        assertThat(cycles(TemporalCycleSearch.build(2, sources, targets, times, new long[] {100, 95},
+            new int[] {0, 0}), limits)).containsExactly(List.of(0, 1));
+    }
+
+    @Test
+    void currencyMustMatchWhenRequired() {
+        TemporalCycleSearch.FlowGraph graph = TemporalCycleSearch.build(2, new int[] {0, 1}, new int[] {1, 0},
+            new long[] {10, 20}, new long[] {100, 100}, new int[] {0, 1});
+
+        assertThat(cycles(graph, new TemporalCycleSearch.Limits(1_000, 2, 6, -1, true, 100))).isEmpty();
+        assertThat(cycles(graph, new TemporalCycleSearch.Limits(1_000, 2, 6, -1, false, 100)))
+            .containsExactly(List.of(0, 1));
+    }
+
+    @Test
+    void nodesThatCannotLieOnACycleAreTrimmed() {
+        // 3 only sends into the cycle and 4 only receives from it; 5 hangs off 4.
+        TemporalCycleSearch.FlowGraph graph = graph(6, new int[] {0, 1, 3, 1, 4}, new int[] {1, 0, 0, 4, 5},
+            new long[] {10, 20, 5, 15, 16});
+
+        assertThat(graph.isTrimmed(0)).isFalse();
+        assertThat(graph.isTrimmed(1)).isFalse();
+        assertThat(graph.isTrimmed(3)).isTrue();
+        assertThat(graph.isTrimmed(4)).isTrue();
+        assertThat(graph.isTrimmed(5)).isTrue();
+        assertThat(cycles(graph, ANY)).containsExactly(List.of(0, 1));
+    }
+
+    @Test
+    void onlyCyclesClosedByTheNewEdgeCountTowardsTheCap() {
+        // Two ways back from 1 to 0; edge 2 is the new transaction closing the second cycle.
+        TemporalCycleSearch.FlowGraph graph = graph(2, new int[] {0, 1, 1}, new int[] {1, 0, 0},
+            new long[] {10, 20, 30});
+        TemporalCycleSearch.Limits limits = new TemporalCycleSearch.Limits(1_000, 2, 6, -1, false, 1);
+        List<List<Integer>> offered = new ArrayList<>();
+        List<List<Integer>> accepted = new ArrayList<>();
+
+        TemporalCycleSearch.search(graph, 0, limits, edges -> {
+            offered.add(toList(edges));
+            if (edges[edges.length - 1] != 2) {
+                return TemporalCycleSearch.Verdict.SKIPPED;
+            }
+            accepted.add(toList(edges));
+            return TemporalCycleSearch.Verdict.ACCEPTED;
+        });
+
+        assertThat(offered).containsExactly(List.of(0, 1), List.of(0, 2));
+        assertThat(accepted).containsExactly(List.of(0, 2));
+    }
+
+    @Test
+    void sinkCanStopTheSearchFromAStart() {
+        TemporalCycleSearch.FlowGraph graph = graph(2, new int[] {0, 1, 1}, new int[] {1, 0, 0},
+            new long[] {10, 20, 30});
+        List<List<Integer>> offered = new ArrayList<>();
+
+        TemporalCycleSearch.search(graph, 0, ANY, edges -> {
+            offered.add(toList(edges));
+            return TemporalCycleSearch.Verdict.STOP;
+        });
+
+        assertThat(offered).containsExactly(List.of(0, 1));
+    }
+
+    private static TemporalCycleSearch.FlowGraph graph(int nodeCount, int[] sources, int[] targets, long[] times) {
+        long[] amounts = new long[sources.length];
+        Arrays.fill(amounts, 100);
+        return TemporalCycleSearch.build(nodeCount, sources, targets, times, amounts, new int[sources.length]);
+    }
+
+    /** Every cycle from every start, as input edge indexes */
+    private static List<List<Integer>> cycles(TemporalCycleSearch.FlowGraph graph, TemporalCycleSearch.Limits limits) {
+        List<List<Integer>> cycles = new ArrayList<>();
+        for (int start = 0; start < graph.nodeCount(); start++) {
+            TemporalCycleSearch.search(graph, start, limits, edges -> {
+                cycles.add(toList(edges));
+                return TemporalCycleSearch.Verdict.ACCEPTED;
+            });
+        }
+        return cycles;
+    }
+
+    private static List<Integer> toList(int[] edges) {
+        return Arrays.stream(edges).boxed().toList();
+    }
+}
@@ -0,0 +1,68 @@
+#!/usr/bin/env python3
+"""Measures GET /api/graph/export throughput per format and compression.
+
+Each combination of format (ndjson, binary) and gzip is downloaded several
+times and the median is reported: bytes on the wire, records, seconds and
+MB/s. With --since the incremental export is measured as well; pass a
+timestamp shortly before a batch of writes (the server's local time, e.g.
+2024-03-01T12:00:00) and compare its size with the full export.
+"""
+import argparse
+import statistics
+import time
+
+import requests
+
+BASE_URL = "http://localhost:3000/api"
+CHUNK_SIZE = 1 << 16
+
+
+def download(session, fmt, gzip, since):
+    """Stream one export, counting wire bytes and records without keeping the body"""
+    params = {"format": fmt, "gzip": str(gzip).lower()}
+    if since:
+        params["since"] = since
+    started = time.perf_counter()
+    wire_bytes = 0
+    newlines = 0
+    with session.get(f"{BASE_URL}/graph/export", params=params, stream=True) as response:
+        response.raise_for_status()
+        # Read the raw stream so gzip bodies are counted as sent, not as decompressed.
+        while True:
+            chunk = response.raw.read(CHUNK_SIZE, decode_content=False)
+            if not chunk:
+                break
+            wire_bytes += len(chunk)
+            if fmt == "ndjson" and not gzip:
+                newlines += chunk.count(b"\n")
+    elapsed = time.perf_counter() - started
+    return wire_bytes, newlines if fmt == "ndjson" and not gzip else None, elapsed
+
+
+def measure(session, fmt, gzip, since, repeats):
+    runs = [download(session, fmt, gzip, since) for _ in range(repeats)]
+    seconds = statistics.median(run[2] for run in runs)
+    wire_bytes, records, _ = runs[-1]
+    label = "full" if not since else f"since {since}"
+    records_text = f"{records:>10}" if records is not None else f"{'-':>10}"
+    print(f"{label:>26} {fmt:>7} {'yes' if gzip else 'no':>5} {wire_bytes:>14} {records_text} "
+          f"{seconds:>9.2f} {wire_bytes / 1e6 / max(seconds, 1e-9):>9.1f}")
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--formats", nargs="+", default=["ndjson", "binary"], help="export formats to measure")
+    parser.add_argument("--repeats", type=int, default=3, help="downloads per combination; the median is reported")
+    parser.add_argument("--since", help="also measure the incremental export from this ISO local date-time")
+    args = parser.parse_args()
+
+    session = requests.Session()
+    print(f"{'export':>26} {'format':>7} {'gzip':>5} {'bytes':>14} {'records':>10} {'seconds':>9} {'MB/s':>9}")
+    for since in [None, args.since] if args.since else [None]:
+        for fmt in args.formats:
+            for gzip in (False, True):
+                measure(session, fmt, gzip, since, args.repeats)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,109 @@
+#!/usr/bin/env python3
+"""Measures POST /api/transactions throughput and latency percentiles.
+
+Run it once per backend configuration, e.g. with group commit disabled and
+then with different flagright.ingestion.group-commit.max-batch-size and
+max-wait values, and compare the summary lines: larger batches and longer
+waits raise throughput until the added wait shows up in p99.
+"""
+import argparse
+import random
+import threading
+import time
+
+import requests
+
+BASE_URL = "http://localhost:3000/api"
+HEADERS = {"Content-Type": "application/json"}
+
+PAYMENT_METHODS = ["credit_card", "debit_card", "bank_transfer", "paypal", "apple_pay", "google_pay"]
+
+
+def create_users(count):
+    """Create the users transactions are sent between"""
+    ids = []
+    suffix = int(time.time())
+    for i in range(count):
+        response = requests.post(f"{BASE_URL}/users", headers=HEADERS, json={
+            "email": f"bench-{suffix}-{i}@example.com",
+            "phone": f"+1555{suffix % 100000:05d}{i:03d}",
+            "firstName": "Bench",
+            "lastName": f"User{i}",
+            "address": f"{i} Benchmark Street",
+            "dateOfBirth": "1990-01-01",
+        })
+        response.raise_for_status()
+        ids.append(response.json()["id"])
+    return ids
+
+
+def worker(user_ids, deadline, latencies, errors, lock):
+    """Send transactions back to back until the deadline, recording each latency"""
+    session = requests.Session()
+    local_latencies = []
+    local_errors = 0
+    while time.monotonic() < deadline:
+        sender, recipient = random.sample(user_ids, 2)
+        payload = {
+            "senderId": sender,
+            "recipientId": recipient,
+            "amount": round(random.uniform(1, 500), 2),
+            "currency": "INR",
+            "description": "Benchmark",
+            "ipAddress": f"10.0.{random.randint(0, 255)}.{random.randint(1, 254)}",
+            "deviceId": f"bench-device-{random.randint(1, 1000)}",
+            "paymentMethod": random.choice(PAYMENT_METHODS),
+        }
+        started = time.perf_counter()
+        try:
+            response = session.post(f"{BASE_URL}/transactions", json=payload, headers=HEADERS)
+            ok = response.status_code == 201
+        except requests.RequestException:
+            ok = False
+        elapsed = time.perf_counter() - started
+        if ok:
+            local_latencies.append(elapsed)
+        else:
+            local_errors += 1
+    with lock:
+        latencies.extend(local_latencies)
+        errors[0] += local_errors
+
+
+def percentile(sorted_values, fraction):
+    if not sorted_values:
+        return 0.0
+    index = min(len(sorted_values) - 1, int(round(fraction * (len(sorted_values) - 1))))
+    return sorted_values[index]
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--concurrency", type=int, nargs="+", default=[1, 8, 32, 128],
+                        help="concurrent clients to run, one measurement per value")
+    parser.add_argument("--duration", type=float, default=20, help="seconds per measurement")
+    parser.add_argument("--users", type=int, default=50, help="users to spread transactions over")
+    args = parser.parse_args()
+
+    user_ids = create_users(args.users)
+    print(f"{'clients':>8} {'ok':>8} {'errors':>7} {'tx/s':>9} {'p50 ms':>8} {'p95 ms':>8} {'p99 ms':>8}")
+    for clients in args.concurrency:
+        latencies, errors, lock = [], [0], threading.Lock()
+        deadline = time.monotonic() + args.duration
+        threads = [threading.Thread(target=worker, args=(user_ids, deadline, latencies, errors, lock))
+                   for _ in range(clients)]
+        started = time.monotonic()
+        for thread in threads:
+            thread.start()
+        for thread in threads:
+            thread.join()
+        elapsed = time.monotonic() - started
+
+        latencies.sort()
+        print(f"{clients:>8} {len(latencies):>8} {errors[0]:>7} {len(latencies) / elapsed:>9.1f} "
+              f"{percentile(latencies, 0.50) * 1000:>8.1f} {percentile(latencies, 0.95) * 1000:>8.1f} "
+              f"{percentile(latencies, 0.99) * 1000:>8.1f}")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,86 @@
+#!/usr/bin/env python3
+"""Measures bytes and server CPU per response, embedded versus normalized.
+
+For the transaction list and the user and transaction connection lists,
+each variant (embedded entities, view=normalized, and normalized with a
+field selection) is requested back to back and reported as bytes per
+response, client latency, and backend CPU per response. CPU is read from
+/proc/<pid>/stat of the backend JVM given with --pid (Linux, backend on the
+same host; for Docker use `docker inspect -f '{{.State.Pid}}' <container>`),
+so it covers the whole request. Fetching is the same for every variant, so
+the difference between variants is the serialization cost. Without --pid
+only bytes and latency are reported. Run against an otherwise idle backend.
+"""
+import argparse
+import os
+import statistics
+import time
+
+import requests
+
+BASE_URL = "http://localhost:3000/api"
+
+SELECTED_TRANSACTION_FIELDS = "id,amount,currency,status,createdAt"
+SELECTED_USER_FIELDS = "id,email"
+
+
+def process_cpu_seconds(pid):
+    """User plus system CPU time of a process, from /proc"""
+    with open(f"/proc/{pid}/stat") as stat:
+        # The command name may contain spaces; fields after it are space separated.
+        fields = stat.read().rsplit(")", 1)[1].split()
+    return (int(fields[11]) + int(fields[12])) / os.sysconf("SC_CLK_TCK")
+
+
+def measure(session, label, path, params, repeats, pid):
+    """Request one variant repeatedly and print its per-response costs"""
+    session.get(f"{BASE_URL}{path}", params=params).raise_for_status()  # warm up
+    sizes, latencies = [], []
+    cpu_started = process_cpu_seconds(pid) if pid else None
+    for _ in range(repeats):
+        started = time.perf_counter()
+        response = session.get(f"{BASE_URL}{path}", params=params)
+        latencies.append(time.perf_counter() - started)
+        response.raise_for_status()
+        sizes.append(len(response.content))
+    cpu_text = f"{'-':>12}"
+    if pid:
+        cpu_text = f"{(process_cpu_seconds(pid) - cpu_started) / repeats * 1000:>12.2f}"
+    print(f"{label:>44} {statistics.median(sizes):>12.0f} {statistics.median(latencies) * 1000:>10.1f} {cpu_text}")
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--pid", type=int, help="backend JVM process id, to measure its CPU per response")
+    parser.add_argument("--repeats", type=int, default=50, help="requests per variant")
+    parser.add_argument("--user-id", type=int, help="user whose connections to fetch; defaults to the first sender")
+    parser.add_argument("--transaction-id", type=int,
+                        help="transaction whose connections to fetch; defaults to the first transaction")
+    args = parser.parse_args()
+
+    # No If-None-Match is sent, so every request is serialized rather than answered with 304.
+    session = requests.Session()
+    first = session.get(f"{BASE_URL}/transactions", params={"after": 0, "limit": 1})
+    first.raise_for_status()
+    if not first.json():
+        raise SystemExit("No transactions to measure; generate test data first")
+    transaction_id = args.transaction_id or first.json()[0]["id"]
+    user_id = args.user_id or first.json()[0]["sender"]["id"]
+
+    endpoints = [
+        ("transactions", "/transactions", True),
+        (f"user {user_id} connections", f"/users/{user_id}/connections", False),
+        (f"transaction {transaction_id} connections", f"/transactions/{transaction_id}/connections", True),
+    ]
+    print(f"{'response':>44} {'bytes':>12} {'p50 ms':>10} {'CPU ms':>12}")
+    for name, path, has_transaction_fields in endpoints:
+        measure(session, f"{name} embedded", path, {}, args.repeats, args.pid)
+        measure(session, f"{name} normalized", path, {"view": "normalized"}, args.repeats, args.pid)
+        selected = {"view": "normalized", "userFields": SELECTED_USER_FIELDS}
+        if has_transaction_fields:
+            selected["fields"] = SELECTED_TRANSACTION_FIELDS
+        measure(session, f"{name} normalized+fields", path, selected, args.repeats, args.pid)
+
+
+if __name__ == "__main__":
+    main()
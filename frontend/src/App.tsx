@@ -1,6 +1,6 @@
 import React, { useState } from 'react';
 import { Search, Network, Users, CreditCard, AlertTriangle, Link, GitBranch, RefreshCw } from 'lucide-react';
-import { useGraphData, useHealthCheck } from '@/hooks/useGraphData';
+import { useChangeFeed, useGraphData, useGraphLayout, useHealthCheck } from '@/hooks/useGraphData';
 import { FilterProvider, useFilteredGraphData } from '@/hooks/useFilters';
 import GraphVisualization from '@/components/GraphVisualization';
 import UserList from '@/components/UserList';
@@ -19,7 +19,9 @@ const AppContent: React.FC = () => {
   
   const { graphData, isLoading, error, refetch } = useGraphData();
   const filteredGraphData = useFilteredGraphData(graphData);
+  const { data: graphPositions } = useGraphLayout();
   const { data: isApiHealthy } = useHealthCheck();
+  useChangeFeed();
 
   // Navigation items
   const navigationItems = [
@@ -86,7 +88,7 @@ const AppContent: React.FC = () => {
             </div>
             <div className="flex-1 min-h-0">
               {filteredGraphData ? (
-                <GraphVisualization graphData={filteredGraphData} />
+                <GraphVisualization graphData={filteredGraphData} positions={graphPositions} />
               ) : (
                 <div className="flex-1 flex items-center justify-center">
                   <p className="text-gray-500">No graph data available</p>
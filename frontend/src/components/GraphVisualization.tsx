@@ -14,9 +14,11 @@ cytoscape.use(coseBilkent);
 
 interface GraphVisualizationProps {
   graphData: GraphData;
+  // Precomputed positions from the backend; when every node has one the browser skips force layout
+  positions?: Record<string, { x: number; y: number }>;
 }
 
-const GraphVisualization: React.FC<GraphVisualizationProps> = ({ graphData }) => {
+const GraphVisualization: React.FC<GraphVisualizationProps> = ({ graphData, positions }) => {
   const containerRef = useRef<HTMLDivElement>(null);
   const cyRef = useRef<Core | null>(null);
   const [selectedNode, setSelectedNode] = useState<GraphNode | null>(null);
@@ -62,6 +64,8 @@ const GraphVisualization: React.FC<GraphVisualizationProps> = ({ graphData }) =>
       }))
     ];
 
+    const usePreset = !!positions && graphData.nodes.every(node => positions[node.id]);
+
     // Initialize Cytoscape
     const cy = cytoscape({
       container: containerRef.current,
@@ -142,7 +146,12 @@ const GraphVisualization: React.FC<GraphVisualizationProps> = ({ graphData }) =>
           }
         }
       ],
-      layout: {
+      layout: usePreset ? {
+        name: 'preset',
+        positions: (node: any) => positions![node.id()],
+        fit: true,
+        padding: 10,
+      } as any : {
         name: 'cose-bilkent',
         quality: 'default',
         nodeDimensionsIncludeLabels: true,
@@ -209,7 +218,7 @@ const GraphVisualization: React.FC<GraphVisualizationProps> = ({ graphData }) =>
         cyRef.current = null;
       }
     };
-  }, [graphData]);
+  }, [graphData, positions]);
 
   // Control functions
   const zoomIn = () => cyRef.current?.zoom(cyRef.current.zoom() * 1.2);
@@ -1,6 +1,9 @@
-import { useQuery, useMutation, useQueryClient } from '@tanstack/react-query';
+import { useEffect } from 'react';
+import { useQuery, useMutation, useQueryClient, QueryClient } from '@tanstack/react-query';
 import { apiService } from '@/services/api';
 import { 
+  User,
+  Transaction,
   CreateUserRequest, 
   CreateTransactionRequest,
   GraphData 
@@ -13,8 +16,21 @@ export const QUERY_KEYS = {
   transactions: 'transactions',
   userConnections: (id: number) => ['user-connections', id],
   transactionConnections: (id: number) => ['transaction-connections', id],
+  graphLayout: (view: string) => ['graph-layout', view],
 } as const;
 
+// Replaces an entity in a cached list by id, appending it when new
+const upsertById = <T extends { id: number }>(queryClient: QueryClient, key: string, entity: T) => {
+  queryClient.setQueryData<T[]>([key], (current) => {
+    if (!current) return current;
+    const index = current.findIndex(item => item.id === entity.id);
+    if (index < 0) return [...current, entity];
+    const next = current.slice();
+    next[index] = entity;
+    return next;
+  });
+};
+
 // Hook for fetching all users
 export const useUsers = () => {
   return useQuery({
@@ -77,9 +93,9 @@ export const useCreateUser = () => {
   
   return useMutation({
     mutationFn: (userData: CreateUserRequest) => apiService.createUser(userData),
-    onSuccess: () => {
-      // Invalidate and refetch users
-      queryClient.invalidateQueries({ queryKey: [QUERY_KEYS.users] });
+    onSuccess: (user) => {
+      // Apply the created user locally instead of refetching every user
+      upsertById(queryClient, QUERY_KEYS.users, user);
     },
     onError: (error) => {
       console.error('Failed to create user:', error);
@@ -94,9 +110,9 @@ export const useCreateTransaction = () => {
   return useMutation({
     mutationFn: (transactionData: CreateTransactionRequest) => 
       apiService.createTransaction(transactionData),
-    onSuccess: () => {
-      // Invalidate and refetch transactions
-      queryClient.invalidateQueries({ queryKey: [QUERY_KEYS.transactions] });
+    onSuccess: (transaction) => {
+      // Apply the created transaction locally instead of refetching every transaction
+      upsertById(queryClient, QUERY_KEYS.transactions, transaction);
     },
     onError: (error) => {
       console.error('Failed to create transaction:', error);
@@ -111,8 +127,8 @@ export const useUpdateUser = () => {
   return useMutation({
     mutationFn: ({ id, userData }: { id: number; userData: Partial<CreateUserRequest> }) =>
       apiService.updateUser(id, userData),
-    onSuccess: () => {
-      queryClient.invalidateQueries({ queryKey: [QUERY_KEYS.users] });
+    onSuccess: (user) => {
+      upsertById(queryClient, QUERY_KEYS.users, user);
     },
   });
 };
@@ -138,6 +154,19 @@ export const useHighValueTransactions = (minAmount: number = 10000) => {
   });
 };
 
+// Hook for server-computed node positions, keyed by graph node id
+export const useGraphLayout = (view: 'all' | 'users' | 'transactions' = 'all') => {
+  return useQuery({
+    queryKey: QUERY_KEYS.graphLayout(view),
+    queryFn: () => apiService.getGraphLayout(view),
+    select: (layout) => Object.fromEntries(layout.nodes.map(node => [node.id, { x: node.x, y: node.y }])),
+    // A stale layout is replaced shortly by the one the server is computing
+    refetchInterval: (query) => (query.state.data?.stale ? 5000 : false),
+    staleTime: 60 * 1000, // 1 minute
+    retry: 1,
+  });
+};
+
 // Combined hook for graph data
 export const useGraphData = (): {
   graphData: GraphData | null;
@@ -168,6 +197,32 @@ export const useGraphData = (): {
   };
 };
 
+// Hook that keeps the cached user and transaction lists current from the server-sent change feed.
+// EventSource reconnects on its own and sends Last-Event-ID, so only a RESYNC triggers a full refetch.
+export const useChangeFeed = () => {
+  const queryClient = useQueryClient();
+
+  useEffect(() => {
+    const source = new EventSource(apiService.changeFeedUrl());
+    const applyUser = (event: MessageEvent) =>
+      upsertById<User>(queryClient, QUERY_KEYS.users, JSON.parse(event.data));
+    const applyTransaction = (event: MessageEvent) =>
+      upsertById<Transaction>(queryClient, QUERY_KEYS.transactions, JSON.parse(event.data));
+    const resync = () => {
+      queryClient.invalidateQueries({ queryKey: [QUERY_KEYS.users] });
+      queryClient.invalidateQueries({ queryKey: [QUERY_KEYS.transactions] });
+    };
+
+    source.addEventListener('USER_CREATED', applyUser);
+    source.addEventListener('USER_UPDATED', applyUser);
+    source.addEventListener('TRANSACTION_CREATED', applyTransaction);
+    source.addEventListener('TRANSACTION_UPDATED', applyTransaction);
+    source.addEventListener('RESYNC', resync);
+
+    return () => source.close();
+  }, [queryClient]);
+};
+
 // Hook for API health check
 export const useHealthCheck = () => {
   return useQuery({
@@ -5,7 +5,10 @@ import {
   CreateUserRequest, 
   CreateTransactionRequest,
   UserConnection,
-  TransactionConnection 
+  TransactionConnection,
+  GraphLayout,
+  GraphSummary,
+  NormalizedTransactions
 } from '@/types';
 
 class ApiService {
@@ -80,8 +83,14 @@ class ApiService {
 
   // Transaction endpoints
   async getTransactions(): Promise<Transaction[]> {
-    const response = await this.api.get<Transaction[]>('/transactions');
-    return response.data;
+    // The normalized view sends each user once instead of embedding them in every transaction
+    const response = await this.api.get<NormalizedTransactions>('/transactions?view=normalized');
+    const { transactions, users } = response.data;
+    return transactions.map(({ senderId, recipientId, ...transaction }) => ({
+      ...transaction,
+      sender: users[senderId],
+      recipient: users[recipientId],
+    }));
   }
 
   async getTransactionById(id: number): Promise<Transaction> {
@@ -121,6 +130,23 @@ class ApiService {
 
 
 
+  // Graph endpoints
+  async getGraphLayout(view: 'all' | 'users' | 'transactions' = 'all'): Promise<GraphLayout> {
+    const response = await this.api.get<GraphLayout>(`/graph/layout?view=${view}`, { timeout: 60000 });
+    return response.data;
+  }
+
+  async getGraphSummary(superNodeId?: string): Promise<GraphSummary> {
+    const path = superNodeId ? `/graph/summary/${encodeURIComponent(superNodeId)}` : '/graph/summary';
+    const response = await this.api.get<GraphSummary>(path, { timeout: 60000 });
+    return response.data;
+  }
+
+  // URL of the server-sent change feed; EventSource cannot go through axios
+  changeFeedUrl(): string {
+    return `${this.api.defaults.baseURL}/changes`;
+  }
+
   // Health check
   async healthCheck(): Promise<boolean> {
     try {
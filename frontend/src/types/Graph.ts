@@ -60,4 +60,59 @@ export interface GraphStats {
   userNodes: number;
   transactionNodes: number;
   relationshipCounts: Record<RelationshipType, number>;
-} 
\ No newline at end of file
+} 
+
+export interface PositionedNode {
+  id: string;
+  type: 'user' | 'transaction';
+  label: string;
+  x: number;
+  y: number;
+}
+
+export interface LayoutEdge {
+  source: string;
+  target: string;
+  type: RelationshipType;
+}
+
+export interface GraphLayout {
+  view: 'ALL' | 'USERS' | 'TRANSACTIONS';
+  nodeCount: number;
+  edgeCount: number;
+  warmStarted: boolean;
+  computedAt: string;
+  // True while the server recomputes a layout for a changed graph
+  stale: boolean;
+  nodes: PositionedNode[];
+  edges: LayoutEdge[];
+}
+
+export interface SuperNode {
+  id: string;
+  kind: 'CLUSTER' | 'SIZE_BUCKET' | 'DEGREE_BUCKET' | 'NODE';
+  label: string;
+  users: number;
+  transactions: number;
+  internalEdges: number;
+  drillable: boolean;
+}
+
+export interface SuperEdge {
+  source: string;
+  target: string;
+  type: string | null;
+  weight: number;
+}
+
+export interface GraphSummary {
+  id: string;
+  level: 'CLUSTERS' | 'DEGREE_BUCKETS' | 'NODES';
+  generation: number;
+  totalNodes: number;
+  totalEdges: number;
+  truncated: boolean;
+  computedAt: string;
+  nodes: SuperNode[];
+  edges: SuperEdge[];
+}
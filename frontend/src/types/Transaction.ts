@@ -55,4 +55,9 @@ export interface TransactionConnection {
   // Backward compatibility methods
   relationshipType?: string; // For compatibility - will use first from relationshipTypes
   sharedValue?: string; // For compatibility - will use first from sharedValues
-} 
\ No newline at end of file
+} 
+/** Transaction list with each user sent once and referenced by id (view=normalized) */
+export interface NormalizedTransactions {
+  transactions: (Omit<Transaction, 'sender' | 'recipient'> & { senderId: number; recipientId: number })[];
+  users: { [id: string]: Transaction['sender'] };
+}